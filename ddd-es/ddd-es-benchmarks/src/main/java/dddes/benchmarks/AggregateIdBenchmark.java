@@ -0,0 +1,67 @@
+package dddes.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dddes.core.AggregateId;
+import dddes.core.Event;
+import dddes.example.domain.product.events.ProductRenamed;
+import dddes.example.infrastructure.InMemoryEventStore;
+
+/**
+ * Compares looking up the streams of an InMemoryEventStore identified by UUID Strings and by AggregateIds, with ids
+ * received from outside, i.e. new instances whose String hash isn't cached yet. The footprint of the two kinds of ids
+ * is measured by AggregateIdTest with JOL.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AggregateIdBenchmark {
+
+  @Param({ "10000", "1000000" })
+  public int streams;
+
+  private AggregateId[] ids;
+  private InMemoryEventStore<String> stringStore;
+  private InMemoryEventStore<AggregateId> aggregateIdStore;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    ids = Stream.generate(AggregateId::random).limit(streams).toArray(AggregateId[]::new);
+    stringStore = new InMemoryEventStore<>();
+    aggregateIdStore = new InMemoryEventStore<>();
+    Event event = new ProductRenamed("name");
+    for (AggregateId id : ids) {
+      stringStore.appendEventsToStream(id.toString(), Stream.of(event));
+      aggregateIdStore.appendEventsToStream(id, Stream.of(event));
+    }
+  }
+
+  @Benchmark
+  public long lookUpString() {
+    AggregateId id = ids[next++ % streams];
+    return stringStore.getStream(id.toString(), 0, 1).count();
+  }
+
+  @Benchmark
+  public long lookUpAggregateId() {
+    AggregateId id = ids[next++ % streams];
+    return aggregateIdStore.getStream(new AggregateId(id.getMostSignificantBits(), id.getLeastSignificantBits()), 0, 1).count();
+  }
+}
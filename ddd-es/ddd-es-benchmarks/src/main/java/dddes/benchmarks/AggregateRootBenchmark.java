@@ -0,0 +1,102 @@
+package dddes.benchmarks;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dddes.core.Event;
+import dddes.example.domain.backlogitem.BacklogItemFactory;
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductFactory;
+
+/** Measures the application of new changes by an AggregateRoot, and the replay of its history */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AggregateRootBenchmark {
+
+  private Product product;
+  private String[] names;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    product = ProductFactory.create("Product");
+    names = new String[] { "Product A", "Product B" };
+  }
+
+  /** A command applying one change, whose pending changes are then committed */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public Product applyChange() {
+    product.rename(names[next ^= 1]);
+    product.markPendingChangesAsCommitted();
+    return product;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public Product loadFromHistory(History history) {
+    Product product = Products.newProduct();
+    product.loadFromHistory(history.events.stream());
+    return product;
+  }
+
+  /** The replay AggregateRoot used to perform before its dispatch table, looking up the handler of every event */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public Product loadFromHistoryReflectively(History history) throws ReflectiveOperationException {
+    Product product = Products.newProduct();
+    for (Event event : history.events) {
+      Method method = Product.class.getDeclaredMethod("on", event.getClass());
+      method.setAccessible(true);
+      method.invoke(product, event);
+    }
+    return product;
+  }
+
+  @State(Scope.Benchmark)
+  public static class History {
+
+    /** The number of events replayed */
+    @Param({ "10", "100", "1000", "10000" })
+    public int size;
+
+    List<Event> events;
+
+    @Setup
+    public void setUp() {
+      events = history(size);
+    }
+  }
+
+  /** A history made of renamings and, for a tenth of it, of planned backlog items */
+  static List<Event> history(int size) {
+    Product product = ProductFactory.create(UUID.randomUUID().toString(), "Product");
+    for (int i = 1; i < size; i++) {
+      if (i % 10 == 0) product.planBacklogItem(BacklogItemFactory.create("Item " + i, product));
+      else product.rename("Product " + i);
+    }
+    List<Event> history = new ArrayList<>(size);
+    product.getPendingChanges().forEach(history::add);
+    return history;
+  }
+}
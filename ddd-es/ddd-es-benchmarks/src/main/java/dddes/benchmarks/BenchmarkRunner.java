@@ -0,0 +1,35 @@
+package dddes.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected on the command line, which accepts the usual JMH options, e.g.
+ * {@code java -jar target/benchmarks.jar AggregateRoot -f 1}. Unless another format or file is given, the results are written
+ * as JSON to {@value #DEFAULT_RESULT_FILE}, so that runs on different commits can be compared.
+ */
+public final class BenchmarkRunner {
+
+  public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+  private BenchmarkRunner() {}
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    if (commandLine.shouldHelp()) {
+      commandLine.showHelp();
+      return;
+    }
+    if (commandLine.shouldList()) {
+      new Runner(commandLine).list();
+      return;
+    }
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+    if (!commandLine.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+    if (!commandLine.getResult().hasValue()) options.result(DEFAULT_RESULT_FILE);
+    new Runner(options.build()).run();
+  }
+}
@@ -0,0 +1,80 @@
+package dddes.benchmarks;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dddes.core.LoadResult;
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductFactory;
+import dddes.example.domain.product.ProductRepository;
+import dddes.example.infrastructure.FileEventStore;
+import dddes.example.infrastructure.FileEventStore.Durability;
+import dddes.example.infrastructure.JavaEventSerializer;
+
+/** Compares loading the AggregateRoots of a FileEventStore one by one with getById and at once with getByIds */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BulkLoadBenchmark {
+
+  private static final int EVENTS_PER_AGGREGATE = 20;
+
+  /** The number of AggregateRoots loaded */
+  @Param({ "100", "2000" })
+  public int aggregates;
+
+  private Path directory;
+  private FileEventStore eventStore;
+  private ProductRepository repository;
+  private List<String> ids;
+
+  @Setup
+  public void setUp() throws Exception {
+    directory = Directories.createTemporary();
+    eventStore = new FileEventStore(directory, new JavaEventSerializer(), 16 * 1024 * 1024, Durability.PERIODIC);
+    repository = new ProductRepository(eventStore);
+    ids = new ArrayList<>(aggregates);
+    for (int i = 0; i < aggregates; i++) {
+      Product product = ProductFactory.create("Product " + i);
+      for (int j = 1; j < EVENTS_PER_AGGREGATE; j++) product.rename("Product " + i + "." + j);
+      repository.save(product, 0);
+      ids.add(product.getId());
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    eventStore.close();
+    Directories.delete(directory);
+  }
+
+  @Benchmark
+  public List<Product> getById() {
+    List<Product> products = new ArrayList<>(ids.size());
+    for (String id : ids) products.add(repository.getById(id));
+    return products;
+  }
+
+  @Benchmark
+  public LoadResult<Product, String> getByIds() {
+    return repository.getByIds(ids);
+  }
+}
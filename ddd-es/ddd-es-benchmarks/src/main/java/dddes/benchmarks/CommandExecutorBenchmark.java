@@ -0,0 +1,108 @@
+package dddes.benchmarks;
+
+import java.time.Duration;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductFactory;
+import dddes.example.domain.product.ProductRepository;
+import dddes.example.infrastructure.AggregateCommandExecutor;
+import dddes.example.infrastructure.InMemoryEventStore;
+
+/**
+ * Compares, for writers issuing commands against a single hot Product, the load/change/save cycle retried on every
+ * ConcurrentModificationException, Repository.update retrying on AggregateRoots caught up with the concurrent changes,
+ * and commands serialized by the mailbox of an AggregateCommandExecutor. The thread count can be changed with the -t
+ * option.
+ */
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CommandExecutorBenchmark {
+
+  /** The hot product, created again at every iteration */
+  @State(Scope.Benchmark)
+  public static class HotProduct {
+
+    ProductRepository repository;
+    String productId;
+    ExecutorService pool;
+    AggregateCommandExecutor<Product, String> executor;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+      repository = new ProductRepository(new InMemoryEventStore<>());
+      Product product = ProductFactory.create("Product");
+      repository.save(product);
+      productId = product.getId();
+      pool = Executors.newFixedThreadPool(4);
+      executor = new AggregateCommandExecutor<>(repository, pool, Duration.ofMinutes(1));
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+      executor.close();
+      pool.shutdown();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Writer {
+
+    String[] names = { Thread.currentThread().getName() + "-A", Thread.currentThread().getName() + "-B" };
+    int next;
+
+    String nextName() {
+      return names[next ^= 1];
+    }
+  }
+
+  @Benchmark
+  public void optimisticRetries(HotProduct state, Writer writer) {
+    String name = writer.nextName();
+    while (true) {
+      Product product = state.repository.getById(state.productId);
+      int expectedVersion = product.getVersion();
+      product.rename(name);
+      try {
+        state.repository.save(product, expectedVersion);
+        return;
+      }
+      catch (ConcurrentModificationException e) {
+        // Loads the product again
+      }
+    }
+  }
+
+  @Benchmark
+  public void update(HotProduct state, Writer writer) {
+    String name = writer.nextName();
+    state.repository.update(state.productId, product -> product.rename(name));
+  }
+
+  @Benchmark
+  public void mailbox(HotProduct state, Writer writer) {
+    String name = writer.nextName();
+    state.executor.execute(state.productId, product -> product.rename(name)).join();
+  }
+}
@@ -0,0 +1,70 @@
+package dddes.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dddes.core.Event;
+import dddes.example.domain.product.events.ProductRenamed;
+import dddes.example.infrastructure.InMemoryEventStore;
+
+/**
+ * Measures the appends of concurrent writers to an InMemoryEventStore, each writer appending to a stream of its own, or
+ * all of them to the same stream. The thread count can be changed with the -t option.
+ */
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConcurrentAppendBenchmark {
+
+  /** The shared store, emptied at every iteration */
+  @State(Scope.Benchmark)
+  public static class Store {
+
+    InMemoryEventStore<String> eventStore;
+    final AtomicInteger writers = new AtomicInteger();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+      eventStore = new InMemoryEventStore<>();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Writer {
+
+    String streamId;
+    Event event = new ProductRenamed("Product");
+
+    @Setup
+    public void setUp(Store store) {
+      streamId = "stream-" + store.writers.incrementAndGet();
+    }
+  }
+
+  @Benchmark
+  public void appendToOwnStream(Store store, Writer writer) {
+    store.eventStore.appendEventsToStream(writer.streamId, Stream.of(writer.event));
+  }
+
+  @Benchmark
+  public void appendToSharedStream(Store store, Writer writer) {
+    store.eventStore.appendEventsToStream("shared", Stream.of(writer.event));
+  }
+}
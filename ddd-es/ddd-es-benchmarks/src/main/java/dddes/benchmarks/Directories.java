@@ -0,0 +1,26 @@
+package dddes.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/** Creates and deletes the temporary directories of the file stores benchmarked */
+final class Directories {
+
+  private Directories() {}
+
+  static Path createTemporary() throws IOException {
+    return Files.createTempDirectory("ddd-es-benchmarks");
+  }
+
+  /** Deletes the directory and everything it holds */
+  static void delete(Path directory) {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+    catch (IOException e) { throw new UncheckedIOException(e); }
+  }
+}
@@ -0,0 +1,131 @@
+package dddes.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dddes.core.Event;
+import dddes.core.IEventSerializer;
+import dddes.example.domain.backlogitem.BacklogItem;
+import dddes.example.domain.backlogitem.BacklogItemFactory;
+import dddes.example.domain.backlogitem.StoryPoints;
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductFactory;
+import dddes.example.infrastructure.ExampleEventCodecs;
+import dddes.example.infrastructure.JavaEventSerializer;
+
+/**
+ * Compares the encoding and the decoding of the events of products and of their backlog items by the binary event
+ * codecs, Java serialization and JSON. Since the events have no JSON creators, JSON is decoded into a tree, which
+ * favors it.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventCodecBenchmark {
+
+  /** The format of the events */
+  @Param({ "binary", "java", "json" })
+  public String format;
+
+  private Codec codec;
+  private List<Event> events;
+  private List<byte[]> encoded;
+  private int next;
+
+  @Setup
+  public void setUp() throws Exception {
+    codec = codec(format);
+    events = events(100);
+    encoded = new ArrayList<>(events.size());
+    for (Event event : events) encoded.add(codec.encode(event));
+  }
+
+  @Benchmark
+  public byte[] encode() throws Exception {
+    return codec.encode(events.get(next++ % events.size()));
+  }
+
+  @Benchmark
+  public Object decode() throws Exception {
+    return codec.decode(encoded.get(next++ % encoded.size()));
+  }
+
+  private interface Codec {
+
+    byte[] encode(Event event) throws Exception;
+
+    Object decode(byte[] bytes) throws Exception;
+  }
+
+  private static Codec codec(String format) {
+    switch (format) {
+      case "binary": return serializerCodec(ExampleEventCodecs.newRegistry());
+      case "java": return serializerCodec(new JavaEventSerializer());
+      case "json":
+        ObjectMapper objectMapper = new ObjectMapper();
+        return new Codec() {
+          public byte[] encode(Event event) throws Exception {
+            return objectMapper.writeValueAsBytes(event);
+          }
+
+          public Object decode(byte[] bytes) throws Exception {
+            return objectMapper.readTree(bytes);
+          }
+        };
+      default: throw new IllegalArgumentException("unknown format: " + format);
+    }
+  }
+
+  private static Codec serializerCodec(IEventSerializer serializer) {
+    return new Codec() {
+      public byte[] encode(Event event) {
+        return serializer.serialize(event);
+      }
+
+      public Object decode(byte[] bytes) {
+        return serializer.deserialize(ByteBuffer.wrap(bytes));
+      }
+    };
+  }
+
+  /** @return the events of products planning 10 backlog items each, which are then estimated and retitled */
+  private static List<Event> events(int products) {
+    List<Event> events = new ArrayList<>();
+    for (int i = 0; i < products; i++) {
+      Product product = ProductFactory.create("Product " + i);
+      List<BacklogItem> backlogItems = new ArrayList<>();
+      for (int j = 0; j < 10; j++) {
+        BacklogItem backlogItem = BacklogItemFactory.create("BacklogItem " + j, product);
+        backlogItem.assignStoryPoints(StoryPoints.FIVE);
+        backlogItem.changeTitle("BacklogItem " + j + " of product " + i);
+        product.planBacklogItem(backlogItem);
+        backlogItems.add(backlogItem);
+      }
+      product.rename("Product " + i + " renamed");
+      product.reorderBacklogItems(backlogItems.stream().map(BacklogItem::getId).sorted().toArray(String[]::new));
+      events.addAll(product.getPendingChanges().collect(Collectors.toList()));
+      for (BacklogItem backlogItem : backlogItems) backlogItem.getPendingChanges().forEach(events::add);
+    }
+    return events;
+  }
+}
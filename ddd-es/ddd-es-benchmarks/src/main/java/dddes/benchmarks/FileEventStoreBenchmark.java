@@ -0,0 +1,106 @@
+package dddes.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dddes.core.Event;
+import dddes.example.domain.product.events.ProductRenamed;
+import dddes.example.infrastructure.FileEventStore;
+import dddes.example.infrastructure.FileEventStore.Durability;
+import dddes.example.infrastructure.JavaEventSerializer;
+
+/** Measures the appends of batches of events to a FileEventStore for every durability, and the replay of its streams */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileEventStoreBenchmark {
+
+  private static final int STREAMS = 100;
+  private static final int BATCH_SIZE = 10;
+  private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+  /** A store appended to, created again at every iteration */
+  @State(Scope.Thread)
+  public static class Appending {
+
+    @Param({ "PERIODIC", "EVERY_BATCH", "EVERY_EVENT" })
+    public Durability durability;
+
+    Path directory;
+    FileEventStore eventStore;
+    String[] streamIds;
+    Event event = new ProductRenamed("name");
+    int next;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+      directory = Directories.createTemporary();
+      eventStore = new FileEventStore(directory, new JavaEventSerializer(), SEGMENT_SIZE, durability);
+      streamIds = IntStream.range(0, STREAMS).mapToObj(i -> UUID.randomUUID().toString()).toArray(String[]::new);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Exception {
+      eventStore.close();
+      Directories.delete(directory);
+    }
+  }
+
+  /** A store holding streams of the given length */
+  @State(Scope.Benchmark)
+  public static class Replaying {
+
+    @Param({ "10", "1000" })
+    public int streamSize;
+
+    Path directory;
+    FileEventStore eventStore;
+    String[] streamIds;
+    int next;
+
+    @Setup
+    public void setUp() throws IOException {
+      directory = Directories.createTemporary();
+      eventStore = new FileEventStore(directory, new JavaEventSerializer(), SEGMENT_SIZE, Durability.PERIODIC);
+      streamIds = IntStream.range(0, STREAMS).mapToObj(i -> UUID.randomUUID().toString()).toArray(String[]::new);
+      Event event = new ProductRenamed("name");
+      for (String streamId : streamIds) eventStore.appendEventsToStream(streamId, Stream.generate(() -> event).limit(streamSize));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+      eventStore.close();
+      Directories.delete(directory);
+    }
+  }
+
+  @Benchmark
+  public void appendBatch(Appending state) {
+    state.eventStore.appendEventsToStream(state.streamIds[state.next++ % STREAMS], Stream.generate(() -> state.event).limit(BATCH_SIZE));
+  }
+
+  @Benchmark
+  public long replayStream(Replaying state) {
+    return state.eventStore.getStream(state.streamIds[state.next++ % STREAMS]).filter(event -> event instanceof ProductRenamed).count();
+  }
+}
@@ -0,0 +1,105 @@
+package dddes.benchmarks;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dddes.core.Event;
+import dddes.example.domain.product.events.ProductRenamed;
+import dddes.example.infrastructure.InMemoryEventStore;
+
+/**
+ * Measures the cost of ordering the appends of concurrent writers into the global log of a shared InMemoryEventStore,
+ * compared with writers appending to stores of their own, and the reading of the global log in batches. The thread
+ * count can be changed with the -t option.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GlobalLogBenchmark {
+
+  /** The shared store, emptied at every iteration */
+  @State(Scope.Benchmark)
+  public static class SharedStore {
+
+    InMemoryEventStore<String> eventStore;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+      eventStore = new InMemoryEventStore<>();
+    }
+  }
+
+  /** A writer of a stream, with a store of its own emptied at every iteration */
+  @State(Scope.Thread)
+  public static class Writer {
+
+    String streamId = UUID.randomUUID().toString();
+    Event event = new ProductRenamed("name");
+    InMemoryEventStore<String> ownStore;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+      ownStore = new InMemoryEventStore<>();
+    }
+  }
+
+  /** A store whose global log holds a million events */
+  @State(Scope.Benchmark)
+  public static class Log {
+
+    static final int EVENTS = 1_000_000;
+
+    @Param({ "100", "1000" })
+    public int batchSize;
+
+    InMemoryEventStore<String> eventStore;
+    long next;
+
+    @Setup
+    public void setUp() {
+      eventStore = new InMemoryEventStore<>();
+      Event event = new ProductRenamed("name");
+      for (int i = 0; i < EVENTS; i++) eventStore.appendEventsToStream("stream-" + i % 1000, Stream.of(event));
+    }
+  }
+
+  @Benchmark
+  @Threads(4)
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void appendToSharedLog(SharedStore store, Writer writer) {
+    store.eventStore.appendEventsToStream(writer.streamId, Stream.of(writer.event));
+  }
+
+  @Benchmark
+  @Threads(4)
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void appendToOwnLog(Writer writer) {
+    writer.ownStore.appendEventsToStream(writer.streamId, Stream.of(writer.event));
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public long readAll(Log log) {
+    long count = log.eventStore.readAll(log.next, log.batchSize).count();
+    log.next = (log.next + log.batchSize) % Log.EVENTS;
+    return count;
+  }
+}
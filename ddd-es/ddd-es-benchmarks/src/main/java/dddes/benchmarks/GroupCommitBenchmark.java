@@ -0,0 +1,81 @@
+package dddes.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dddes.core.Event;
+import dddes.example.domain.product.events.ProductRenamed;
+import dddes.example.infrastructure.FileEventStore;
+import dddes.example.infrastructure.FileEventStore.Durability;
+import dddes.example.infrastructure.JavaEventSerializer;
+
+/**
+ * Compares the durable appends of concurrent writers to a FileEventStore forcing every append to disk (EVERY_BATCH)
+ * with group commit (GROUP_COMMIT). The thread count can be changed with the -t option.
+ */
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GroupCommitBenchmark {
+
+  private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+  /** The shared store, created again at every iteration */
+  @State(Scope.Benchmark)
+  public static class Store {
+
+    @Param({ "EVERY_BATCH", "GROUP_COMMIT" })
+    public Durability durability;
+
+    Path directory;
+    FileEventStore eventStore;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+      directory = Directories.createTemporary();
+      eventStore = durability == Durability.GROUP_COMMIT
+          ? new FileEventStore(directory, new JavaEventSerializer(), SEGMENT_SIZE, FileEventStore.DEFAULT_MAX_GROUP_SIZE, Duration.ZERO)
+          : new FileEventStore(directory, new JavaEventSerializer(), SEGMENT_SIZE, durability);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Exception {
+      eventStore.close();
+      Directories.delete(directory);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Writer {
+
+    String streamId = UUID.randomUUID().toString();
+    Event event = new ProductRenamed("name");
+  }
+
+  @Benchmark
+  public void append(Store store, Writer writer) {
+    store.eventStore.appendEventsToStream(writer.streamId, Stream.of(writer.event));
+  }
+}
@@ -0,0 +1,64 @@
+package dddes.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dddes.core.Event;
+import dddes.core.IEventStore;
+import dddes.example.domain.product.events.ProductRenamed;
+import dddes.example.infrastructure.Histogram;
+import dddes.example.infrastructure.InMemoryEventStore;
+import dddes.example.infrastructure.InstrumentedEventStore;
+import dddes.example.infrastructure.MetricsRegistry;
+
+/** Measures the overhead of the metrics: recording into a histogram, and an append through an InstrumentedEventStore */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InstrumentationBenchmark {
+
+  private Histogram histogram;
+  private long seed;
+  private IEventStore<String> plainStore;
+  private IEventStore<String> instrumentedStore;
+  private Event event;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    histogram = new Histogram();
+    plainStore = new InMemoryEventStore<>();
+    instrumentedStore = new InstrumentedEventStore<>(new InMemoryEventStore<>(), new MetricsRegistry("benchmark"));
+    event = new ProductRenamed("Product");
+  }
+
+  @Benchmark
+  public void recordToHistogram() {
+    seed = seed * 6364136223846793005L + 1442695040888963407L;
+    histogram.record(seed >>> 40);
+  }
+
+  @Benchmark
+  public void appendToPlainStore() {
+    plainStore.appendEventsToStream("stream", Stream.of(event));
+  }
+
+  @Benchmark
+  public void appendToInstrumentedStore() {
+    instrumentedStore.appendEventsToStream("stream", Stream.of(event));
+  }
+}
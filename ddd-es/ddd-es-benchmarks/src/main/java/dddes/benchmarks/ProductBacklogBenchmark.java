@@ -0,0 +1,85 @@
+package dddes.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dddes.example.domain.backlogitem.BacklogItemFactory;
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductBacklogItem;
+import dddes.example.domain.product.ProductFactory;
+
+/**
+ * Measures the reordering of the whole backlog of a product, alternating between two random orderings, and the move of
+ * a random backlog item to a random rank
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProductBacklogBenchmark {
+
+  @Param({ "100", "1000", "10000" })
+  public int backlogSize;
+
+  private Product product;
+  private List<List<String>> orderings;
+  private int next;
+  private String[] movedIds;
+  private int[] newRanks;
+  private int nextMove;
+
+  @Setup
+  public void setUp() {
+    product = ProductFactory.create("Product");
+    for (int i = 0; i < backlogSize; i++) product.planBacklogItem(BacklogItemFactory.create("Item " + i, product));
+    product.markPendingChangesAsCommitted();
+
+    Random random = new Random(42);
+    List<String> ids = product.getPlannedBacklogItems().map(ProductBacklogItem::getId).collect(Collectors.toList());
+    orderings = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      List<String> ordering = new ArrayList<>(ids);
+      Collections.shuffle(ordering, random);
+      orderings.add(ordering);
+    }
+    movedIds = new String[1024];
+    newRanks = new int[movedIds.length];
+    for (int i = 0; i < movedIds.length; i++) {
+      movedIds[i] = ids.get(random.nextInt(backlogSize));
+      newRanks[i] = random.nextInt(backlogSize);
+    }
+  }
+
+  @Benchmark
+  public Product reorderBacklogItems() {
+    product.reorderBacklogItems(orderings.get(next ^= 1));
+    product.markPendingChangesAsCommitted();
+    return product;
+  }
+
+  @Benchmark
+  public Product moveBacklogItem() {
+    int move = nextMove++ & movedIds.length - 1;
+    product.moveBacklogItem(movedIds[move], newRanks[move]);
+    product.markPendingChangesAsCommitted();
+    return product;
+  }
+}
@@ -0,0 +1,28 @@
+package dddes.benchmarks;
+
+import java.lang.reflect.Constructor;
+
+import dddes.example.domain.product.Product;
+
+/** Creates the empty Products the repositories create before loading their history */
+final class Products {
+
+  private static final Constructor<Product> constructor;
+
+  static {
+    try {
+      constructor = Product.class.getDeclaredConstructor();
+      constructor.setAccessible(true);
+    }
+    catch (NoSuchMethodException e) { throw new ExceptionInInitializerError(e); }
+  }
+
+  private Products() {}
+
+  static Product newProduct() {
+    try {
+      return constructor.newInstance();
+    }
+    catch (ReflectiveOperationException e) { throw new IllegalStateException(e); }
+  }
+}
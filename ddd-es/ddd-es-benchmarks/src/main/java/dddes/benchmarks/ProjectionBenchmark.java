@@ -0,0 +1,93 @@
+package dddes.benchmarks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dddes.core.IProjection;
+import dddes.core.RecordedEvent;
+import dddes.example.domain.product.events.ProductRenamed;
+import dddes.example.infrastructure.InMemoryCheckpointStore;
+import dddes.example.infrastructure.InMemoryEventStore;
+import dddes.example.infrastructure.ProjectionEngine;
+import dddes.example.infrastructure.ProjectionRunner;
+import dddes.example.infrastructure.SubscribableEventStore;
+
+/** Measures a full rebuild of a projection by a ProjectionEngine, for the given number of partitions */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProjectionBenchmark {
+
+  private static final int EVENTS = 200_000;
+  private static final int STREAMS = 1_000;
+
+  @Param({ "1", "2", "4" })
+  public int partitions;
+
+  private SubscribableEventStore<String> eventStore;
+  private ProjectionEngine<String> engine;
+
+  @Setup
+  public void setUp() {
+    eventStore = new SubscribableEventStore<>(new InMemoryEventStore<>());
+    for (int i = 0; i < EVENTS; i++) eventStore.appendEventsToStream("stream-" + i % STREAMS, Stream.of(new ProductRenamed(String.valueOf(i))));
+  }
+
+  @Setup(Level.Iteration)
+  public void startEngine() {
+    engine = new ProjectionEngine<>(eventStore, new InMemoryCheckpointStore(), partitions, Duration.ofSeconds(1));
+  }
+
+  @TearDown(Level.Iteration)
+  public void closeEngine() throws InterruptedException {
+    engine.close();
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    eventStore.close();
+  }
+
+  @Benchmark
+  public int rebuild() throws InterruptedException {
+    HashingProjection projection = new HashingProjection();
+    ProjectionRunner<String> runner = engine.rebuild(projection);
+    while (runner.getPosition() < EVENTS) TimeUnit.MILLISECONDS.sleep(1);
+    return projection.hash;
+  }
+
+  /** A projection doing a little work per event */
+  private static final class HashingProjection implements IProjection<String> {
+
+    volatile int hash;
+
+    public String getName() {
+      return "hashing";
+    }
+
+    public void apply(List<RecordedEvent<String>> events) {
+      int hash = 0;
+      for (RecordedEvent<String> event : events) hash = 31 * hash + ((ProductRenamed) event.getEvent()).getName().hashCode();
+      this.hash = hash;
+    }
+  }
+}
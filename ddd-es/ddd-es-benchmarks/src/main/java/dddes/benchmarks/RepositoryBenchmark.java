@@ -0,0 +1,89 @@
+package dddes.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dddes.core.ISnapshotPolicy;
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductFactory;
+import dddes.example.domain.product.ProductRepository;
+import dddes.example.infrastructure.InMemoryEventStore;
+import dddes.example.infrastructure.InMemorySnapshotStore;
+
+/** Measures the saving of AggregateRoots to an InMemoryEventStore, and their loading with and without snapshots */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RepositoryBenchmark {
+
+  /** A repository saving new changes of the same product; the store is emptied at every iteration */
+  @State(Scope.Thread)
+  public static class Saving {
+
+    ProductRepository repository;
+    Product product;
+    String[] names = { "Product A", "Product B" };
+    int next;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+      repository = new ProductRepository(new InMemoryEventStore<>());
+      product = ProductFactory.create("Product");
+      repository.save(product);
+    }
+  }
+
+  /** A repository holding a product with a history of the given length */
+  @State(Scope.Benchmark)
+  public static class Loading {
+
+    @Param({ "10", "100", "1000" })
+    public int historySize;
+
+    /** Whether a snapshot of the product is taken every 100 events */
+    @Param({ "false", "true" })
+    public boolean snapshots;
+
+    ProductRepository repository;
+    String productId;
+
+    @Setup
+    public void setUp() {
+      InMemoryEventStore<String> eventStore = new InMemoryEventStore<>();
+      repository = snapshots ? new ProductRepository(eventStore, new InMemorySnapshotStore<>(), ISnapshotPolicy.everyEvents(100)) : new ProductRepository(eventStore);
+      Product product = ProductFactory.create("Product");
+      for (int i = 1; i < historySize; i++) {
+        product.rename("Product " + i);
+        if (i % 10 == 0) repository.save(product);
+      }
+      repository.save(product);
+      productId = product.getId();
+    }
+  }
+
+  @Benchmark
+  public Product save(Saving state) {
+    state.product.rename(state.names[state.next ^= 1]);
+    state.repository.save(state.product);
+    return state.product;
+  }
+
+  @Benchmark
+  public Product getById(Loading state) {
+    return state.repository.getById(state.productId);
+  }
+}
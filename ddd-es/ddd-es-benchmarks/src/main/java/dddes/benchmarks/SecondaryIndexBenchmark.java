@@ -0,0 +1,107 @@
+package dddes.benchmarks;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dddes.core.EventIndex;
+import dddes.core.RecordedEvent;
+import dddes.example.domain.backlogitem.BacklogItemRepository;
+import dddes.example.domain.backlogitem.StoryPoints;
+import dddes.example.domain.backlogitem.events.BacklogItemCreated;
+import dddes.example.infrastructure.InMemoryEventStore;
+
+/**
+ * Compares finding the BacklogItems of a product through the by-product index with scanning the global log, and
+ * measures what maintaining the index costs to appends
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+public class SecondaryIndexBenchmark {
+
+  private static final int PRODUCTS = 100;
+  private static final int BACKLOG_ITEMS_PER_PRODUCT = 1_000;
+
+  /** A store holding the BacklogItems of the products, with the by-product index */
+  @State(Scope.Benchmark)
+  public static class Backlog {
+
+    String[] productIds;
+    InMemoryEventStore<String> eventStore;
+    BacklogItemRepository repository;
+    int next;
+
+    @Setup
+    public void setUp() {
+      productIds = Stream.generate(() -> UUID.randomUUID().toString()).limit(PRODUCTS).toArray(String[]::new);
+      eventStore = new InMemoryEventStore<>(BacklogItemRepository.BY_PRODUCT);
+      for (int i = 0; i < PRODUCTS * BACKLOG_ITEMS_PER_PRODUCT; i++) append(eventStore, productIds[i % PRODUCTS]);
+      repository = new BacklogItemRepository(eventStore);
+    }
+
+    String nextProductId() {
+      return productIds[next++ % PRODUCTS];
+    }
+  }
+
+  /** A store appended to, with or without the by-product index, emptied at every iteration */
+  @State(Scope.Thread)
+  public static class Appending {
+
+    @Param({ "false", "true" })
+    public boolean indexed;
+
+    InMemoryEventStore<String> eventStore;
+    String productId = UUID.randomUUID().toString();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+      eventStore = indexed ? new InMemoryEventStore<>(BacklogItemRepository.BY_PRODUCT) : new InMemoryEventStore<>();
+    }
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public long findThroughIndex(Backlog backlog) {
+    return backlog.repository.findIdsByProduct(backlog.nextProductId()).count();
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public List<String> findThroughScan(Backlog backlog) {
+    String productId = backlog.nextProductId();
+    EventIndex<BacklogItemCreated> byProduct = BacklogItemRepository.BY_PRODUCT;
+    return backlog.eventStore.readAll(0, Integer.MAX_VALUE)
+        .filter(event -> productId.equals(byProduct.keyOf(event.getEvent())))
+        .map(RecordedEvent::getStreamId)
+        .collect(Collectors.toList());
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public void append(Appending state) {
+    append(state.eventStore, state.productId);
+  }
+
+  private static void append(InMemoryEventStore<String> eventStore, String productId) {
+    String id = UUID.randomUUID().toString();
+    eventStore.appendEventsToStream(id, Stream.of(new BacklogItemCreated(id, "BacklogItem", StoryPoints.ONE, productId)), 0);
+  }
+}
@@ -0,0 +1,87 @@
+package dddes.benchmarks;
+
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dddes.core.Event;
+import dddes.core.IEventStore;
+import dddes.example.domain.product.events.ProductRenamed;
+import dddes.example.infrastructure.FileEventStore;
+import dddes.example.infrastructure.FileEventStore.Durability;
+import dddes.example.infrastructure.InMemoryEventStore;
+import dddes.example.infrastructure.JavaEventSerializer;
+import dddes.example.infrastructure.TieredEventStore;
+
+/**
+ * Compares the reads of an InMemoryEventStore, of a TieredEventStore in front of a FileEventStore and of the
+ * FileEventStore alone, when 90% of the reads go to 5% of the streams
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TieredStoreBenchmark {
+
+  private static final int STREAMS = 20_000;
+  private static final int EVENTS_PER_STREAM = 20;
+  private static final long HOT_TIER_BUDGET = 8 * 1024 * 1024;
+
+  @Param({ "inMemory", "tiered", "coldTier" })
+  public String store;
+
+  private Path directory;
+  private FileEventStore coldTier;
+  private IEventStore<String> eventStore;
+  private Random random;
+
+  @Setup
+  public void setUp() throws Exception {
+    if (store.equals("inMemory")) eventStore = fill(new InMemoryEventStore<>());
+    else {
+      directory = Directories.createTemporary();
+      coldTier = new FileEventStore(directory, new JavaEventSerializer(), 64 * 1024 * 1024, Durability.PERIODIC);
+      eventStore = fill(store.equals("tiered") ? new TieredEventStore<>(coldTier, HOT_TIER_BUDGET) : coldTier);
+    }
+    random = new Random(42);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    if (coldTier == null) return;
+    coldTier.close();
+    Directories.delete(directory);
+  }
+
+  @Benchmark
+  public long read() {
+    int stream = random.nextDouble() < 0.9 ? random.nextInt(STREAMS / 20) : random.nextInt(STREAMS);
+    return eventStore.getStream("stream-" + stream).filter(event -> event instanceof ProductRenamed).count();
+  }
+
+  private static <S extends IEventStore<String>> S fill(S eventStore) {
+    for (int i = 0; i < STREAMS; i++) {
+      int stream = i;
+      Stream<Event> events = IntStream.range(0, EVENTS_PER_STREAM).mapToObj(j -> new ProductRenamed("Product " + stream + "." + j));
+      eventStore.appendEventsToStream("stream-" + i, events, 0);
+    }
+    return eventStore;
+  }
+}
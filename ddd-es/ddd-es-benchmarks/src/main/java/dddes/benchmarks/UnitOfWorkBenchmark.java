@@ -0,0 +1,87 @@
+package dddes.benchmarks;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dddes.example.domain.backlogitem.BacklogItem;
+import dddes.example.domain.backlogitem.BacklogItemFactory;
+import dddes.example.domain.backlogitem.BacklogItemRepository;
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductFactory;
+import dddes.example.domain.product.ProductRepository;
+import dddes.example.infrastructure.FileEventStore;
+import dddes.example.infrastructure.FileEventStore.Durability;
+import dddes.example.infrastructure.JavaEventSerializer;
+import dddes.example.infrastructure.UnitOfWork;
+
+/**
+ * Compares, on a durable FileEventStore, a workflow creating a Product and the BacklogItems planned in it saved with
+ * one save per AggregateRoot and with one commit of a UnitOfWork
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UnitOfWorkBenchmark {
+
+  private static final int BACKLOG_ITEMS = 4;
+
+  private Path directory;
+  private FileEventStore eventStore;
+  private ProductRepository products;
+  private BacklogItemRepository backlogItems;
+
+  @Setup(Level.Iteration)
+  public void setUp() throws Exception {
+    directory = Directories.createTemporary();
+    eventStore = new FileEventStore(directory, new JavaEventSerializer(), 16 * 1024 * 1024, Durability.EVERY_BATCH);
+    products = new ProductRepository(eventStore);
+    backlogItems = new BacklogItemRepository(eventStore);
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() throws Exception {
+    eventStore.close();
+    Directories.delete(directory);
+  }
+
+  @Benchmark
+  public Product savePerAggregateRoot() {
+    Product product = ProductFactory.create("Product");
+    BacklogItem[] items = plan(product);
+    products.save(product, 0);
+    for (BacklogItem item : items) backlogItems.save(item, 0);
+    return product;
+  }
+
+  @Benchmark
+  public Product unitOfWork() {
+    Product product = ProductFactory.create("Product");
+    BacklogItem[] items = plan(product);
+    UnitOfWork<String> work = new UnitOfWork<String>(eventStore).add(product);
+    for (BacklogItem item : items) work.add(item);
+    work.commit();
+    return product;
+  }
+
+  private static BacklogItem[] plan(Product product) {
+    BacklogItem[] items = new BacklogItem[BACKLOG_ITEMS];
+    for (int i = 0; i < items.length; i++) product.planBacklogItem(items[i] = BacklogItemFactory.create("BacklogItem " + i, product));
+    return items;
+  }
+}
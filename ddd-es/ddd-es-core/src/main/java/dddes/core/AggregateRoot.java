@@ -1,23 +1,24 @@
 package dddes.core;
 
-import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Stream;
 
-import javax.management.ReflectionException;
-
 public abstract class AggregateRoot<ID> implements IAggregateRoot<ID> {
 
   private ID id;
   private int version;
-  private final HashSet<IEntity<ID>> entities;
+  private final HashMap<ID, IEntity<ID>> entities;
+  private final HashMap<Class<?>, HashMap<ID, IEntity<ID>>> entitiesByType;
   private final List<Event> pendingChanges;
+  private final EventHandlers eventHandlers;
 
   protected AggregateRoot() {
-    this.entities = new HashSet<IEntity<ID>>();
+    this.eventHandlers = EventHandlers.of(getClass());
+    this.entities = new HashMap<ID, IEntity<ID>>();
+    this.entitiesByType = new HashMap<Class<?>, HashMap<ID, IEntity<ID>>>();
     this.pendingChanges = new ArrayList<>();
     this.version = 0;
   }
@@ -46,6 +47,24 @@ public abstract class AggregateRoot<ID> implements IAggregateRoot<ID> {
     pendingChanges.clear();
   }
 
+  /** @return true if the AggregateRoot implements {@link ISnapshotable} */
+  public boolean supportsSnapshots() {
+    return this instanceof ISnapshotable;
+  }
+
+  public Snapshot<ID> takeSnapshot() {
+    return supportsSnapshots() ? new Snapshot<ID>(id, version, ((ISnapshotable) this).getSnapshotState()) : null;
+  }
+
+  public void restoreFromSnapshot(Snapshot<ID> snapshot) {
+    Objects.requireNonNull(snapshot, "snapshot must not be null");
+    if (!supportsSnapshots()) throw new UnsupportedOperationException(getClass().getName() + " doesn't support snapshots");
+    if (version != 0) throw new IllegalStateException("a snapshot can only be restored by a new AggregateRoot");
+    ((ISnapshotable) this).restoreSnapshotState(snapshot.getState());
+    setId(snapshot.getAggregateRootId());
+    version = snapshot.getVersion();
+  }
+
   protected void applyChange(AggregateRootEvent<ID> change) {    
     if (change.getAggregateRootId() == null) change.setAggregateRootId(id);
     change.setAggregateRootVersion(version + 1);
@@ -59,30 +78,22 @@ public abstract class AggregateRoot<ID> implements IAggregateRoot<ID> {
     ++version;
   }
 
-  private void applyEvent(Event event) {    
-    try {      
-      Method method = this.getClass().getDeclaredMethod("on", event.getClass());
-      if (method != null) {
-        method.setAccessible(true);
-        method.invoke(this, event);
-      } 
-      else throw new ReflectionException(new NullPointerException("method 'on' not found for event: " + event.getClass().getName()));
-
-    } catch (Exception e) { throw new RuntimeException(e); }
+  private void applyEvent(Event event) {
+    eventHandlers.apply(this, event);
   }
   
   protected boolean entityExists(ID id) {
-    return getEntities().anyMatch(x -> x.getId().equals(id));
+    return id != null && entities.containsKey(id);
   }
 
   protected <TEntity extends IEntity<ID>> void addEntity(TEntity entity, boolean throwIfExists) throws IllegalArgumentException {
     Objects.requireNonNull(entity, "entityId must not be null");
-    TEntity existing = findEntityById(entity.getId());
+    IEntity<ID> existing = entities.putIfAbsent(entity.getId(), entity);
     if (existing != null) {      
       if (throwIfExists)  throw new IllegalArgumentException("entity has already been added: " + entity.getId());      
       else return;
     }
-    entities.add(entity);
+    entitiesByType.computeIfAbsent(entity.getClass(), type -> new HashMap<ID, IEntity<ID>>()).put(entity.getId(), entity);
   }
 
   protected <TEntity extends IEntity<ID>> void removeEntity(TEntity entity) {
@@ -92,19 +103,30 @@ public abstract class AggregateRoot<ID> implements IAggregateRoot<ID> {
 
   protected void removeEntity(ID entityId, boolean throwIfNotExists) {    
     Objects.requireNonNull(entityId, "entityId must not be null");
-    IEntity<ID> entity = findEntityById(entityId);
-    if (entity != null) entities.remove(entity);
+    IEntity<ID> entity = entities.remove(entityId);
+    if (entity != null) entitiesByType.get(entity.getClass()).remove(entityId);
     else if (throwIfNotExists) throw new IllegalArgumentException("entity has not been found: " + entityId);
   }
   
   @SuppressWarnings("unchecked")
   protected <T extends IEntity<ID>> T findEntityById(ID id) {    
-    IEntity<ID> entity = getEntities().filter(x -> x.getId().equals(id)).findFirst().orElse(null);
-    return entity != null ? (T)entity : null;   
+    return id != null ? (T)entities.get(id) : null;   
   }
   
   protected Stream<IEntity<ID>> getEntities() {    
-    return entities.stream();  
+    return entities.values().stream();  
+  }
+
+  /** @return the entities of the given type (subtypes included), without scanning the entities of other types */
+  @SuppressWarnings("unchecked")
+  protected <T extends IEntity<ID>> Stream<T> getEntities(Class<T> type) {
+    Objects.requireNonNull(type, "type must not be null");
+    HashMap<ID, IEntity<ID>> entitiesOfType = entitiesByType.get(type);
+    if (entitiesOfType != null && entitiesByType.size() == 1) return (Stream<T>)entitiesOfType.values().stream();
+    return entitiesByType.entrySet().stream()
+        .filter(x -> type.isAssignableFrom(x.getKey()))
+        .flatMap(x -> x.getValue().values().stream())
+        .map(x -> (T)x);
   }
 
   @Override
@@ -125,4 +147,4 @@ public abstract class AggregateRoot<ID> implements IAggregateRoot<ID> {
     result = prime * result + version;
     return result;
   }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,40 @@
+package dddes.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A base class for the codec of an AggregateRootEvent with a String id: the id and the version of the AggregateRoot are
+ * encoded before the payload of the event, and restored after it has been decoded.
+ */
+public abstract class AggregateRootEventCodec<E extends AggregateRootEvent<String>> implements IEventCodec<E> {
+
+  private final Class<E> eventType;
+
+  protected AggregateRootEventCodec(Class<E> eventType) {
+    this.eventType = eventType;
+  }
+
+  public Class<E> getEventType() {
+    return eventType;
+  }
+
+  public final void encode(E event, ByteBuffer buffer) {
+    BinaryEncoding.writeString(buffer, event.getAggregateRootId());
+    BinaryEncoding.writeVarInt(buffer, event.getAggregateRootVersion());
+    encodePayload(event, buffer);
+  }
+
+  public final E decode(ByteBuffer buffer) {
+    String aggregateRootId = BinaryEncoding.readString(buffer);
+    int aggregateRootVersion = BinaryEncoding.readVarInt(buffer);
+    E event = decodePayload(aggregateRootId, buffer);
+    event.setAggregateRootId(aggregateRootId);
+    event.setAggregateRootVersion(aggregateRootVersion);
+    return event;
+  }
+
+  protected abstract void encodePayload(E event, ByteBuffer buffer);
+
+  /** @param aggregateRootId: the id of the AggregateRoot, already decoded, for events which also take it as argument */
+  protected abstract E decodePayload(String aggregateRootId, ByteBuffer buffer);
+}
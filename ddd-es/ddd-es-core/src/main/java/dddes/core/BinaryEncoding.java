@@ -0,0 +1,139 @@
+package dddes.core;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Primitives of the binary encoding of Events: unsigned LEB128 varints, nullable length-prefixed UTF-8 strings and
+ * nullable enum ordinals. Everything is written directly into and read directly from a ByteBuffer, without
+ * intermediate buffers.
+ */
+public final class BinaryEncoding {
+
+  private static final ClassValue<Object[]> ENUM_CONSTANTS = new ClassValue<Object[]>() {
+    @Override
+    protected Object[] computeValue(Class<?> type) {
+      return type.getEnumConstants();
+    }
+  };
+
+  private BinaryEncoding() { }
+
+  /** Writes an int in 1 to 5 bytes, the smaller the value the fewer the bytes; negative values take 5 bytes */
+  public static void writeVarInt(ByteBuffer buffer, int value) {
+    while ((value & ~0x7F) != 0) {
+      buffer.put((byte) (value & 0x7F | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  public static int readVarInt(ByteBuffer buffer) {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = buffer.get();
+      value |= (b & 0x7F) << shift;
+      if (b >= 0) return value;
+    }
+    throw new IllegalStateException("malformed varint");
+  }
+
+  /** Writes a long in 1 to 10 bytes, the smaller the value the fewer the bytes; negative values take 10 bytes */
+  public static void writeVarLong(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) (value & 0x7F | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  public static long readVarLong(ByteBuffer buffer) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) return value;
+    }
+    throw new IllegalStateException("malformed varlong");
+  }
+
+  /** Writes a string as its UTF-8 length plus one (zero for null) followed by its UTF-8 bytes */
+  public static void writeString(ByteBuffer buffer, String value) {
+    if (value == null) {
+      buffer.put((byte) 0);
+      return;
+    }
+    int length = value.length(), utf8Length = utf8Length(value);
+    writeVarInt(buffer, utf8Length + 1);
+    if (buffer.remaining() < utf8Length) throw new BufferOverflowException();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) buffer.put((byte) c);
+      else if (c < 0x800) {
+        buffer.put((byte) (0xC0 | c >> 6));
+        buffer.put((byte) (0x80 | c & 0x3F));
+      }
+      else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        buffer.put((byte) (0xF0 | codePoint >> 18));
+        buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+        buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+        buffer.put((byte) (0x80 | codePoint & 0x3F));
+      }
+      else {
+        if (Character.isSurrogate(c)) c = '\uFFFD';
+        buffer.put((byte) (0xE0 | c >> 12));
+        buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+        buffer.put((byte) (0x80 | c & 0x3F));
+      }
+    }
+  }
+
+  public static String readString(ByteBuffer buffer) {
+    int length = readVarInt(buffer) - 1;
+    if (length < 0) return null;
+    if (buffer.remaining() < length) throw new BufferUnderflowException();
+    String value;
+    if (buffer.hasArray()) value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+    else {
+      // Direct and memory-mapped buffers are decoded through a duplicate view, sharing their content
+      ByteBuffer view = buffer.duplicate();
+      view.limit(view.position() + length);
+      value = StandardCharsets.UTF_8.decode(view).toString();
+    }
+    buffer.position(buffer.position() + length);
+    return value;
+  }
+
+  /** Writes the ordinal of an enum constant plus one, zero for null */
+  public static void writeEnum(ByteBuffer buffer, Enum<?> value) {
+    writeVarInt(buffer, value != null ? value.ordinal() + 1 : 0);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <E extends Enum<E>> E readEnum(ByteBuffer buffer, Class<E> type) {
+    int ordinal = readVarInt(buffer) - 1;
+    if (ordinal < 0) return null;
+    Object[] constants = ENUM_CONSTANTS.get(type);
+    if (ordinal >= constants.length) throw new IllegalStateException("unknown ordinal " + ordinal + " of " + type.getName());
+    return (E) constants[ordinal];
+  }
+
+  private static int utf8Length(String value) {
+    int length = value.length(), utf8Length = length;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x800) {
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+          utf8Length += 2;
+          i++;
+        }
+        else utf8Length += 2;
+      }
+      else if (c >= 0x80) utf8Length++;
+    }
+    return utf8Length;
+  }
+}
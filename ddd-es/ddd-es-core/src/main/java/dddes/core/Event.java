@@ -1,3 +1,5 @@
 package dddes.core;
 
-public interface Event { }
\ No newline at end of file
+import java.io.Serializable;
+
+public interface Event extends Serializable { }
\ No newline at end of file
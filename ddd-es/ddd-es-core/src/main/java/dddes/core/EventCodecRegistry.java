@@ -0,0 +1,91 @@
+package dddes.core;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The codecs of the Events, each one registered under a type id which is written as a varint before the encoded event.
+ * Type ids must be kept stable once events have been stored, and are best kept small since they index the codecs.
+ */
+public class EventCodecRegistry implements IEventSerializer {
+
+  private static final int INITIAL_BUFFER_SIZE = 256;
+
+  private final ConcurrentHashMap<Class<?>, Registration> registrationsByType;
+  private volatile Registration[] registrationsByTypeId;
+  private final ThreadLocal<ByteBuffer> buffers;
+
+  public EventCodecRegistry() {
+    this.registrationsByType = new ConcurrentHashMap<>();
+    this.registrationsByTypeId = new Registration[0];
+    this.buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_BUFFER_SIZE));
+  }
+
+  public synchronized <E extends Event> EventCodecRegistry register(int typeId, IEventCodec<E> codec) {
+    Objects.requireNonNull(codec, "codec must be not null");
+    if (typeId < 0) throw new IllegalArgumentException("typeId must not be negative");
+    if (typeId < registrationsByTypeId.length && registrationsByTypeId[typeId] != null)
+      throw new IllegalArgumentException("type id " + typeId + " already registered for " + registrationsByTypeId[typeId].codec.getEventType().getName());
+    if (registrationsByType.containsKey(codec.getEventType()))
+      throw new IllegalArgumentException(codec.getEventType().getName() + " already registered");
+
+    Registration registration = new Registration(typeId, codec);
+    Registration[] registrations = Arrays.copyOf(registrationsByTypeId, Math.max(registrationsByTypeId.length, typeId + 1));
+    registrations[typeId] = registration;
+    registrationsByTypeId = registrations;
+    registrationsByType.put(codec.getEventType(), registration);
+    return this;
+  }
+
+  /** Writes the type id and the encoded event at the position of the buffer */
+  @SuppressWarnings("unchecked")
+  public void encode(Event event, ByteBuffer buffer) {
+    Objects.requireNonNull(event, "event must be not null");
+    Registration registration = registrationsByType.get(event.getClass());
+    if (registration == null) throw new IllegalArgumentException("no codec registered for " + event.getClass().getName());
+    BinaryEncoding.writeVarInt(buffer, registration.typeId);
+    ((IEventCodec<Event>) registration.codec).encode(event, buffer);
+  }
+
+  /** Reads a type id and the following encoded event from the position of the buffer */
+  public Event decode(ByteBuffer buffer) {
+    int typeId = BinaryEncoding.readVarInt(buffer);
+    Registration[] registrations = registrationsByTypeId;
+    if (typeId < 0 || typeId >= registrations.length || registrations[typeId] == null) throw new IllegalStateException("no codec registered for type id " + typeId);
+    return registrations[typeId].codec.decode(buffer);
+  }
+
+  /** Encodes the event into a reusable per-thread buffer, grown as needed, and returns a copy of its bytes */
+  public byte[] serialize(Event event) {
+    ByteBuffer buffer = buffers.get();
+    while (true) {
+      buffer.clear();
+      try {
+        encode(event, buffer);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+      }
+      catch (BufferOverflowException e) {
+        buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffers.set(buffer);
+      }
+    }
+  }
+
+  public Event deserialize(ByteBuffer buffer) {
+    return decode(buffer);
+  }
+
+  private static final class Registration {
+
+    final int typeId;
+    final IEventCodec<?> codec;
+
+    Registration(int typeId, IEventCodec<?> codec) {
+      this.typeId = typeId;
+      this.codec = codec;
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package dddes.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The dispatch table of an AggregateRoot class: maps each event type to the precompiled 'on' method handling it.
+ * A table is built once per AggregateRoot class (handlers declared on superclasses included) and shared by all its
+ * instances.
+ */
+final class EventHandlers {
+
+  private static final MethodType HANDLER_TYPE = MethodType.methodType(void.class, AggregateRoot.class, Event.class);
+  private static final MethodHandle NO_HANDLER = MethodHandles.constant(Object.class, null);
+
+  private static final ClassValue<EventHandlers> TABLES = new ClassValue<EventHandlers>() {
+    @Override
+    protected EventHandlers computeValue(Class<?> aggregateRootType) {
+      return new EventHandlers(aggregateRootType);
+    }
+  };
+
+  private final Class<?> aggregateRootType;
+  private final ConcurrentHashMap<Class<?>, MethodHandle> handlers;
+
+  /**
+   * @return the shared dispatch table of the given AggregateRoot class
+   * @throws IllegalStateException if the class declares an invalid 'on' method
+   */
+  static EventHandlers of(Class<?> aggregateRootType) {
+    return TABLES.get(aggregateRootType);
+  }
+
+  private EventHandlers(Class<?> aggregateRootType) {
+    this.aggregateRootType = aggregateRootType;
+    this.handlers = new ConcurrentHashMap<>(register(aggregateRootType));
+  }
+
+  void apply(AggregateRoot<?> aggregateRoot, Event event) {
+    MethodHandle handler = handlers.get(event.getClass());
+    if (handler == null) handler = resolve(event.getClass());
+    if (handler == NO_HANDLER)
+      throw new IllegalStateException("method 'on' not found in " + aggregateRootType.getName() + " for event: " + event.getClass().getName());
+    try {
+      handler.invokeExact(aggregateRoot, event);
+    }
+    catch (RuntimeException | Error e) { throw e; }
+    catch (Throwable e) { throw new RuntimeException(e); }
+  }
+
+  /** Falls back to the handler of the closest event superclass, remembering the outcome */
+  private MethodHandle resolve(Class<?> eventType) {
+    MethodHandle handler = null;
+    for (Class<?> type = eventType.getSuperclass(); handler == null && type != null; type = type.getSuperclass())
+      handler = handlers.get(type);
+    MethodHandle existing = handlers.putIfAbsent(eventType, handler != null ? handler : NO_HANDLER);
+    return existing != null ? existing : handlers.get(eventType);
+  }
+
+  private static Map<Class<?>, MethodHandle> register(Class<?> aggregateRootType) {
+    Map<Class<?>, MethodHandle> handlers = new HashMap<>();
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    // Subclasses first, so that their handlers take precedence over the ones they override or hide
+    for (Class<?> type = aggregateRootType; type != null && type != AggregateRoot.class; type = type.getSuperclass()) {
+      for (Method method : type.getDeclaredMethods()) {
+        if (!method.getName().equals("on") || method.isSynthetic() || Modifier.isStatic(method.getModifiers())) continue;
+        if (method.getParameterCount() != 1 || !Event.class.isAssignableFrom(method.getParameterTypes()[0]))
+          throw new IllegalStateException("invalid event handler, expected a single Event parameter: " + method);
+
+        Class<?> eventType = method.getParameterTypes()[0];
+        if (handlers.containsKey(eventType)) continue;
+        try {
+          method.setAccessible(true);
+          handlers.put(eventType, lookup.unreflect(method).asType(HANDLER_TYPE));
+        }
+        catch (IllegalAccessException | RuntimeException e) {
+          throw new IllegalStateException("event handler is not accessible: " + method, e);
+        }
+      }
+    }
+    return handlers;
+  }
+}
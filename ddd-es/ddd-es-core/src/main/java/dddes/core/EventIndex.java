@@ -0,0 +1,59 @@
+package dddes.core;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * The definition of a secondary index of an event store, mapping a key extracted from the events of a type to the
+ * streams holding them, e.g. the product id of BacklogItemCreated events to the BacklogItem streams of every product.
+ * An event store maintaining the index updates it as part of every append, and finds the streams of a key through
+ * {@link IEventStore#findStreams(String, String)} without reading any of them.
+ */
+public final class EventIndex<E extends Event> {
+
+  private final String name;
+  private final Class<E> eventType;
+  private final Function<? super E, String> keyExtractor;
+
+  private EventIndex(String name, Class<E> eventType, Function<? super E, String> keyExtractor) {
+    Objects.requireNonNull(name, "name must not be null");
+    Objects.requireNonNull(eventType, "eventType must not be null");
+    Objects.requireNonNull(keyExtractor, "keyExtractor must not be null");
+    if (name.isEmpty()) throw new IllegalArgumentException("name must not be empty");
+    this.name = name;
+    this.eventType = eventType;
+    this.keyExtractor = keyExtractor;
+  }
+
+  /**
+   * @param eventType: the type of the indexed events, their subtypes included
+   * @param keyExtractor: the key of an event, or null to leave the event out of the index
+   */
+  public static <E extends Event> EventIndex<E> of(String name, Class<E> eventType, Function<? super E, String> keyExtractor) {
+    return new EventIndex<>(name, eventType, keyExtractor);
+  }
+
+  /** @return an index of every event by the name of its class, i.e. of the streams holding events of a given type */
+  public static EventIndex<Event> byEventType(String name) {
+    return new EventIndex<>(name, Event.class, event -> event.getClass().getName());
+  }
+
+  /** @return the name of the index, which identifies it in queries and in the files of durable stores */
+  public String getName() {
+    return name;
+  }
+
+  public Class<E> getEventType() {
+    return eventType;
+  }
+
+  /** @return the key of the event, or null if the event isn't indexed */
+  public String keyOf(Event event) {
+    return eventType.isInstance(event) ? keyExtractor.apply(eventType.cast(event)) : null;
+  }
+
+  @Override
+  public String toString() {
+    return "EventIndex [name=" + name + ", eventType=" + eventType.getName() + "]";
+  }
+}
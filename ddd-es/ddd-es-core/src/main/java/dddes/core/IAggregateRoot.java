@@ -20,4 +20,18 @@ public interface IAggregateRoot<ID> {
 
   /** Marks the current pending changes as committed (e.g. saved in a event store) */
   void markPendingChangesAsCommitted();
+
+  /** @return true if the AggregateRoot opts in to snapshots, e.g. by implementing {@link ISnapshotable} */
+  boolean supportsSnapshots();
+
+  /** @return a snapshot of the current state of the AggregateRoot, or null if it doesn't support snapshots */
+  Snapshot<ID> takeSnapshot();
+
+  /**
+   * Restores the state captured by a snapshot, before loading the events following it
+   * 
+   * @param snapshot: a snapshot taken by an AggregateRoot of the same type
+   * @throws UnsupportedOperationException if the AggregateRoot doesn't support snapshots
+   */
+  void restoreFromSnapshot(Snapshot<ID> snapshot);
 }
@@ -0,0 +1,10 @@
+package dddes.core;
+
+/** Stores the position reached by every subscription, so that it can resume from there */
+public interface ICheckpointStore {
+
+  /** @return the position the given subscription resumes from, or null if it has no checkpoint yet */
+  Long load(String subscriptionName);
+
+  void save(String subscriptionName, long position);
+}
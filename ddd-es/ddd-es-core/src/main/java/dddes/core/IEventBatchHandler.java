@@ -0,0 +1,13 @@
+package dddes.core;
+
+import java.util.List;
+
+public interface IEventBatchHandler {
+
+  /**
+   * Handles a batch of published events
+   * 
+   * @param events: the events, in publication order; the list is only valid during the call
+   */
+  void handle(List<Event> events);
+}
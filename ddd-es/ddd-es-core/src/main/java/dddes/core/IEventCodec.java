@@ -0,0 +1,19 @@
+package dddes.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes Events of a given type into a compact binary form, writing directly into and reading directly from a
+ * ByteBuffer, e.g. through {@link BinaryEncoding}. Codecs are registered into an {@link EventCodecRegistry} under a type
+ * id, which is written before every encoded event.
+ */
+public interface IEventCodec<E extends Event> {
+
+  Class<E> getEventType();
+
+  /** Writes the event at the position of the buffer, throwing a BufferOverflowException when it does not fit */
+  void encode(E event, ByteBuffer buffer);
+
+  /** Reads an event from the position of the buffer */
+  E decode(ByteBuffer buffer);
+}
@@ -0,0 +1,12 @@
+package dddes.core;
+
+import java.nio.ByteBuffer;
+
+/** Converts Events to and from their binary representation, e.g. to store them into files */
+public interface IEventSerializer {
+
+  byte[] serialize(Event event);
+
+  /** Reads an Event from the remaining bytes of the buffer, which may be a view over a memory-mapped file */
+  Event deserialize(ByteBuffer buffer);
+}
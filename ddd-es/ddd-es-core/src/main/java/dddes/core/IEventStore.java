@@ -1,5 +1,14 @@
 package dddes.core;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public interface IEventStore<ID> {
@@ -7,5 +16,119 @@ public interface IEventStore<ID> {
 	void appendEventsToStream(ID streamId, Stream<Event> events);
 	void appendEventsToStream(ID streamId, Stream<Event> events, long expectedLastPosition);
 
+	/**
+	 * Appends events to several streams atomically: either the expected position of every stream matches and all the
+	 * events are appended, the events of different streams following each other in the global log, or nothing is
+	 * appended at all
+	 * 
+	 * @param appends: the events of every stream, each stream appearing at most once
+	 * @throws java.util.ConcurrentModificationException if the position of a stream isn't the expected one
+	 * @throws UnsupportedOperationException if the store doesn't {@link #supportsAtomicAppends() support} them
+	 */
+	default void appendEventsToStreams(List<StreamAppend<ID>> appends) {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " has no atomic appends to several streams");
+	}
+
+	/** @return true if the store supports {@link #appendEventsToStreams(List)}, false by default */
+	default boolean supportsAtomicAppends() {
+		return false;
+	}
+
 	Stream<Event> getStream(ID streamId);
-}
\ No newline at end of file
+
+	/**
+	 * Reads a stream from a given position to its end
+	 * 
+	 * @param fromPosition: the 0-based position of the first event to read, i.e. the version the reader is already at
+	 */
+	default Stream<Event> getStream(ID streamId, long fromPosition) {
+		return getStream(streamId, fromPosition, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Reads a range of a stream
+	 * 
+	 * @param fromPosition: the 0-based position of the first event to read
+	 * @param maxCount: the maximum number of events to read
+	 */
+	default Stream<Event> getStream(ID streamId, long fromPosition, int maxCount) {
+		if (fromPosition < 0) throw new IllegalArgumentException("fromPosition must not be negative");
+		if (maxCount < 0) throw new IllegalArgumentException("maxCount must not be negative");
+		return getStream(streamId).skip(fromPosition).limit(maxCount);
+	}
+
+	/**
+	 * Reads several streams at once, e.g. to load many AggregateRoots, each of them to its end
+	 * 
+	 * @param fromPosition: the 0-based position to read every stream from
+	 * @return the streams found, by id in the order of the given ids, the missing ones being left out
+	 */
+	default Map<ID, Stream<Event>> getStreams(Collection<ID> streamIds, ToLongFunction<? super ID> fromPosition) {
+		Map<ID, Stream<Event>> streams = new LinkedHashMap<>();
+		for (ID streamId : streamIds) {
+			try {
+				streams.put(streamId, getStream(streamId, fromPosition.applyAsLong(streamId)));
+			}
+			catch (NoSuchElementException e) {
+				// The stream is left out
+			}
+		}
+		return streams;
+	}
+
+	/**
+	 * Finds the streams holding events indexed under a key by a secondary index of the store, without reading them
+	 * 
+	 * @param indexName: the name of an {@link EventIndex} maintained by the store
+	 * @return the ids of the streams, each one once, in no particular order
+	 * @throws NoSuchElementException if the store maintains no index of the given name
+	 */
+	default Stream<ID> findStreams(String indexName, String key) {
+		throw new NoSuchElementException("Index not found: " + indexName);
+	}
+
+	/** @return true if the store maintains a secondary index of the given name, false by default */
+	default boolean hasIndex(String indexName) {
+		return false;
+	}
+
+	/**
+	 * Reads a range of a stream backward, e.g. getStreamBackward(id, Long.MAX_VALUE, k) reads its last k events
+	 * 
+	 * @param fromPosition: the 0-based position of the first event to read, the last event of the stream if beyond it
+	 * @param maxCount: the maximum number of events to read
+	 */
+	default Stream<Event> getStreamBackward(ID streamId, long fromPosition, int maxCount) {
+		if (fromPosition < 0) throw new IllegalArgumentException("fromPosition must not be negative");
+		if (maxCount < 0) throw new IllegalArgumentException("maxCount must not be negative");
+		List<Event> events = getStream(streamId).limit(fromPosition == Long.MAX_VALUE ? fromPosition : fromPosition + 1).collect(Collectors.toCollection(ArrayList::new));
+		Collections.reverse(events);
+		return events.stream().limit(maxCount);
+	}
+
+	/**
+	 * Reads the global log, where the events of all the streams are in commit order. The read stops before the first
+	 * event not yet committed, so that a reader never skips an event by reading again from the following position.
+	 * The positions reserved by an append which then failed hold a {@link Tombstone}, which readers ignore.
+	 * 
+	 * @param fromGlobalPosition: the 0-based global position of the first event to read
+	 * @param maxCount: the maximum number of events to read
+	 * @throws UnsupportedOperationException if the store {@link #hasGlobalLog() has no global log}
+	 */
+	default Stream<RecordedEvent<ID>> readAll(long fromGlobalPosition, int maxCount) {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " has no global log");
+	}
+
+	/**
+	 * @return the number of events committed to the global log, i.e. the global position of the next one
+	 * @throws UnsupportedOperationException if the store {@link #hasGlobalLog() has no global log}
+	 */
+	default long getLastGlobalPosition() {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " has no global log");
+	}
+
+	/** @return true if the store has a global log, read by {@link #readAll(long, int)}, false by default */
+	default boolean hasGlobalLog() {
+		return false;
+	}
+}
\ No newline at end of file
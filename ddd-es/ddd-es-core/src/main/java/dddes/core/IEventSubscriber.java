@@ -0,0 +1,17 @@
+package dddes.core;
+
+import java.util.List;
+
+public interface IEventSubscriber<ID> {
+
+  /**
+   * Handles a batch of events of a subscription
+   * 
+   * @param events: the events, in order and without gaps from the position of the subscription but for the skipped
+   *          {@link Tombstone}s of the global log; the list is only valid during the call
+   */
+  void handle(List<RecordedEvent<ID>> events);
+
+  /** Called whenever the subscription has caught up with the history and starts receiving the new events as they come */
+  default void onLive() { }
+}
@@ -0,0 +1,13 @@
+package dddes.core;
+
+import java.util.Map;
+
+/** Receives the current values of metrics, e.g. to log them or to send them to a monitoring system */
+@FunctionalInterface
+public interface IMetricsExporter {
+
+  /**
+   * @param metrics: the values by metric name, e.g. "eventstore.append.latency.p99", sorted by name
+   */
+  void export(Map<String, Number> metrics);
+}
@@ -0,0 +1,23 @@
+package dddes.core;
+
+import java.util.List;
+
+/**
+ * A read model maintained from the events of the global log. Events are partitioned by stream, so that the events of
+ * a stream are always applied in order, while the events of different streams may be applied concurrently.
+ */
+public interface IProjection<ID> {
+
+  /** @return the name of the projection, which identifies its checkpoint */
+  String getName();
+
+  /**
+   * Applies a batch of events of the same partition
+   * 
+   * @param events: the events, in order for each stream; the list is only valid during the call
+   */
+  void apply(List<RecordedEvent<ID>> events);
+
+  /** Discards the whole state of the projection, before it is rebuilt from the beginning of the global log */
+  default void reset() { }
+}
@@ -1,10 +1,30 @@
 package dddes.core;
 
+import java.util.Collection;
+import java.util.function.Consumer;
+
 public interface IRepository<T extends IAggregateRoot<ID>, ID> {
 	
 	T getById(ID aggregateRootId);
 
+	/**
+	 * Loads many AggregateRoots at once, reporting the missing ones and the failed loads instead of throwing
+	 * 
+	 * @param aggregateRootIds: the ids of the AggregateRoots, duplicates being loaded once
+	 */
+	LoadResult<T, ID> getByIds(Collection<ID> aggregateRootIds);
+
 	void save(T aggregateRoot);
 
 	void save(T aggregateRoot, int expectedVersion);
-}
\ No newline at end of file
+
+	/**
+	 * Loads the AggregateRoot, applies the command and saves it with the version it has been loaded at, applying the
+	 * command again to the refreshed AggregateRoot whenever the save conflicts with concurrent changes
+	 * 
+	 * @param command: the changes of the AggregateRoot, which may be applied more than once
+	 * @return the updated AggregateRoot
+	 * @throws java.util.ConcurrentModificationException if the save still conflicts after the last retry
+	 */
+	T update(ID aggregateRootId, Consumer<? super T> command);
+}
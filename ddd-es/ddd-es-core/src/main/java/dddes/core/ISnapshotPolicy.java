@@ -0,0 +1,37 @@
+package dddes.core;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/** Decides when a snapshot of an AggregateRoot should be taken */
+@FunctionalInterface
+public interface ISnapshotPolicy {
+
+  /**
+   * @param lastSnapshotVersion: the version of the latest snapshot of the AggregateRoot, or 0 if there is none
+   * @param lastSnapshotTimestamp: the time the latest snapshot has been taken at, in milliseconds since the epoch
+   * @param aggregateRoot: the AggregateRoot, with no pending changes
+   * @return true if a new snapshot should be taken
+   */
+  boolean shouldTakeSnapshot(int lastSnapshotVersion, long lastSnapshotTimestamp, IAggregateRoot<?> aggregateRoot);
+
+  default ISnapshotPolicy or(ISnapshotPolicy other) {
+    Objects.requireNonNull(other, "other must not be null");
+    return (lastSnapshotVersion, lastSnapshotTimestamp, aggregateRoot) -> shouldTakeSnapshot(lastSnapshotVersion, lastSnapshotTimestamp, aggregateRoot)
+        || other.shouldTakeSnapshot(lastSnapshotVersion, lastSnapshotTimestamp, aggregateRoot);
+  }
+
+  /** @return a policy taking a snapshot once at least the given number of events happened since the last one */
+  static ISnapshotPolicy everyEvents(int events) {
+    if (events < 1) throw new IllegalArgumentException("events must be positive");
+    return (lastSnapshotVersion, lastSnapshotTimestamp, aggregateRoot) -> aggregateRoot.getVersion() - lastSnapshotVersion >= events;
+  }
+
+  /** @return a policy taking a snapshot of a changed AggregateRoot once the last one is older than the given interval */
+  static ISnapshotPolicy every(Duration interval) {
+    Objects.requireNonNull(interval, "interval must not be null");
+    long intervalMillis = interval.toMillis();
+    return (lastSnapshotVersion, lastSnapshotTimestamp, aggregateRoot) -> lastSnapshotVersion == 0
+        || (aggregateRoot.getVersion() > lastSnapshotVersion && System.currentTimeMillis() - lastSnapshotTimestamp >= intervalMillis);
+  }
+}
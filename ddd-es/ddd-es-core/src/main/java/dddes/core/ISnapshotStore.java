@@ -0,0 +1,10 @@
+package dddes.core;
+
+public interface ISnapshotStore<ID> {
+
+  /** Stores the snapshot, unless a snapshot of a later version of the same AggregateRoot is already stored */
+  void save(Snapshot<ID> snapshot);
+
+  /** @return the latest snapshot of the given AggregateRoot, or null if there is none */
+  Snapshot<ID> getLatest(ID aggregateRootId);
+}
@@ -0,0 +1,16 @@
+package dddes.core;
+
+import java.io.Serializable;
+
+/**
+ * Implemented by the AggregateRoots opting in to snapshots, whose state can then be captured by
+ * {@link IAggregateRoot#takeSnapshot()} and restored by {@link IAggregateRoot#restoreFromSnapshot(Snapshot)}
+ */
+public interface ISnapshotable {
+
+  /** @return an immutable copy of the state of the AggregateRoot */
+  Serializable getSnapshotState();
+
+  /** Restores the state returned by {@link #getSnapshotState()}, on a new AggregateRoot */
+  void restoreSnapshotState(Serializable state);
+}
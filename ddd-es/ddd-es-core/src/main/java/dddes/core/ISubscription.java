@@ -0,0 +1,23 @@
+package dddes.core;
+
+/** A subscription delivering the events of an event store to an {@link IEventSubscriber}, until closed */
+public interface ISubscription extends AutoCloseable {
+
+  String getName();
+
+  /** @return the position of the next event to be delivered */
+  long getPosition();
+
+  /** @return true while the subscription receives the new events as they come, false while it catches up */
+  boolean isLive();
+
+  /** @return false once the subscription has been closed, or stopped by a failure of its subscriber */
+  boolean isRunning();
+
+  /** @return the exception which stopped the subscription, if any */
+  RuntimeException getFailure();
+
+  /** Stops the subscription, waiting for the batch being delivered, if any */
+  @Override
+  void close() throws InterruptedException;
+}
@@ -0,0 +1,48 @@
+package dddes.core;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/** The AggregateRoots loaded at once by {@link IRepository#getByIds}, along with the ids not found and the failed loads */
+public final class LoadResult<T, ID> {
+
+  private final Map<ID, T> loaded;
+  private final Set<ID> missing;
+  private final Map<ID, RuntimeException> failed;
+
+  public LoadResult(Map<ID, T> loaded, Set<ID> missing, Map<ID, RuntimeException> failed) {
+    Objects.requireNonNull(loaded, "loaded must not be null");
+    Objects.requireNonNull(missing, "missing must not be null");
+    Objects.requireNonNull(failed, "failed must not be null");
+    this.loaded = Collections.unmodifiableMap(loaded);
+    this.missing = Collections.unmodifiableSet(missing);
+    this.failed = Collections.unmodifiableMap(failed);
+  }
+
+  /** @return the loaded AggregateRoots by id, in the order of the requested ids */
+  public Map<ID, T> getLoaded() {
+    return loaded;
+  }
+
+  /** @return the loaded AggregateRoot, or null if it hasn't been loaded */
+  public T get(ID aggregateRootId) {
+    return loaded.get(aggregateRootId);
+  }
+
+  /** @return the ids of the AggregateRoots not found */
+  public Set<ID> getMissing() {
+    return missing;
+  }
+
+  /** @return the error of every AggregateRoot that couldn't be loaded, e.g. because of an event failing to apply */
+  public Map<ID, RuntimeException> getFailed() {
+    return failed;
+  }
+
+  /** @return true if every requested AggregateRoot has been loaded */
+  public boolean isComplete() {
+    return missing.isEmpty() && failed.isEmpty();
+  }
+}
@@ -0,0 +1,47 @@
+package dddes.core;
+
+import java.util.Objects;
+
+/** An Event as recorded by an event store, with its positions within its stream and within the global log */
+public final class RecordedEvent<ID> {
+
+  private final ID streamId;
+  private final long streamPosition;
+  private final long globalPosition;
+  private final Event event;
+
+  public RecordedEvent(ID streamId, long streamPosition, long globalPosition, Event event) {
+    Objects.requireNonNull(streamId, "streamId must not be null");
+    Objects.requireNonNull(event, "event must not be null");
+    this.streamId = streamId;
+    this.streamPosition = streamPosition;
+    this.globalPosition = globalPosition;
+    this.event = event;
+  }
+
+  public ID getStreamId() {
+    return streamId;
+  }
+
+  /** @return the 0-based position of the event within its stream, or -1 for a {@link Tombstone} */
+  public long getStreamPosition() {
+    return streamPosition;
+  }
+
+  /**
+   * @return the 0-based position of the event within the global log, i.e. the commit order of all the streams, or -1 when
+   *         the event has been read from its stream only
+   */
+  public long getGlobalPosition() {
+    return globalPosition;
+  }
+
+  public Event getEvent() {
+    return event;
+  }
+
+  @Override
+  public String toString() {
+    return "RecordedEvent [streamId=" + streamId + ", streamPosition=" + streamPosition + ", globalPosition=" + globalPosition + ", event=" + event + "]";
+  }
+}
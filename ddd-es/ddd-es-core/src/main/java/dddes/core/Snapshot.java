@@ -0,0 +1,53 @@
+package dddes.core;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/** The state of an AggregateRoot captured at a given version, used to avoid replaying its whole history */
+public final class Snapshot<ID> implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final ID aggregateRootId;
+  private final int version;
+  private final Serializable state;
+  private final long timestamp;
+
+  public Snapshot(ID aggregateRootId, int version, Serializable state) {
+    this(aggregateRootId, version, state, System.currentTimeMillis());
+  }
+
+  public Snapshot(ID aggregateRootId, int version, Serializable state, long timestamp) {
+    Objects.requireNonNull(aggregateRootId, "aggregateRootId must not be null");
+    Objects.requireNonNull(state, "state must not be null");
+    if (version < 1) throw new IllegalArgumentException("version must be positive");
+    this.aggregateRootId = aggregateRootId;
+    this.version = version;
+    this.state = state;
+    this.timestamp = timestamp;
+  }
+
+  public ID getAggregateRootId() {
+    return aggregateRootId;
+  }
+
+  /** @return the version of the AggregateRoot, i.e. the number of events the snapshot accounts for */
+  public int getVersion() {
+    return version;
+  }
+
+  /** @return the AggregateRoot specific state; it must not be modified */
+  public Serializable getState() {
+    return state;
+  }
+
+  /** @return the time the snapshot has been taken at, in milliseconds since the epoch */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  @Override
+  public String toString() {
+    return this.getClass().getSimpleName() + " [id=" + aggregateRootId + ", version=" + version + "]";
+  }
+}
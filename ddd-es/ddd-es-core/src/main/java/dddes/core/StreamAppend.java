@@ -0,0 +1,39 @@
+package dddes.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/** The events to append to a stream as part of an atomic append to several streams */
+public final class StreamAppend<ID> {
+
+  private final ID streamId;
+  private final List<Event> events;
+  private final long expectedLastPosition;
+
+  public StreamAppend(ID streamId, List<Event> events) {
+    this(streamId, events, -1);
+  }
+
+  /** @param expectedLastPosition: the expected number of events of the stream, or -1 to append whatever it is */
+  public StreamAppend(ID streamId, List<Event> events, long expectedLastPosition) {
+    Objects.requireNonNull(streamId, "streamId must not be null");
+    Objects.requireNonNull(events, "events must not be null");
+    this.streamId = streamId;
+    this.events = Collections.unmodifiableList(new ArrayList<>(events));
+    this.expectedLastPosition = expectedLastPosition;
+  }
+
+  public ID getStreamId() {
+    return streamId;
+  }
+
+  public List<Event> getEvents() {
+    return events;
+  }
+
+  public long getExpectedLastPosition() {
+    return expectedLastPosition;
+  }
+}
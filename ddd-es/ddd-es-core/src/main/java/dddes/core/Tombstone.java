@@ -0,0 +1,24 @@
+package dddes.core;
+
+/**
+ * The event recorded by an event store at the global positions reserved by an append which then failed, so that the
+ * global log never stops at a position nobody will write: readers of the global log receive it and ignore it.
+ */
+public final class Tombstone implements Event {
+
+  private static final long serialVersionUID = 1L;
+
+  public static final Tombstone INSTANCE = new Tombstone();
+
+  private Tombstone() {
+  }
+
+  private Object readResolve() {
+    return INSTANCE;
+  }
+
+  @Override
+  public String toString() {
+    return "Tombstone";
+  }
+}
@@ -1,12 +1,14 @@
 package dddes.example.domain.backlogitem;
 
+import java.io.Serializable;
 import java.util.Objects;
 import dddes.core.AggregateRoot;
+import dddes.core.ISnapshotable;
 import dddes.example.domain.backlogitem.events.*;
 import dddes.example.domain.product.Product;
 import dddes.example.infrastructure.Strings;
 
-public final class BacklogItem extends AggregateRoot<String> {
+public final class BacklogItem extends AggregateRoot<String> implements ISnapshotable {
 
 	private String title;
 	private StoryPoints storyPoints;
@@ -63,4 +65,32 @@ public final class BacklogItem extends AggregateRoot<String> {
 	protected void on(StoryPointsAssignedToBacklogItem e) {
 		storyPoints = e.getStoryPoints();
 	}
+
+	@Override
+	public Serializable getSnapshotState() {
+		return new State(title, storyPoints, productId);
+	}
+
+	@Override
+	public void restoreSnapshotState(Serializable snapshotState) {
+		State state = (State) snapshotState;
+		title = state.title;
+		storyPoints = state.storyPoints;
+		productId = state.productId;
+	}
+
+	private static final class State implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String title;
+		private final StoryPoints storyPoints;
+		private final String productId;
+
+		State(String title, StoryPoints storyPoints, String productId) {
+			this.title = title;
+			this.storyPoints = storyPoints;
+			this.productId = productId;
+		}
+	}
 }
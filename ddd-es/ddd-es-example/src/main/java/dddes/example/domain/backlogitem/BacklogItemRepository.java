@@ -1,10 +1,39 @@
 package dddes.example.domain.backlogitem;
 
+import java.util.stream.Stream;
+
+import dddes.core.EventIndex;
 import dddes.core.IEventStore;
+import dddes.core.ISnapshotPolicy;
+import dddes.core.ISnapshotStore;
+import dddes.example.domain.backlogitem.events.BacklogItemCreated;
+import dddes.example.infrastructure.AggregateCache;
 import dddes.example.infrastructure.Repository;
 
 public class BacklogItemRepository extends Repository<BacklogItem, String> {
+
+	/** The BacklogItems of every product, an index the event store must maintain to find them */
+	public static final EventIndex<BacklogItemCreated> BY_PRODUCT = EventIndex.of("backlogitems-by-product", BacklogItemCreated.class, BacklogItemCreated::getProductId);
+
+	private final IEventStore<String> eventStore;
+
 	public BacklogItemRepository(IEventStore<String> eventStore) {
 		super(() -> new BacklogItem(), eventStore);
+		this.eventStore = eventStore;
+	}
+
+	public BacklogItemRepository(IEventStore<String> eventStore, ISnapshotStore<String> snapshotStore, ISnapshotPolicy snapshotPolicy) {
+		super(() -> new BacklogItem(), eventStore, snapshotStore, snapshotPolicy);
+		this.eventStore = eventStore;
+	}
+
+	public BacklogItemRepository(IEventStore<String> eventStore, AggregateCache<String> cache) {
+		super(() -> new BacklogItem(), eventStore, cache);
+		this.eventStore = eventStore;
+	}
+
+	/** @return the ids of the BacklogItems of the product, through the {@link #BY_PRODUCT} index */
+	public Stream<String> findIdsByProduct(String productId) {
+		return eventStore.findStreams(BY_PRODUCT.getName(), productId);
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,22 +1,34 @@
 package dddes.example.domain.product;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Stream;
 
 import dddes.core.AggregateRoot;
+import dddes.core.ISnapshotable;
 import dddes.example.domain.backlogitem.BacklogItem;
 import dddes.example.domain.product.events.ProductBacklogItemPlanned;
 import dddes.example.domain.product.events.ProductBacklogItemPositionChanged;
 import dddes.example.domain.product.events.ProductCreated;
 import dddes.example.domain.product.events.ProductRenamed;
+import dddes.example.infrastructure.OrderStatisticTree;
 import dddes.example.infrastructure.Strings;
 
-public final class Product extends AggregateRoot<String> {
+public final class Product extends AggregateRoot<String> implements ISnapshotable {
+
+  /** The distance between the positions of consecutive backlog items, which leaves room to move items between them */
+  public static final int POSITION_GAP = 1024;
+
+  private static final Comparator<ProductBacklogItem> productBacklogItemPositionComparator = 
+      Comparator.comparingInt(ProductBacklogItem::getPosition).thenComparing(ProductBacklogItem::getId);
 
   private String name;
+  private final OrderStatisticTree<ProductBacklogItem> plannedBacklogItems = new OrderStatisticTree<>(productBacklogItemPositionComparator);
 
   Product() {}
 
@@ -41,7 +53,12 @@ public final class Product extends AggregateRoot<String> {
     if (entityExists(backlogItem.getId())) 
       throw new IllegalArgumentException("BacklogItem \"" + backlogItem.getTitle() + "\" is already planned");
     
-    applyChange(new ProductBacklogItemPlanned(backlogItem.getId(), (int) getPlannedBacklogItems().count()));
+    long position = plannedBacklogItems.isEmpty() ? 0 : (long) lastPosition() + POSITION_GAP;
+    if (position > Integer.MAX_VALUE) {
+      renumber(new ArrayList<>(plannedBacklogItems));
+      position = lastPosition() + positionGap(plannedBacklogItems.size() + 1);
+    }
+    applyChange(new ProductBacklogItemPlanned(backlogItem.getId(), (int) position));
   }
 
   public void reorderBacklogItems(String... backlogItemIds) {
@@ -51,20 +68,52 @@ public final class Product extends AggregateRoot<String> {
 
   public void reorderBacklogItems(List<String> backlogItemIds) {
     Objects.requireNonNull(backlogItemIds, "backlogItemIds must be not null");
-    getPlannedBacklogItems().forEach(backlogItem -> {
-      int newPosition = backlogItemIds.indexOf(backlogItem.getId());
-      if (newPosition == -1) throw new IllegalArgumentException("Backlog item not found: " + backlogItem.getId());
-     
+    HashMap<String, Integer> newPositions = new HashMap<>(backlogItemIds.size() * 2);
+    for (int i = 0; i < backlogItemIds.size(); i++) 
+      newPositions.putIfAbsent(backlogItemIds.get(i), i);
+    
+    // Validate the whole ordering before applying any change, then apply them on a copy of the current ordering
+    List<ProductBacklogItem> backlogItems = new ArrayList<>(plannedBacklogItems);
+    for (ProductBacklogItem backlogItem : backlogItems) {
+      if (!newPositions.containsKey(backlogItem.getId())) throw new IllegalArgumentException("Backlog item not found: " + backlogItem.getId());
+    }
+    int gap = positionGap(backlogItemIds.size());
+    for (ProductBacklogItem backlogItem : backlogItems) {
+      int newPosition = newPositions.get(backlogItem.getId()) * gap;
       if (newPosition != backlogItem.getPosition())
         applyChange(new ProductBacklogItemPositionChanged(backlogItem.getId(), newPosition));
-    });
+    }
+  }
+
+  /**
+   * Moves a planned backlog item to the given rank, in O(log n): only the position of the item changes, to one between
+   * the positions of its new neighbours, unless they leave no room between them and the backlog is renumbered.
+   */
+  public void moveBacklogItem(String backlogItemId, int newRank) {
+    Strings.requireNonNullOrWhitespace(backlogItemId, "backlogItemId");
+    if (!entityExists(backlogItemId)) throw new IllegalArgumentException("Backlog item not found: " + backlogItemId);
+    if (newRank < 0 || newRank >= plannedBacklogItems.size()) throw new IllegalArgumentException("newRank out of range: " + newRank);
+    ProductBacklogItem backlogItem = findEntityById(backlogItemId);
+    int rank = plannedBacklogItems.indexOf(backlogItem);
+    if (rank == newRank) return;
+
+    // The positions of the neighbours at the new rank once the item is taken out, the ends being a gap away from them
+    int last = plannedBacklogItems.size() - 1;
+    long before = newRank > 0 ? plannedBacklogItems.get(newRank <= rank ? newRank - 1 : newRank).getPosition() : Long.MIN_VALUE;
+    long after = newRank < last ? plannedBacklogItems.get(newRank < rank ? newRank : newRank + 1).getPosition() : Long.MAX_VALUE;
+    long newPosition = newRank == 0 ? after - POSITION_GAP : newRank == last ? before + POSITION_GAP : before + (after - before) / 2;
+    if (newPosition > before && newPosition < after && (int) newPosition == newPosition) {
+      applyChange(new ProductBacklogItemPositionChanged(backlogItemId, (int) newPosition));
+      return;
+    }
+    List<ProductBacklogItem> backlogItems = new ArrayList<>(plannedBacklogItems);
+    backlogItems.remove(rank);
+    backlogItems.add(newRank, backlogItem);
+    renumber(backlogItems);
   }
 
   public Stream<ProductBacklogItem> getPlannedBacklogItems() {
-    return getEntities()
-        .filter(x -> x instanceof ProductBacklogItem)
-        .map(x -> (ProductBacklogItem)x)
-        .sorted(productBacklogItemPositionComparator);
+    return plannedBacklogItems.stream();
   }
 
   // Protected methods called via reflection by infrastructure
@@ -79,18 +128,71 @@ public final class Product extends AggregateRoot<String> {
   }
 
   protected void on(ProductBacklogItemPlanned e) {
-    addEntity(new ProductBacklogItem(e.getEntityId(), e.getPosition()), true);
+    addPlannedBacklogItem(new ProductBacklogItem(e.getEntityId(), e.getPosition()));
   }
 
   protected void on(ProductBacklogItemPositionChanged e) {
     ProductBacklogItem item = findEntityById(e.getEntityId());
+    plannedBacklogItems.remove(item);
     item.setPosition(e.getPosition());
+    plannedBacklogItems.add(item);
+  }
+
+  @Override
+  public Serializable getSnapshotState() {
+    String[] backlogItemIds = new String[plannedBacklogItems.size()];
+    int[] backlogItemPositions = new int[backlogItemIds.length];
+    int i = 0;
+    for (ProductBacklogItem item : plannedBacklogItems) {
+      backlogItemIds[i] = item.getId();
+      backlogItemPositions[i++] = item.getPosition();
+    }
+    return new State(name, backlogItemIds, backlogItemPositions);
+  }
+
+  @Override
+  public void restoreSnapshotState(Serializable snapshotState) {
+    State state = (State) snapshotState;
+    name = state.name;
+    for (int i = 0; i < state.backlogItemIds.length; i++)
+      addPlannedBacklogItem(new ProductBacklogItem(state.backlogItemIds[i], state.backlogItemPositions[i]));
   }
 
-  private final Comparator<ProductBacklogItem> productBacklogItemPositionComparator = new Comparator<ProductBacklogItem>() {
-    @Override
-    public int compare(ProductBacklogItem a, ProductBacklogItem b) {
-      return Integer.compare(a.getPosition(), b.getPosition());
+  /** Gives the backlog items, in the given order, positions spaced by the gap again */
+  private void renumber(List<ProductBacklogItem> backlogItems) {
+    int gap = positionGap(backlogItems.size());
+    for (int i = 0; i < backlogItems.size(); i++) {
+      if (backlogItems.get(i).getPosition() != i * gap)
+        applyChange(new ProductBacklogItemPositionChanged(backlogItems.get(i).getId(), i * gap));
     }
-  };
+  }
+
+  /** @return the gap between the positions of a backlog of the given size, narrower if the positions wouldn't fit */
+  private static int positionGap(int size) {
+    return Math.max(1, Math.min(POSITION_GAP, Integer.MAX_VALUE / Math.max(1, size)));
+  }
+
+  private int lastPosition() {
+    return plannedBacklogItems.get(plannedBacklogItems.size() - 1).getPosition();
+  }
+
+  private void addPlannedBacklogItem(ProductBacklogItem item) {
+    addEntity(item, true);
+    plannedBacklogItems.add(item);
+  }
+
+  private static final class State implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final String[] backlogItemIds;
+    private final int[] backlogItemPositions;
+
+    State(String name, String[] backlogItemIds, int[] backlogItemPositions) {
+      this.name = name;
+      this.backlogItemIds = backlogItemIds;
+      this.backlogItemPositions = backlogItemPositions;
+    }
+  }
 }
@@ -1,10 +1,21 @@
 package dddes.example.domain.product;
 
 import dddes.core.IEventStore;
+import dddes.core.ISnapshotPolicy;
+import dddes.core.ISnapshotStore;
+import dddes.example.infrastructure.AggregateCache;
 import dddes.example.infrastructure.Repository;
 
 public class ProductRepository extends Repository<Product, String> {
 	public ProductRepository(IEventStore<String> eventStore) {
 		super(() -> new Product(), eventStore);
 	}
+
+	public ProductRepository(IEventStore<String> eventStore, ISnapshotStore<String> snapshotStore, ISnapshotPolicy snapshotPolicy) {
+		super(() -> new Product(), eventStore, snapshotStore, snapshotPolicy);
+	}
+
+	public ProductRepository(IEventStore<String> eventStore, AggregateCache<String> cache) {
+		super(() -> new Product(), eventStore, cache);
+	}
 }
@@ -0,0 +1,134 @@
+package dddes.example.infrastructure;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import dddes.core.Snapshot;
+
+/**
+ * A bounded, thread-safe cache of AggregateRoots for a {@link Repository}. AggregateRoots are cached as immutable
+ * snapshots keyed by id, so that every load restores its own instance and no instance is ever shared between callers.
+ * The least recently used entry is evicted once the maximum size is reached, and entries expire after an optional time
+ * to live.
+ */
+public class AggregateCache<ID> {
+
+  private final int maximumSize;
+  private final long timeToLiveNanos;
+  private final LinkedHashMap<ID, Entry<ID>> entries;
+  private final LongAdder hits;
+  private final LongAdder misses;
+  private final LongAdder evictions;
+
+  public AggregateCache(int maximumSize) {
+    this(maximumSize, null);
+  }
+
+  /**
+   * @param maximumSize: the maximum number of cached AggregateRoots
+   * @param timeToLive: how long an AggregateRoot stays cached after having been cached, or null for ever
+   */
+  public AggregateCache(int maximumSize, Duration timeToLive) {
+    if (maximumSize < 1) throw new IllegalArgumentException("maximumSize must be positive");
+    if (timeToLive != null && (timeToLive.isNegative() || timeToLive.isZero())) throw new IllegalArgumentException("timeToLive must be positive");
+    this.maximumSize = maximumSize;
+    this.timeToLiveNanos = timeToLive != null ? timeToLive.toNanos() : Long.MAX_VALUE;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+    this.evictions = new LongAdder();
+  }
+
+  /** @return the cached snapshot of the given AggregateRoot, or null */
+  public Snapshot<ID> get(ID aggregateRootId) {
+    Entry<ID> entry;
+    synchronized (entries) {
+      entry = entries.get(aggregateRootId);
+      if (entry != null && entry.isExpired(System.nanoTime())) {
+        entries.remove(aggregateRootId);
+        evictions.increment();
+        entry = null;
+      }
+    }
+    (entry != null ? hits : misses).increment();
+    return entry != null ? entry.snapshot : null;
+  }
+
+  /** Caches the snapshot, unless a later version of the same AggregateRoot is already cached */
+  public void put(Snapshot<ID> snapshot) {
+    Objects.requireNonNull(snapshot, "snapshot must not be null");
+    long now = System.nanoTime();
+    synchronized (entries) {
+      Entry<ID> current = entries.get(snapshot.getAggregateRootId());
+      if (current != null && !current.isExpired(now) && current.snapshot.getVersion() > snapshot.getVersion()) return;
+      entries.put(snapshot.getAggregateRootId(), new Entry<>(snapshot, timeToLiveNanos == Long.MAX_VALUE ? Long.MAX_VALUE : now + timeToLiveNanos));
+      evictExpiredOrEldest(now);
+    }
+  }
+
+  public void invalidate(ID aggregateRootId) {
+    synchronized (entries) {
+      entries.remove(aggregateRootId);
+    }
+  }
+
+  public void invalidateAll() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /** @return the number of entries evicted because of the maximum size or of their expiration */
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  public double getHitRate() {
+    long hits = getHits(), requests = hits + getMisses();
+    return requests > 0 ? (double) hits / requests : 0;
+  }
+
+  private void evictExpiredOrEldest(long now) {
+    Iterator<Map.Entry<ID, Entry<ID>>> iterator = entries.entrySet().iterator();
+    // Entries are in access order, expired ones are removed as long as they come first
+    while (iterator.hasNext()) {
+      Entry<ID> eldest = iterator.next().getValue();
+      if (entries.size() <= maximumSize && !eldest.isExpired(now)) break;
+      iterator.remove();
+      evictions.increment();
+    }
+  }
+
+  private static final class Entry<ID> {
+
+    final Snapshot<ID> snapshot;
+    final long expiresAt;
+
+    Entry(Snapshot<ID> snapshot, long expiresAt) {
+      this.snapshot = snapshot;
+      this.expiresAt = expiresAt;
+    }
+
+    boolean isExpired(long now) {
+      return expiresAt != Long.MAX_VALUE && now - expiresAt >= 0;
+    }
+  }
+}
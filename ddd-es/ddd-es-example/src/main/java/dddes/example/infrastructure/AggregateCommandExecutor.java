@@ -0,0 +1,218 @@
+package dddes.example.infrastructure;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import dddes.core.IAggregateRoot;
+import dddes.core.IRepository;
+
+/**
+ * Executes commands against AggregateRoots through a mailbox per AggregateRoot id. The commands of a mailbox run one
+ * at a time on an AggregateRoot instance kept in memory, which is loaded by the first command and saved with its
+ * expected version after every command that changed it, so the commands of a hot AggregateRoot don't race each other
+ * into a ConcurrentModificationException. Mailboxes run in parallel on the given executor, e.g. a ForkJoinPool or, from
+ * Java 21, an executor of virtual threads.
+ *
+ * A command that throws, or whose changes can't be saved, fails alone and discards the in-memory instance, which is
+ * loaded again by the next command. Mailboxes without commands for longer than the idle timeout are evicted along with
+ * their instance.
+ */
+public class AggregateCommandExecutor<T extends IAggregateRoot<ID>, ID> implements AutoCloseable {
+
+  public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(1);
+
+  /** The commands a mailbox runs before yielding its thread to the other mailboxes */
+  private static final int COMMANDS_PER_RUN = 64;
+
+  private final IRepository<T, ID> repository;
+  private final Executor executor;
+  private final long idleTimeoutNanos;
+  private final ConcurrentHashMap<ID, Mailbox> mailboxes;
+  private final ScheduledExecutorService evictor;
+  private final LongAdder evictions;
+  private volatile boolean closed;
+
+  public AggregateCommandExecutor(IRepository<T, ID> repository) {
+    this(repository, ForkJoinPool.commonPool(), DEFAULT_IDLE_TIMEOUT);
+  }
+
+  /**
+   * @param executor: the executor running the mailboxes
+   * @param idleTimeout: how long a mailbox without commands is kept before being evicted
+   */
+  public AggregateCommandExecutor(IRepository<T, ID> repository, Executor executor, Duration idleTimeout) {
+    Objects.requireNonNull(repository, "repository must be not null");
+    Objects.requireNonNull(executor, "executor must be not null");
+    if (idleTimeout == null || idleTimeout.isNegative() || idleTimeout.isZero()) throw new IllegalArgumentException("idleTimeout must be positive");
+    this.repository = repository;
+    this.executor = executor;
+    this.idleTimeoutNanos = idleTimeout.toNanos();
+    this.mailboxes = new ConcurrentHashMap<>();
+    this.evictions = new LongAdder();
+    this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, AggregateCommandExecutor.class.getSimpleName() + "-evictor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long evictionPeriod = Math.max(idleTimeoutNanos / 2, 1);
+    this.evictor.scheduleWithFixedDelay(this::evictIdleMailboxes, evictionPeriod, evictionPeriod, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Queues a command in the mailbox of the AggregateRoot
+   *
+   * @return the result of the command, completed once the changes of the AggregateRoot have been saved
+   */
+  public <R> CompletableFuture<R> submit(ID aggregateRootId, Function<? super T, R> command) {
+    Objects.requireNonNull(aggregateRootId, "aggregateRootId must be not null");
+    Objects.requireNonNull(command, "command must be not null");
+    if (closed) throw new IllegalStateException("the command executor is closed");
+    Command<R> queued = new Command<>(command);
+    // An evicted mailbox refuses commands, which then go to the mailbox replacing it
+    while (!mailboxes.computeIfAbsent(aggregateRootId, Mailbox::new).offer(queued));
+    return queued.result;
+  }
+
+  /** @see #submit(Object, Function) */
+  public CompletableFuture<Void> execute(ID aggregateRootId, Consumer<? super T> command) {
+    Objects.requireNonNull(command, "command must be not null");
+    return submit(aggregateRootId, aggregateRoot -> {
+      command.accept(aggregateRoot);
+      return null;
+    });
+  }
+
+  /** @return the number of mailboxes, i.e. of AggregateRoots with recent commands */
+  public int getMailboxCount() {
+    return mailboxes.size();
+  }
+
+  /** @return the number of mailboxes evicted because idle */
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /** Refuses new commands, the queued ones still being executed */
+  @Override
+  public void close() {
+    closed = true;
+    evictor.shutdownNow();
+  }
+
+  private void evictIdleMailboxes() {
+    long now = System.nanoTime();
+    mailboxes.values().removeIf(mailbox -> mailbox.evictIfIdle(now));
+  }
+
+  private final class Command<R> {
+
+    final Function<? super T, R> function;
+    final CompletableFuture<R> result;
+
+    Command(Function<? super T, R> function) {
+      this.function = function;
+      this.result = new CompletableFuture<>();
+    }
+  }
+
+  /** The commands of an AggregateRoot, run by at most one thread at a time */
+  private final class Mailbox implements Runnable {
+
+    private final ID aggregateRootId;
+    private final ArrayDeque<Command<?>> commands;
+    private boolean running;
+    private boolean evicted;
+    private long lastRunAt;
+    // Only accessed by the thread running the mailbox
+    private T aggregateRoot;
+    private int savedVersion;
+
+    Mailbox(ID aggregateRootId) {
+      this.aggregateRootId = aggregateRootId;
+      this.commands = new ArrayDeque<>();
+      this.lastRunAt = System.nanoTime();
+    }
+
+    /** @return false if the mailbox has been evicted */
+    boolean offer(Command<?> command) {
+      synchronized (this) {
+        if (evicted) return false;
+        commands.add(command);
+        if (running) return true;
+        running = true;
+      }
+      schedule();
+      return true;
+    }
+
+    synchronized boolean evictIfIdle(long now) {
+      if (running || !commands.isEmpty() || now - lastRunAt < idleTimeoutNanos) return false;
+      evictions.increment();
+      return evicted = true;
+    }
+
+    @Override
+    public void run() {
+      for (int i = 0; i < COMMANDS_PER_RUN; i++) {
+        Command<?> command;
+        synchronized (this) {
+          command = commands.poll();
+          if (command == null) {
+            running = false;
+            lastRunAt = System.nanoTime();
+            return;
+          }
+        }
+        execute(command);
+      }
+      schedule();
+    }
+
+    private void schedule() {
+      try {
+        executor.execute(this);
+      }
+      catch (RejectedExecutionException e) {
+        Command<?> command;
+        synchronized (this) {
+          running = false;
+          while ((command = commands.poll()) != null) command.result.completeExceptionally(e);
+        }
+      }
+    }
+
+    private <R> void execute(Command<R> command) {
+      R result;
+      try {
+        if (aggregateRoot == null) {
+          aggregateRoot = repository.getById(aggregateRootId);
+          savedVersion = aggregateRoot.getVersion();
+        }
+        result = command.function.apply(aggregateRoot);
+        if (aggregateRoot.getVersion() != savedVersion) {
+          repository.save(aggregateRoot, savedVersion);
+          savedVersion = aggregateRoot.getVersion();
+        }
+      }
+      catch (Throwable e) {
+        // The instance may hold changes that haven't been saved
+        aggregateRoot = null;
+        command.result.completeExceptionally(e);
+        return;
+      }
+      command.result.complete(result);
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package dddes.example.infrastructure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import dddes.core.ICheckpointStore;
+import dddes.core.IEventSubscriber;
+import dddes.core.ISubscription;
+import dddes.core.RecordedEvent;
+import dddes.core.Tombstone;
+
+/**
+ * A subscription of a {@link SubscribableEventStore}, delivering its events on a thread of its own. It alternates
+ * between catching up, i.e. reading the history from the store, and being live, i.e. receiving the new events pushed by
+ * the dispatcher of the store into a bounded buffer. Positions are the global positions for a subscription to the
+ * global log, and the stream positions for a subscription to a stream.
+ *
+ * To go live the subscription first registers for the pushed events and then reads the history once more, so that
+ * every event is either read or pushed: pushed events already read are skipped, and a gap in the pushed events, e.g.
+ * after the buffer got full, makes the subscription catch up again. The subscription also catches up again when the
+ * dispatcher fails to read the global log, and fails itself if the history can't be read either.
+ *
+ * The {@link Tombstone}s of the global log are skipped: the positions of the delivered events follow each other but
+ * for the positions of the tombstones.
+ */
+public final class CatchUpSubscription<ID> implements ISubscription {
+
+  private static final long POLLING_INTERVAL_MILLIS = 100;
+
+  private final SubscribableEventStore<ID> eventStore;
+  private final String name;
+  private final ID streamId;
+  private final ICheckpointStore checkpointStore;
+  private final IEventSubscriber<ID> subscriber;
+  private final int batchSize;
+  private final ArrayBlockingQueue<RecordedEvent<ID>> liveEvents;
+  private final Thread thread;
+  private volatile long position;
+  private volatile boolean live;
+  private volatile boolean overflowed;
+  private volatile boolean closed;
+  private volatile long deliveredEvents;
+  private volatile long catchUps;
+  private volatile RuntimeException failure;
+
+  CatchUpSubscription(SubscribableEventStore<ID> eventStore, String name, ID streamId, long fromPosition, ICheckpointStore checkpointStore,
+      IEventSubscriber<ID> subscriber, int batchSize, int liveBufferSize) {
+    this.eventStore = eventStore;
+    this.name = name;
+    this.streamId = streamId;
+    this.position = fromPosition;
+    this.checkpointStore = checkpointStore;
+    this.subscriber = subscriber;
+    this.batchSize = batchSize;
+    this.liveEvents = new ArrayBlockingQueue<>(liveBufferSize);
+    this.thread = new Thread(this::run, CatchUpSubscription.class.getSimpleName() + "-" + name);
+    this.thread.setDaemon(true);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /** @return the subscribed stream, or null for the global log */
+  public ID getStreamId() {
+    return streamId;
+  }
+
+  public long getPosition() {
+    return position;
+  }
+
+  public boolean isLive() {
+    return live;
+  }
+
+  public boolean isRunning() {
+    return thread.isAlive();
+  }
+
+  public RuntimeException getFailure() {
+    return failure;
+  }
+
+  public long getDeliveredEvents() {
+    return deliveredEvents;
+  }
+
+  /** @return the number of times the subscription fell behind while live and had to catch up again */
+  public long getCatchUps() {
+    return catchUps;
+  }
+
+  /** @return the number of events of the global log not delivered yet, for a subscription to the global log */
+  public long getLag() {
+    return streamId == null ? Math.max(0, eventStore.getLastGlobalPosition() - position) : 0;
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    closed = true;
+    eventStore.remove(this);
+    if (Thread.currentThread() != thread) thread.join();
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  /** Called by the dispatcher with every new batch of the global log */
+  void push(List<RecordedEvent<ID>> events) {
+    if (overflowed) return;
+    for (RecordedEvent<ID> event : events) {
+      // The tombstones of a stream have no position in the stream
+      if (streamId != null && (!streamId.equals(event.getStreamId()) || event.getEvent() == Tombstone.INSTANCE)) continue;
+      if (!liveEvents.offer(event)) {
+        fallBehind();
+        return;
+      }
+    }
+  }
+
+  /** Makes the subscription catch up from the store, e.g. once the dispatcher has failed to read the global log */
+  void fallBehind() {
+    overflowed = true;
+    live = false;
+    eventStore.stopLive(this);
+  }
+
+  private void run() {
+    try {
+      while (!closed) {
+        catchUp();
+        eventStore.goLive(this);
+        catchUp();
+        live = true;
+        subscriber.onLive();
+        followLive();
+        live = false;
+        eventStore.stopLive(this);
+        liveEvents.clear();
+        overflowed = false;
+        if (!closed) catchUps++;
+      }
+    }
+    catch (RuntimeException e) {
+      failure = e;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      live = false;
+      eventStore.remove(this);
+    }
+  }
+
+  private void catchUp() {
+    List<RecordedEvent<ID>> events;
+    while (!closed && !(events = eventStore.readHistory(streamId, position)).isEmpty()) deliver(events);
+  }
+
+  /** Delivers the pushed events until the subscription is closed or falls behind */
+  private void followLive() throws InterruptedException {
+    List<RecordedEvent<ID>> events = new ArrayList<>(batchSize);
+    while (!closed && !overflowed) {
+      RecordedEvent<ID> first = liveEvents.poll(POLLING_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+      if (first == null) continue;
+      events.add(first);
+      liveEvents.drainTo(events, batchSize - 1);
+
+      long next = position;
+      int skipped = 0;
+      while (skipped < events.size() && positionOf(events.get(skipped)) < next) skipped++;
+      List<RecordedEvent<ID>> delivered = events.subList(skipped, events.size());
+      for (int i = 0; i < delivered.size(); i++)
+        if (positionOf(delivered.get(i)) != next + i) return;
+      if (!delivered.isEmpty()) deliver(delivered);
+      events.clear();
+    }
+  }
+
+  private void deliver(List<RecordedEvent<ID>> events) {
+    List<RecordedEvent<ID>> delivered = withoutTombstones(events);
+    if (!delivered.isEmpty()) subscriber.handle(Collections.unmodifiableList(delivered));
+    position = positionOf(events.get(events.size() - 1)) + 1;
+    deliveredEvents += delivered.size();
+    if (checkpointStore != null) checkpointStore.save(name, position);
+  }
+
+  /** @return the events without the tombstones, which are rare, copying them only if there are some */
+  private static <ID> List<RecordedEvent<ID>> withoutTombstones(List<RecordedEvent<ID>> events) {
+    for (int i = 0; i < events.size(); i++) {
+      if (events.get(i).getEvent() != Tombstone.INSTANCE) continue;
+      List<RecordedEvent<ID>> delivered = new ArrayList<>(events.subList(0, i));
+      for (int j = i + 1; j < events.size(); j++)
+        if (events.get(j).getEvent() != Tombstone.INSTANCE) delivered.add(events.get(j));
+      return delivered;
+    }
+    return events;
+  }
+
+  private long positionOf(RecordedEvent<ID> event) {
+    return streamId == null ? event.getGlobalPosition() : event.getStreamPosition();
+  }
+}
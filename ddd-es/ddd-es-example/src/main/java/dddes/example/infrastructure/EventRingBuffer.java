@@ -0,0 +1,170 @@
+package dddes.example.infrastructure;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import dddes.core.Event;
+import dddes.example.infrastructure.RingBufferEventPublisher.Backpressure;
+
+/**
+ * A bounded, preallocated ring of events with many producers and a single consumer draining it in batches. Positions
+ * only grow, the slot of a position being {@code position & mask}.
+ */
+final class EventRingBuffer {
+
+  private final Event[] slots;
+  private final int mask;
+  private final ReentrantLock lock;
+  private final Condition notEmpty;
+  private final Condition notFull;
+  private volatile long head;
+  private volatile long tail;
+  private volatile long dropped;
+  /** The slots reserved for events not put yet, which the consumer waits for even once the ring is closed */
+  private int reserved;
+  private boolean closed;
+
+  EventRingBuffer(int capacity) {
+    if (capacity < 1 || capacity > 1 << 30) throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) size <<= 1;
+    this.slots = new Event[size];
+    this.mask = size - 1;
+    this.lock = new ReentrantLock();
+    this.notEmpty = lock.newCondition();
+    this.notFull = lock.newCondition();
+  }
+
+  int capacity() {
+    return slots.length;
+  }
+
+  /** @return the number of events waiting to be drained */
+  int size() {
+    long head = this.head;
+    return (int) Math.min(tail - head, slots.length);
+  }
+
+  /** @return the number of events accepted so far, including the dropped ones */
+  long accepted() {
+    return tail;
+  }
+
+  long dropped() {
+    return dropped;
+  }
+
+  /**
+   * Enqueues the event, applying the given backpressure strategy when the ring is full
+   *
+   * @throws IllegalStateException if the ring is full and the strategy is FAIL, or if the ring is closed
+   */
+  void put(Event event, Backpressure backpressure) throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      if (closed) throw new IllegalStateException("ring buffer is closed");
+      while (tail - head + reserved == slots.length) {
+        switch (backpressure) {
+          case BLOCK:
+            notFull.await();
+            if (closed) throw new IllegalStateException("ring buffer is closed");
+            break;
+          case DROP_OLDEST:
+            slots[(int) head & mask] = null;
+            head++;
+            dropped++;
+            break;
+          default:
+            throw new IllegalStateException("ring buffer is full: " + slots.length + " events");
+        }
+      }
+      slots[(int) tail & mask] = event;
+      tail++;
+      notEmpty.signal();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Reserves a slot for an event put later with {@link #putReserved(Event)}, unless the ring is full
+   *
+   * @return false if the ring is full
+   * @throws IllegalStateException if the ring is closed
+   */
+  boolean tryReserve() {
+    lock.lock();
+    try {
+      if (closed) throw new IllegalStateException("ring buffer is closed");
+      if (tail - head + reserved == slots.length) return false;
+      reserved++;
+      return true;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /** Enqueues the event into the slot reserved for it, even if the ring has been closed since */
+  void putReserved(Event event) {
+    lock.lock();
+    try {
+      reserved--;
+      slots[(int) tail & mask] = event;
+      tail++;
+      notEmpty.signal();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  void cancelReservation() {
+    lock.lock();
+    try {
+      reserved--;
+      notEmpty.signal();
+      notFull.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Moves up to batch.length events into the given batch, waiting for at least one unless the ring is closed
+   *
+   * @return the number of events moved, 0 meaning that the ring is closed and empty
+   */
+  int drainTo(Event[] batch) throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (tail == head && (!closed || reserved > 0)) notEmpty.await();
+      int count = (int) Math.min(batch.length, tail - head);
+      for (int i = 0; i < count; i++) {
+        int slot = (int) (head + i) & mask;
+        batch[i] = slots[slot];
+        slots[slot] = null;
+      }
+      head += count;
+      if (count > 0) notFull.signalAll();
+      return count;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  void close() {
+    lock.lock();
+    try {
+      closed = true;
+      notEmpty.signalAll();
+      notFull.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+}
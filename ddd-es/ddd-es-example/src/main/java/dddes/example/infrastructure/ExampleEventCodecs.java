@@ -0,0 +1,144 @@
+package dddes.example.infrastructure;
+
+import static dddes.core.BinaryEncoding.*;
+
+import java.nio.ByteBuffer;
+
+import dddes.core.AggregateRootEventCodec;
+import dddes.core.EventCodecRegistry;
+import dddes.example.domain.backlogitem.StoryPoints;
+import dddes.example.domain.backlogitem.events.BacklogItemCreated;
+import dddes.example.domain.backlogitem.events.BacklogItemTitleChanged;
+import dddes.example.domain.backlogitem.events.StoryPointsAssignedToBacklogItem;
+import dddes.example.domain.product.events.ProductBacklogItemPlanned;
+import dddes.example.domain.product.events.ProductBacklogItemPositionChanged;
+import dddes.example.domain.product.events.ProductCreated;
+import dddes.example.domain.product.events.ProductRenamed;
+
+/** The binary codecs of the events of the example domain, under type ids which must never change */
+public final class ExampleEventCodecs {
+
+  private ExampleEventCodecs() { }
+
+  public static EventCodecRegistry newRegistry() {
+    return new EventCodecRegistry()
+        .register(1, new ProductCreatedCodec())
+        .register(2, new ProductRenamedCodec())
+        .register(3, new ProductBacklogItemPlannedCodec())
+        .register(4, new ProductBacklogItemPositionChangedCodec())
+        .register(5, new BacklogItemCreatedCodec())
+        .register(6, new BacklogItemTitleChangedCodec())
+        .register(7, new StoryPointsAssignedToBacklogItemCodec());
+  }
+
+  private static final class ProductCreatedCodec extends AggregateRootEventCodec<ProductCreated> {
+
+    ProductCreatedCodec() {
+      super(ProductCreated.class);
+    }
+
+    protected void encodePayload(ProductCreated event, ByteBuffer buffer) {
+      writeString(buffer, event.getName());
+    }
+
+    protected ProductCreated decodePayload(String aggregateRootId, ByteBuffer buffer) {
+      return new ProductCreated(aggregateRootId, readString(buffer));
+    }
+  }
+
+  private static final class ProductRenamedCodec extends AggregateRootEventCodec<ProductRenamed> {
+
+    ProductRenamedCodec() {
+      super(ProductRenamed.class);
+    }
+
+    protected void encodePayload(ProductRenamed event, ByteBuffer buffer) {
+      writeString(buffer, event.getName());
+    }
+
+    protected ProductRenamed decodePayload(String aggregateRootId, ByteBuffer buffer) {
+      return new ProductRenamed(readString(buffer));
+    }
+  }
+
+  private static final class ProductBacklogItemPlannedCodec extends AggregateRootEventCodec<ProductBacklogItemPlanned> {
+
+    ProductBacklogItemPlannedCodec() {
+      super(ProductBacklogItemPlanned.class);
+    }
+
+    protected void encodePayload(ProductBacklogItemPlanned event, ByteBuffer buffer) {
+      writeString(buffer, event.getEntityId());
+      writeVarInt(buffer, event.getPosition());
+    }
+
+    protected ProductBacklogItemPlanned decodePayload(String aggregateRootId, ByteBuffer buffer) {
+      return new ProductBacklogItemPlanned(readString(buffer), readVarInt(buffer));
+    }
+  }
+
+  private static final class ProductBacklogItemPositionChangedCodec extends AggregateRootEventCodec<ProductBacklogItemPositionChanged> {
+
+    ProductBacklogItemPositionChangedCodec() {
+      super(ProductBacklogItemPositionChanged.class);
+    }
+
+    protected void encodePayload(ProductBacklogItemPositionChanged event, ByteBuffer buffer) {
+      writeString(buffer, event.getEntityId());
+      writeVarInt(buffer, event.getPosition());
+    }
+
+    protected ProductBacklogItemPositionChanged decodePayload(String aggregateRootId, ByteBuffer buffer) {
+      return new ProductBacklogItemPositionChanged(readString(buffer), readVarInt(buffer));
+    }
+  }
+
+  private static final class BacklogItemCreatedCodec extends AggregateRootEventCodec<BacklogItemCreated> {
+
+    BacklogItemCreatedCodec() {
+      super(BacklogItemCreated.class);
+    }
+
+    protected void encodePayload(BacklogItemCreated event, ByteBuffer buffer) {
+      writeString(buffer, event.getTitle());
+      writeEnum(buffer, event.getStoryPoints());
+      writeString(buffer, event.getProductId());
+    }
+
+    protected BacklogItemCreated decodePayload(String aggregateRootId, ByteBuffer buffer) {
+      String title = readString(buffer);
+      StoryPoints storyPoints = readEnum(buffer, StoryPoints.class);
+      return new BacklogItemCreated(aggregateRootId, title, storyPoints, readString(buffer));
+    }
+  }
+
+  private static final class BacklogItemTitleChangedCodec extends AggregateRootEventCodec<BacklogItemTitleChanged> {
+
+    BacklogItemTitleChangedCodec() {
+      super(BacklogItemTitleChanged.class);
+    }
+
+    protected void encodePayload(BacklogItemTitleChanged event, ByteBuffer buffer) {
+      writeString(buffer, event.getTitle());
+    }
+
+    protected BacklogItemTitleChanged decodePayload(String aggregateRootId, ByteBuffer buffer) {
+      return new BacklogItemTitleChanged(readString(buffer));
+    }
+  }
+
+  private static final class StoryPointsAssignedToBacklogItemCodec extends AggregateRootEventCodec<StoryPointsAssignedToBacklogItem> {
+
+    StoryPointsAssignedToBacklogItemCodec() {
+      super(StoryPointsAssignedToBacklogItem.class);
+    }
+
+    protected void encodePayload(StoryPointsAssignedToBacklogItem event, ByteBuffer buffer) {
+      writeEnum(buffer, event.getStoryPoints());
+    }
+
+    protected StoryPointsAssignedToBacklogItem decodePayload(String aggregateRootId, ByteBuffer buffer) {
+      return new StoryPointsAssignedToBacklogItem(readEnum(buffer, StoryPoints.class));
+    }
+  }
+}
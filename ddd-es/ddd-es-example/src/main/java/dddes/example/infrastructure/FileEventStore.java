@@ -0,0 +1,788 @@
+package dddes.example.infrastructure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import dddes.core.Event;
+import dddes.core.EventIndex;
+import dddes.core.IEventSerializer;
+import dddes.core.IEventStore;
+import dddes.core.RecordedEvent;
+import dddes.core.StreamAppend;
+
+/**
+ * A durable event store appending the events of every stream to a sequence of memory-mapped segment files of a
+ * directory. A new segment is started once the current one is full. The location of every event is kept in a
+ * per-stream index and in a global index following the order of the segments, which is the commit order: both are
+ * rebuilt by scanning the segments when the store is opened, and a torn record at the end of the last segment, e.g.
+ * after a crash, is discarded together with the following ones.
+ *
+ * Appends are atomic and serialized on the store, while reads never lock and deserialize the events straight from the
+ * mapped segments. The records of an append, or of an atomic append to several streams, are written as a single batch
+ * that recovery either keeps whole or discards, and an append that fails once some of its records are written, e.g.
+ * because they can't be forced to disk, erases them before reporting its failure.
+ *
+ * How often the appended events are forced to disk depends on the configured {@link Durability}: with
+ * {@link Durability#GROUP_COMMIT} the appends of concurrent writers are queued to a committer thread, which validates
+ * their expected positions, writes them and forces them to disk together, so that one force serves a whole group.
+ *
+ * Secondary indexes are added once the store is open and updated by every append. Each index is saved to its own file
+ * of the directory, along with the global position it covers, when the store is closed or by {@link #saveIndexes()}:
+ * adding the index again, e.g. after a restart or a crash, loads that file and only indexes the events appended since.
+ */
+public class FileEventStore implements IEventStore<String>, AutoCloseable {
+
+  public enum Durability {
+    /** Every event is forced to disk before the next one is written */
+    EVERY_EVENT,
+    /** The events of every append are forced to disk before the append returns */
+    EVERY_BATCH,
+    /** The appended events are forced to disk at a fixed interval, the latest ones may be lost on a crash */
+    PERIODIC,
+    /** The appends of concurrent writers are forced to disk together, before each of them returns */
+    GROUP_COMMIT
+  }
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+  public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(1);
+  public static final int DEFAULT_MAX_GROUP_SIZE = 1024;
+  public static final Duration DEFAULT_MAX_GROUP_DELAY = Duration.ZERO;
+
+  private static final PendingAppend STOP = new PendingAppend(null, null, null, -1);
+  private static final String INDEX_EXTENSION = ".index";
+  private static final int INDEX_FORMAT = 1;
+  private static final int INDEX_CATCH_UP_BATCH = 4096;
+
+  private final Path directory;
+  private final IEventSerializer serializer;
+  private final int segmentSize;
+  private final Durability durability;
+  private final ConcurrentHashMap<String, FileStreamIndex> streams;
+  private final FileStreamIndex globalLog;
+  private final SecondaryIndexes<String> indexes;
+  private final ScheduledExecutorService flusher;
+  private final int maxGroupSize;
+  private final long maxGroupDelayNanos;
+  private final LinkedBlockingQueue<PendingAppend> pendingAppends;
+  private final Thread committer;
+  private volatile FileSegment[] segments;
+  private volatile long sizeInBytes;
+  private volatile long groupCommits;
+  private volatile long groupedAppends;
+  private volatile long flushFailures;
+  private volatile RuntimeException periodicFlushFailure;
+  private volatile boolean closing;
+  private volatile boolean closed;
+  private volatile Runnable forceHook = () -> { };
+
+  public FileEventStore(Path directory) throws IOException {
+    this(directory, new JavaEventSerializer(), DEFAULT_SEGMENT_SIZE, Durability.EVERY_BATCH);
+  }
+
+  public FileEventStore(Path directory, IEventSerializer serializer, int segmentSize, Durability durability) throws IOException {
+    this(directory, serializer, segmentSize, durability, DEFAULT_FLUSH_INTERVAL);
+  }
+
+  /**
+   * @param segmentSize: the size in bytes of a segment file, which bounds the size of a serialized event
+   * @param flushInterval: how often the appended events are forced to disk with the PERIODIC durability
+   */
+  public FileEventStore(Path directory, IEventSerializer serializer, int segmentSize, Durability durability, Duration flushInterval) throws IOException {
+    this(directory, serializer, segmentSize, durability, flushInterval, DEFAULT_MAX_GROUP_SIZE, DEFAULT_MAX_GROUP_DELAY);
+  }
+
+  /**
+   * Creates a store with the GROUP_COMMIT durability
+   * 
+   * @param maxGroupSize: the maximum number of appends committed together
+   * @param maxGroupDelay: how long the committer waits for more appends once it has received one, zero meaning that a
+   *          group is made of the appends queued while the previous group was being committed
+   */
+  public FileEventStore(Path directory, IEventSerializer serializer, int segmentSize, int maxGroupSize, Duration maxGroupDelay) throws IOException {
+    this(directory, serializer, segmentSize, Durability.GROUP_COMMIT, DEFAULT_FLUSH_INTERVAL, maxGroupSize, maxGroupDelay);
+  }
+
+  private FileEventStore(Path directory, IEventSerializer serializer, int segmentSize, Durability durability, Duration flushInterval, int maxGroupSize,
+      Duration maxGroupDelay) throws IOException {
+    Objects.requireNonNull(directory, "directory must be not null");
+    Objects.requireNonNull(serializer, "serializer must be not null");
+    Objects.requireNonNull(durability, "durability must be not null");
+    if (segmentSize < 1024) throw new IllegalArgumentException("segmentSize must be at least 1024");
+    if (durability == Durability.PERIODIC && (flushInterval == null || flushInterval.isNegative() || flushInterval.isZero()))
+      throw new IllegalArgumentException("flushInterval must be positive");
+    if (maxGroupSize < 1) throw new IllegalArgumentException("maxGroupSize must be positive");
+    if (maxGroupDelay == null || maxGroupDelay.isNegative()) throw new IllegalArgumentException("maxGroupDelay must not be negative");
+    this.directory = Files.createDirectories(directory);
+    this.serializer = serializer;
+    this.segmentSize = segmentSize;
+    this.durability = durability;
+    this.streams = new ConcurrentHashMap<>();
+    this.globalLog = new FileStreamIndex();
+    this.indexes = new SecondaryIndexes<>();
+    this.segments = recover();
+    if (durability == Durability.PERIODIC) {
+      this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, FileEventStore.class.getSimpleName() + "-flusher");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.flusher.scheduleWithFixedDelay(this::flushPeriodically, flushInterval.toNanos(), flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+    else this.flusher = null;
+    this.maxGroupSize = maxGroupSize;
+    this.maxGroupDelayNanos = maxGroupDelay.toNanos();
+    if (durability == Durability.GROUP_COMMIT) {
+      this.pendingAppends = new LinkedBlockingQueue<>();
+      this.committer = new Thread(this::commitGroups, FileEventStore.class.getSimpleName() + "-committer");
+      this.committer.setDaemon(true);
+      this.committer.start();
+    }
+    else {
+      this.pendingAppends = null;
+      this.committer = null;
+    }
+  }
+
+  public void appendEventsToStream(String streamId, Stream<Event> events) {
+    appendEventsToStream(streamId, events, -1);
+  }
+
+  public void appendEventsToStream(String streamId, Stream<Event> events, long expectedLastPosition) throws ConcurrentModificationException {
+
+    Objects.requireNonNull(events, "events must not be null");
+    Event[] batch = events.toArray(Event[]::new);
+    byte[][] records = recordsOf(streamId, batch);
+    if (durability == Durability.GROUP_COMMIT) appendInGroup(new PendingAppend(streamId, batch, records, expectedLastPosition));
+    else append(streamId, batch, records, expectedLastPosition);
+  }
+
+  /**
+   * Writes the events of all the streams and forces them to disk at once, unless the durability is periodic, even with
+   * group commit. They are written as a single batch, so that a crash while writing them keeps none of them, and their
+   * records must therefore fit in a segment together.
+   */
+  @Override
+  public void appendEventsToStreams(List<StreamAppend<String>> appends) throws ConcurrentModificationException {
+
+    Objects.requireNonNull(appends, "appends must not be null");
+    HashSet<String> streamIds = new HashSet<>();
+    Event[][] events = new Event[appends.size()][];
+    byte[][][] records = new byte[appends.size()][][];
+    for (int i = 0; i < records.length; i++) {
+      StreamAppend<String> append = appends.get(i);
+      if (!streamIds.add(append.getStreamId())) throw new IllegalArgumentException("stream appended more than once: " + append.getStreamId());
+      events[i] = append.getEvents().toArray(new Event[0]);
+      records[i] = recordsOf(append.getStreamId(), events[i]);
+    }
+    appendAll(appends, events, records);
+  }
+
+  public Stream<Event> getStream(String streamId) throws NoSuchElementException {
+    return getStream(streamId, 0, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public Stream<Event> getStream(String streamId, long fromPosition, int maxCount) throws NoSuchElementException {
+    requireValidRange(fromPosition, maxCount);
+    return streamOf(streamId).locations(fromPosition, maxCount).mapToObj(this::read);
+  }
+
+  @Override
+  public Map<String, Stream<Event>> getStreams(Collection<String> streamIds, ToLongFunction<? super String> fromPosition) {
+    Objects.requireNonNull(streamIds, "streamIds must not be null");
+    Objects.requireNonNull(fromPosition, "fromPosition must not be null");
+    Map<String, Stream<Event>> found = new LinkedHashMap<>();
+    for (String streamId : streamIds) {
+      FileStreamIndex stream = streams.get(Objects.requireNonNull(streamId, "streamId must not be null"));
+      if (stream == null) continue;
+      long position = fromPosition.applyAsLong(streamId);
+      requireValidRange(position, Integer.MAX_VALUE);
+      found.put(streamId, stream.locations(position, Integer.MAX_VALUE).mapToObj(this::read));
+    }
+    return found;
+  }
+
+  @Override
+  public Stream<String> findStreams(String indexName, String key) throws NoSuchElementException {
+    return indexes.find(indexName, key);
+  }
+
+  @Override
+  public boolean hasIndex(String indexName) {
+    return indexes.contains(indexName);
+  }
+
+  @Override
+  public boolean supportsAtomicAppends() {
+    return true;
+  }
+
+  @Override
+  public boolean hasGlobalLog() {
+    return true;
+  }
+
+  @Override
+  public Stream<Event> getStreamBackward(String streamId, long fromPosition, int maxCount) throws NoSuchElementException {
+    requireValidRange(fromPosition, maxCount);
+    return streamOf(streamId).locationsBackward(fromPosition, maxCount).mapToObj(this::read);
+  }
+
+  @Override
+  public Stream<RecordedEvent<String>> readAll(long fromGlobalPosition, int maxCount) {
+    requireValidRange(fromGlobalPosition, maxCount);
+    long[] locations = globalLog.locations(fromGlobalPosition, maxCount).toArray();
+    return IntStream.range(0, locations.length).mapToObj(i -> {
+      String streamId = segments[FileStreamIndex.segmentOf(locations[i])].streamIdAt(FileStreamIndex.offsetOf(locations[i]));
+      return new RecordedEvent<>(streamId, streams.get(streamId).positionOf(locations[i]), fromGlobalPosition + i, read(locations[i]));
+    });
+  }
+
+  @Override
+  public long getLastGlobalPosition() {
+    return globalLog.size();
+  }
+
+  /**
+   * Adds a secondary index, loaded from its file if it has been saved before, and brings it up to date by indexing the
+   * events appended since it was saved, or all of them the first time. Appends wait for the index to be up to date.
+   *
+   * @return the number of events read from the global log to bring the index up to date
+   */
+  public synchronized long addIndex(EventIndex<?> index) {
+    if (closed) throw new IllegalStateException("the event store is closed");
+    SecondaryIndexes.Index<String> added = indexes.add(index);
+    long checkpoint = loadIndex(added);
+    long last = globalLog.size();
+    for (long position = checkpoint; position < last; position += INDEX_CATCH_UP_BATCH)
+      readAll(position, INDEX_CATCH_UP_BATCH).forEach(event -> added.add(event.getStreamId(), event.getEvent()));
+    return last - checkpoint;
+  }
+
+  /**
+   * Saves every secondary index to its file, once the events it covers are forced to disk, so that adding it again
+   * only indexes the events appended since. Appends wait for the indexes to be saved.
+   */
+  public synchronized void saveIndexes() {
+    if (closed) throw new IllegalStateException("the event store is closed");
+    if (indexes.isEmpty()) return;
+    flush();
+    for (SecondaryIndexes.Index<String> index : indexes.all()) saveIndex(index, globalLog.size());
+  }
+
+  /** Forces the appended events to disk */
+  public void flush() {
+    if (closed) return;
+    FileSegment[] segments = this.segments;
+    force(segments[segments.length - 1]);
+  }
+
+  /**
+   * Forces the appended events to disk on behalf of the flusher, which would stop running if it let a failure through:
+   * the failure is counted instead, and the next append forces the events again before writing its own ones.
+   */
+  private void flushPeriodically() {
+    try {
+      flush();
+    }
+    catch (RuntimeException e) {
+      flushFailures++;
+      periodicFlushFailure = e;
+    }
+  }
+
+  /** Forces the events appended before a failed periodic flush, failing the append if they still can't be forced */
+  private void reflushAfterFailure() {
+    if (periodicFlushFailure == null) return;
+    flush();
+    periodicFlushFailure = null;
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  public Durability getDurability() {
+    return durability;
+  }
+
+  public int getSegmentCount() {
+    return segments.length;
+  }
+
+  /** @return the number of bytes taken by the appended records */
+  public long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  /** @return the number of periodic flushes failed with the PERIODIC durability */
+  public long getFlushFailures() {
+    return flushFailures;
+  }
+
+  /** @return the number of groups committed with the GROUP_COMMIT durability, i.e. of forces to disk */
+  public long getGroupCommits() {
+    return groupCommits;
+  }
+
+  /** @return the average number of appends per group with the GROUP_COMMIT durability */
+  public double getAverageGroupSize() {
+    long groupCommits = this.groupCommits;
+    return groupCommits > 0 ? (double) groupedAppends / groupCommits : 0;
+  }
+
+  /** Commits the pending appends, forces the appended events to disk and closes the segment files */
+  @Override
+  public void close() throws IOException, InterruptedException {
+    if (committer != null) {
+      synchronized (pendingAppends) {
+        if (!closing) pendingAppends.add(STOP);
+        closing = true;
+      }
+      committer.join();
+    }
+    closeSegments();
+  }
+
+  private synchronized void closeSegments() throws IOException, InterruptedException {
+    if (closed) return;
+    closed = true;
+    if (flusher != null) {
+      flusher.shutdown();
+      flusher.awaitTermination(1, TimeUnit.MINUTES);
+    }
+    segments[segments.length - 1].force();
+    IOException failure = null;
+    try {
+      for (SecondaryIndexes.Index<String> index : indexes.all()) saveIndex(index, globalLog.size());
+    }
+    catch (UncheckedIOException e) {
+      failure = e.getCause();
+    }
+    for (FileSegment segment : segments) {
+      try {
+        segment.close();
+      }
+      catch (IOException e) {
+        if (failure == null) failure = e;
+        else failure.addSuppressed(e);
+      }
+    }
+    if (failure != null) throw failure;
+  }
+
+  private synchronized void append(String streamId, Event[] events, byte[][] records, long expectedLastPosition) throws ConcurrentModificationException {
+    if (closed) throw new IllegalStateException("the event store is closed");
+    requireExpectedPosition(expectedLastPosition, sizeOf(streamId));
+    reflushAfterFailure();
+    WriteMark mark = mark();
+    long[] locations = write(records);
+    try {
+      if (durability == Durability.EVERY_BATCH && records.length > 0) flush();
+    }
+    catch (RuntimeException e) {
+      throw rollback(mark, e);
+    }
+    index(streamId, events, locations);
+  }
+
+  private synchronized void appendAll(List<StreamAppend<String>> appends, Event[][] events, byte[][][] records) throws ConcurrentModificationException {
+    if (closed) throw new IllegalStateException("the event store is closed");
+    for (StreamAppend<String> append : appends) requireExpectedPosition(append.getExpectedLastPosition(), sizeOf(append.getStreamId()));
+    reflushAfterFailure();
+    WriteMark mark = mark();
+    long[] locations = write(Stream.of(records).flatMap(Stream::of).toArray(byte[][]::new));
+    try {
+      if ((durability == Durability.EVERY_BATCH || durability == Durability.GROUP_COMMIT) && locations.length > 0) flush();
+    }
+    catch (RuntimeException e) {
+      throw rollback(mark, e);
+    }
+    for (int i = 0, from = 0; i < records.length; from += records[i++].length)
+      index(appends.get(i).getStreamId(), events[i], Arrays.copyOfRange(locations, from, from + records[i].length));
+  }
+
+  /** Queues the append to the committer and waits for the commit of its group */
+  private void appendInGroup(PendingAppend append) throws ConcurrentModificationException {
+    synchronized (pendingAppends) {
+      if (closing) throw new IllegalStateException("the event store is closed");
+      pendingAppends.add(append);
+    }
+    try {
+      append.result.join();
+    }
+    catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      throw e;
+    }
+  }
+
+  /** The loop of the committer, taking groups of pending appends until the store is closed */
+  private void commitGroups() {
+    List<PendingAppend> group = new ArrayList<>();
+    boolean stopped = false;
+    try {
+      while (!stopped) {
+        group.add(pendingAppends.take());
+        pendingAppends.drainTo(group, maxGroupSize - 1);
+        if (maxGroupDelayNanos > 0) {
+          long deadline = System.nanoTime() + maxGroupDelayNanos;
+          for (PendingAppend next; group.size() < maxGroupSize && group.get(group.size() - 1) != STOP
+              && (next = pendingAppends.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) != null; ) {
+            group.add(next);
+            pendingAppends.drainTo(group, maxGroupSize - group.size());
+          }
+        }
+        stopped = group.remove(STOP);
+        if (!group.isEmpty()) commitGroup(group);
+        group.clear();
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      IllegalStateException closed = new IllegalStateException("the event store is closed");
+      group.forEach(append -> append.result.completeExceptionally(closed));
+      pendingAppends.forEach(append -> append.result.completeExceptionally(closed));
+    }
+  }
+
+  /**
+   * Writes the appends of a group in order and forces them to disk at once. An append whose expected position doesn't
+   * match, taking the previous appends of the group into account, fails alone. The appended events become readable,
+   * and their appends return, only once forced to disk.
+   */
+  private synchronized void commitGroup(List<PendingAppend> group) {
+    WriteMark mark = closed ? null : mark();
+    HashMap<String, Integer> sizes = new HashMap<>();
+    List<PendingAppend> written = new ArrayList<>(group.size());
+    for (PendingAppend append : group) {
+      try {
+        if (closed) throw new IllegalStateException("the event store is closed");
+        int size = sizes.computeIfAbsent(append.streamId, this::sizeOf);
+        requireExpectedPosition(append.expectedLastPosition, size);
+        append.locations = write(append.records);
+        sizes.put(append.streamId, size + append.records.length);
+        written.add(append);
+      }
+      catch (RuntimeException e) {
+        append.result.completeExceptionally(e);
+      }
+    }
+    try {
+      if (!written.isEmpty()) flush();
+    }
+    catch (RuntimeException e) {
+      rollback(mark, e);
+      written.forEach(append -> append.result.completeExceptionally(e));
+      return;
+    }
+    groupedAppends += group.size();
+    groupCommits++;
+    for (PendingAppend append : written) {
+      index(append.streamId, append.events, append.locations);
+      append.result.complete(null);
+    }
+  }
+
+  private byte[][] recordsOf(String streamId, Event[] events) {
+    Objects.requireNonNull(streamId, "streamId must not be null");
+    byte[] id = streamId.getBytes(StandardCharsets.UTF_8);
+    if (id.length > 0xFFFF) throw new IllegalArgumentException("streamId too long: " + streamId);
+    byte[][] records = Stream.of(events).map(event -> FileSegment.record(id, serializer.serialize(event))).toArray(byte[][]::new);
+    for (byte[] record : records)
+      if (record.length > segmentSize) throw new IllegalArgumentException("event larger than a segment in " + streamId);
+    return records;
+  }
+
+  /**
+   * Writes the records as a single batch at the end of the current segment, rolling it first if the batch doesn't fit,
+   * and returns their locations. The records already written are erased if the batch can't be written entirely.
+   */
+  private long[] write(byte[][] records) {
+    long[] locations = new long[records.length];
+    if (records.length == 0) return locations;
+    long batchSize = 0;
+    for (byte[] record : records) batchSize += record.length;
+    if (batchSize > segmentSize) throw new IllegalArgumentException("batch of " + batchSize + " bytes larger than a segment");
+    WriteMark mark = mark();
+    try {
+      FileSegment segment = segments[segments.length - 1];
+      if (segment.remaining() < batchSize) segment = roll(segment);
+      for (int i = 0; i < records.length; i++) {
+        locations[i] = FileStreamIndex.location(segment.number(), segment.append(records[i], i < records.length - 1));
+        sizeInBytes += records[i].length;
+        if (durability == Durability.EVERY_EVENT) force(segment);
+      }
+    }
+    catch (RuntimeException e) {
+      throw rollback(mark, e);
+    }
+    return locations;
+  }
+
+  /** @return the end of the written records, which a failed write goes back to */
+  private WriteMark mark() {
+    FileSegment[] segments = this.segments;
+    return new WriteMark(segments.length, segments[segments.length - 1].writePosition(), sizeInBytes);
+  }
+
+  /**
+   * Erases the records written since the mark, none of them being indexed yet, along with the segments started since,
+   * and forces the erased records to disk if possible, so that they aren't recovered either
+   *
+   * @return the failure of the write, with the failures of the rollback suppressed
+   */
+  private RuntimeException rollback(WriteMark mark, RuntimeException failure) {
+    FileSegment[] segments = this.segments;
+    for (int i = segments.length - 1; i >= mark.segmentCount; i--) {
+      try {
+        segments[i].close();
+        Files.deleteIfExists(segments[i].file());
+      }
+      catch (IOException e) {
+        failure.addSuppressed(e);
+      }
+    }
+    if (segments.length > mark.segmentCount) this.segments = segments = Arrays.copyOf(segments, mark.segmentCount);
+    FileSegment last = segments[segments.length - 1];
+    last.truncate(mark.position);
+    sizeInBytes = mark.sizeInBytes;
+    try {
+      force(last);
+    }
+    catch (RuntimeException e) {
+      // The erased records reach the disk with the next force
+      failure.addSuppressed(e);
+    }
+    return failure;
+  }
+
+  /** Forces the segment to disk */
+  private void force(FileSegment segment) {
+    forceHook.run();
+    segment.force();
+  }
+
+  /** Runs the hook before every force of a segment to disk, e.g. to inject failures in tests */
+  void setForceHook(Runnable forceHook) {
+    this.forceHook = Objects.requireNonNull(forceHook, "forceHook must not be null");
+  }
+
+  /** Makes the written events readable, and indexes them */
+  private void index(String streamId, Event[] events, long[] locations) {
+    FileStreamIndex stream = streams.get(streamId);
+    if (stream == null) streams.put(streamId, stream = new FileStreamIndex());
+    stream.append(locations);
+    globalLog.append(locations);
+    indexes.index(streamId, events);
+  }
+
+  /**
+   * Loads the saved keys and streams of the index, unless its file is missing or covers more events than the store
+   * holds, e.g. after losing the last events in a crash
+   *
+   * @return the global position covered by the loaded index, 0 if it hasn't been loaded
+   */
+  private long loadIndex(SecondaryIndexes.Index<String> index) {
+    Path file = indexFileOf(index.definition());
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (input.readInt() != INDEX_FORMAT || !input.readUTF().equals(index.definition().getName())) return 0;
+      long checkpoint = input.readLong();
+      if (checkpoint > globalLog.size()) return 0;
+      for (int keys = input.readInt(); keys > 0; keys--) {
+        String key = input.readUTF();
+        for (int streams = input.readInt(); streams > 0; streams--) index.add(key, input.readUTF());
+      }
+      return checkpoint;
+    }
+    catch (NoSuchFileException e) { return 0; }
+    catch (IOException e) {
+      // A corrupted index is rebuilt from the global log
+      index.clear();
+      return 0;
+    }
+  }
+
+  /** Writes the index to a temporary file first, then moved in place, so that a crash never leaves a partial index */
+  private void saveIndex(SecondaryIndexes.Index<String> index, long checkpoint) {
+    Path file = indexFileOf(index.definition());
+    try {
+      Path temporaryFile = Files.createTempFile(directory, null, ".tmp");
+      try {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+          output.writeInt(INDEX_FORMAT);
+          output.writeUTF(index.definition().getName());
+          output.writeLong(checkpoint);
+          output.writeInt(index.entries().size());
+          for (Map.Entry<String, Set<String>> entry : index.entries().entrySet()) {
+            output.writeUTF(entry.getKey());
+            output.writeInt(entry.getValue().size());
+            for (String streamId : entry.getValue()) output.writeUTF(streamId);
+          }
+        }
+        try {
+          Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+          Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+      finally {
+        Files.deleteIfExists(temporaryFile);
+      }
+    }
+    catch (IOException e) { throw new UncheckedIOException("cannot save the index " + index.definition().getName(), e); }
+  }
+
+  private Path indexFileOf(EventIndex<?> index) {
+    try {
+      return directory.resolve(URLEncoder.encode(index.getName(), "UTF-8") + INDEX_EXTENSION);
+    }
+    catch (UnsupportedEncodingException e) { throw new IllegalStateException(e); }
+  }
+
+  private int sizeOf(String streamId) {
+    FileStreamIndex stream = streams.get(streamId);
+    return stream != null ? stream.size() : 0;
+  }
+
+  private static void requireExpectedPosition(long expectedLastPosition, int currentLastPosition) throws ConcurrentModificationException {
+    if (expectedLastPosition >= 0 && currentLastPosition != expectedLastPosition)
+      throw new ConcurrentModificationException(String.format("Expected: %s - Actual: %s", expectedLastPosition, currentLastPosition));
+  }
+
+  /** Seals the current segment, forcing it to disk, and starts the next one */
+  private FileSegment roll(FileSegment current) {
+    force(current);
+    try {
+      FileSegment next = FileSegment.open(directory, current.number() + 1, segmentSize);
+      FileSegment[] segments = Arrays.copyOf(this.segments, this.segments.length + 1);
+      segments[segments.length - 1] = next;
+      this.segments = segments;
+      return next;
+    }
+    catch (IOException e) { throw new UncheckedIOException("cannot create a segment in " + directory, e); }
+  }
+
+  private Event read(long location) {
+    return serializer.deserialize(segments[FileStreamIndex.segmentOf(location)].eventAt(FileStreamIndex.offsetOf(location)));
+  }
+
+  private FileStreamIndex streamOf(String streamId) throws NoSuchElementException {
+    Objects.requireNonNull(streamId, "streamId must not be null");
+    FileStreamIndex stream = streams.get(streamId);
+    if (stream == null)
+      throw new NoSuchElementException("Aggregate not found: " + streamId);
+    return stream;
+  }
+
+  private FileSegment[] recover() throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory, "*" + FileSegment.EXTENSION)) {
+      directoryStream.forEach(files::add);
+    }
+    files.sort(null);
+
+    List<FileSegment> segments = new ArrayList<>();
+    try {
+      for (int number = 0; number < Math.max(1, files.size()); number++) {
+        if (number < files.size() && !files.get(number).getFileName().toString().equals(FileSegment.fileName(number)))
+          throw new IllegalStateException("missing segment " + FileSegment.fileName(number) + " in " + directory);
+        boolean last = number >= files.size() - 1;
+        FileSegment segment = FileSegment.open(directory, number, last ? segmentSize : 0);
+        segments.add(segment);
+        boolean torn = segment.recover((streamId, offset) -> {
+          long location = FileStreamIndex.location(segment.number(), offset);
+          streams.computeIfAbsent(streamId, id -> new FileStreamIndex()).append(location);
+          globalLog.append(location);
+        });
+        if (torn) {
+          if (!last) throw new IllegalStateException("corrupted segment " + segment.file());
+          segment.force();
+        }
+        sizeInBytes += segment.writePosition();
+      }
+      return segments.toArray(new FileSegment[0]);
+    }
+    catch (IOException | RuntimeException e) {
+      for (FileSegment segment : segments) segment.close();
+      throw e;
+    }
+  }
+
+  private static void requireValidRange(long fromPosition, int maxCount) {
+    if (fromPosition < 0) throw new IllegalArgumentException("fromPosition must not be negative");
+    if (maxCount < 0) throw new IllegalArgumentException("maxCount must not be negative");
+  }
+
+  /** The end of the written records at a given time */
+  private static final class WriteMark {
+
+    final int segmentCount;
+    final int position;
+    final long sizeInBytes;
+
+    WriteMark(int segmentCount, int position, long sizeInBytes) {
+      this.segmentCount = segmentCount;
+      this.position = position;
+      this.sizeInBytes = sizeInBytes;
+    }
+  }
+
+  /** An append waiting for the commit of its group */
+  private static final class PendingAppend {
+
+    final String streamId;
+    final Event[] events;
+    final byte[][] records;
+    final long expectedLastPosition;
+    final CompletableFuture<Void> result;
+    long[] locations;
+
+    PendingAppend(String streamId, Event[] events, byte[][] records, long expectedLastPosition) {
+      this.streamId = streamId;
+      this.events = events;
+      this.records = records;
+      this.expectedLastPosition = expectedLastPosition;
+      this.result = new CompletableFuture<>();
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package dddes.example.infrastructure;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.ObjIntConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only segment file of a {@link FileEventStore}, entirely mapped into memory. A record is made of a header,
+ * holding the length and the CRC32 of its body, and of a body, holding the stream id and the serialized event. The
+ * unused tail of a segment is zeroed, so a zero length marks its end.
+ *
+ * The records of an atomic batch are written together in a single segment, and the highest bit of the length flags
+ * every record of the batch but its last one: a batch whose last record is missing, e.g. after a crash, is discarded
+ * as a whole when the segment is recovered.
+ *
+ * Appends are not thread-safe and must be serialized by the store, while reads can run concurrently with them on the
+ * records already appended.
+ */
+final class FileSegment implements Closeable {
+
+  static final String EXTENSION = ".segment";
+  static final int HEADER_SIZE = 8;
+
+  /** Flags a record followed by another record of the same batch */
+  private static final int CONTINUED = 0x80000000;
+
+  private final int number;
+  private final Path file;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final ByteBuffer writer;
+
+  private FileSegment(int number, Path file, FileChannel channel, MappedByteBuffer buffer) {
+    this.number = number;
+    this.file = file;
+    this.channel = channel;
+    this.buffer = buffer;
+    this.writer = buffer.duplicate();
+  }
+
+  /** Opens or creates the segment file, mapping at least the given size */
+  static FileSegment open(Path directory, int number, int minimumSize) throws IOException {
+    Path file = directory.resolve(fileName(number));
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long size = Math.max(channel.size(), minimumSize);
+      if (size > Integer.MAX_VALUE) throw new IllegalStateException("segment too large: " + file);
+      return new FileSegment(number, file, channel, channel.map(MapMode.READ_WRITE, 0, size));
+    }
+    catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  static String fileName(int number) {
+    return String.format("%010d%s", number, EXTENSION);
+  }
+
+  /** @return a record ready to be appended, built outside of any lock */
+  static byte[] record(byte[] streamId, byte[] event) {
+    int bodyLength = 2 + streamId.length + event.length;
+    ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + bodyLength);
+    record.putInt(bodyLength).putInt(0).putShort((short) streamId.length).put(streamId).put(event);
+    CRC32 crc = new CRC32();
+    crc.update(record.array(), HEADER_SIZE, bodyLength);
+    record.putInt(4, (int) crc.getValue());
+    return record.array();
+  }
+
+  int number() {
+    return number;
+  }
+
+  Path file() {
+    return file;
+  }
+
+  int writePosition() {
+    return writer.position();
+  }
+
+  int remaining() {
+    return writer.remaining();
+  }
+
+  /**
+   * @param continued: true if the record isn't the last one of its batch
+   * @return the offset of the appended record
+   */
+  int append(byte[] record, boolean continued) {
+    int offset = writer.position();
+    writer.put(record);
+    if (continued) writer.putInt(offset, record.length - HEADER_SIZE | CONTINUED);
+    return offset;
+  }
+
+  /** Erases the records appended from the given position, which the next append then starts from */
+  void truncate(int position) {
+    int end = writer.position();
+    writer.position(position);
+    while (writer.position() < end) writer.put((byte) 0);
+    writer.position(position);
+  }
+
+  /** @return a read-only view over the serialized event of the record at the given offset */
+  ByteBuffer eventAt(int offset) {
+    ByteBuffer view = buffer.asReadOnlyBuffer();
+    view.limit(offset + HEADER_SIZE + lengthAt(offset));
+    view.position(offset + HEADER_SIZE + 2 + (buffer.getShort(offset + HEADER_SIZE) & 0xFFFF));
+    return view;
+  }
+
+  String streamIdAt(int offset) {
+    ByteBuffer body = buffer.asReadOnlyBuffer();
+    body.position(offset + HEADER_SIZE);
+    byte[] streamId = new byte[body.getShort() & 0xFFFF];
+    body.get(streamId);
+    return new String(streamId, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Visits the stream id and the offset of every valid record of the complete batches, from the first one, and
+   * positions the next append right after the last batch. A torn or corrupted record, or a batch without its last
+   * record, ends the scan, and the rest of the segment is zeroed from the start of that batch.
+   *
+   * @return true if the segment ended with a torn or corrupted record, or with an incomplete batch
+   */
+  boolean recover(ObjIntConsumer<String> visitor) {
+    int position = 0, batchStart = 0, capacity = buffer.capacity();
+    boolean torn = false;
+    while (capacity - position >= HEADER_SIZE) {
+      int header = buffer.getInt(position);
+      if (header == 0) break;
+      int length = header & ~CONTINUED;
+      if (length < 2 || length > capacity - position - HEADER_SIZE || crcOf(position + HEADER_SIZE, length) != buffer.getInt(position + 4)) {
+        torn = true;
+        break;
+      }
+      position += HEADER_SIZE + length;
+      if ((header & CONTINUED) != 0) continue;
+      for (int offset = batchStart; offset < position; offset += HEADER_SIZE + lengthAt(offset)) visitor.accept(streamIdAt(offset), offset);
+      batchStart = position;
+    }
+    if (batchStart < position) torn = true;
+    position = batchStart;
+    writer.position(position);
+    if (torn) {
+      while (writer.hasRemaining()) writer.put((byte) 0);
+      writer.position(position);
+    }
+    return torn;
+  }
+
+  void force() {
+    buffer.force();
+  }
+
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private int lengthAt(int offset) {
+    return buffer.getInt(offset) & ~CONTINUED;
+  }
+
+  private int crcOf(int offset, int length) {
+    ByteBuffer body = buffer.asReadOnlyBuffer();
+    body.limit(offset + length);
+    body.position(offset);
+    CRC32 crc = new CRC32();
+    crc.update(body);
+    return (int) crc.getValue();
+  }
+}
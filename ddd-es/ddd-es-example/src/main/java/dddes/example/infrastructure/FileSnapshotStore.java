@@ -0,0 +1,94 @@
+package dddes.example.infrastructure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+
+import dddes.core.ISnapshotStore;
+import dddes.core.Snapshot;
+
+/**
+ * A snapshot store keeping the latest snapshot of every AggregateRoot in its own file of a directory, serialized with
+ * Java serialization. Snapshots are written to a temporary file first and then moved in place, so that readers never
+ * see a partially written snapshot. The version of the snapshot is written before it, so that a save can tell whether
+ * the stored snapshot is newer without deserializing its state.
+ */
+public class FileSnapshotStore<ID> implements ISnapshotStore<ID> {
+
+  private static final String EXTENSION = ".snapshot";
+
+  private final Path directory;
+
+  public FileSnapshotStore(Path directory) throws IOException {
+    Objects.requireNonNull(directory, "directory must not be null");
+    this.directory = Files.createDirectories(directory);
+  }
+
+  public synchronized void save(Snapshot<ID> snapshot) {
+    Objects.requireNonNull(snapshot, "snapshot must not be null");
+    if (versionOf(snapshot.getAggregateRootId()) > snapshot.getVersion()) return;
+
+    Path file = fileOf(snapshot.getAggregateRootId());
+    try {
+      Path temporaryFile = Files.createTempFile(directory, null, ".tmp");
+      try {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+          output.writeInt(snapshot.getVersion());
+          new ObjectOutputStream(output).writeObject(snapshot);
+        }
+        try {
+          Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+          Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+      finally {
+        Files.deleteIfExists(temporaryFile);
+      }
+    }
+    catch (IOException e) { throw new UncheckedIOException("cannot save " + snapshot, e); }
+  }
+
+  @SuppressWarnings("unchecked")
+  public Snapshot<ID> getLatest(ID aggregateRootId) {
+    Objects.requireNonNull(aggregateRootId, "aggregateRootId must not be null");
+    try (InputStream input = new BufferedInputStream(Files.newInputStream(fileOf(aggregateRootId)))) {
+      new DataInputStream(input).readInt();
+      return (Snapshot<ID>) new ObjectInputStream(input).readObject();
+    }
+    catch (NoSuchFileException e) { return null; }
+    catch (IOException e) { throw new UncheckedIOException("cannot read the snapshot of " + aggregateRootId, e); }
+    catch (ClassNotFoundException e) { throw new IllegalStateException("cannot read the snapshot of " + aggregateRootId, e); }
+  }
+
+  /** @return the version of the stored snapshot, read from its header, or 0 if there is none */
+  private int versionOf(ID aggregateRootId) {
+    try (DataInputStream input = new DataInputStream(Files.newInputStream(fileOf(aggregateRootId)))) {
+      return input.readInt();
+    }
+    catch (NoSuchFileException e) { return 0; }
+    catch (IOException e) { throw new UncheckedIOException("cannot read the snapshot version of " + aggregateRootId, e); }
+  }
+
+  private Path fileOf(ID aggregateRootId) {
+    try {
+      return directory.resolve(URLEncoder.encode(aggregateRootId.toString(), "UTF-8") + EXTENSION);
+    }
+    catch (UnsupportedEncodingException e) { throw new IllegalStateException(e); }
+  }
+}
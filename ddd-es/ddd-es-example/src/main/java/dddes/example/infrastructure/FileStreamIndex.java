@@ -0,0 +1,79 @@
+package dddes.example.infrastructure;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * The locations of the events of a single stream within the segments of a {@link FileEventStore}, each one packing the
+ * segment number and the offset of the record. Appends must be serialized by the store, while reads never lock: a
+ * reader first reads the (volatile) size and then the array, which is always published before the size covering its
+ * new elements.
+ */
+final class FileStreamIndex {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private volatile long[] locations;
+  private volatile int size;
+
+  FileStreamIndex() {
+    this.locations = new long[INITIAL_CAPACITY];
+  }
+
+  static long location(int segment, int offset) {
+    return (long) segment << 32 | offset & 0xFFFFFFFFL;
+  }
+
+  static int segmentOf(long location) {
+    return (int) (location >>> 32);
+  }
+
+  static int offsetOf(long location) {
+    return (int) location;
+  }
+
+  int size() {
+    return size;
+  }
+
+  void append(long[] batch) {
+    int newSize = size + batch.length;
+    long[] target = locations;
+    if (newSize > target.length) target = Arrays.copyOf(target, Math.max(newSize, target.length * 2));
+    System.arraycopy(batch, 0, target, size, batch.length);
+    locations = target;
+    size = newSize;
+  }
+
+  void append(long location) {
+    int size = this.size;
+    long[] target = locations;
+    if (size == target.length) target = Arrays.copyOf(target, size * 2);
+    target[size] = location;
+    locations = target;
+    this.size = size + 1;
+  }
+
+  /** @return the position of the given location, which increase along the stream */
+  long positionOf(long location) {
+    int size = this.size;
+    return Arrays.binarySearch(locations, 0, size, location);
+  }
+
+  /** @return at most maxCount locations from the given position */
+  LongStream locations(long fromPosition, int maxCount) {
+    int size = this.size;
+    long[] locations = this.locations;
+    int from = (int) Math.min(fromPosition, size);
+    return Arrays.stream(locations, from, (int) Math.min((long) from + maxCount, size));
+  }
+
+  /** @return at most maxCount locations from the given position down to the first one */
+  LongStream locationsBackward(long fromPosition, int maxCount) {
+    int size = this.size;
+    long[] locations = this.locations;
+    int from = (int) Math.min(fromPosition, size - 1L);
+    return IntStream.range(0, Math.min(maxCount, from + 1)).mapToLong(i -> locations[from - i]);
+  }
+}
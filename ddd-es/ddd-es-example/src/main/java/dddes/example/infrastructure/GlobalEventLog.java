@@ -0,0 +1,97 @@
+package dddes.example.infrastructure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import dddes.core.RecordedEvent;
+import dddes.core.Tombstone;
+
+/**
+ * The global log of an {@link InMemoryEventStore}, holding the events of all the streams in commit order. A writer
+ * reserves a range of global positions with a single atomic increment, so that writers of different streams never
+ * lock each other, and then publishes its events into the slots of the reserved range. The slots are stored in chunks,
+ * allocated as the log grows.
+ *
+ * A reader stops at the first empty slot, i.e. before the first reserved position whose event is not published yet, so
+ * that the log never shows gaps: a position is read only once all the previous ones are. A writer failing before it
+ * has published its events abandons the positions it reserved, which then hold a {@link Tombstone}, so that readers
+ * don't stop there forever.
+ */
+final class GlobalEventLog<ID> {
+
+  private static final int CHUNK_BITS = 14;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private final AtomicLong nextPosition;
+  private final AtomicLong committedPosition;
+  private volatile AtomicReferenceArray<RecordedEvent<ID>>[] chunks;
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  GlobalEventLog() {
+    this.nextPosition = new AtomicLong();
+    this.committedPosition = new AtomicLong();
+    this.chunks = new AtomicReferenceArray[16];
+  }
+
+  /** @return the first of count consecutive global positions reserved for the caller, which must publish all of them */
+  long reserve(int count) {
+    return nextPosition.getAndAdd(count);
+  }
+
+  void publish(RecordedEvent<ID> event) {
+    long position = event.getGlobalPosition();
+    chunkOf(position).set((int) (position & CHUNK_MASK), event);
+  }
+
+  /** Publishes a tombstone at every position of the range not published yet, without replacing the events published */
+  void abandon(ID streamId, long fromPosition, int count) {
+    for (long position = fromPosition; position < fromPosition + count; position++)
+      chunkOf(position).compareAndSet((int) (position & CHUNK_MASK), null, new RecordedEvent<>(streamId, -1, position, Tombstone.INSTANCE));
+  }
+
+  /** @return at most maxCount events from the given position, stopping at the first one not yet published */
+  List<RecordedEvent<ID>> read(long fromPosition, int maxCount) {
+    List<RecordedEvent<ID>> events = new ArrayList<>(Math.min(maxCount, 1024));
+    for (long position = fromPosition; events.size() < maxCount; position++) {
+      RecordedEvent<ID> event = get(position);
+      if (event == null) break;
+      events.add(event);
+    }
+    return events;
+  }
+
+  /** @return the number of events published without gaps from the beginning of the log */
+  long committedPosition() {
+    long position = committedPosition.get();
+    while (get(position) != null) position++;
+    return committedPosition.accumulateAndGet(position, Math::max);
+  }
+
+  private RecordedEvent<ID> get(long position) {
+    AtomicReferenceArray<RecordedEvent<ID>>[] chunks = this.chunks;
+    long index = position >>> CHUNK_BITS;
+    if (index >= chunks.length) return null;
+    AtomicReferenceArray<RecordedEvent<ID>> chunk = chunks[(int) index];
+    return chunk != null ? chunk.get((int) (position & CHUNK_MASK)) : null;
+  }
+
+  private AtomicReferenceArray<RecordedEvent<ID>> chunkOf(long position) {
+    AtomicReferenceArray<RecordedEvent<ID>>[] chunks = this.chunks;
+    long index = position >>> CHUNK_BITS;
+    if (index < chunks.length && chunks[(int) index] != null) return chunks[(int) index];
+    return allocateChunk(index);
+  }
+
+  private synchronized AtomicReferenceArray<RecordedEvent<ID>> allocateChunk(long index) {
+    if (index >= Integer.MAX_VALUE) throw new IllegalStateException("global log full");
+    AtomicReferenceArray<RecordedEvent<ID>>[] chunks = this.chunks;
+    if (index >= chunks.length) chunks = Arrays.copyOf(chunks, (int) Math.min(Integer.MAX_VALUE, Math.max(index + 1, chunks.length * 2L)));
+    if (chunks[(int) index] == null) chunks[(int) index] = new AtomicReferenceArray<>(CHUNK_SIZE);
+    this.chunks = chunks;
+    return chunks[(int) index];
+  }
+}
@@ -0,0 +1,26 @@
+package dddes.example.infrastructure;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dddes.core.ICheckpointStore;
+
+/** A thread-safe checkpoint store keeping the position of every subscription in memory */
+public class InMemoryCheckpointStore implements ICheckpointStore {
+
+  private final ConcurrentHashMap<String, Long> checkpoints;
+
+  public InMemoryCheckpointStore() {
+    this.checkpoints = new ConcurrentHashMap<>();
+  }
+
+  public Long load(String subscriptionName) {
+    Objects.requireNonNull(subscriptionName, "subscriptionName must not be null");
+    return checkpoints.get(subscriptionName);
+  }
+
+  public void save(String subscriptionName, long position) {
+    Objects.requireNonNull(subscriptionName, "subscriptionName must not be null");
+    checkpoints.put(subscriptionName, position);
+  }
+}
@@ -1,20 +1,59 @@
 package dddes.example.infrastructure;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.ToLongFunction;
 import java.util.stream.Stream;
-import java.util.HashMap;
 import java.util.NoSuchElementException;
-import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import dddes.core.AggregateId;
 import dddes.core.Event;
+import dddes.core.EventIndex;
 import dddes.core.IEventStore;
+import dddes.core.RecordedEvent;
+import dddes.core.StreamAppend;
 
+/**
+ * A thread-safe in-memory event store. Appends to a stream are atomic and serialized on that stream only, so writers
+ * of different streams never contend, and reads never lock. Every appended event also gets a position in a global log,
+ * reserved without locking. An atomic append to several streams locks them all, in their creation order so that
+ * overlapping appends never deadlock, and its events follow each other in the global log. Readers of the streams may
+ * still briefly see some of the streams appended and not the others.
+ * 
+ * Streams identified by an {@link AggregateId} are kept in a map keyed by the two longs of their id, without any entry
+ * object, and looked up without hashing the id as a String.
+ * 
+ * The secondary indexes given to the store are updated by every append once its events are written, before it returns.
+ */
 public class InMemoryEventStore<ID> implements IEventStore<ID> {
 
-	private final HashMap<ID, ArrayList<Event>> store;
+	private final ConcurrentHashMap<ID, InMemoryEventStream<ID>> store;
+	private final LongPairHashMap<InMemoryEventStream<ID>> compactStore;
+	private final GlobalEventLog<ID> globalLog;
+	private final AtomicLong streamOrdinals;
+	private final SecondaryIndexes<ID> indexes;
 
 	public InMemoryEventStore() {
-		this.store = new HashMap<ID, ArrayList<Event>>();
+		this(new EventIndex<?>[0]);
+	}
+
+	/** @param indexes: the secondary indexes maintained by the store, with distinct names */
+	public InMemoryEventStore(EventIndex<?>... indexes) {
+		Objects.requireNonNull(indexes, "indexes must not be null");
+		this.store = new ConcurrentHashMap<ID, InMemoryEventStream<ID>>();
+		this.compactStore = new LongPairHashMap<InMemoryEventStream<ID>>();
+		this.globalLog = new GlobalEventLog<ID>();
+		this.streamOrdinals = new AtomicLong();
+		this.indexes = new SecondaryIndexes<ID>();
+		for (EventIndex<?> index : indexes) this.indexes.add(index);
 	}
 
 	public void appendEventsToStream(ID streamId, Stream<Event> events) {
@@ -26,25 +65,161 @@ public class InMemoryEventStore<ID> implements IEventStore<ID> {
 		Objects.requireNonNull(streamId, "streamId must not be null");
 		Objects.requireNonNull(events, "events must not be null");
 
-		if (!store.containsKey(streamId))
-			store.put(streamId, new ArrayList<Event>());
+		Event[] batch = events.toArray(Event[]::new);
+		streamFor(streamId).append(batch, expectedLastPosition);
+		indexes.index(streamId, batch);
+	}
+
+	@Override
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void appendEventsToStreams(List<StreamAppend<ID>> appends) throws ConcurrentModificationException {
+
+		Objects.requireNonNull(appends, "appends must not be null");
+		HashSet<ID> streamIds = new HashSet<>();
+		for (StreamAppend<ID> append : appends)
+			if (!streamIds.add(append.getStreamId())) throw new IllegalArgumentException("stream appended more than once: " + append.getStreamId());
 
-		ArrayList<Event> stream = store.get(streamId);		
-		int currentLastPosition = stream.size();
-		
-		if (expectedLastPosition >= 0 && currentLastPosition != expectedLastPosition)
-			throw new ConcurrentModificationException(String.format("Expected: %s - Actual: %s", expectedLastPosition, currentLastPosition));
-		
-		events.forEach(event -> stream.add(event));				
+		InMemoryEventStream<ID>[] streams = new InMemoryEventStream[appends.size()];
+		Event[][] batches = new Event[appends.size()][];
+		long[] expectedLastPositions = new long[appends.size()];
+		Integer[] lockOrder = new Integer[appends.size()];
+		for (int i = 0; i < streams.length; i++) {
+			streams[i] = streamFor(appends.get(i).getStreamId());
+			batches[i] = appends.get(i).getEvents().toArray(new Event[0]);
+			expectedLastPositions[i] = appends.get(i).getExpectedLastPosition();
+			lockOrder[i] = i;
+		}
+		Arrays.sort(lockOrder, Comparator.comparingLong(i -> streams[i].ordinal()));
+		appendLocked(streams, batches, expectedLastPositions, lockOrder, 0);
+		for (int i = 0; i < streams.length; i++) indexes.index(appends.get(i).getStreamId(), batches[i]);
 	}
 
 	public Stream<Event> getStream(ID streamId) throws NoSuchElementException {
+		return streamOf(streamId).stream();
+	}
+
+	@Override
+	public Stream<Event> getStream(ID streamId, long fromPosition, int maxCount) throws NoSuchElementException {
+		requireValidRange(fromPosition, maxCount);
+		return streamOf(streamId).stream(fromPosition, maxCount);
+	}
+
+	@Override
+	public Map<ID, Stream<Event>> getStreams(Collection<ID> streamIds, ToLongFunction<? super ID> fromPosition) {
+		Objects.requireNonNull(streamIds, "streamIds must not be null");
+		Objects.requireNonNull(fromPosition, "fromPosition must not be null");
+		Map<ID, Stream<Event>> streams = new LinkedHashMap<>();
+		for (ID streamId : streamIds) {
+			InMemoryEventStream<ID> stream = find(Objects.requireNonNull(streamId));
+			if (stream == null) continue;
+			long position = fromPosition.applyAsLong(streamId);
+			requireValidRange(position, Integer.MAX_VALUE);
+			streams.put(streamId, stream.stream(position, Integer.MAX_VALUE));
+		}
+		return streams;
+	}
+
+	@Override
+	public Stream<ID> findStreams(String indexName, String key) throws NoSuchElementException {
+		return indexes.find(indexName, key);
+	}
+
+	@Override
+	public boolean hasIndex(String indexName) {
+		return indexes.contains(indexName);
+	}
+
+	@Override
+	public boolean supportsAtomicAppends() {
+		return true;
+	}
+
+	@Override
+	public boolean hasGlobalLog() {
+		return true;
+	}
+
+	@Override
+	public Stream<Event> getStreamBackward(ID streamId, long fromPosition, int maxCount) throws NoSuchElementException {
+		requireValidRange(fromPosition, maxCount);
+		return streamOf(streamId).streamBackward(fromPosition, maxCount);
+	}
+
+	@Override
+	public Stream<RecordedEvent<ID>> readAll(long fromGlobalPosition, int maxCount) {
+		requireValidRange(fromGlobalPosition, maxCount);
+		return globalLog.read(fromGlobalPosition, maxCount).stream();
+	}
+
+	@Override
+	public long getLastGlobalPosition() {
+		return globalLog.committedPosition();
+	}
+
+	private InMemoryEventStream<ID> streamOf(ID streamId) throws NoSuchElementException {
 	  
 		Objects.requireNonNull(streamId);
 
-		if (!store.containsKey(streamId))
+		InMemoryEventStream<ID> stream = find(streamId);
+		if (stream == null)
 			throw new NoSuchElementException("Aggregate not found: " + streamId);
 
-		return store.get(streamId).stream();
+		return stream;
+	}
+
+	/** @return the stream, or null if it doesn't exist */
+	private InMemoryEventStream<ID> find(ID streamId) {
+		if (!(streamId instanceof AggregateId)) return store.get(streamId);
+		AggregateId id = (AggregateId) streamId;
+		return compactStore.get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+	}
+
+	private InMemoryEventStream<ID> streamFor(ID streamId) {
+		if (!(streamId instanceof AggregateId)) return store.computeIfAbsent(streamId, id -> new InMemoryEventStream<ID>(id, streamOrdinals.getAndIncrement(), globalLog));
+		AggregateId id = (AggregateId) streamId;
+		return compactStore.computeIfAbsent(id.getMostSignificantBits(), id.getLeastSignificantBits(), () -> new InMemoryEventStream<ID>(streamId, streamOrdinals.getAndIncrement(), globalLog));
+	}
+
+	/**
+	 * Locks the streams one after the other in the given order, and then appends to all of them. The events of every
+	 * stream are recorded before any is written, and the reserved global positions are abandoned if the append fails.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void appendLocked(InMemoryEventStream<ID>[] streams, Event[][] batches, long[] expectedLastPositions, Integer[] lockOrder, int locked) {
+		if (locked < streams.length) {
+			synchronized (streams[lockOrder[locked]]) {
+				appendLocked(streams, batches, expectedLastPositions, lockOrder, locked + 1);
+			}
+			return;
+		}
+		int count = 0;
+		for (int i = 0; i < streams.length; i++) {
+			streams[i].requireExpectedPosition(expectedLastPositions[i]);
+			count += batches[i].length;
+		}
+		if (count == 0) return;
+		long firstGlobalPosition = globalLog.reserve(count);
+		try {
+			RecordedEvent<ID>[][] records = new RecordedEvent[streams.length][];
+			long globalPosition = firstGlobalPosition;
+			for (int i = 0; i < streams.length; i++) {
+				records[i] = streams[i].record(batches[i], globalPosition);
+				globalPosition += batches[i].length;
+			}
+			for (int i = 0; i < streams.length; i++) streams[i].write(records[i]);
+		}
+		catch (RuntimeException | Error e) {
+			long globalPosition = firstGlobalPosition;
+			for (int i = 0; i < streams.length; i++) {
+				streams[i].abandon(globalPosition, batches[i].length, e);
+				globalPosition += batches[i].length;
+			}
+			throw e;
+		}
+	}
+
+	private static void requireValidRange(long fromPosition, int maxCount) {
+		if (fromPosition < 0) throw new IllegalArgumentException("fromPosition must not be negative");
+		if (maxCount < 0) throw new IllegalArgumentException("maxCount must not be negative");
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,116 @@
+package dddes.example.infrastructure;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import dddes.core.Event;
+import dddes.core.RecordedEvent;
+
+/**
+ * The events of a single stream. Appends are serialized on the stream itself and check the expected position
+ * atomically, while reads never lock: a reader first reads the (volatile) size and then the array, which is always
+ * published before the size covering its new elements. Appended events are then published to the global log, under
+ * positions reserved while holding the stream, so that the events of a stream are in the same order in both.
+ */
+final class InMemoryEventStream<ID> {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final ID streamId;
+  private final long ordinal;
+  private final GlobalEventLog<ID> globalLog;
+  private volatile Event[] events;
+  private volatile int size;
+
+  /** @param ordinal: the creation order of the stream, in which streams appended together are locked */
+  InMemoryEventStream(ID streamId, long ordinal, GlobalEventLog<ID> globalLog) {
+    this.streamId = streamId;
+    this.ordinal = ordinal;
+    this.globalLog = globalLog;
+    this.events = new Event[INITIAL_CAPACITY];
+  }
+
+  int size() {
+    return size;
+  }
+
+  long ordinal() {
+    return ordinal;
+  }
+
+  synchronized void append(Event[] batch, long expectedLastPosition) throws ConcurrentModificationException {
+    requireExpectedPosition(expectedLastPosition);
+    if (batch.length == 0) return;
+    long globalPosition = globalLog.reserve(batch.length);
+    try {
+      write(record(batch, globalPosition));
+    }
+    catch (RuntimeException | Error e) {
+      abandon(globalPosition, batch.length, e);
+      throw e;
+    }
+  }
+
+  /** The caller must hold the stream */
+  void requireExpectedPosition(long expectedLastPosition) throws ConcurrentModificationException {
+    if (expectedLastPosition >= 0 && size != expectedLastPosition)
+      throw new ConcurrentModificationException(String.format("Expected: %s - Actual: %s", expectedLastPosition, size));
+  }
+
+  /**
+   * @return the events of the batch as recorded under the global positions reserved from the given one, not written
+   *         yet. The caller must hold the stream.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  RecordedEvent<ID>[] record(Event[] batch, long globalPosition) {
+    RecordedEvent<ID>[] records = new RecordedEvent[batch.length];
+    for (int i = 0; i < batch.length; i++) records[i] = new RecordedEvent<>(streamId, size + i, globalPosition + i, batch[i]);
+    return records;
+  }
+
+  /** Writes the recorded events and publishes them to the global log. The caller must hold the stream. */
+  void write(RecordedEvent<ID>[] records) {
+    if (records.length == 0) return;
+    int currentLastPosition = size;
+    int newSize = currentLastPosition + records.length;
+    Event[] target = events;
+    if (newSize > target.length) target = Arrays.copyOf(target, Math.max(newSize, target.length * 2));
+    for (int i = 0; i < records.length; i++) target[currentLastPosition + i] = records[i].getEvent();
+    events = target;
+    size = newSize;
+    for (RecordedEvent<ID> record : records) globalLog.publish(record);
+  }
+
+  /** Abandons the global positions reserved by a failed append, adding any further failure to the first one */
+  void abandon(long globalPosition, int count, Throwable failure) {
+    try {
+      globalLog.abandon(streamId, globalPosition, count);
+    }
+    catch (RuntimeException | Error e) {
+      failure.addSuppressed(e);
+    }
+  }
+
+  Stream<Event> stream() {
+    int size = this.size;
+    return Arrays.stream(events, 0, size);
+  }
+
+  /** @return a view of at most maxCount events from the given position, without copying the stream */
+  Stream<Event> stream(long fromPosition, int maxCount) {
+    int size = this.size;
+    Event[] events = this.events;
+    int from = (int) Math.min(fromPosition, size);
+    return Arrays.stream(events, from, (int) Math.min((long) from + maxCount, size));
+  }
+
+  /** @return a view of at most maxCount events from the given position down to the first one */
+  Stream<Event> streamBackward(long fromPosition, int maxCount) {
+    int size = this.size;
+    Event[] events = this.events;
+    int from = (int) Math.min(fromPosition, size - 1L);
+    return IntStream.range(0, Math.min(maxCount, from + 1)).mapToObj(i -> events[from - i]);
+  }
+}
@@ -0,0 +1,27 @@
+package dddes.example.infrastructure;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dddes.core.ISnapshotStore;
+import dddes.core.Snapshot;
+
+/** A thread-safe snapshot store keeping the latest snapshot of every AggregateRoot in memory */
+public class InMemorySnapshotStore<ID> implements ISnapshotStore<ID> {
+
+  private final ConcurrentHashMap<ID, Snapshot<ID>> snapshots;
+
+  public InMemorySnapshotStore() {
+    this.snapshots = new ConcurrentHashMap<>();
+  }
+
+  public void save(Snapshot<ID> snapshot) {
+    Objects.requireNonNull(snapshot, "snapshot must not be null");
+    snapshots.merge(snapshot.getAggregateRootId(), snapshot, (current, saved) -> saved.getVersion() >= current.getVersion() ? saved : current);
+  }
+
+  public Snapshot<ID> getLatest(ID aggregateRootId) {
+    Objects.requireNonNull(aggregateRootId, "aggregateRootId must not be null");
+    return snapshots.get(aggregateRootId);
+  }
+}
@@ -0,0 +1,41 @@
+package dddes.example.infrastructure;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import dddes.core.Event;
+import dddes.core.IEventPublisher;
+
+/**
+ * An event publisher decorator recording, in a {@link MetricsRegistry}, the duration of every publish in nanoseconds
+ * ("publisher.latency") and the publishes that failed ("publisher.failures")
+ */
+public class InstrumentedEventPublisher implements IEventPublisher {
+
+  private final IEventPublisher eventPublisher;
+  private final Histogram latency;
+  private final LongAdder failures;
+
+  public InstrumentedEventPublisher(IEventPublisher eventPublisher, MetricsRegistry metrics) {
+    Objects.requireNonNull(eventPublisher, "eventPublisher must be not null");
+    Objects.requireNonNull(metrics, "metrics must be not null");
+    this.eventPublisher = eventPublisher;
+    this.latency = metrics.histogram("publisher.latency");
+    this.failures = metrics.counter("publisher.failures");
+  }
+
+  @Override
+  public void publish(Event event) {
+    long start = System.nanoTime();
+    try {
+      eventPublisher.publish(event);
+    }
+    catch (RuntimeException e) {
+      failures.increment();
+      throw e;
+    }
+    finally {
+      latency.record(System.nanoTime() - start);
+    }
+  }
+}
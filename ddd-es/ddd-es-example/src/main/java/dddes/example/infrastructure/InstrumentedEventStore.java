@@ -0,0 +1,214 @@
+package dddes.example.infrastructure;
+
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import dddes.core.Event;
+import dddes.core.IEventStore;
+import dddes.core.RecordedEvent;
+import dddes.core.StreamAppend;
+
+/**
+ * An event store decorator recording, in a {@link MetricsRegistry}:
+ * <ul>
+ * <li>eventstore.append.latency: the duration of the appends, in nanoseconds</li>
+ * <li>eventstore.append.events: the number of events per append, of all the streams for an append to several ones</li>
+ * <li>eventstore.append.conflicts: the appends rejected with a ConcurrentModificationException</li>
+ * <li>eventstore.read.latency: the duration of the stream reads, from the call until the stream has been consumed</li>
+ * <li>eventstore.read.events: the number of events per stream read</li>
+ * <li>eventstore.readall.latency and eventstore.readall.events: the same for the reads of the global log</li>
+ * </ul>
+ * Reads are only recorded once their stream has been fully consumed.
+ */
+public class InstrumentedEventStore<ID> implements IEventStore<ID> {
+
+  private final IEventStore<ID> eventStore;
+  private final Histogram appendLatency;
+  private final Histogram appendEvents;
+  private final LongAdder appendConflicts;
+  private final Histogram readLatency;
+  private final Histogram readEvents;
+  private final Histogram readAllLatency;
+  private final Histogram readAllEvents;
+
+  public InstrumentedEventStore(IEventStore<ID> eventStore, MetricsRegistry metrics) {
+    Objects.requireNonNull(eventStore, "eventStore must be not null");
+    Objects.requireNonNull(metrics, "metrics must be not null");
+    this.eventStore = eventStore;
+    this.appendLatency = metrics.histogram("eventstore.append.latency");
+    this.appendEvents = metrics.histogram("eventstore.append.events");
+    this.appendConflicts = metrics.counter("eventstore.append.conflicts");
+    this.readLatency = metrics.histogram("eventstore.read.latency");
+    this.readEvents = metrics.histogram("eventstore.read.events");
+    this.readAllLatency = metrics.histogram("eventstore.readall.latency");
+    this.readAllEvents = metrics.histogram("eventstore.readall.events");
+  }
+
+  @Override
+  public void appendEventsToStream(ID streamId, Stream<Event> events) {
+    appendEventsToStream(streamId, events, -1);
+  }
+
+  @Override
+  public void appendEventsToStream(ID streamId, Stream<Event> events, long expectedLastPosition) {
+    Objects.requireNonNull(events, "events must not be null");
+    long[] count = new long[1];
+    long start = System.nanoTime();
+    try {
+      eventStore.appendEventsToStream(streamId, events.peek(e -> count[0]++), expectedLastPosition);
+    }
+    catch (ConcurrentModificationException e) {
+      appendConflicts.increment();
+      throw e;
+    }
+    finally {
+      appendLatency.record(System.nanoTime() - start);
+    }
+    appendEvents.record(count[0]);
+  }
+
+  @Override
+  public void appendEventsToStreams(List<StreamAppend<ID>> appends) {
+    Objects.requireNonNull(appends, "appends must not be null");
+    long start = System.nanoTime();
+    try {
+      eventStore.appendEventsToStreams(appends);
+    }
+    catch (ConcurrentModificationException e) {
+      appendConflicts.increment();
+      throw e;
+    }
+    finally {
+      appendLatency.record(System.nanoTime() - start);
+    }
+    appendEvents.record(appends.stream().mapToLong(append -> append.getEvents().size()).sum());
+  }
+
+  @Override
+  public Stream<Event> getStream(ID streamId) {
+    long start = System.nanoTime();
+    return measured(eventStore.getStream(streamId), start, readLatency, readEvents);
+  }
+
+  @Override
+  public Stream<Event> getStream(ID streamId, long fromPosition) {
+    long start = System.nanoTime();
+    return measured(eventStore.getStream(streamId, fromPosition), start, readLatency, readEvents);
+  }
+
+  @Override
+  public Stream<Event> getStream(ID streamId, long fromPosition, int maxCount) {
+    long start = System.nanoTime();
+    return measured(eventStore.getStream(streamId, fromPosition, maxCount), start, readLatency, readEvents);
+  }
+
+  /** Every stream read is recorded on its own, from the call until it has been consumed */
+  @Override
+  public Map<ID, Stream<Event>> getStreams(Collection<ID> streamIds, ToLongFunction<? super ID> fromPosition) {
+    long start = System.nanoTime();
+    Map<ID, Stream<Event>> streams = new LinkedHashMap<>(eventStore.getStreams(streamIds, fromPosition));
+    streams.replaceAll((streamId, stream) -> measured(stream, start, readLatency, readEvents));
+    return streams;
+  }
+
+  @Override
+  public Stream<ID> findStreams(String indexName, String key) {
+    return eventStore.findStreams(indexName, key);
+  }
+
+  @Override
+  public Stream<Event> getStreamBackward(ID streamId, long fromPosition, int maxCount) {
+    long start = System.nanoTime();
+    return measured(eventStore.getStreamBackward(streamId, fromPosition, maxCount), start, readLatency, readEvents);
+  }
+
+  @Override
+  public Stream<RecordedEvent<ID>> readAll(long fromGlobalPosition, int maxCount) {
+    long start = System.nanoTime();
+    return measured(eventStore.readAll(fromGlobalPosition, maxCount), start, readAllLatency, readAllEvents);
+  }
+
+  @Override
+  public long getLastGlobalPosition() {
+    return eventStore.getLastGlobalPosition();
+  }
+
+  @Override
+  public boolean supportsAtomicAppends() {
+    return eventStore.supportsAtomicAppends();
+  }
+
+  @Override
+  public boolean hasIndex(String indexName) {
+    return eventStore.hasIndex(indexName);
+  }
+
+  @Override
+  public boolean hasGlobalLog() {
+    return eventStore.hasGlobalLog();
+  }
+
+  /**
+   * @return the stream, recording its latency and length once consumed; it is no longer SIZED, so that operations
+   *         like count() consume it as well
+   */
+  private static <T> Stream<T> measured(Stream<T> stream, long start, Histogram latency, Histogram length) {
+    Spliterator<T> source = stream.spliterator();
+    return StreamSupport.stream(new Spliterator<T>() {
+
+      private long count;
+      private boolean recorded;
+
+      @Override
+      public boolean tryAdvance(Consumer<? super T> action) {
+        if (source.tryAdvance(action)) {
+          count++;
+          return true;
+        }
+        record();
+        return false;
+      }
+
+      @Override
+      public void forEachRemaining(Consumer<? super T> action) {
+        source.forEachRemaining(e -> {
+          count++;
+          action.accept(e);
+        });
+        record();
+      }
+
+      @Override
+      public Spliterator<T> trySplit() {
+        return null;
+      }
+
+      @Override
+      public long estimateSize() {
+        return source.estimateSize();
+      }
+
+      @Override
+      public int characteristics() {
+        return source.characteristics() & ~(Spliterator.SIZED | Spliterator.SUBSIZED);
+      }
+
+      private void record() {
+        if (recorded) return;
+        recorded = true;
+        latency.record(System.nanoTime() - start);
+        length.record(count);
+      }
+    }, false).onClose(stream::close);
+  }
+}
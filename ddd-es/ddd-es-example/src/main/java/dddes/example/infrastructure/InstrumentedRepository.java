@@ -0,0 +1,126 @@
+package dddes.example.infrastructure;
+
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import dddes.core.IAggregateRoot;
+import dddes.core.IRepository;
+import dddes.core.LoadResult;
+
+/**
+ * A repository decorator recording, in a {@link MetricsRegistry}, under "repository.&lt;AggregateRoot type&gt;":
+ * <ul>
+ * <li>load.latency: the duration of getById, i.e. of the replay, in nanoseconds</li>
+ * <li>load.version: the version of the loaded AggregateRoots, i.e. the length of their stream</li>
+ * <li>load.misses: the AggregateRoots not found</li>
+ * <li>loadmany.latency: the duration of getByIds, in nanoseconds, its AggregateRoots being counted in load.version
+ * and load.misses</li>
+ * <li>save.latency: the duration of save, in nanoseconds</li>
+ * <li>save.conflicts: the saves rejected with a ConcurrentModificationException</li>
+ * <li>update.latency: the duration of update, retries included, in nanoseconds</li>
+ * <li>update.retries: the number of retries of every update</li>
+ * <li>update.conflicts: the updates that still conflicted after their last retry</li>
+ * </ul>
+ */
+public class InstrumentedRepository<T extends IAggregateRoot<ID>, ID> implements IRepository<T, ID> {
+
+  private final IRepository<T, ID> repository;
+  private final Histogram loadLatency;
+  private final Histogram loadVersion;
+  private final LongAdder loadMisses;
+  private final Histogram loadManyLatency;
+  private final Histogram saveLatency;
+  private final LongAdder saveConflicts;
+  private final Histogram updateLatency;
+  private final Histogram updateRetries;
+  private final LongAdder updateConflicts;
+
+  public InstrumentedRepository(IRepository<T, ID> repository, Class<T> aggregateRootType, MetricsRegistry metrics) {
+    Objects.requireNonNull(repository, "repository must be not null");
+    Objects.requireNonNull(aggregateRootType, "aggregateRootType must be not null");
+    Objects.requireNonNull(metrics, "metrics must be not null");
+    String prefix = "repository." + aggregateRootType.getSimpleName() + ".";
+    this.repository = repository;
+    this.loadLatency = metrics.histogram(prefix + "load.latency");
+    this.loadVersion = metrics.histogram(prefix + "load.version");
+    this.loadMisses = metrics.counter(prefix + "load.misses");
+    this.loadManyLatency = metrics.histogram(prefix + "loadmany.latency");
+    this.saveLatency = metrics.histogram(prefix + "save.latency");
+    this.saveConflicts = metrics.counter(prefix + "save.conflicts");
+    this.updateLatency = metrics.histogram(prefix + "update.latency");
+    this.updateRetries = metrics.histogram(prefix + "update.retries");
+    this.updateConflicts = metrics.counter(prefix + "update.conflicts");
+  }
+
+  @Override
+  public T getById(ID aggregateRootId) {
+    long start = System.nanoTime();
+    T aggregateRoot;
+    try {
+      aggregateRoot = repository.getById(aggregateRootId);
+    }
+    catch (NoSuchElementException e) {
+      loadMisses.increment();
+      throw e;
+    }
+    loadLatency.record(System.nanoTime() - start);
+    loadVersion.record(aggregateRoot.getVersion());
+    return aggregateRoot;
+  }
+
+  @Override
+  public LoadResult<T, ID> getByIds(Collection<ID> aggregateRootIds) {
+    long start = System.nanoTime();
+    LoadResult<T, ID> result = repository.getByIds(aggregateRootIds);
+    loadManyLatency.record(System.nanoTime() - start);
+    result.getLoaded().values().forEach(aggregateRoot -> loadVersion.record(aggregateRoot.getVersion()));
+    loadMisses.add(result.getMissing().size());
+    return result;
+  }
+
+  @Override
+  public void save(T aggregateRoot) {
+    save(aggregateRoot, -1);
+  }
+
+  @Override
+  public void save(T aggregateRoot, int expectedVersion) {
+    long start = System.nanoTime();
+    try {
+      repository.save(aggregateRoot, expectedVersion);
+    }
+    catch (ConcurrentModificationException e) {
+      saveConflicts.increment();
+      throw e;
+    }
+    finally {
+      saveLatency.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public T update(ID aggregateRootId, Consumer<? super T> command) {
+    Objects.requireNonNull(command, "command must be not null");
+    long start = System.nanoTime();
+    // The command is applied once per attempt
+    int[] attempts = new int[1];
+    try {
+      return repository.update(aggregateRootId, aggregateRoot -> {
+        attempts[0]++;
+        command.accept(aggregateRoot);
+      });
+    }
+    catch (ConcurrentModificationException e) {
+      updateConflicts.increment();
+      throw e;
+    }
+    finally {
+      if (attempts[0] > 0) updateRetries.record(attempts[0] - 1);
+      updateLatency.record(System.nanoTime() - start);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package dddes.example.infrastructure;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import dddes.core.Event;
+import dddes.core.IEventSerializer;
+
+/** An event serializer based on Java serialization, which reads Events straight from the given buffers */
+public class JavaEventSerializer implements IEventSerializer {
+
+  public byte[] serialize(Event event) {
+    Objects.requireNonNull(event, "event must be not null");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+      output.writeObject(event);
+    }
+    catch (IOException e) { throw new UncheckedIOException("cannot serialize " + event, e); }
+    return bytes.toByteArray();
+  }
+
+  public Event deserialize(ByteBuffer buffer) {
+    Objects.requireNonNull(buffer, "buffer must be not null");
+    try (ObjectInputStream input = new ObjectInputStream(new ByteBufferInputStream(buffer))) {
+      return (Event) input.readObject();
+    }
+    catch (IOException e) { throw new UncheckedIOException("cannot deserialize an event", e); }
+    catch (ClassNotFoundException e) { throw new IllegalStateException("cannot deserialize an event", e); }
+  }
+
+  private static final class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) return 0;
+      if (!buffer.hasRemaining()) return -1;
+      length = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, length);
+      return length;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
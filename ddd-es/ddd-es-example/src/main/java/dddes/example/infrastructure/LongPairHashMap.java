@@ -0,0 +1,107 @@
+package dddes.example.infrastructure;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * A hash map keyed by pairs of longs, e.g. the two halves of an AggregateId, with open addressing and linear probing
+ * over flat arrays: an entry costs no object besides its value, and a lookup compares two longs instead of calling
+ * equals. Entries can only be added.
+ *
+ * Writers are serialized, while readers never lock: the key of a slot is written before its value and read after it,
+ * and a resize publishes a complete new table, so a reader sees either an entry with its key or no entry at all.
+ */
+final class LongPairHashMap<V> {
+
+  private static final int INITIAL_CAPACITY = 16;
+  private static final float LOAD_FACTOR = 0.75f;
+
+  private volatile Table<V> table;
+  private volatile int size;
+
+  LongPairHashMap() {
+    this.table = new Table<>(INITIAL_CAPACITY);
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** @return the number of slots, i.e. the capacity of the current table */
+  int capacity() {
+    return table.values.length();
+  }
+
+  /** @return the value of the key, or null */
+  V get(long key1, long key2) {
+    Table<V> table = this.table;
+    int mask = table.values.length() - 1;
+    for (int slot = hash(key1, key2) & mask;; slot = (slot + 1) & mask) {
+      V value = table.values.get(slot);
+      if (value == null) return null;
+      if (table.keys[2 * slot] == key1 && table.keys[2 * slot + 1] == key2) return value;
+    }
+  }
+
+  /** @return the value of the key, added from the factory if there is none */
+  V computeIfAbsent(long key1, long key2, Supplier<? extends V> factory) {
+    V value = get(key1, key2);
+    if (value != null) return value;
+    synchronized (this) {
+      Table<V> table = this.table;
+      int mask = table.values.length() - 1;
+      int slot = hash(key1, key2) & mask;
+      for (; (value = table.values.get(slot)) != null; slot = (slot + 1) & mask)
+        if (table.keys[2 * slot] == key1 && table.keys[2 * slot + 1] == key2) return value;
+      value = Objects.requireNonNull(factory.get(), "value must be not null");
+      if (size + 1 > table.values.length() * LOAD_FACTOR) {
+        Table<V> resized = resize(table);
+        resized.insert(key1, key2, value);
+        this.table = resized;
+      }
+      else table.put(slot, key1, key2, value);
+      size++;
+      return value;
+    }
+  }
+
+  private static <V> Table<V> resize(Table<V> table) {
+    Table<V> resized = new Table<>(table.values.length() * 2);
+    for (int slot = 0; slot < table.values.length(); slot++) {
+      V value = table.values.get(slot);
+      if (value != null) resized.insert(table.keys[2 * slot], table.keys[2 * slot + 1], value);
+    }
+    return resized;
+  }
+
+  private static int hash(long key1, long key2) {
+    long hash = key1 * 0x9E3779B97F4A7C15L + key2;
+    hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+    return (int) (hash ^ (hash >>> 33));
+  }
+
+  private static final class Table<V> {
+
+    final long[] keys;
+    final AtomicReferenceArray<V> values;
+
+    Table(int capacity) {
+      this.keys = new long[2 * capacity];
+      this.values = new AtomicReferenceArray<>(capacity);
+    }
+
+    void insert(long key1, long key2, V value) {
+      int mask = values.length() - 1;
+      int slot = hash(key1, key2) & mask;
+      while (values.get(slot) != null) slot = (slot + 1) & mask;
+      put(slot, key1, key2, value);
+    }
+
+    void put(int slot, long key1, long key2, V value) {
+      keys[2 * slot] = key1;
+      keys[2 * slot + 1] = key2;
+      values.set(slot, value);
+    }
+  }
+}
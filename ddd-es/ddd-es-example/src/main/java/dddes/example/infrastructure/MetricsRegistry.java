@@ -0,0 +1,184 @@
+package dddes.example.infrastructure;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import dddes.core.IMetricsExporter;
+
+/**
+ * The counters and histograms of the instrumented decorators, by name. Every histogram is exposed as its count, mean,
+ * max, p50, p99 and p999, e.g. "eventstore.append.latency.p99". The values can be read through {@link #getValues()},
+ * through JMX once {@link #registerMBean()} has been called, or pushed to exporters at a fixed interval.
+ */
+public class MetricsRegistry implements AutoCloseable {
+
+  /** The counter of the exports which failed, the following exports going on */
+  public static final String EXPORT_FAILURES = "metrics.export.failures";
+
+  private final String name;
+  private final ConcurrentHashMap<String, LongAdder> counters;
+  private final ConcurrentHashMap<String, Histogram> histograms;
+  private final ConcurrentHashMap<IMetricsExporter, ScheduledExecutorService> exporters;
+  private volatile ObjectName objectName;
+
+  /** @param name: the name of the registry, which identifies its MBean */
+  public MetricsRegistry(String name) {
+    Strings.requireNonNullOrWhitespace(name, "name");
+    this.name = name;
+    this.counters = new ConcurrentHashMap<>();
+    this.histograms = new ConcurrentHashMap<>();
+    this.exporters = new ConcurrentHashMap<>();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /** @return the counter with the given name, created on first use */
+  public LongAdder counter(String name) {
+    return counters.computeIfAbsent(name, x -> new LongAdder());
+  }
+
+  /** @return the histogram with the given name, created on first use */
+  public Histogram histogram(String name) {
+    return histograms.computeIfAbsent(name, x -> new Histogram());
+  }
+
+  /** @return the current values of all the metrics, sorted by name */
+  public SortedMap<String, Number> getValues() {
+    TreeMap<String, Number> values = new TreeMap<>();
+    counters.forEach((name, counter) -> values.put(name, counter.sum()));
+    histograms.forEach((name, histogram) -> {
+      values.put(name + ".count", histogram.getCount());
+      values.put(name + ".mean", histogram.getMean());
+      values.put(name + ".max", histogram.getMax());
+      values.put(name + ".p50", histogram.getValueAtPercentile(50));
+      values.put(name + ".p99", histogram.getValueAtPercentile(99));
+      values.put(name + ".p999", histogram.getValueAtPercentile(99.9));
+    });
+    return values;
+  }
+
+  /** Registers the metrics in the platform MBeanServer as the attributes of the MBean "dddes:type=Metrics,name=..." */
+  public synchronized ObjectName registerMBean() {
+    if (objectName != null) return objectName;
+    try {
+      ObjectName objectName = ObjectName.getInstance("dddes:type=Metrics,name=" + ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), objectName);
+      return this.objectName = objectName;
+    }
+    catch (JMException e) {
+      throw new IllegalStateException("MBean registration failed for metrics " + name, e);
+    }
+  }
+
+  /** Exports the metrics at the given interval on a background thread, and once more when the registry is closed */
+  public void export(IMetricsExporter exporter, Duration interval) {
+    Objects.requireNonNull(exporter, "exporter must be not null");
+    if (interval == null || interval.isNegative() || interval.isZero()) throw new IllegalArgumentException("interval must be positive");
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, MetricsRegistry.class.getSimpleName() + "-" + name + "-exporter");
+      thread.setDaemon(true);
+      return thread;
+    });
+    if (exporters.putIfAbsent(exporter, scheduler) != null) {
+      scheduler.shutdown();
+      throw new IllegalArgumentException("exporter already added");
+    }
+    scheduler.scheduleWithFixedDelay(() -> exportTo(exporter), interval.toNanos(), interval.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /** Stops the exporters after a last export, and unregisters the MBean */
+  @Override
+  public synchronized void close() throws InterruptedException {
+    for (Map.Entry<IMetricsExporter, ScheduledExecutorService> exporter : exporters.entrySet()) {
+      exporter.getValue().shutdown();
+      exporter.getValue().awaitTermination(1, TimeUnit.MINUTES);
+      exportTo(exporter.getKey());
+    }
+    exporters.clear();
+    if (objectName == null) return;
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+    }
+    catch (JMException e) {
+      throw new IllegalStateException("MBean unregistration failed for metrics " + name, e);
+    }
+    objectName = null;
+  }
+
+  /** Exports the metrics, counting a failure rather than letting it cancel the scheduled exports */
+  private void exportTo(IMetricsExporter exporter) {
+    try {
+      exporter.export(getValues());
+    }
+    catch (RuntimeException e) {
+      counter(EXPORT_FAILURES).increment();
+    }
+  }
+
+  /** Exposes every metric as a read-only attribute, the attributes following the metrics created since registration */
+  private final class MetricsMBean implements DynamicMBean {
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+      Number value = getValues().get(attribute);
+      if (value == null) throw new AttributeNotFoundException(attribute);
+      return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+      SortedMap<String, Number> values = getValues();
+      AttributeList list = new AttributeList();
+      for (String attribute : attributes)
+        if (values.containsKey(attribute)) list.add(new Attribute(attribute, values.get(attribute)));
+      return list;
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+      SortedMap<String, Number> values = getValues();
+      MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+      int i = 0;
+      for (Map.Entry<String, Number> value : values.entrySet())
+        attributes[i++] = new MBeanAttributeInfo(value.getKey(), value.getValue().getClass().getName(), value.getKey(), true, false, false);
+      return new MBeanInfo(MetricsRegistry.class.getName(), "Metrics " + name, attributes, null, null, null);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+      throw new UnsupportedOperationException("metrics are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+      return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+      throw new UnsupportedOperationException("metrics have no operations");
+    }
+  }
+}
@@ -0,0 +1,242 @@
+package dddes.example.infrastructure;
+
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A sorted set backed by a treap whose nodes know the size of their subtree, so that besides O(log n) insertions,
+ * removals and lookups, elements can be accessed by rank ({@link #get(int)}) and ranked ({@link #indexOf(Object)}) in
+ * O(log n) as well. Iteration follows the order of the comparator. This class is not thread-safe.
+ */
+public class OrderStatisticTree<E> extends AbstractCollection<E> {
+
+  private final Comparator<? super E> comparator;
+  private Node<E> root;
+  private int seed;
+  private int modCount;
+
+  public OrderStatisticTree(Comparator<? super E> comparator) {
+    Objects.requireNonNull(comparator, "comparator must be not null");
+    this.comparator = comparator;
+    this.seed = 0x9E3779B9;
+  }
+
+  @Override
+  public int size() {
+    return size(root);
+  }
+
+  @Override
+  public boolean add(E element) {
+    Objects.requireNonNull(element, "element must be not null");
+    if (find(element) != null) return false;
+    root = insert(root, element);
+    modCount++;
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean remove(Object element) {
+    if (element == null || find((E) element) == null) return false;
+    root = delete(root, (E) element);
+    modCount++;
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean contains(Object element) {
+    return element != null && find((E) element) != null;
+  }
+
+  @Override
+  public void clear() {
+    root = null;
+    modCount++;
+  }
+
+  /** @return the element at the given rank */
+  public E get(int index) {
+    if (index < 0 || index >= size()) throw new IndexOutOfBoundsException("index: " + index + ", size: " + size());
+    Node<E> node = root;
+    while (true) {
+      int leftSize = size(node.left);
+      if (index < leftSize) node = node.left;
+      else if (index == leftSize) return node.element;
+      else {
+        index -= leftSize + 1;
+        node = node.right;
+      }
+    }
+  }
+
+  /** @return the rank of the given element, or -1 if it is not in the tree */
+  public int indexOf(E element) {
+    int index = 0;
+    Node<E> node = root;
+    while (node != null) {
+      int cmp = comparator.compare(element, node.element);
+      if (cmp < 0) node = node.left;
+      else if (cmp == 0) return index + size(node.left);
+      else {
+        index += size(node.left) + 1;
+        node = node.right;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return iterator(0);
+  }
+
+  /** @return an iterator starting at the given rank, reached in O(log n) */
+  public Iterator<E> iterator(int fromIndex) {
+    if (fromIndex < 0 || fromIndex > size()) throw new IndexOutOfBoundsException("index: " + fromIndex + ", size: " + size());
+    return new Iterator<E>() {
+
+      private final ArrayDeque<Node<E>> path = new ArrayDeque<>();
+      private final int expectedModCount = modCount;
+      { descendTo(root, fromIndex); }
+
+      @Override
+      public boolean hasNext() {
+        return !path.isEmpty();
+      }
+
+      @Override
+      public E next() {
+        if (expectedModCount != modCount) throw new ConcurrentModificationException();
+        if (path.isEmpty()) throw new NoSuchElementException();
+        Node<E> node = path.pop();
+        descendLeft(node.right);
+        return node.element;
+      }
+
+      private void descendLeft(Node<E> node) {
+        for (; node != null; node = node.left) path.push(node);
+      }
+
+      /** Pushes the ancestors still to be visited from the element at the given rank, and the element itself */
+      private void descendTo(Node<E> node, int index) {
+        while (node != null) {
+          int leftSize = size(node.left);
+          if (index < leftSize) {
+            path.push(node);
+            node = node.left;
+          }
+          else if (index == leftSize) {
+            path.push(node);
+            return;
+          }
+          else {
+            index -= leftSize + 1;
+            node = node.right;
+          }
+        }
+      }
+    };
+  }
+
+  private Node<E> find(E element) {
+    Node<E> node = root;
+    while (node != null) {
+      int cmp = comparator.compare(element, node.element);
+      if (cmp == 0) return node;
+      node = cmp < 0 ? node.left : node.right;
+    }
+    return null;
+  }
+
+  private Node<E> insert(Node<E> node, E element) {
+    if (node == null) return new Node<>(element, nextPriority());
+    if (comparator.compare(element, node.element) < 0) {
+      node.left = insert(node.left, element);
+      if (node.left.priority > node.priority) return rotateRight(node);
+    }
+    else {
+      node.right = insert(node.right, element);
+      if (node.right.priority > node.priority) return rotateLeft(node);
+    }
+    node.update();
+    return node;
+  }
+
+  private Node<E> delete(Node<E> node, E element) {
+    int cmp = comparator.compare(element, node.element);
+    if (cmp == 0) return merge(node.left, node.right);
+    if (cmp < 0) node.left = delete(node.left, element);
+    else node.right = delete(node.right, element);
+    node.update();
+    return node;
+  }
+
+  private static <E> Node<E> merge(Node<E> left, Node<E> right) {
+    if (left == null) return right;
+    if (right == null) return left;
+    if (left.priority > right.priority) {
+      left.right = merge(left.right, right);
+      left.update();
+      return left;
+    }
+    right.left = merge(left, right.left);
+    right.update();
+    return right;
+  }
+
+  private static <E> Node<E> rotateRight(Node<E> node) {
+    Node<E> left = node.left;
+    node.left = left.right;
+    node.update();
+    left.right = node;
+    left.update();
+    return left;
+  }
+
+  private static <E> Node<E> rotateLeft(Node<E> node) {
+    Node<E> right = node.right;
+    node.right = right.left;
+    node.update();
+    right.left = node;
+    right.update();
+    return right;
+  }
+
+  private int nextPriority() {
+    // xorshift32
+    seed ^= seed << 13;
+    seed ^= seed >>> 17;
+    seed ^= seed << 5;
+    return seed;
+  }
+
+  private static int size(Node<?> node) {
+    return node != null ? node.size : 0;
+  }
+
+  private static final class Node<E> {
+
+    final E element;
+    final int priority;
+    int size;
+    Node<E> left;
+    Node<E> right;
+
+    Node(E element, int priority) {
+      this.element = element;
+      this.priority = priority;
+      this.size = 1;
+    }
+
+    void update() {
+      size = 1 + size(left) + size(right);
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package dddes.example.infrastructure;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import dddes.core.ICheckpointStore;
+import dddes.core.IProjection;
+
+/**
+ * Runs projections from the global log of a {@link SubscribableEventStore}. Every projection follows the log through
+ * a catch-up subscription of its own, and every batch of events is split by stream id across a fixed pool of partition
+ * workers shared by all the projections: the events of a stream always go to the same worker, so they are applied in
+ * order, while the events of different streams are applied in parallel.
+ *
+ * The position of a projection only moves past a batch once all its partitions have been applied, and the positions are
+ * saved as checkpoints at a fixed interval, as well as when a projection stops.
+ */
+public class ProjectionEngine<ID> implements AutoCloseable {
+
+  public static final Duration DEFAULT_CHECKPOINT_INTERVAL = Duration.ofSeconds(1);
+
+  private static final int WORKER_QUEUE_SIZE = 64;
+
+  private final SubscribableEventStore<ID> eventStore;
+  private final ICheckpointStore checkpointStore;
+  private final PartitionWorker[] workers;
+  private final ConcurrentHashMap<String, ProjectionRunner<ID>> projections;
+  private final ScheduledExecutorService checkpointer;
+
+  public ProjectionEngine(SubscribableEventStore<ID> eventStore, ICheckpointStore checkpointStore) {
+    this(eventStore, checkpointStore, Runtime.getRuntime().availableProcessors(), DEFAULT_CHECKPOINT_INTERVAL);
+  }
+
+  /**
+   * @param partitions: the number of partition workers, i.e. of threads applying events
+   * @param checkpointInterval: how often the positions of the projections are saved
+   */
+  public ProjectionEngine(SubscribableEventStore<ID> eventStore, ICheckpointStore checkpointStore, int partitions, Duration checkpointInterval) {
+    Objects.requireNonNull(eventStore, "eventStore must be not null");
+    Objects.requireNonNull(checkpointStore, "checkpointStore must be not null");
+    if (partitions < 1) throw new IllegalArgumentException("partitions must be positive");
+    if (checkpointInterval == null || checkpointInterval.isNegative() || checkpointInterval.isZero()) throw new IllegalArgumentException("checkpointInterval must be positive");
+    this.eventStore = eventStore;
+    this.checkpointStore = checkpointStore;
+    this.projections = new ConcurrentHashMap<>();
+    this.workers = new PartitionWorker[partitions];
+    for (int i = 0; i < partitions; i++) workers[i] = new PartitionWorker(ProjectionEngine.class.getSimpleName() + "-partition-" + i);
+    this.checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, ProjectionEngine.class.getSimpleName() + "-checkpointer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.checkpointer.scheduleWithFixedDelay(this::saveCheckpoints, checkpointInterval.toNanos(), checkpointInterval.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /** Starts the projection from its checkpoint, or from the beginning of the global log if it has none */
+  public synchronized ProjectionRunner<ID> start(IProjection<ID> projection) {
+    Objects.requireNonNull(projection, "projection must be not null");
+    Strings.requireNonNullOrWhitespace(projection.getName(), "projection name");
+    ProjectionRunner<ID> current = projections.get(projection.getName());
+    if (current != null && current.isRunning()) throw new IllegalStateException("projection " + projection.getName() + " already running");
+    Long checkpoint = checkpointStore.load(projection.getName());
+    ProjectionRunner<ID> runner = new ProjectionRunner<>(projection, checkpoint != null ? checkpoint : 0, eventStore, checkpointStore, workers);
+    projections.put(projection.getName(), runner);
+    runner.start();
+    return runner;
+  }
+
+  /** Stops the projection if running, resets it and starts it again from the beginning of the global log */
+  public synchronized ProjectionRunner<ID> rebuild(IProjection<ID> projection) throws InterruptedException {
+    Objects.requireNonNull(projection, "projection must be not null");
+    ProjectionRunner<ID> current = projections.get(projection.getName());
+    if (current != null) current.stop();
+    projection.reset();
+    checkpointStore.save(projection.getName(), 0);
+    return start(projection);
+  }
+
+  public List<ProjectionRunner<ID>> getProjections() {
+    return new ArrayList<>(projections.values());
+  }
+
+  public int getPartitions() {
+    return workers.length;
+  }
+
+  /** Stops every projection, saving its checkpoint, and the partition workers */
+  @Override
+  public synchronized void close() throws InterruptedException {
+    for (ProjectionRunner<ID> runner : projections.values()) runner.stop();
+    checkpointer.shutdown();
+    checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+    for (PartitionWorker worker : workers) worker.stop();
+  }
+
+  private void saveCheckpoints() {
+    for (ProjectionRunner<ID> runner : projections.values()) runner.saveCheckpoint();
+  }
+
+  /** A thread applying, in order, the batches of the partitions assigned to it */
+  static final class PartitionWorker {
+
+    private static final Runnable STOP = () -> { };
+
+    private final ArrayBlockingQueue<Runnable> tasks;
+    private final Thread thread;
+
+    PartitionWorker(String name) {
+      this.tasks = new ArrayBlockingQueue<>(WORKER_QUEUE_SIZE);
+      this.thread = new Thread(this::run, name);
+      this.thread.setDaemon(true);
+      this.thread.start();
+    }
+
+    /** Queues the task, waiting for room if the worker is behind */
+    void submit(Runnable task) throws InterruptedException {
+      tasks.put(task);
+    }
+
+    int getQueueDepth() {
+      return tasks.size();
+    }
+
+    void stop() throws InterruptedException {
+      tasks.put(STOP);
+      thread.join();
+    }
+
+    private void run() {
+      try {
+        Runnable task;
+        while ((task = tasks.take()) != STOP) task.run();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
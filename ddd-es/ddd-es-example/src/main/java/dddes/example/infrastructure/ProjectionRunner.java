@@ -0,0 +1,179 @@
+package dddes.example.infrastructure;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import dddes.core.ICheckpointStore;
+import dddes.core.IProjection;
+import dddes.core.RecordedEvent;
+import dddes.example.infrastructure.ProjectionEngine.PartitionWorker;
+
+/**
+ * A projection run by a {@link ProjectionEngine}. Its subscription thread splits every batch by partition and hands the
+ * parts to the partition workers, while the batches in flight are tracked in order: the position of the projection
+ * moves past a batch once the batch and all the previous ones have been applied. A failure of the projection stops it,
+ * and its position stays before the failed batch.
+ */
+public final class ProjectionRunner<ID> {
+
+  private final IProjection<ID> projection;
+  private final SubscribableEventStore<ID> eventStore;
+  private final ICheckpointStore checkpointStore;
+  private final PartitionWorker[] workers;
+  private final ArrayDeque<Batch> batchesInFlight;
+  private final LongAdder appliedEvents;
+  private volatile CatchUpSubscription<ID> subscription;
+  private volatile long position;
+  private volatile long checkpoint;
+  private volatile long startedAt;
+  private volatile boolean stopped;
+  private volatile RuntimeException failure;
+
+  ProjectionRunner(IProjection<ID> projection, long fromPosition, SubscribableEventStore<ID> eventStore, ICheckpointStore checkpointStore, PartitionWorker[] workers) {
+    this.projection = projection;
+    this.eventStore = eventStore;
+    this.checkpointStore = checkpointStore;
+    this.workers = workers;
+    this.batchesInFlight = new ArrayDeque<>();
+    this.appliedEvents = new LongAdder();
+    this.position = fromPosition;
+    this.checkpoint = fromPosition;
+  }
+
+  public String getName() {
+    return projection.getName();
+  }
+
+  /** @return the global position up to which all the events have been applied */
+  public long getPosition() {
+    return position;
+  }
+
+  /** @return the last saved position */
+  public long getCheckpoint() {
+    return checkpoint;
+  }
+
+  /** @return the number of events of the global log not applied yet */
+  public long getLag() {
+    return Math.max(0, eventStore.getLastGlobalPosition() - position);
+  }
+
+  public long getAppliedEvents() {
+    return appliedEvents.sum();
+  }
+
+  /** @return the average number of events applied per second since the projection started */
+  public double getThroughput() {
+    double seconds = (System.nanoTime() - startedAt) / 1e9;
+    return seconds > 0 ? appliedEvents.sum() / seconds : 0;
+  }
+
+  /** @return true once the projection has caught up with the history and follows the new events */
+  public boolean isLive() {
+    return subscription.isLive();
+  }
+
+  public boolean isRunning() {
+    return !stopped && failure == null && subscription.isRunning();
+  }
+
+  public RuntimeException getFailure() {
+    return failure;
+  }
+
+  void start() {
+    startedAt = System.nanoTime();
+    subscription = eventStore.subscribeToAll(projection.getName(), position, this::dispatch);
+  }
+
+  /** Stops the subscription, waits for the batches in flight and saves the checkpoint */
+  void stop() throws InterruptedException {
+    stopped = true;
+    subscription.close();
+    synchronized (batchesInFlight) {
+      while (!batchesInFlight.isEmpty() && failure == null) batchesInFlight.wait();
+    }
+    saveCheckpoint();
+  }
+
+  synchronized void saveCheckpoint() {
+    long position = this.position;
+    if (position == checkpoint) return;
+    checkpointStore.save(projection.getName(), position);
+    checkpoint = position;
+  }
+
+  private void dispatch(List<RecordedEvent<ID>> events) {
+    if (failure != null) throw failure;
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    List<RecordedEvent<ID>>[] partitions = new List[workers.length];
+    int partitionCount = 0;
+    for (RecordedEvent<ID> event : events) {
+      int partition = partitionOf(event.getStreamId());
+      if (partitions[partition] == null) {
+        partitions[partition] = new ArrayList<>();
+        partitionCount++;
+      }
+      partitions[partition].add(event);
+    }
+
+    Batch batch = new Batch(events.get(events.size() - 1).getGlobalPosition() + 1, partitionCount);
+    synchronized (batchesInFlight) {
+      batchesInFlight.addLast(batch);
+    }
+    try {
+      for (int i = 0; i < partitions.length; i++) {
+        List<RecordedEvent<ID>> part = partitions[i];
+        if (part != null) workers[i].submit(() -> apply(part, batch));
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while dispatching to " + projection.getName(), e);
+    }
+  }
+
+  private void apply(List<RecordedEvent<ID>> events, Batch batch) {
+    if (failure != null) return;
+    try {
+      projection.apply(events);
+    }
+    catch (RuntimeException e) {
+      synchronized (batchesInFlight) {
+        failure = e;
+        batchesInFlight.notifyAll();
+      }
+      return;
+    }
+    appliedEvents.add(events.size());
+    if (batch.remainingPartitions.decrementAndGet() > 0) return;
+    synchronized (batchesInFlight) {
+      batch.applied = true;
+      while (!batchesInFlight.isEmpty() && batchesInFlight.peekFirst().applied)
+        position = batchesInFlight.pollFirst().toPosition;
+      batchesInFlight.notifyAll();
+    }
+  }
+
+  private int partitionOf(ID streamId) {
+    int hash = streamId.hashCode();
+    return Math.floorMod(hash ^ hash >>> 16, workers.length);
+  }
+
+  private static final class Batch {
+
+    final long toPosition;
+    final AtomicInteger remainingPartitions;
+    boolean applied;
+
+    Batch(long toPosition, int partitions) {
+      this.toPosition = toPosition;
+      this.remainingPartitions = new AtomicInteger(partitions);
+    }
+  }
+}
@@ -1,36 +1,134 @@
 package dddes.example.infrastructure;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import dddes.core.Event;
 import dddes.core.IEventPublisher;
 import dddes.core.IEventStore;
+import dddes.core.RecordedEvent;
+import dddes.core.StreamAppend;
 
-public class PublishingEventStore<ID> implements IEventStore<ID> {
+/**
+ * An event store decorator that publishes the events once they have been appended. Events appended together are
+ * committed as one atomic batch and then published in order, either on the caller's thread
+ * ({@link PublishMode#SYNCHRONOUS}) or by a background dispatcher ({@link PublishMode#ASYNCHRONOUS}).
+ */
+public class PublishingEventStore<ID> implements IEventStore<ID>, AutoCloseable {
+
+	public enum PublishMode { SYNCHRONOUS, ASYNCHRONOUS }
 
 	private final IEventStore<ID> eventStore;
 	private final IEventPublisher eventPublisher;
+	private final ExecutorService dispatcher;
 
 	public PublishingEventStore(IEventStore<ID> eventStore, IEventPublisher eventPublisher) {
+		this(eventStore, eventPublisher, PublishMode.SYNCHRONOUS);
+	}
+
+	public PublishingEventStore(IEventStore<ID> eventStore, IEventPublisher eventPublisher, PublishMode publishMode) {
 		Objects.requireNonNull(eventStore, "eventStore must be not null");
 		Objects.requireNonNull(eventPublisher, "eventPublisher must be not null");
+		Objects.requireNonNull(publishMode, "publishMode must be not null");
 		this.eventStore = eventStore;
 		this.eventPublisher = eventPublisher;
+		this.dispatcher = publishMode == PublishMode.ASYNCHRONOUS ? Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, PublishingEventStore.class.getSimpleName() + "-dispatcher");
+			thread.setDaemon(true);
+			return thread;
+		}) : null;
 	}
 
 	public void appendEventsToStream(ID streamId, Stream<Event> events) {
 		appendEventsToStream(streamId, events, -1);
 	}
 
-	public void appendEventsToStream(ID streamId, Stream<Event> events, long expectedLastPosition) {	  	  
-	  events.forEach(event -> {	   
-	    eventStore.appendEventsToStream(streamId, Stream.of(event), expectedLastPosition);  
-	    eventPublisher.publish(event);	    
-	  });		
+	public void appendEventsToStream(ID streamId, Stream<Event> events, long expectedLastPosition) {
+		Objects.requireNonNull(events, "events must not be null");
+		List<Event> batch = events.collect(Collectors.toList());
+		eventStore.appendEventsToStream(streamId, batch.stream(), expectedLastPosition);
+		publish(batch);
+	}
+
+	/** Publishes the events of all the streams in one batch, in the order of the appends */
+	@Override
+	public void appendEventsToStreams(List<StreamAppend<ID>> appends) {
+		Objects.requireNonNull(appends, "appends must not be null");
+		eventStore.appendEventsToStreams(appends);
+		List<Event> batch = new ArrayList<>();
+		appends.forEach(append -> batch.addAll(append.getEvents()));
+		publish(batch);
 	}
 
 	public Stream<Event> getStream(ID streamId) {
 		return eventStore.getStream(streamId);
 	}
+
+	@Override
+	public Stream<Event> getStream(ID streamId, long fromPosition, int maxCount) {
+		return eventStore.getStream(streamId, fromPosition, maxCount);
+	}
+
+	@Override
+	public Map<ID, Stream<Event>> getStreams(Collection<ID> streamIds, ToLongFunction<? super ID> fromPosition) {
+		return eventStore.getStreams(streamIds, fromPosition);
+	}
+
+	@Override
+	public Stream<ID> findStreams(String indexName, String key) {
+		return eventStore.findStreams(indexName, key);
+	}
+
+	@Override
+	public Stream<Event> getStreamBackward(ID streamId, long fromPosition, int maxCount) {
+		return eventStore.getStreamBackward(streamId, fromPosition, maxCount);
+	}
+
+	@Override
+	public Stream<RecordedEvent<ID>> readAll(long fromGlobalPosition, int maxCount) {
+		return eventStore.readAll(fromGlobalPosition, maxCount);
+	}
+
+	@Override
+	public long getLastGlobalPosition() {
+		return eventStore.getLastGlobalPosition();
+	}
+
+	@Override
+	public boolean supportsAtomicAppends() {
+		return eventStore.supportsAtomicAppends();
+	}
+
+	@Override
+	public boolean hasIndex(String indexName) {
+		return eventStore.hasIndex(indexName);
+	}
+
+	@Override
+	public boolean hasGlobalLog() {
+		return eventStore.hasGlobalLog();
+	}
+
+	/** Stops the background dispatcher, if any, once the events committed so far have been published */
+	@Override
+	public void close() throws InterruptedException {
+		if (dispatcher == null) return;
+		dispatcher.shutdown();
+		dispatcher.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	private void publish(List<Event> batch) {
+		if (batch.isEmpty()) return;
+		if (dispatcher == null) batch.forEach(eventPublisher::publish);
+		else dispatcher.execute(() -> batch.forEach(eventPublisher::publish));
+	}
 }
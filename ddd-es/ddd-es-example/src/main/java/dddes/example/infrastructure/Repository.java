@@ -1,23 +1,102 @@
 package dddes.example.infrastructure;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import dddes.core.Event;
 import dddes.core.IAggregateRoot;
 import dddes.core.IEventStore;
 import dddes.core.IRepository;
+import dddes.core.ISnapshotPolicy;
+import dddes.core.ISnapshotStore;
+import dddes.core.LoadResult;
+import dddes.core.Snapshot;
 
 public class Repository<T extends IAggregateRoot<ID>, ID> implements IRepository<T, ID> {
 
+	public static final int DEFAULT_MAX_UPDATE_RETRIES = 10;
+	public static final Duration DEFAULT_UPDATE_BACKOFF = Duration.ofMillis(1);
+
+	/** The backoff stops doubling after this number of retries */
+	private static final int MAX_BACKOFF_DOUBLINGS = 6;
+
 	private final IEventStore<ID> eventStore;
 	private final Supplier<T> defaultAggregateRootFactory;
+	private final ISnapshotStore<ID> snapshotStore;
+	private final ISnapshotPolicy snapshotPolicy;
+	private final AggregateCache<ID> cache;
+	/** The latest snapshot of every AggregateRoot loaded or saved, so that evaluating the policy doesn't read the store */
+	private final Map<ID, SnapshotMark> lastSnapshots = new ConcurrentHashMap<>();
 
 	public Repository(Supplier<T> defaultAggregateRootFactory, IEventStore<ID> eventStore) {
+		this(defaultAggregateRootFactory, eventStore, null, null, null, false);
+	}
+
+	/**
+	 * Creates a repository loading AggregateRoots from their latest snapshot, if any, and taking a new snapshot whenever
+	 * the given policy says so, after a load or a save with an expected version.
+	 * 
+	 * @throws IllegalArgumentException if the AggregateRoots don't support snapshots
+	 */
+	public Repository(Supplier<T> defaultAggregateRootFactory, IEventStore<ID> eventStore, ISnapshotStore<ID> snapshotStore, ISnapshotPolicy snapshotPolicy) {
+		this(defaultAggregateRootFactory, eventStore, snapshotStore, snapshotPolicy, null, false);
+	}
+
+	/**
+	 * Creates a repository caching the AggregateRoots it loads or saves with an expected version. A cached AggregateRoot
+	 * is loaded by restoring its cached snapshot and catching up with the events appended since then.
+	 * 
+	 * @throws IllegalArgumentException if the AggregateRoots don't support snapshots
+	 */
+	public Repository(Supplier<T> defaultAggregateRootFactory, IEventStore<ID> eventStore, AggregateCache<ID> cache) {
+		this(defaultAggregateRootFactory, eventStore, null, null, cache, true);
+	}
+
+	public Repository(Supplier<T> defaultAggregateRootFactory, IEventStore<ID> eventStore, ISnapshotStore<ID> snapshotStore, ISnapshotPolicy snapshotPolicy, AggregateCache<ID> cache) {
+		this(defaultAggregateRootFactory, eventStore, snapshotStore, snapshotPolicy, cache, true);
+	}
+
+	private Repository(Supplier<T> defaultAggregateRootFactory, IEventStore<ID> eventStore, ISnapshotStore<ID> snapshotStore, ISnapshotPolicy snapshotPolicy, AggregateCache<ID> cache, boolean cached) {
 		Objects.requireNonNull(defaultAggregateRootFactory, "defaultAggregateRootFactory must be not null");
 		Objects.requireNonNull(eventStore, "eventStore must be not null");
+		if (snapshotStore != null || snapshotPolicy != null) {
+			Objects.requireNonNull(snapshotStore, "snapshotStore must be not null");
+			Objects.requireNonNull(snapshotPolicy, "snapshotPolicy must be not null");
+		}
+		if (cached) Objects.requireNonNull(cache, "cache must be not null");
+		if ((snapshotStore != null || cache != null) && !defaultAggregateRootFactory.get().supportsSnapshots())
+			throw new IllegalArgumentException("the AggregateRoots must support snapshots to be snapshotted or cached");
 		this.defaultAggregateRootFactory = defaultAggregateRootFactory;
 		this.eventStore = eventStore;
+		this.snapshotStore = snapshotStore;
+		this.snapshotPolicy = snapshotPolicy;
+		this.cache = cache;
+	}
+
+	/** @return the cache of this repository, or null if it doesn't cache AggregateRoots */
+	public AggregateCache<ID> getCache() {
+		return cache;
 	}
 
 	public void save(T aggregateRoot) {
@@ -29,13 +108,193 @@ public class Repository<T extends IAggregateRoot<ID>, ID> implements IRepository
 		Objects.requireNonNull(aggregateRoot, "aggregateRoot must be not null");		
 		eventStore.appendEventsToStream(aggregateRoot.getId(), aggregateRoot.getPendingChanges(), expectedVersion);
 		aggregateRoot.markPendingChangesAsCommitted();
+		// Without an expected version the saved events may not follow the ones the AggregateRoot has been loaded from
+		if (expectedVersion < 0) return;
+		Snapshot<ID> snapshot = cacheSnapshotOf(aggregateRoot);
+		if (snapshotStore != null)
+			takeSnapshotIfNeeded(aggregateRoot, expectedVersion == 0 ? remember(aggregateRoot.getId(), null) : lastSnapshotOf(aggregateRoot.getId()), snapshot);
 	}
 
 	public T getById(ID aggregateRootId) throws NoSuchElementException {
 	  
 		Objects.requireNonNull(aggregateRootId, "aggregateRootId must be not null");		
-		T aggregateRoot = defaultAggregateRootFactory.get();		
-		aggregateRoot.loadFromHistory(eventStore.getStream(aggregateRootId));
+		Snapshot<ID> cachedSnapshot = cache != null ? cache.get(aggregateRootId) : null;
+		Snapshot<ID> storedSnapshot = cachedSnapshot == null && snapshotStore != null ? snapshotStore.getLatest(aggregateRootId) : null;
+		Snapshot<ID> snapshot = cachedSnapshot != null ? cachedSnapshot : storedSnapshot;
+		Stream<Event> events = snapshot == null ? eventStore.getStream(aggregateRootId) : eventStore.getStream(aggregateRootId, snapshot.getVersion());
+		return load(aggregateRootId, cachedSnapshot, storedSnapshot, events);
+	}
+
+	public LoadResult<T, ID> getByIds(Collection<ID> aggregateRootIds) {
+		return getByIds(aggregateRootIds, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Loads the AggregateRoots reading all their streams with a single call to the event store, while their snapshots are
+	 * looked up and their streams replayed in parallel on the given pool
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public LoadResult<T, ID> getByIds(Collection<ID> aggregateRootIds, ForkJoinPool pool) {
+
+		Objects.requireNonNull(aggregateRootIds, "aggregateRootIds must be not null");
+		Objects.requireNonNull(pool, "pool must be not null");
+		List<ID> ids = new ArrayList<>(new LinkedHashSet<>(aggregateRootIds));
+		ids.forEach(id -> Objects.requireNonNull(id, "aggregateRootId must be not null"));
+		Snapshot<ID>[] cachedSnapshots = new Snapshot[ids.size()];
+		Snapshot<ID>[] storedSnapshots = new Snapshot[ids.size()];
+		HashMap<ID, Integer> startVersions = new HashMap<>();
+		if (cache != null || snapshotStore != null) {
+			forEachInParallel(pool, ids.size(), i -> {
+				cachedSnapshots[i] = cache != null ? cache.get(ids.get(i)) : null;
+				storedSnapshots[i] = cachedSnapshots[i] == null && snapshotStore != null ? snapshotStore.getLatest(ids.get(i)) : null;
+			});
+			for (int i = 0; i < ids.size(); i++) {
+				Snapshot<ID> snapshot = cachedSnapshots[i] != null ? cachedSnapshots[i] : storedSnapshots[i];
+				if (snapshot != null) startVersions.put(ids.get(i), snapshot.getVersion());
+			}
+		}
+
+		Map<ID, Stream<Event>> streams = eventStore.getStreams(ids, id -> startVersions.getOrDefault(id, 0));
+		Object[] results = new Object[ids.size()];
+		forEachInParallel(pool, ids.size(), i -> {
+			Stream<Event> events = streams.get(ids.get(i));
+			if (events == null) return;
+			try {
+				results[i] = load(ids.get(i), cachedSnapshots[i], storedSnapshots[i], events);
+			}
+			catch (RuntimeException e) {
+				results[i] = e;
+			}
+		});
+
+		Map<ID, T> loaded = new LinkedHashMap<>();
+		Set<ID> missing = new LinkedHashSet<>();
+		Map<ID, RuntimeException> failed = new LinkedHashMap<>();
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] == null) missing.add(ids.get(i));
+			else if (results[i] instanceof RuntimeException) failed.put(ids.get(i), (RuntimeException) results[i]);
+			else loaded.put(ids.get(i), (T) results[i]);
+		}
+		return new LoadResult<>(loaded, missing, failed);
+	}
+
+	/** Restores the AggregateRoot from its snapshot, if any, replays the following events, and caches or snapshots it */
+	private T load(ID aggregateRootId, Snapshot<ID> cachedSnapshot, Snapshot<ID> storedSnapshot, Stream<Event> events) {
+	  
+		T aggregateRoot = defaultAggregateRootFactory.get();
+		Snapshot<ID> snapshot = cachedSnapshot != null ? cachedSnapshot : storedSnapshot;
+		if (snapshot != null) aggregateRoot.restoreFromSnapshot(snapshot);
+		aggregateRoot.loadFromHistory(events);
+
+		int startVersion = snapshot != null ? snapshot.getVersion() : 0;
+		if (aggregateRoot.getVersion() == startVersion && cachedSnapshot != null) return aggregateRoot;
+		Snapshot<ID> loadedSnapshot = cacheSnapshotOf(aggregateRoot);
+		if (snapshotStore != null) 
+			takeSnapshotIfNeeded(aggregateRoot, cachedSnapshot != null ? lastSnapshotOf(aggregateRootId) : remember(aggregateRootId, storedSnapshot), loadedSnapshot);
 		return aggregateRoot;
 	}
+
+	public T update(ID aggregateRootId, Consumer<? super T> command) throws ConcurrentModificationException {
+		return update(aggregateRootId, command, DEFAULT_MAX_UPDATE_RETRIES, DEFAULT_UPDATE_BACKOFF);
+	}
+
+	/**
+	 * Updates the AggregateRoot retrying up to maxRetries times on conflict. Before every retry the thread sleeps for a
+	 * random time up to the backoff, which doubles at every retry. Every retry refreshes the AggregateRoot by restoring
+	 * its state before the command and applying only the events appended since then: the state is the snapshot in the
+	 * cache, if any, or else one taken before every command. AggregateRoots not supporting snapshots are loaded again.
+	 * 
+	 * @param backoff: the maximum sleep before the first retry
+	 */
+	public T update(ID aggregateRootId, Consumer<? super T> command, int maxRetries, Duration backoff) throws ConcurrentModificationException {
+
+		Objects.requireNonNull(command, "command must be not null");
+		if (maxRetries < 0) throw new IllegalArgumentException("maxRetries must not be negative");
+		if (backoff == null || backoff.isNegative()) throw new IllegalArgumentException("backoff must not be negative");
+		T aggregateRoot = getById(aggregateRootId);
+		for (int retry = 0;; retry++) {
+			int expectedVersion = aggregateRoot.getVersion();
+			// A cached AggregateRoot is caught up from the snapshot cached when it was loaded or saved
+			Snapshot<ID> beforeCommand = cache == null && retry < maxRetries ? aggregateRoot.takeSnapshot() : null;
+			command.accept(aggregateRoot);
+			try {
+				save(aggregateRoot, expectedVersion);
+				return aggregateRoot;
+			}
+			catch (ConcurrentModificationException e) {
+				if (retry == maxRetries) throw e;
+				sleepBeforeRetry(retry, backoff, e);
+				aggregateRoot = beforeCommand != null ? catchUp(beforeCommand) : getById(aggregateRootId);
+			}
+		}
+	}
+
+	private static void forEachInParallel(ForkJoinPool pool, int count, IntConsumer action) {
+		if (count == 0) return;
+		pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(IntStream.range(0, count).mapToObj(i -> ForkJoinTask.adapt(() -> action.accept(i))).collect(Collectors.toList()))));
+	}
+
+	private T catchUp(Snapshot<ID> snapshot) {
+		T aggregateRoot = defaultAggregateRootFactory.get();
+		aggregateRoot.restoreFromSnapshot(snapshot);
+		aggregateRoot.loadFromHistory(eventStore.getStream(snapshot.getAggregateRootId(), snapshot.getVersion()));
+		return aggregateRoot;
+	}
+
+	/** Sleeps for a random time up to the backoff of the retry ("full jitter"), so that conflicting writers spread out */
+	private static void sleepBeforeRetry(int retry, Duration backoff, ConcurrentModificationException conflict) {
+		long maxNanos = backoff.toNanos() << Math.min(retry, MAX_BACKOFF_DOUBLINGS);
+		if (maxNanos <= 0) return;
+		try {
+			TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(maxNanos + 1));
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw conflict;
+		}
+	}
+
+	/** @return the snapshot of the AggregateRoot put in the cache, or null */
+	private Snapshot<ID> cacheSnapshotOf(T aggregateRoot) {
+		if (cache == null) return null;
+		Snapshot<ID> snapshot = aggregateRoot.takeSnapshot();
+		if (snapshot != null) cache.put(snapshot);
+		return snapshot;
+	}
+
+	private void takeSnapshotIfNeeded(T aggregateRoot, SnapshotMark lastSnapshot, Snapshot<ID> currentSnapshot) {
+		if (!snapshotPolicy.shouldTakeSnapshot(lastSnapshot.version, lastSnapshot.timestamp, aggregateRoot)) return;
+		Snapshot<ID> snapshot = currentSnapshot != null ? currentSnapshot : aggregateRoot.takeSnapshot();
+		snapshotStore.save(snapshot);
+		remember(snapshot.getAggregateRootId(), snapshot);
+	}
+
+	/** @return the latest snapshot of the AggregateRoot, reading the snapshot store only the first time */
+	private SnapshotMark lastSnapshotOf(ID aggregateRootId) {
+		SnapshotMark lastSnapshot = lastSnapshots.get(aggregateRootId);
+		return lastSnapshot != null ? lastSnapshot : remember(aggregateRootId, snapshotStore.getLatest(aggregateRootId));
+	}
+
+	/** @return the latest of the given snapshot, or of none if null, and of the one remembered */
+	private SnapshotMark remember(ID aggregateRootId, Snapshot<ID> snapshot) {
+		return lastSnapshots.merge(aggregateRootId, snapshot != null ? new SnapshotMark(snapshot.getVersion(), snapshot.getTimestamp()) : SnapshotMark.NONE, SnapshotMark::latest);
+	}
+
+	/** The version and the timestamp of a snapshot, without its state */
+	private static final class SnapshotMark {
+
+		static final SnapshotMark NONE = new SnapshotMark(0, 0);
+
+		final int version;
+		final long timestamp;
+
+		SnapshotMark(int version, long timestamp) {
+			this.version = version;
+			this.timestamp = timestamp;
+		}
+
+		static SnapshotMark latest(SnapshotMark a, SnapshotMark b) {
+			return a.version >= b.version ? a : b;
+		}
+	}
 }
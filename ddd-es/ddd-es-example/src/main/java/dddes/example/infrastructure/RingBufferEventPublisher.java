@@ -0,0 +1,176 @@
+package dddes.example.infrastructure;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import dddes.core.Event;
+import dddes.core.IEventBatchHandler;
+import dddes.core.IEventPublisher;
+
+/**
+ * An asynchronous event publisher: publishing an event only enqueues it into the preallocated ring buffer of every
+ * subscriber group, and a dedicated consumer thread per group delivers the queued events to the group's handlers in
+ * batches. When a ring buffer is full the configured {@link Backpressure} applies.
+ */
+public class RingBufferEventPublisher implements IEventPublisher, AutoCloseable {
+
+  public enum Backpressure {
+    /** The publisher waits for the slowest group to make room */
+    BLOCK,
+    /** The oldest queued event of a full group is discarded */
+    DROP_OLDEST,
+    /** Publishing when any group is full throws an IllegalStateException, and no group receives the event */
+    FAIL
+  }
+
+  private final int capacity;
+  private final int maxBatchSize;
+  private final Backpressure backpressure;
+  private final CopyOnWriteArrayList<SubscriberGroup> groups;
+
+  public RingBufferEventPublisher(int capacity, int maxBatchSize, Backpressure backpressure) {
+    if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+    if (maxBatchSize < 1) throw new IllegalArgumentException("maxBatchSize must be positive");
+    Objects.requireNonNull(backpressure, "backpressure must be not null");
+    this.capacity = capacity;
+    this.maxBatchSize = maxBatchSize;
+    this.backpressure = backpressure;
+    this.groups = new CopyOnWriteArrayList<>();
+  }
+
+  /**
+   * Starts a subscriber group, whose handlers are called in order on the group's own consumer thread. The group receives
+   * the events published from now on.
+   */
+  public SubscriberGroup subscribe(String groupName, IEventBatchHandler... handlers) {
+    Strings.requireNonNullOrWhitespace(groupName, "groupName");
+    Objects.requireNonNull(handlers, "handlers must be not null");
+    SubscriberGroup group = new SubscriberGroup(groupName, new EventRingBuffer(capacity), maxBatchSize, handlers);
+    groups.add(group);
+    group.consumer.start();
+    return group;
+  }
+
+  public List<SubscriberGroup> getSubscriberGroups() {
+    return Collections.unmodifiableList(groups);
+  }
+
+  public void publish(Event event) {
+    Objects.requireNonNull(event, "event must be not null");
+    if (backpressure == Backpressure.FAIL) {
+      publishToAllOrNone(event);
+      return;
+    }
+    try {
+      for (SubscriberGroup group : groups) group.ringBuffer.put(event, backpressure);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while publishing " + event, e);
+    }
+  }
+
+  /** Reserves a slot in the ring buffer of every group before enqueuing the event into any of them */
+  private void publishToAllOrNone(Event event) {
+    SubscriberGroup[] groups = this.groups.toArray(new SubscriberGroup[0]);
+    int reserved = 0;
+    try {
+      for (; reserved < groups.length; reserved++)
+        if (!groups[reserved].ringBuffer.tryReserve())
+          throw new IllegalStateException("ring buffer of " + groups[reserved].name + " is full: " + groups[reserved].getCapacity() + " events");
+    }
+    catch (RuntimeException e) {
+      for (int i = 0; i < reserved; i++) groups[i].ringBuffer.cancelReservation();
+      throw e;
+    }
+    for (SubscriberGroup group : groups) group.ringBuffer.putReserved(event);
+  }
+
+  /** Stops accepting events and waits for every group to deliver the events already queued */
+  @Override
+  public void close() throws InterruptedException {
+    for (SubscriberGroup group : groups) group.ringBuffer.close();
+    for (SubscriberGroup group : groups) group.consumer.join();
+  }
+
+  public static final class SubscriberGroup {
+
+    private final String name;
+    private final EventRingBuffer ringBuffer;
+    private final Thread consumer;
+    private volatile long deliveredEvents;
+    private volatile long failedBatches;
+    private volatile RuntimeException lastFailure;
+
+    private SubscriberGroup(String name, EventRingBuffer ringBuffer, int maxBatchSize, IEventBatchHandler[] handlers) {
+      this.name = name;
+      this.ringBuffer = ringBuffer;
+      this.consumer = new Thread(() -> consume(maxBatchSize, handlers.clone()), RingBufferEventPublisher.class.getSimpleName() + "-" + name);
+      this.consumer.setDaemon(true);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getCapacity() {
+      return ringBuffer.capacity();
+    }
+
+    /** @return the number of events waiting in the ring buffer */
+    public int getQueueDepth() {
+      return ringBuffer.size();
+    }
+
+    /** @return the number of events published to the group and neither delivered nor dropped yet */
+    public long getLag() {
+      long delivered = deliveredEvents;
+      return ringBuffer.accepted() - ringBuffer.dropped() - delivered;
+    }
+
+    public long getDeliveredEvents() {
+      return deliveredEvents;
+    }
+
+    public long getDroppedEvents() {
+      return ringBuffer.dropped();
+    }
+
+    public long getFailedBatches() {
+      return failedBatches;
+    }
+
+    /** @return the last exception thrown by a handler of the group, if any */
+    public RuntimeException getLastFailure() {
+      return lastFailure;
+    }
+
+    private void consume(int maxBatchSize, IEventBatchHandler[] handlers) {
+      Event[] batch = new Event[maxBatchSize];
+      List<Event> events = Collections.unmodifiableList(Arrays.asList(batch));
+      try {
+        int count;
+        while ((count = ringBuffer.drainTo(batch)) > 0) {
+          List<Event> delivered = events.subList(0, count);
+          for (IEventBatchHandler handler : handlers) {
+            try {
+              handler.handle(delivered);
+            }
+            catch (RuntimeException e) {
+              lastFailure = e;
+              failedBatches++;
+            }
+          }
+          Arrays.fill(batch, 0, count, null);
+          deliveredEvents += count;
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package dddes.example.infrastructure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import dddes.core.Event;
+import dddes.core.EventIndex;
+
+/**
+ * The secondary indexes of an event store, each one mapping its keys to the set of the streams holding events with that
+ * key. The store indexes the events of every append once they are written, and a query is a single hash lookup
+ * whatever the number of streams. Appends to different streams update the indexes concurrently, while queries never
+ * lock and see a key as soon as an append has indexed it.
+ *
+ * The indexes matching an event type are resolved once per type, so that an event whose type isn't indexed costs a
+ * single lookup.
+ */
+final class SecondaryIndexes<ID> {
+
+  private static final Index<?>[] NONE = new Index<?>[0];
+
+  private volatile Index<ID>[] all;
+  private volatile ConcurrentHashMap<Class<?>, Index<ID>[]> byEventType;
+
+  @SuppressWarnings("unchecked")
+  SecondaryIndexes() {
+    this.all = (Index<ID>[]) NONE;
+    this.byEventType = new ConcurrentHashMap<>();
+  }
+
+  /** @return the new, empty index */
+  synchronized Index<ID> add(EventIndex<?> definition) {
+    Objects.requireNonNull(definition, "index must not be null");
+    for (Index<ID> index : all)
+      if (index.definition.getName().equals(definition.getName())) throw new IllegalArgumentException("index already defined: " + definition.getName());
+    Index<ID> index = new Index<>(definition);
+    Index<ID>[] all = Arrays.copyOf(this.all, this.all.length + 1);
+    all[all.length - 1] = index;
+    this.all = all;
+    // The indexes already resolved for an event type may miss the new one
+    this.byEventType = new ConcurrentHashMap<>();
+    return index;
+  }
+
+  boolean isEmpty() {
+    return all.length == 0;
+  }
+
+  boolean contains(String indexName) {
+    for (Index<ID> index : all)
+      if (index.definition.getName().equals(indexName)) return true;
+    return false;
+  }
+
+  List<Index<ID>> all() {
+    return Arrays.asList(all);
+  }
+
+  /** Indexes the events appended to the stream */
+  void index(ID streamId, Event[] events) {
+    if (all.length == 0) return;
+    ConcurrentHashMap<Class<?>, Index<ID>[]> byEventType = this.byEventType;
+    for (Event event : events)
+      for (Index<ID> index : byEventType.computeIfAbsent(event.getClass(), this::indexesOf)) index.add(streamId, event);
+  }
+
+  /** @return the streams indexed under the key */
+  Stream<ID> find(String indexName, String key) throws NoSuchElementException {
+    Objects.requireNonNull(indexName, "indexName must not be null");
+    Objects.requireNonNull(key, "key must not be null");
+    for (Index<ID> index : all)
+      if (index.definition.getName().equals(indexName)) return index.find(key);
+    throw new NoSuchElementException("Index not found: " + indexName);
+  }
+
+  @SuppressWarnings("unchecked")
+  private Index<ID>[] indexesOf(Class<?> eventType) {
+    List<Index<ID>> indexes = new ArrayList<>();
+    for (Index<ID> index : all)
+      if (index.definition.getEventType().isAssignableFrom(eventType)) indexes.add(index);
+    return indexes.toArray((Index<ID>[]) NONE);
+  }
+
+  /** A single index, whose keys and streams are only added */
+  static final class Index<ID> {
+
+    private final EventIndex<?> definition;
+    private final ConcurrentHashMap<String, Set<ID>> streams;
+
+    Index(EventIndex<?> definition) {
+      this.definition = definition;
+      this.streams = new ConcurrentHashMap<>();
+    }
+
+    EventIndex<?> definition() {
+      return definition;
+    }
+
+    void add(ID streamId, Event event) {
+      String key = definition.keyOf(event);
+      if (key != null) add(key, streamId);
+    }
+
+    void add(String key, ID streamId) {
+      Set<ID> keyStreams = streams.get(key);
+      if (keyStreams == null) keyStreams = streams.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet());
+      keyStreams.add(streamId);
+    }
+
+    Stream<ID> find(String key) {
+      Set<ID> keyStreams = streams.get(key);
+      return keyStreams != null ? keyStreams.stream() : Stream.empty();
+    }
+
+    /** @return a live view of the keys and their streams */
+    Map<String, Set<ID>> entries() {
+      return streams;
+    }
+
+    void clear() {
+      streams.clear();
+    }
+  }
+}
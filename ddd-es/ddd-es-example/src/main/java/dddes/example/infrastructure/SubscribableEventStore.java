@@ -0,0 +1,258 @@
+package dddes.example.infrastructure;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import dddes.core.Event;
+import dddes.core.ICheckpointStore;
+import dddes.core.IEventStore;
+import dddes.core.IEventSubscriber;
+import dddes.core.RecordedEvent;
+import dddes.core.StreamAppend;
+
+/**
+ * An event store decorator offering catch-up subscriptions, to the global log or to a single stream, from any position
+ * or from a stored checkpoint. A subscription first replays the history from the store in large batches, and then
+ * receives the new events from a dispatcher, which tails the global log on a thread of its own and pushes every batch
+ * to the bounded buffers of the live subscriptions.
+ *
+ * A subscription whose buffer is full falls back to catch up from the store, rather than buffering without limit. The
+ * positions of the delivered events always follow each other, without gaps nor duplicates, whatever the switches
+ * between the two modes. The appends through the decorator wake the dispatcher up immediately, while the appends made
+ * directly to the decorated store are noticed within a polling interval. When the dispatcher fails to read the global
+ * log, it makes every live subscription catch up from the store, counts the failure and reads the log again after a
+ * polling interval.
+ */
+public class SubscribableEventStore<ID> implements IEventStore<ID>, AutoCloseable {
+
+  public static final int DEFAULT_BATCH_SIZE = 1024;
+  public static final int DEFAULT_LIVE_BUFFER_SIZE = 8192;
+
+  private static final long POLLING_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  private final IEventStore<ID> eventStore;
+  private final int batchSize;
+  private final int liveBufferSize;
+  private final CopyOnWriteArrayList<CatchUpSubscription<ID>> subscriptions;
+  private final CopyOnWriteArrayList<CatchUpSubscription<ID>> liveSubscriptions;
+  private volatile Thread dispatcher;
+  private volatile long dispatchFailures;
+  private volatile boolean closed;
+
+  public SubscribableEventStore(IEventStore<ID> eventStore) {
+    this(eventStore, DEFAULT_BATCH_SIZE, DEFAULT_LIVE_BUFFER_SIZE);
+  }
+
+  /**
+   * @param eventStore: the decorated store, with a global log
+   * @param batchSize: the maximum number of events read from the store, and delivered, at once
+   * @param liveBufferSize: the maximum number of new events buffered for a live subscription
+   */
+  public SubscribableEventStore(IEventStore<ID> eventStore, int batchSize, int liveBufferSize) {
+    Objects.requireNonNull(eventStore, "eventStore must be not null");
+    if (!eventStore.hasGlobalLog()) throw new IllegalArgumentException("eventStore must have a global log");
+    if (batchSize < 1) throw new IllegalArgumentException("batchSize must be positive");
+    if (liveBufferSize < 1) throw new IllegalArgumentException("liveBufferSize must be positive");
+    this.eventStore = eventStore;
+    this.batchSize = batchSize;
+    this.liveBufferSize = liveBufferSize;
+    this.subscriptions = new CopyOnWriteArrayList<>();
+    this.liveSubscriptions = new CopyOnWriteArrayList<>();
+  }
+
+  /** Subscribes to the global log from the given global position */
+  public CatchUpSubscription<ID> subscribeToAll(String name, long fromGlobalPosition, IEventSubscriber<ID> subscriber) {
+    return subscribe(name, null, fromGlobalPosition, null, subscriber);
+  }
+
+  /** Subscribes to the global log from the checkpoint of the subscription, if any, and keeps it up to date */
+  public CatchUpSubscription<ID> subscribeToAll(String name, ICheckpointStore checkpointStore, IEventSubscriber<ID> subscriber) {
+    Objects.requireNonNull(checkpointStore, "checkpointStore must be not null");
+    return subscribe(name, null, checkpointOf(name, checkpointStore), checkpointStore, subscriber);
+  }
+
+  /** Subscribes to a stream from the given position, the stream may not exist yet */
+  public CatchUpSubscription<ID> subscribeToStream(String name, ID streamId, long fromPosition, IEventSubscriber<ID> subscriber) {
+    Objects.requireNonNull(streamId, "streamId must be not null");
+    return subscribe(name, streamId, fromPosition, null, subscriber);
+  }
+
+  /** Subscribes to a stream from the checkpoint of the subscription, if any, and keeps it up to date */
+  public CatchUpSubscription<ID> subscribeToStream(String name, ID streamId, ICheckpointStore checkpointStore, IEventSubscriber<ID> subscriber) {
+    Objects.requireNonNull(streamId, "streamId must be not null");
+    Objects.requireNonNull(checkpointStore, "checkpointStore must be not null");
+    return subscribe(name, streamId, checkpointOf(name, checkpointStore), checkpointStore, subscriber);
+  }
+
+  /** @return the number of times the dispatcher failed to read the global log */
+  public long getDispatchFailures() {
+    return dispatchFailures;
+  }
+
+  public List<CatchUpSubscription<ID>> getSubscriptions() {
+    return subscriptions.stream().filter(CatchUpSubscription::isRunning).collect(Collectors.toList());
+  }
+
+  public void appendEventsToStream(ID streamId, Stream<Event> events) {
+    eventStore.appendEventsToStream(streamId, events);
+    LockSupport.unpark(dispatcher);
+  }
+
+  public void appendEventsToStream(ID streamId, Stream<Event> events, long expectedLastPosition) {
+    eventStore.appendEventsToStream(streamId, events, expectedLastPosition);
+    LockSupport.unpark(dispatcher);
+  }
+
+  @Override
+  public void appendEventsToStreams(List<StreamAppend<ID>> appends) {
+    eventStore.appendEventsToStreams(appends);
+    LockSupport.unpark(dispatcher);
+  }
+
+  public Stream<Event> getStream(ID streamId) {
+    return eventStore.getStream(streamId);
+  }
+
+  @Override
+  public Stream<Event> getStream(ID streamId, long fromPosition, int maxCount) {
+    return eventStore.getStream(streamId, fromPosition, maxCount);
+  }
+
+  @Override
+  public Map<ID, Stream<Event>> getStreams(Collection<ID> streamIds, ToLongFunction<? super ID> fromPosition) {
+    return eventStore.getStreams(streamIds, fromPosition);
+  }
+
+  @Override
+  public Stream<ID> findStreams(String indexName, String key) {
+    return eventStore.findStreams(indexName, key);
+  }
+
+  @Override
+  public Stream<Event> getStreamBackward(ID streamId, long fromPosition, int maxCount) {
+    return eventStore.getStreamBackward(streamId, fromPosition, maxCount);
+  }
+
+  @Override
+  public Stream<RecordedEvent<ID>> readAll(long fromGlobalPosition, int maxCount) {
+    return eventStore.readAll(fromGlobalPosition, maxCount);
+  }
+
+  @Override
+  public long getLastGlobalPosition() {
+    return eventStore.getLastGlobalPosition();
+  }
+
+  @Override
+  public boolean supportsAtomicAppends() {
+    return eventStore.supportsAtomicAppends();
+  }
+
+  @Override
+  public boolean hasIndex(String indexName) {
+    return eventStore.hasIndex(indexName);
+  }
+
+  @Override
+  public boolean hasGlobalLog() {
+    return eventStore.hasGlobalLog();
+  }
+
+  /** Closes every subscription and stops the dispatcher */
+  @Override
+  public void close() throws InterruptedException {
+    closed = true;
+    for (CatchUpSubscription<ID> subscription : subscriptions) subscription.close();
+    Thread dispatcher = this.dispatcher;
+    if (dispatcher != null) {
+      LockSupport.unpark(dispatcher);
+      dispatcher.join();
+    }
+  }
+
+  /** @return at most batchSize events of the history of the subscription, from the given position */
+  List<RecordedEvent<ID>> readHistory(ID streamId, long fromPosition) {
+    if (streamId == null) return eventStore.readAll(fromPosition, batchSize).collect(Collectors.toList());
+    try {
+      long[] position = { fromPosition };
+      return eventStore.getStream(streamId, fromPosition, batchSize)
+          .map(event -> new RecordedEvent<>(streamId, position[0]++, -1, event))
+          .collect(Collectors.toList());
+    }
+    catch (NoSuchElementException e) { return Collections.emptyList(); }
+  }
+
+  /** Starts pushing the new events to the subscription, at least from the current end of the global log */
+  void goLive(CatchUpSubscription<ID> subscription) {
+    startDispatcher();
+    liveSubscriptions.add(subscription);
+  }
+
+  void stopLive(CatchUpSubscription<ID> subscription) {
+    liveSubscriptions.remove(subscription);
+  }
+
+  void remove(CatchUpSubscription<ID> subscription) {
+    liveSubscriptions.remove(subscription);
+    subscriptions.remove(subscription);
+  }
+
+  private CatchUpSubscription<ID> subscribe(String name, ID streamId, long fromPosition, ICheckpointStore checkpointStore, IEventSubscriber<ID> subscriber) {
+    Strings.requireNonNullOrWhitespace(name, "name");
+    Objects.requireNonNull(subscriber, "subscriber must be not null");
+    if (fromPosition < 0) throw new IllegalArgumentException("fromPosition must not be negative");
+    if (closed) throw new IllegalStateException("the event store is closed");
+    CatchUpSubscription<ID> subscription = new CatchUpSubscription<>(this, name, streamId, fromPosition, checkpointStore, subscriber, batchSize, liveBufferSize);
+    subscriptions.add(subscription);
+    subscription.start();
+    return subscription;
+  }
+
+  private synchronized void startDispatcher() {
+    if (dispatcher != null) return;
+    // The start position is taken before any subscription goes live, so that none misses an event
+    long fromGlobalPosition = eventStore.getLastGlobalPosition();
+    Thread dispatcher = new Thread(() -> dispatch(fromGlobalPosition), SubscribableEventStore.class.getSimpleName() + "-dispatcher");
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+    this.dispatcher = dispatcher;
+  }
+
+  private void dispatch(long fromGlobalPosition) {
+    long position = fromGlobalPosition;
+    while (!closed) {
+      List<RecordedEvent<ID>> batch;
+      try {
+        batch = eventStore.readAll(position, batchSize).collect(Collectors.toList());
+      }
+      catch (RuntimeException e) {
+        // The live subscriptions would otherwise wait for events that may never come
+        dispatchFailures++;
+        for (CatchUpSubscription<ID> subscription : liveSubscriptions) subscription.fallBehind();
+        LockSupport.parkNanos(this, POLLING_INTERVAL_NANOS);
+        continue;
+      }
+      if (batch.isEmpty()) {
+        LockSupport.parkNanos(this, POLLING_INTERVAL_NANOS);
+        continue;
+      }
+      for (CatchUpSubscription<ID> subscription : liveSubscriptions) subscription.push(batch);
+      position += batch.size();
+    }
+  }
+
+  private static Long checkpointOf(String name, ICheckpointStore checkpointStore) {
+    Long checkpoint = checkpointStore.load(name);
+    return checkpoint != null ? checkpoint : 0L;
+  }
+}
@@ -0,0 +1,357 @@
+package dddes.example.infrastructure;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import dddes.core.Event;
+import dddes.core.IEventStore;
+import dddes.core.RecordedEvent;
+import dddes.core.StreamAppend;
+
+/**
+ * An event store keeping the events of the recently used streams in memory, the hot tier, within a budget of bytes, in
+ * front of another event store holding every event, the cold tier, e.g. a {@link FileEventStore}. Appends are written
+ * to the cold tier first, so the heap taken by the events stays bounded whatever the history, and evicting a stream
+ * from the hot tier only costs its next read.
+ *
+ * A read of a stream of the hot tier doesn't touch the cold tier. A read of another stream loads it whole from the cold
+ * tier into the hot one, unless it alone exceeds the budget, and the least recently used streams are evicted to stay
+ * within the budget. The appends to a stream and its loads are serialized on a lock striped by stream id, so that the
+ * hot tier always holds the events of a stream in the order of the cold tier, while reads of the hot tier never wait
+ * for the cold one.
+ *
+ * The bytes taken by the events are estimated by a function, e.g. their serialized size.
+ */
+public class TieredEventStore<ID> implements IEventStore<ID> {
+
+  public static final int DEFAULT_EVENT_SIZE = 128;
+
+  /** The estimated bytes taken by a stream of the hot tier besides its events */
+  private static final int STREAM_OVERHEAD = 64;
+  private static final int LOCK_STRIPES = 64;
+
+  private final IEventStore<ID> coldTier;
+  private final long hotTierBudget;
+  private final ToIntFunction<? super Event> eventSize;
+  private final Object[] locks;
+  private final LinkedHashMap<ID, HotStream> hotTier;
+  private long hotTierSize;
+  private long hotTierEvents;
+  private final LongAdder hits;
+  private final LongAdder misses;
+  private final LongAdder evictions;
+
+  public TieredEventStore(IEventStore<ID> coldTier, long hotTierBudget) {
+    this(coldTier, hotTierBudget, event -> DEFAULT_EVENT_SIZE);
+  }
+
+  /**
+   * @param coldTier: the store of all the events, with a global log
+   * @param hotTierBudget: the maximum number of bytes taken by the events of the hot tier
+   * @param eventSize: the estimated number of bytes taken by an event
+   */
+  public TieredEventStore(IEventStore<ID> coldTier, long hotTierBudget, ToIntFunction<? super Event> eventSize) {
+    Objects.requireNonNull(coldTier, "coldTier must be not null");
+    Objects.requireNonNull(eventSize, "eventSize must be not null");
+    if (hotTierBudget < 0) throw new IllegalArgumentException("hotTierBudget must not be negative");
+    if (!coldTier.hasGlobalLog()) throw new IllegalArgumentException("coldTier must have a global log");
+    this.coldTier = coldTier;
+    this.hotTierBudget = hotTierBudget;
+    this.eventSize = eventSize;
+    this.locks = new Object[LOCK_STRIPES];
+    for (int i = 0; i < LOCK_STRIPES; i++) locks[i] = new Object();
+    this.hotTier = new LinkedHashMap<>(16, 0.75f, true);
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+    this.evictions = new LongAdder();
+  }
+
+  @Override
+  public void appendEventsToStream(ID streamId, Stream<Event> events) {
+    appendEventsToStream(streamId, events, -1);
+  }
+
+  @Override
+  public void appendEventsToStream(ID streamId, Stream<Event> events, long expectedLastPosition) throws ConcurrentModificationException {
+    Objects.requireNonNull(streamId, "streamId must not be null");
+    Objects.requireNonNull(events, "events must not be null");
+    Event[] batch = events.toArray(Event[]::new);
+    synchronized (lockOf(streamId)) {
+      coldTier.appendEventsToStream(streamId, Stream.of(batch), expectedLastPosition);
+      appended(streamId, batch, expectedLastPosition);
+    }
+  }
+
+  @Override
+  public void appendEventsToStreams(List<StreamAppend<ID>> appends) throws ConcurrentModificationException {
+    Objects.requireNonNull(appends, "appends must not be null");
+    TreeSet<Integer> stripes = new TreeSet<>();
+    for (StreamAppend<ID> append : appends) stripes.add(stripeOf(append.getStreamId()));
+    appendLocked(appends, stripes.toArray(new Integer[0]), 0);
+  }
+
+  @Override
+  public Stream<Event> getStream(ID streamId) throws NoSuchElementException {
+    return getStream(streamId, 0, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public Stream<Event> getStream(ID streamId, long fromPosition, int maxCount) throws NoSuchElementException {
+    Objects.requireNonNull(streamId, "streamId must not be null");
+    requireValidRange(fromPosition, maxCount);
+    Stream<Event> hot = readHot(streamId, fromPosition, maxCount);
+    if (hot != null) return hot;
+    synchronized (lockOf(streamId)) {
+      // The stream may have been loaded while waiting for the lock
+      hot = readHot(streamId, fromPosition, maxCount);
+      if (hot != null) return hot;
+      misses.increment();
+      Event[] events = coldTier.getStream(streamId).toArray(Event[]::new);
+      admit(streamId, events);
+      int from = (int) Math.min(fromPosition, events.length);
+      return Arrays.stream(events, from, (int) Math.min((long) from + maxCount, events.length));
+    }
+  }
+
+  /** Reads a stream of the hot tier backward, and the other streams from the cold tier without loading them */
+  @Override
+  public Stream<Event> getStreamBackward(ID streamId, long fromPosition, int maxCount) throws NoSuchElementException {
+    Objects.requireNonNull(streamId, "streamId must not be null");
+    requireValidRange(fromPosition, maxCount);
+    synchronized (hotTier) {
+      HotStream stream = hotTier.get(streamId);
+      if (stream != null) {
+        hits.increment();
+        return stream.streamBackward(fromPosition, maxCount);
+      }
+    }
+    misses.increment();
+    return coldTier.getStreamBackward(streamId, fromPosition, maxCount);
+  }
+
+  @Override
+  public Stream<ID> findStreams(String indexName, String key) {
+    return coldTier.findStreams(indexName, key);
+  }
+
+  @Override
+  public Stream<RecordedEvent<ID>> readAll(long fromGlobalPosition, int maxCount) {
+    return coldTier.readAll(fromGlobalPosition, maxCount);
+  }
+
+  @Override
+  public long getLastGlobalPosition() {
+    return coldTier.getLastGlobalPosition();
+  }
+
+  @Override
+  public boolean supportsAtomicAppends() {
+    return coldTier.supportsAtomicAppends();
+  }
+
+  @Override
+  public boolean hasIndex(String indexName) {
+    return coldTier.hasIndex(indexName);
+  }
+
+  @Override
+  public boolean hasGlobalLog() {
+    return true;
+  }
+
+  /** @return the number of stream reads served by the hot tier */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /** @return the number of stream reads served by the cold tier */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public double getHitRate() {
+    long hits = getHits(), requests = hits + getMisses();
+    return requests > 0 ? (double) hits / requests : 0;
+  }
+
+  /** @return the number of streams evicted from the hot tier to stay within its budget */
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  public long getHotTierBudget() {
+    return hotTierBudget;
+  }
+
+  /** @return the estimated number of bytes taken by the hot tier, within its budget */
+  public long getHotTierSizeInBytes() {
+    synchronized (hotTier) {
+      return hotTierSize;
+    }
+  }
+
+  public int getHotTierStreamCount() {
+    synchronized (hotTier) {
+      return hotTier.size();
+    }
+  }
+
+  public long getHotTierEventCount() {
+    synchronized (hotTier) {
+      return hotTierEvents;
+    }
+  }
+
+  /** @return the number of events of the cold tier, i.e. of the whole store */
+  public long getColdTierEventCount() {
+    return coldTier.getLastGlobalPosition();
+  }
+
+  /** Locks the stripes one after the other in increasing order, and then appends to all the streams */
+  private void appendLocked(List<StreamAppend<ID>> appends, Integer[] stripes, int locked) {
+    if (locked < stripes.length) {
+      synchronized (locks[stripes[locked]]) {
+        appendLocked(appends, stripes, locked + 1);
+      }
+      return;
+    }
+    coldTier.appendEventsToStreams(appends);
+    for (StreamAppend<ID> append : appends)
+      appended(append.getStreamId(), append.getEvents().toArray(new Event[0]), append.getExpectedLastPosition());
+  }
+
+  /**
+   * Adds the events appended to the cold tier to their stream in the hot tier, or the stream itself if it has just been
+   * created. The caller must hold the lock of the stream.
+   */
+  private void appended(ID streamId, Event[] batch, long expectedLastPosition) {
+    if (batch.length == 0) return;
+    long batchSize = sizeOf(batch, eventSize);
+    synchronized (hotTier) {
+      HotStream stream = hotTier.get(streamId);
+      if (stream != null) {
+        stream.append(batch, batchSize);
+        hotTierSize += batchSize;
+        hotTierEvents += batch.length;
+        if (stream.size > hotTierBudget) evict(streamId);
+        evictEldest();
+      }
+      else if (expectedLastPosition == 0) admit(streamId, batch);
+    }
+  }
+
+  /** @return a view of the stream if it is in the hot tier, or null */
+  private Stream<Event> readHot(ID streamId, long fromPosition, int maxCount) {
+    synchronized (hotTier) {
+      HotStream stream = hotTier.get(streamId);
+      if (stream == null) return null;
+      hits.increment();
+      return stream.stream(fromPosition, maxCount);
+    }
+  }
+
+  /** Adds the whole stream to the hot tier, unless it exceeds the budget alone. The caller must hold its lock. */
+  private void admit(ID streamId, Event[] events) {
+    long size = STREAM_OVERHEAD + sizeOf(events, eventSize);
+    if (size > hotTierBudget) return;
+    HotStream stream = new HotStream(events, size);
+    synchronized (hotTier) {
+      HotStream replaced = hotTier.put(streamId, stream);
+      if (replaced != null) {
+        hotTierSize -= replaced.size;
+        hotTierEvents -= replaced.count;
+      }
+      hotTierSize += stream.size;
+      hotTierEvents += stream.count;
+      evictEldest();
+    }
+  }
+
+  /** The caller must hold the hot tier */
+  private void evictEldest() {
+    Iterator<Map.Entry<ID, HotStream>> iterator = hotTier.entrySet().iterator();
+    // Streams are in access order, the least recently used ones come first
+    while (hotTierSize > hotTierBudget && iterator.hasNext()) {
+      HotStream eldest = iterator.next().getValue();
+      iterator.remove();
+      hotTierSize -= eldest.size;
+      hotTierEvents -= eldest.count;
+      evictions.increment();
+    }
+  }
+
+  /** The caller must hold the hot tier */
+  private void evict(ID streamId) {
+    HotStream stream = hotTier.remove(streamId);
+    hotTierSize -= stream.size;
+    hotTierEvents -= stream.count;
+    evictions.increment();
+  }
+
+  private Object lockOf(ID streamId) {
+    return locks[stripeOf(streamId)];
+  }
+
+  private static int stripeOf(Object streamId) {
+    int hash = streamId.hashCode();
+    return (hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1);
+  }
+
+  private static long sizeOf(Event[] events, ToIntFunction<? super Event> eventSize) {
+    long size = 0;
+    for (Event event : events) size += eventSize.applyAsInt(event);
+    return size;
+  }
+
+  private static void requireValidRange(long fromPosition, int maxCount) {
+    if (fromPosition < 0) throw new IllegalArgumentException("fromPosition must not be negative");
+    if (maxCount < 0) throw new IllegalArgumentException("maxCount must not be negative");
+  }
+
+  /**
+   * The events of a stream of the hot tier, guarded by the hot tier. Events are only appended, beyond the size seen by
+   * the views already returned, or into a new array.
+   */
+  private static final class HotStream {
+
+    Event[] events;
+    int count;
+    long size;
+
+    HotStream(Event[] events, long size) {
+      this.events = events;
+      this.count = events.length;
+      this.size = size;
+    }
+
+    void append(Event[] batch, long batchSize) {
+      int newCount = count + batch.length;
+      if (newCount > events.length) events = Arrays.copyOf(events, Math.max(newCount, events.length * 2));
+      System.arraycopy(batch, 0, events, count, batch.length);
+      count = newCount;
+      size += batchSize;
+    }
+
+    Stream<Event> stream(long fromPosition, int maxCount) {
+      int from = (int) Math.min(fromPosition, count);
+      return Arrays.stream(events, from, (int) Math.min((long) from + maxCount, count));
+    }
+
+    Stream<Event> streamBackward(long fromPosition, int maxCount) {
+      Event[] events = this.events;
+      int from = (int) Math.min(fromPosition, count - 1L);
+      return IntStream.range(0, Math.min(maxCount, from + 1)).mapToObj(i -> events[from - i]);
+    }
+  }
+}
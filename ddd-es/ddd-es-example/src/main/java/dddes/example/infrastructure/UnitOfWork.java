@@ -0,0 +1,79 @@
+package dddes.example.infrastructure;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import dddes.core.IAggregateRoot;
+import dddes.core.IEventStore;
+import dddes.core.StreamAppend;
+
+/**
+ * Collects the pending changes of several AggregateRoots, e.g. a Product and the BacklogItems planned in it, and
+ * commits them with a single atomic append to their streams: either every AggregateRoot is at its expected version and
+ * all the changes are saved, or none is. Through a {@link PublishingEventStore} the committed events are then published
+ * at once, in the order their AggregateRoots have been added.
+ *
+ * A unit of work is meant to be used by a single thread. It is empty again after a successful commit, and keeps its
+ * AggregateRoots, with their pending changes, after a failed one.
+ */
+public class UnitOfWork<ID> {
+
+  private final IEventStore<ID> eventStore;
+  private final LinkedHashMap<ID, Entry<ID>> entries;
+
+  /** @param eventStore: a store supporting atomic appends to several streams */
+  public UnitOfWork(IEventStore<ID> eventStore) {
+    Objects.requireNonNull(eventStore, "eventStore must be not null");
+    if (!eventStore.supportsAtomicAppends()) throw new IllegalArgumentException("eventStore must support atomic appends to several streams");
+    this.eventStore = eventStore;
+    this.entries = new LinkedHashMap<>();
+  }
+
+  /** Adds the AggregateRoot, expected to be at the version it had before its pending changes */
+  public UnitOfWork<ID> add(IAggregateRoot<ID> aggregateRoot) {
+    Objects.requireNonNull(aggregateRoot, "aggregateRoot must be not null");
+    return add(aggregateRoot, aggregateRoot.getVersion() - (int) aggregateRoot.getPendingChanges().count());
+  }
+
+  /** @param expectedVersion: the version of the AggregateRoot in the store, or -1 to save it whatever it is */
+  public UnitOfWork<ID> add(IAggregateRoot<ID> aggregateRoot, int expectedVersion) {
+    Objects.requireNonNull(aggregateRoot, "aggregateRoot must be not null");
+    Objects.requireNonNull(aggregateRoot.getId(), "aggregateRoot id must be not null");
+    Entry<ID> current = entries.get(aggregateRoot.getId());
+    if (current != null && current.aggregateRoot != aggregateRoot)
+      throw new IllegalArgumentException("another instance of the AggregateRoot has already been added: " + aggregateRoot.getId());
+    entries.put(aggregateRoot.getId(), new Entry<>(aggregateRoot, expectedVersion));
+    return this;
+  }
+
+  /** @return the number of AggregateRoots added since the last commit */
+  public int size() {
+    return entries.size();
+  }
+
+  /** Saves the pending changes of all the AggregateRoots, and marks them as committed */
+  public void commit() throws ConcurrentModificationException {
+    if (entries.isEmpty()) return;
+    List<StreamAppend<ID>> appends = new ArrayList<>(entries.size());
+    for (Entry<ID> entry : entries.values())
+      appends.add(new StreamAppend<>(entry.aggregateRoot.getId(), entry.aggregateRoot.getPendingChanges().collect(Collectors.toList()), entry.expectedVersion));
+    eventStore.appendEventsToStreams(appends);
+    entries.values().forEach(entry -> entry.aggregateRoot.markPendingChangesAsCommitted());
+    entries.clear();
+  }
+
+  private static final class Entry<ID> {
+
+    final IAggregateRoot<ID> aggregateRoot;
+    final int expectedVersion;
+
+    Entry(IAggregateRoot<ID> aggregateRoot, int expectedVersion) {
+      this.aggregateRoot = aggregateRoot;
+      this.expectedVersion = expectedVersion;
+    }
+  }
+}
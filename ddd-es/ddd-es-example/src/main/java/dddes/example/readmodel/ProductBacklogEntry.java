@@ -0,0 +1,42 @@
+package dddes.example.readmodel;
+
+import dddes.example.domain.backlogitem.StoryPoints;
+
+/** An immutable view of a backlog item planned in the backlog of a product */
+public final class ProductBacklogEntry {
+
+  private final String backlogItemId;
+  private final int position;
+  private final String title;
+  private final StoryPoints storyPoints;
+
+  ProductBacklogEntry(String backlogItemId, int position, String title, StoryPoints storyPoints) {
+    this.backlogItemId = backlogItemId;
+    this.position = position;
+    this.title = title;
+    this.storyPoints = storyPoints;
+  }
+
+  public String getBacklogItemId() {
+    return backlogItemId;
+  }
+
+  public int getPosition() {
+    return position;
+  }
+
+  /** @return the title of the backlog item, or null if its creation has not been applied yet */
+  public String getTitle() {
+    return title;
+  }
+
+  /** @return the story points of the backlog item, or null if its creation has not been applied yet */
+  public StoryPoints getStoryPoints() {
+    return storyPoints;
+  }
+
+  @Override
+  public String toString() {
+    return "ProductBacklogEntry [backlogItemId=" + backlogItemId + ", position=" + position + ", title=" + title + ", storyPoints=" + storyPoints + "]";
+  }
+}
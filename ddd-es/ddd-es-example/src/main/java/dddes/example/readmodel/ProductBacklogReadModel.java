@@ -0,0 +1,190 @@
+package dddes.example.readmodel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dddes.core.Event;
+import dddes.core.IEventPublisher;
+import dddes.core.IProjection;
+import dddes.core.RecordedEvent;
+import dddes.example.domain.backlogitem.StoryPoints;
+import dddes.example.domain.backlogitem.events.BacklogItemCreated;
+import dddes.example.domain.backlogitem.events.BacklogItemTitleChanged;
+import dddes.example.domain.backlogitem.events.StoryPointsAssignedToBacklogItem;
+import dddes.example.domain.product.events.ProductBacklogItemPlanned;
+import dddes.example.domain.product.events.ProductBacklogItemPositionChanged;
+import dddes.example.infrastructure.OrderStatisticTree;
+
+/**
+ * The ordered backlog of every product, with the titles and story points of its backlog items, maintained incrementally
+ * from the events of products and backlog items. Every backlog is kept in an {@link OrderStatisticTree} ordered by
+ * position, together with the total of its story points, so that its size and total are read in O(1) and a page of k
+ * items in O(log n + k).
+ *
+ * The events of a product and of its backlog items belong to different streams and may be applied concurrently, in any
+ * order: a backlog item planned before its creation has been applied shows no title nor story points until then. The
+ * state of a backlog, including its backlog items, is guarded by the lock of the backlog. The read model can be run by
+ * a ProjectionEngine, or fed by a PublishingEventStore as an {@link IEventPublisher}.
+ */
+public class ProductBacklogReadModel implements IProjection<String>, IEventPublisher {
+
+  public static final String NAME = "product-backlog";
+
+  private static final Comparator<BacklogItem> positionComparator = Comparator.comparingInt((BacklogItem item) -> item.position).thenComparing(item -> item.id);
+
+  private final ConcurrentHashMap<String, ProductBacklog> backlogs = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, BacklogItem> backlogItems = new ConcurrentHashMap<>();
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public void apply(List<RecordedEvent<String>> events) {
+    for (RecordedEvent<String> event : events) publish(event.getEvent());
+  }
+
+  @Override
+  public void publish(Event event) {
+    if (event instanceof ProductBacklogItemPlanned) {
+      ProductBacklogItemPlanned e = (ProductBacklogItemPlanned) event;
+      plan(e.getAggregateRootId(), e.getEntityId(), e.getPosition());
+    }
+    else if (event instanceof ProductBacklogItemPositionChanged) {
+      ProductBacklogItemPositionChanged e = (ProductBacklogItemPositionChanged) event;
+      plan(e.getAggregateRootId(), e.getEntityId(), e.getPosition());
+    }
+    else if (event instanceof BacklogItemCreated) {
+      BacklogItemCreated e = (BacklogItemCreated) event;
+      update(e.getProductId(), e.getAggregateRootId(), e.getTitle(), e.getStoryPoints());
+    }
+    else if (event instanceof BacklogItemTitleChanged) {
+      BacklogItemTitleChanged e = (BacklogItemTitleChanged) event;
+      update(null, e.getAggregateRootId(), e.getTitle(), null);
+    }
+    else if (event instanceof StoryPointsAssignedToBacklogItem) {
+      StoryPointsAssignedToBacklogItem e = (StoryPointsAssignedToBacklogItem) event;
+      update(null, e.getAggregateRootId(), null, e.getStoryPoints());
+    }
+  }
+
+  @Override
+  public void reset() {
+    backlogs.clear();
+    backlogItems.clear();
+  }
+
+  /** @return the backlog of the product, in order, or an empty list for an unknown product */
+  public List<ProductBacklogEntry> getBacklog(String productId) {
+    return getBacklog(productId, 0, Integer.MAX_VALUE);
+  }
+
+  /** @return a page of the backlog of the product, starting at the given rank */
+  public List<ProductBacklogEntry> getBacklog(String productId, int offset, int limit) {
+    if (offset < 0 || limit < 0) throw new IllegalArgumentException("offset and limit must be not negative");
+    ProductBacklog backlog = backlogs.get(productId);
+    if (backlog == null) return Collections.emptyList();
+    synchronized (backlog) {
+      if (offset >= backlog.items.size()) return Collections.emptyList();
+      List<ProductBacklogEntry> page = new ArrayList<>(Math.min(limit, backlog.items.size() - offset));
+      for (Iterator<BacklogItem> items = backlog.items.iterator(offset); items.hasNext() && page.size() < limit; ) {
+        BacklogItem item = items.next();
+        page.add(new ProductBacklogEntry(item.id, item.position, item.title, item.storyPoints));
+      }
+      return page;
+    }
+  }
+
+  /** @return the number of backlog items planned for the product */
+  public int getBacklogSize(String productId) {
+    ProductBacklog backlog = backlogs.get(productId);
+    if (backlog == null) return 0;
+    synchronized (backlog) {
+      return backlog.items.size();
+    }
+  }
+
+  /** @return the total of the story points of the backlog items planned for the product */
+  public int getStoryPoints(String productId) {
+    ProductBacklog backlog = backlogs.get(productId);
+    if (backlog == null) return 0;
+    synchronized (backlog) {
+      return backlog.storyPoints;
+    }
+  }
+
+  /** @return the rank of the backlog item in the backlog of its product, or -1 if it is not planned */
+  public int getRank(String backlogItemId) {
+    BacklogItem item = backlogItems.get(backlogItemId);
+    if (item == null) return -1;
+    ProductBacklog backlog = backlogOf(item.productId);
+    synchronized (backlog) {
+      return item.planned ? backlog.items.indexOf(item) : -1;
+    }
+  }
+
+  private void plan(String productId, String backlogItemId, int position) {
+    BacklogItem item = backlogItemOf(backlogItemId, productId);
+    ProductBacklog backlog = backlogOf(productId);
+    synchronized (backlog) {
+      if (item.planned) backlog.items.remove(item);
+      else backlog.storyPoints += valueOf(item.storyPoints);
+      item.position = position;
+      item.planned = true;
+      backlog.items.add(item);
+    }
+  }
+
+  /** Updates the title and/or the story points of a backlog item, and the total of its backlog if planned */
+  private void update(String productId, String backlogItemId, String title, StoryPoints storyPoints) {
+    BacklogItem item = productId != null ? backlogItemOf(backlogItemId, productId) : backlogItems.get(backlogItemId);
+    if (item == null) return; // the creation of the backlog item precedes the checkpoint of the read model
+    ProductBacklog backlog = backlogOf(item.productId);
+    synchronized (backlog) {
+      if (title != null) item.title = title;
+      if (storyPoints != null) {
+        if (item.planned) backlog.storyPoints += valueOf(storyPoints) - valueOf(item.storyPoints);
+        item.storyPoints = storyPoints;
+      }
+    }
+  }
+
+  private BacklogItem backlogItemOf(String backlogItemId, String productId) {
+    return backlogItems.computeIfAbsent(backlogItemId, id -> new BacklogItem(id, productId));
+  }
+
+  private ProductBacklog backlogOf(String productId) {
+    return backlogs.computeIfAbsent(productId, id -> new ProductBacklog());
+  }
+
+  private static int valueOf(StoryPoints storyPoints) {
+    return storyPoints != null ? storyPoints.getValue() : 0;
+  }
+
+  private static final class ProductBacklog {
+
+    final OrderStatisticTree<BacklogItem> items = new OrderStatisticTree<>(positionComparator);
+    int storyPoints;
+  }
+
+  /** A backlog item, guarded by the lock of the backlog of its product */
+  private static final class BacklogItem {
+
+    final String id;
+    final String productId;
+    int position;
+    boolean planned;
+    String title;
+    StoryPoints storyPoints;
+
+    BacklogItem(String id, String productId) {
+      this.id = id;
+      this.productId = productId;
+    }
+  }
+}
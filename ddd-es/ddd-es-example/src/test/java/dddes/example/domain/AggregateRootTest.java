@@ -0,0 +1,129 @@
+package dddes.example.domain;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import dddes.core.AggregateRoot;
+import dddes.core.AggregateRootEvent;
+import dddes.core.Event;
+
+public class AggregateRootTest {
+
+  @Test
+  @Category(AggregateRootTests.class)
+  public void aggregateRoot_should_dispatch_events_to_handlers_declared_on_superclasses() {
+
+    // @formatter:off
+    new AggregateRootAssert<Document>(new Document("id", "title"))
+      .versionIs(1)
+      .call(x -> x.archive())
+      .versionIs(2)
+      .totalPendingChangesIs(2)
+      .isTrueThat(x -> x.getTitle().equals("title"))
+      .isTrueThat(x -> x.isArchived());
+    // @formatter:on
+  }
+
+  @Test
+  @Category(AggregateRootTests.class)
+  public void aggregateRoot_should_prefer_handlers_declared_on_subclasses() {
+
+    Document document = new Document();
+    document.loadFromHistory(Stream.of(new Created("id", "title"), new Retitled("new title")));
+    assertThat(document.getTitle()).isEqualTo("NEW TITLE");
+    assertThat(document.getVersion()).isEqualTo(2);
+  }
+
+  @Test
+  @Category(AggregateRootTests.class)
+  public void aggregateRoot_should_fail_fast_on_invalid_handlers() {
+
+    assertThatIllegalStateException().isThrownBy(() -> new InvalidHandlerAggregate()).withMessageContaining("on");
+  }
+
+  @Test
+  @Category(AggregateRootTests.class)
+  public void aggregateRoot_should_not_apply_events_without_handler() {
+
+    Document document = new Document("id", "title");
+    document.markPendingChangesAsCommitted();
+    assertThatIllegalStateException().isThrownBy(() -> document.unhandled()).withMessageContaining(Unhandled.class.getName());
+    assertThat(document.getVersion()).isEqualTo(1);
+    assertThat(document.getPendingChanges()).isEmpty();
+  }
+
+  static class Created extends AggregateRootEvent<String> {
+    final String title;
+    Created(String id, String title) { super(id); this.title = title; }
+  }
+
+  static class Retitled extends AggregateRootEvent<String> {
+    final String title;
+    Retitled(String title) { this.title = title; }
+  }
+
+  static class Archived extends AggregateRootEvent<String> { }
+
+  static class Unhandled extends AggregateRootEvent<String> { }
+
+  static abstract class TitledAggregate extends AggregateRoot<String> {
+
+    protected String title;
+
+    public String getTitle() {
+      return title;
+    }
+
+    protected void on(Created e) {
+      setId(e.getAggregateRootId());
+      title = e.title;
+    }
+
+    protected void on(Retitled e) {
+      title = e.title;
+    }
+  }
+
+  static class Document extends TitledAggregate {
+
+    private boolean archived;
+
+    Document() {}
+
+    Document(String id, String title) {
+      applyChange(new Created(id, title));
+    }
+
+    boolean isArchived() {
+      return archived;
+    }
+
+    void archive() {
+      applyChange(new Archived());
+    }
+
+    void unhandled() {
+      applyChange(new Unhandled());
+    }
+
+    @Override
+    protected void on(Retitled e) {
+      title = e.title.toUpperCase();
+    }
+
+    private void on(Archived e) {
+      archived = true;
+    }
+  }
+
+  static class InvalidHandlerAggregate extends AggregateRoot<String> {
+
+    protected void on(String notAnEvent) { }
+
+    protected void on(Event e) { }
+  }
+}
@@ -0,0 +1,2 @@
+package dddes.example.domain;
+public interface AggregateRootTests { }
\ No newline at end of file
@@ -1,12 +1,19 @@
 package dddes.example.domain.product;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import dddes.core.Event;
 import dddes.example.domain.AggregateRootAssert;
 import dddes.example.domain.backlogitem.BacklogItem;
 import dddes.example.domain.backlogitem.BacklogItemFactory;
@@ -132,9 +139,9 @@ public class ProductTest {
 			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 0).getId() == backlogItem1.getId())
 			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 0).getPosition() == 0)
 			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 1).getId() == backlogItem2.getId())
-			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 1).getPosition() == 1)
+			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 1).getPosition() == Product.POSITION_GAP)
 			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 2).getId() == backlogItem3.getId())
-			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 2).getPosition() == 2)
+			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 2).getPosition() == 2 * Product.POSITION_GAP)
 			.markPendingChangesAsCommitted()
 	
 			.call(x -> x.reorderBacklogItems(backlogItem3.getId(), backlogItem2.getId(), backlogItem1.getId()))
@@ -145,14 +152,154 @@ public class ProductTest {
 			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 0).getId() == backlogItem3.getId())
 			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 0).getPosition() == 0)
 			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 1).getId() == backlogItem2.getId())
-			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 1).getPosition() == 1)
+			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 1).getPosition() == Product.POSITION_GAP)
 			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 2).getId() == backlogItem1.getId())
-			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 2).getPosition() == 2)
+			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 2).getPosition() == 2 * Product.POSITION_GAP)
 	
 			.call(x -> x.reorderBacklogItems(backlogItem3.getId(), backlogItem2.getId(), backlogItem1.getId()))			
 			.thereAreNoPendingChanges();
 		// @formatter:on
 	}
+
+	@Test
+	@Category(ProductTests.class)
+	public void product_should_not_reorder_backlog_items_partially() {
+
+		Product product = ProductFactory.create("My product");
+		BacklogItem backlogItem1 = BacklogItemFactory.create("BacklogItem 1", product);
+		BacklogItem backlogItem2 = BacklogItemFactory.create("BacklogItem 2", product);
+		product.planBacklogItem(backlogItem1);
+		product.planBacklogItem(backlogItem2);
+
+		// @formatter:off
+		new AggregateRootAssert<Product>(product)
+			.markPendingChangesAsCommitted()
+			.wrongCall(x -> x.reorderBacklogItems(backlogItem2.getId()))
+			.thereAreNoPendingChanges()
+			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 0).getId() == backlogItem1.getId());
+		// @formatter:on
+	}
+
+	@Test
+	@Category(ProductTests.class)
+	public void product_should_move_a_backlog_item_with_a_single_event() {
+
+		Product product = ProductFactory.create("My product");
+		BacklogItem backlogItem1 = BacklogItemFactory.create("BacklogItem 1", product);
+		BacklogItem backlogItem2 = BacklogItemFactory.create("BacklogItem 2", product);
+		BacklogItem backlogItem3 = BacklogItemFactory.create("BacklogItem 3", product);
+
+		// @formatter:off
+		new AggregateRootAssert<Product>(product)
+			.call(x -> x.planBacklogItem(backlogItem1))
+			.call(x -> x.planBacklogItem(backlogItem2))
+			.call(x -> x.planBacklogItem(backlogItem3))
+			.markPendingChangesAsCommitted()
+
+			.call(x -> x.moveBacklogItem(backlogItem3.getId(), 0))
+			.thereIsExactlyOnePendingChangeOfType(ProductBacklogItemPositionChanged.class)
+			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 0).getId() == backlogItem3.getId())
+			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 1).getId() == backlogItem1.getId())
+			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 2).getId() == backlogItem2.getId())
+			.markPendingChangesAsCommitted()
+
+			.call(x -> x.moveBacklogItem(backlogItem1.getId(), 2))
+			.thereIsExactlyOnePendingChangeOfType(ProductBacklogItemPositionChanged.class)
+			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 1).getId() == backlogItem2.getId())
+			.isTrueThat(x -> getProductBacklogItemAtIndex(x, 2).getId() == backlogItem1.getId())
+			.markPendingChangesAsCommitted()
+
+			.call(x -> x.moveBacklogItem(backlogItem1.getId(), 2))
+			.thereAreNoPendingChanges()
+			.wrongCall(x -> x.moveBacklogItem(backlogItem1.getId(), 3))
+			.wrongCall(x -> x.moveBacklogItem(backlogItem1.getId(), -1))
+			.wrongCall(x -> x.moveBacklogItem(UUID.randomUUID().toString(), 0))
+			.thereAreNoPendingChanges();
+		// @formatter:on
+	}
+
+	@Test(timeout = 10_000)
+	@Category(ProductTests.class)
+	public void product_should_renumber_the_backlog_only_when_moves_leave_no_room() {
+
+		int size = 1_000;
+		Product product = ProductFactory.create("My product");
+		List<String> backlogItemIds = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			BacklogItem backlogItem = BacklogItemFactory.create("BacklogItem " + i, product);
+			product.planBacklogItem(backlogItem);
+			backlogItemIds.add(backlogItem.getId());
+		}
+
+		Random random = new Random(42);
+		int moves = 10_000;
+		for (int i = 0; i < moves; i++) {
+			String backlogItemId = backlogItemIds.remove(random.nextInt(size));
+			int newRank = random.nextInt(size);
+			backlogItemIds.add(newRank, backlogItemId);
+			product.moveBacklogItem(backlogItemId, newRank);
+		}
+		assertThat(product.getPlannedBacklogItems().map(ProductBacklogItem::getId).collect(Collectors.toList())).isEqualTo(backlogItemIds);
+		assertThat(product.getPendingChanges().filter(ProductBacklogItemPositionChanged.class::isInstance).count()).isLessThan(2 * moves);
+
+		// Every move between the first two items halves the room between them
+		int renumberedAt = -1;
+		for (int i = 0; renumberedAt < 0; i++) {
+			long before = product.getPendingChanges().count();
+			String backlogItemId = backlogItemIds.remove(size - 1);
+			backlogItemIds.add(1, backlogItemId);
+			product.moveBacklogItem(backlogItemId, 1);
+			if (product.getPendingChanges().count() - before > 1) renumberedAt = i;
+		}
+		assertThat(renumberedAt).isLessThan(32);
+		assertThat(getProductBacklogItemAtIndex(product, 1).getPosition()).isEqualTo(Product.POSITION_GAP);
+		assertThat(getProductBacklogItemAtIndex(product, size - 1).getPosition()).isEqualTo((size - 1) * Product.POSITION_GAP);
+
+		Product replayed = new Product();
+		replayed.loadFromHistory(product.getPendingChanges());
+		assertThat(replayed.getPlannedBacklogItems().map(ProductBacklogItem::getId).collect(Collectors.toList())).isEqualTo(backlogItemIds);
+	}
+
+	@Test(timeout = 10_000)
+	@Category(ProductTests.class)
+	public void product_should_plan_and_reorder_a_large_number_of_backlog_items() {
+
+		int size = 50_000;
+		Product product = ProductFactory.create("My product");
+		List<String> backlogItemIds = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			BacklogItem backlogItem = BacklogItemFactory.create("BacklogItem " + i, product);
+			product.planBacklogItem(backlogItem);
+			backlogItemIds.add(backlogItem.getId());
+		}
+		product.markPendingChangesAsCommitted();
+
+		Collections.reverse(backlogItemIds);
+		product.reorderBacklogItems(backlogItemIds);
+
+		assertThat(product.getPendingChanges().count()).isEqualTo(size);
+		assertThat(product.getPlannedBacklogItems().map(ProductBacklogItem::getId).collect(Collectors.toList())).isEqualTo(backlogItemIds);
+		assertThat(getProductBacklogItemAtIndex(product, size - 1).getPosition()).isEqualTo((size - 1) * Product.POSITION_GAP);
+	}
+
+	@Test(timeout = 10_000)
+	@Category(ProductTests.class)
+	public void product_should_replay_a_large_number_of_planned_backlog_items() {
+
+		int size = 100_000;
+		List<Event> history = new ArrayList<>(size + 1);
+		history.add(new ProductCreated(UUID.randomUUID().toString(), "My product"));
+		for (int i = 0; i < size; i++)
+			history.add(new ProductBacklogItemPlanned(UUID.randomUUID().toString(), i));
+
+		Product product = new Product();
+		product.loadFromHistory(history.stream());
+
+		assertThat(product.getVersion()).isEqualTo(size + 1);
+		assertThat(product.getPlannedBacklogItems().count()).isEqualTo(size);
+		assertThat(getProductBacklogItemAtIndex(product, size - 1).getId())
+			.isEqualTo(((ProductBacklogItemPlanned) history.get(size)).getEntityId());
+	}
 	
 	private static ProductBacklogItem getProductBacklogItemAtIndex(Product product, int index) {
 	  return product.getPlannedBacklogItems().skip(index).limit(1).findFirst().orElse(null);
@@ -0,0 +1,83 @@
+package dddes.example.infrastructure;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Duration;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import dddes.core.IEventStore;
+import dddes.core.Snapshot;
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductFactory;
+import dddes.example.domain.product.ProductRepository;
+
+public class AggregateCacheTest {
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void cache_should_evict_least_recently_used_aggregates() {
+
+    AggregateCache<String> cache = new AggregateCache<>(2);
+    cache.put(snapshot("a", 1));
+    cache.put(snapshot("b", 1));
+    assertThat(cache.get("a")).isNotNull();
+    cache.put(snapshot("c", 1));
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.get("a")).isNotNull();
+    assertThat(cache.get("c")).isNotNull();
+    assertThat(cache.getEvictions()).isEqualTo(1);
+    assertThat(cache.getHits()).isEqualTo(3);
+    assertThat(cache.getMisses()).isEqualTo(1);
+    assertThat(cache.getHitRate()).isEqualTo(0.75);
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void cache_should_expire_aggregates_and_keep_their_latest_version() throws Exception {
+
+    AggregateCache<String> cache = new AggregateCache<>(10, Duration.ofMillis(50));
+    cache.put(snapshot("a", 2));
+    cache.put(snapshot("a", 1));
+    assertThat(cache.get("a").getVersion()).isEqualTo(2);
+
+    Thread.sleep(100);
+    assertThat(cache.get("a")).isNull();
+    assertThat(cache.getEvictions()).isEqualTo(1);
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void repositories_should_load_cached_aggregates_and_catch_up_with_newer_events() {
+
+    IEventStore<String> eventStore = new InMemoryEventStore<>();
+    AggregateCache<String> cache = new AggregateCache<>(100);
+    ProductRepository cachedRepository = new ProductRepository(eventStore, cache);
+    ProductRepository repository = new ProductRepository(eventStore);
+
+    Product product = ProductFactory.create("Product");
+    cachedRepository.save(product, 0);
+    Product loaded1 = cachedRepository.getById(product.getId());
+    Product loaded2 = cachedRepository.getById(product.getId());
+    assertThat(cache.getHits()).isEqualTo(2);
+    assertThat(loaded1).isNotSameAs(loaded2).isEqualTo(loaded2).isEqualTo(product);
+
+    // Changes saved elsewhere are caught up with
+    Product other = repository.getById(product.getId());
+    other.rename("Renamed");
+    repository.save(other, 1);
+    loaded1.rename("Not saved");
+
+    Product loaded3 = cachedRepository.getById(product.getId());
+    assertThat(loaded3.getName()).isEqualTo("Renamed");
+    assertThat(loaded3.getVersion()).isEqualTo(2);
+    assertThat(cache.get(product.getId()).getVersion()).isEqualTo(2);
+  }
+
+  private static Snapshot<String> snapshot(String id, int version) {
+    return new Snapshot<>(id, version, "state");
+  }
+}
@@ -0,0 +1,100 @@
+package dddes.example.infrastructure;
+
+import static dddes.example.infrastructure.SubscriptionTest.await;
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductFactory;
+import dddes.example.domain.product.ProductRepository;
+import dddes.example.domain.product.events.ProductRenamed;
+
+public class AggregateCommandExecutorTest {
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void executors_should_run_the_commands_of_an_aggregate_serially_on_a_single_instance() throws Exception {
+
+    InMemoryEventStore<String> eventStore = new InMemoryEventStore<>();
+    MetricsRegistry metrics = new MetricsRegistry("executor-test");
+    InstrumentedRepository<Product, String> repository = new InstrumentedRepository<>(new ProductRepository(eventStore), Product.class, metrics);
+    Product product1 = ProductFactory.create("Product 1");
+    Product product2 = ProductFactory.create("Product 2");
+    repository.save(product1);
+    repository.save(product2);
+
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    AggregateCommandExecutor<Product, String> executor = new AggregateCommandExecutor<>(repository, pool, Duration.ofMinutes(1));
+    List<Integer> versions = InMemoryEventStoreTest.runConcurrently(() -> {
+      List<CompletableFuture<Integer>> results = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        String name = Thread.currentThread().getName() + "-" + i;
+        results.add(executor.submit(product1.getId(), p -> {
+          p.rename(name);
+          return p.getVersion();
+        }));
+        results.add(executor.submit(product2.getId(), p -> {
+          p.rename(name);
+          return p.getVersion();
+        }));
+      }
+      return results.stream().mapToInt(CompletableFuture::join).max().getAsInt();
+    });
+
+    assertThat(versions).allMatch(v -> v <= 801);
+    assertThat(eventStore.getStream(product1.getId()).count()).isEqualTo(801);
+    assertThat(eventStore.getStream(product2.getId()).count()).isEqualTo(801);
+    assertThat(eventStore.getStream(product1.getId()).skip(1).map(e -> ((ProductRenamed) e).getName()).distinct().count()).isEqualTo(800);
+    assertThat(metrics.getValues().get("repository.Product.load.latency.count")).isEqualTo(2L);
+    assertThat(metrics.getValues().get("repository.Product.save.conflicts")).isEqualTo(0L);
+    assertThat(executor.getMailboxCount()).isEqualTo(2);
+
+    executor.close();
+    assertThatIllegalStateException().isThrownBy(() -> executor.execute(product1.getId(), p -> p.rename("Closed")));
+    pool.shutdown();
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void executors_should_reload_the_instance_after_a_failed_command_and_evict_idle_mailboxes() throws Exception {
+
+    InMemoryEventStore<String> eventStore = new InMemoryEventStore<>();
+    ProductRepository repository = new ProductRepository(eventStore);
+    Product product = ProductFactory.create("Product");
+    repository.save(product);
+    AggregateCommandExecutor<Product, String> executor = new AggregateCommandExecutor<>(repository, Executors.newSingleThreadExecutor(), Duration.ofMillis(50));
+
+    // A command failing after a change doesn't leave the change in memory
+    CompletableFuture<Void> failed = executor.execute(product.getId(), p -> {
+      p.rename("Lost");
+      throw new IllegalArgumentException("invalid command");
+    });
+    assertThatThrownBy(failed::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(IllegalArgumentException.class);
+    assertThat(executor.submit(product.getId(), Product::getName).join()).isEqualTo("Product");
+
+    // Changes appended behind the executor fail the next save, and the following command sees them
+    eventStore.appendEventsToStream(product.getId(), Stream.of(new ProductRenamed("External")));
+    assertThatThrownBy(executor.execute(product.getId(), p -> p.rename("Stale"))::join).hasCauseInstanceOf(ConcurrentModificationException.class);
+    executor.execute(product.getId(), p -> p.rename(p.getName() + " 2")).join();
+    assertThat(repository.getById(product.getId()).getName()).isEqualTo("External 2");
+    assertThatThrownBy(executor.submit("unknown", Product::getName)::join).hasCauseInstanceOf(NoSuchElementException.class);
+
+    await(() -> executor.getMailboxCount() == 0);
+    assertThat(executor.getEvictions()).isGreaterThanOrEqualTo(2);
+    assertThat(executor.submit(product.getId(), Product::getVersion).join()).isEqualTo(3);
+    executor.close();
+  }
+}
@@ -0,0 +1,112 @@
+package dddes.example.infrastructure;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.openjdk.jol.info.GraphLayout;
+
+import dddes.core.AggregateId;
+import dddes.example.domain.product.events.ProductRenamed;
+
+public class AggregateIdTest {
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void aggregate_ids_should_convert_to_and_from_the_canonical_strings_of_uuids() {
+
+    List<AggregateId> ids = new ArrayList<>();
+    for (int i = 0; i < 1_000; i++) {
+      UUID uuid = i == 0 ? new UUID(0, 0) : i == 1 ? new UUID(-1, -1) : UUID.randomUUID();
+      AggregateId id = AggregateId.parse(uuid.toString());
+      assertThat(id.toString()).isEqualTo(uuid.toString());
+      assertThat(id.toUUID()).isEqualTo(uuid);
+      assertThat(id).isEqualTo(AggregateId.of(uuid)).isNotEqualTo(AggregateId.random());
+      assertThat(id.hashCode()).isEqualTo(AggregateId.of(uuid).hashCode());
+      ids.add(id);
+    }
+    // Ids are ordered as their Strings
+    Collections.sort(ids);
+    assertThat(ids.stream().map(AggregateId::toString).collect(Collectors.toList())).isSorted();
+
+    // Only the canonical form is accepted, so that two different Strings never convert to the same id
+    String id = "123e4567-e89b-42d3-a456-556642440000";
+    assertThat(AggregateId.tryParse(id)).isNotNull();
+    assertThat(AggregateId.tryParse(id.toUpperCase())).isNull();
+    assertThat(AggregateId.tryParse(id.replace('-', '_'))).isNull();
+    assertThat(AggregateId.tryParse(id + "0")).isNull();
+    assertThat(AggregateId.tryParse("product-1")).isNull();
+    assertThat(AggregateId.tryParse(null)).isNull();
+    assertThatIllegalArgumentException().isThrownBy(() -> AggregateId.parse("product-1"));
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void long_pair_maps_should_add_and_find_entries_while_being_read_concurrently() throws Exception {
+
+    LongPairHashMap<Long> map = new LongPairHashMap<>();
+    assertThat(map.get(0, 0)).isNull();
+    AtomicInteger writer = new AtomicInteger();
+    AtomicInteger missing = new AtomicInteger();
+    // One writer adds keys with colliding halves while the other threads read the keys already added
+    InMemoryEventStoreTest.runConcurrently(() -> {
+      boolean isWriter = writer.getAndIncrement() == 0;
+      for (long i = 0; i < 100_000; i++) {
+        long key = i;
+        if (isWriter) assertThat(map.computeIfAbsent(key, -key, () -> key)).isEqualTo(key);
+        else if (map.size() > i && map.get(i, -i) == null) missing.incrementAndGet();
+      }
+      return 0;
+    });
+    assertThat(missing.get()).isZero();
+    assertThat(map.size()).isEqualTo(100_000);
+    assertThat(map.capacity()).isEqualTo(1 << 18);
+    assertThat(map.computeIfAbsent(42, -42, () -> -1L)).isEqualTo(42L);
+    assertThat(map.get(42, 42)).isNull();
+    assertThat(map.get(-42, 42)).isNull();
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void in_memory_event_stores_should_keep_streams_of_aggregate_ids_and_of_other_ids() {
+
+    InMemoryEventStore<Object> eventStore = new InMemoryEventStore<>();
+    AggregateId aggregateId = AggregateId.random();
+    eventStore.appendEventsToStream(aggregateId, Stream.of(new ProductRenamed("1"), new ProductRenamed("2")), 0);
+    eventStore.appendEventsToStream(aggregateId.toString(), Stream.of(new ProductRenamed("3")), 0);
+    eventStore.appendEventsToStream(new AggregateId(aggregateId.getMostSignificantBits(), aggregateId.getLeastSignificantBits()), Stream.of(new ProductRenamed("4")), 2);
+
+    assertThat(eventStore.getStream(AggregateId.parse(aggregateId.toString())).count()).isEqualTo(3);
+    assertThat(eventStore.getStream(aggregateId.toString()).count()).isEqualTo(1);
+    assertThat(eventStore.readAll(0, 10).map(e -> e.getStreamId())).containsExactly(aggregateId, aggregateId, aggregateId.toString(), aggregateId);
+    assertThatThrownBy(() -> eventStore.getStream(AggregateId.random())).isInstanceOf(NoSuchElementException.class);
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void in_memory_event_stores_should_take_less_heap_for_streams_of_aggregate_ids_than_of_strings() {
+
+    AggregateId[] ids = Stream.generate(AggregateId::random).limit(10_000).toArray(AggregateId[]::new);
+    ProductRenamed event = new ProductRenamed("name");
+    InMemoryEventStore<String> stringStore = new InMemoryEventStore<>();
+    InMemoryEventStore<AggregateId> aggregateIdStore = new InMemoryEventStore<>();
+    for (AggregateId id : ids) {
+      stringStore.appendEventsToStream(id.toString(), Stream.of(event));
+      aggregateIdStore.appendEventsToStream(id, Stream.of(event));
+    }
+
+    // The layout of the objects reachable from the stores, which doesn't depend on the garbage collector
+    long stringBytes = GraphLayout.parseInstance(stringStore).totalSize();
+    long aggregateIdBytes = GraphLayout.parseInstance(aggregateIdStore).totalSize();
+    assertThat(aggregateIdBytes).isLessThan(stringBytes);
+  }
+}
@@ -0,0 +1,146 @@
+package dddes.example.infrastructure;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import dddes.core.AggregateRootEvent;
+import dddes.core.AggregateRootEventCodec;
+import dddes.core.BinaryEncoding;
+import dddes.core.Event;
+import dddes.core.EventCodecRegistry;
+import dddes.example.domain.backlogitem.BacklogItem;
+import dddes.example.domain.backlogitem.BacklogItemFactory;
+import dddes.example.domain.backlogitem.StoryPoints;
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductFactory;
+import dddes.example.domain.product.ProductRepository;
+import dddes.example.domain.product.events.ProductRenamed;
+import dddes.example.infrastructure.FileEventStore.Durability;
+
+public class EventCodecTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void codecs_should_encode_and_decode_every_example_event() {
+
+    EventCodecRegistry registry = ExampleEventCodecs.newRegistry();
+    List<Event> events = exampleEvents();
+    assertThat(events.stream().map(Object::getClass).distinct()).hasSize(7);
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+    for (Event event : events) registry.encode(event, buffer);
+    buffer.flip();
+    for (Event event : events) assertThat(registry.decode(buffer)).isEqualToComparingFieldByFieldRecursively(event);
+    assertThat(buffer.hasRemaining()).isFalse();
+
+    for (Event event : events) {
+      byte[] bytes = registry.serialize(event);
+      assertThat(registry.deserialize(ByteBuffer.wrap(bytes))).isEqualToComparingFieldByFieldRecursively(event);
+      assertThat(bytes.length).isLessThan(new JavaEventSerializer().serialize(event).length / 4);
+    }
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void binary_encoding_should_write_varints_strings_and_enums() {
+
+    ByteBuffer buffer = ByteBuffer.allocate(256);
+    BinaryEncoding.writeVarInt(buffer, 127);
+    assertThat(buffer.position()).isEqualTo(1);
+    BinaryEncoding.writeVarInt(buffer, 128);
+    assertThat(buffer.position()).isEqualTo(3);
+    BinaryEncoding.writeVarInt(buffer, -1);
+    BinaryEncoding.writeVarLong(buffer, Long.MAX_VALUE);
+    BinaryEncoding.writeString(buffer, "Ünïcödé 😀 €");
+    BinaryEncoding.writeString(buffer, null);
+    BinaryEncoding.writeString(buffer, "");
+    BinaryEncoding.writeEnum(buffer, StoryPoints.THIRTEEN);
+    BinaryEncoding.writeEnum(buffer, null);
+    buffer.flip();
+
+    assertThat(BinaryEncoding.readVarInt(buffer)).isEqualTo(127);
+    assertThat(BinaryEncoding.readVarInt(buffer)).isEqualTo(128);
+    assertThat(BinaryEncoding.readVarInt(buffer)).isEqualTo(-1);
+    assertThat(BinaryEncoding.readVarLong(buffer)).isEqualTo(Long.MAX_VALUE);
+    assertThat(BinaryEncoding.readString(buffer)).isEqualTo("Ünïcödé 😀 €");
+    assertThat(BinaryEncoding.readString(buffer)).isNull();
+    assertThat(BinaryEncoding.readString(buffer)).isEmpty();
+    assertThat(BinaryEncoding.readEnum(buffer, StoryPoints.class)).isEqualTo(StoryPoints.THIRTEEN);
+    assertThat(BinaryEncoding.readEnum(buffer, StoryPoints.class)).isNull();
+    assertThat(buffer.hasRemaining()).isFalse();
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void registry_should_reject_unknown_and_duplicate_types() {
+
+    EventCodecRegistry registry = ExampleEventCodecs.newRegistry();
+    assertThatIllegalArgumentException().isThrownBy(() -> registry.serialize(new Event() { }));
+    assertThatIllegalStateException().isThrownBy(() -> registry.deserialize(ByteBuffer.wrap(new byte[] { 99 })));
+    // A corrupted type id may decode as a negative varint
+    assertThatIllegalStateException().isThrownBy(() -> registry.deserialize(ByteBuffer.wrap(new byte[] { -1, -1, -1, -1, 0x0F })));
+    assertThatIllegalArgumentException().isThrownBy(() -> ExampleEventCodecs.newRegistry().register(1, new TestEventCodec()));
+
+    // Events larger than the initial buffer are encoded too
+    ProductRenamed renamed = new ProductRenamed(new String(new char[10_000]).replace('\0', 'x'));
+    assertThat(((ProductRenamed) registry.deserialize(ByteBuffer.wrap(registry.serialize(renamed)))).getName()).isEqualTo(renamed.getName());
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void file_event_store_should_store_events_with_the_binary_codecs() throws Exception {
+
+    Path directory = temporaryFolder.getRoot().toPath();
+    Product product = ProductFactory.create("Product");
+    product.planBacklogItem(BacklogItemFactory.create("BacklogItem", product));
+    try (FileEventStore eventStore = new FileEventStore(directory, ExampleEventCodecs.newRegistry(), FileEventStore.DEFAULT_SEGMENT_SIZE, Durability.EVERY_BATCH)) {
+      new ProductRepository(eventStore).save(product, 0);
+    }
+    try (FileEventStore eventStore = new FileEventStore(directory, ExampleEventCodecs.newRegistry(), FileEventStore.DEFAULT_SEGMENT_SIZE, Durability.EVERY_BATCH)) {
+      Product loaded = new ProductRepository(eventStore).getById(product.getId());
+      assertThat(loaded.getVersion()).isEqualTo(product.getVersion());
+      assertThat(loaded.getPlannedBacklogItems()).hasSize(1);
+    }
+  }
+
+  static List<Event> exampleEvents() {
+    Product product = ProductFactory.create("Prödüct 😀");
+    BacklogItem backlogItem1 = BacklogItemFactory.create("BacklogItem 1", product);
+    BacklogItem backlogItem2 = BacklogItemFactory.create("BacklogItem 2", product);
+    backlogItem1.assignStoryPoints(StoryPoints.EIGHT);
+    backlogItem1.changeTitle("BacklogItem 1bis");
+    product.rename("Product 2");
+    product.planBacklogItem(backlogItem1);
+    product.planBacklogItem(backlogItem2);
+    product.reorderBacklogItems(backlogItem2.getId(), backlogItem1.getId());
+    return Stream.of(product, backlogItem1, backlogItem2).flatMap(aggregateRoot -> aggregateRoot.getPendingChanges()).collect(Collectors.toList());
+  }
+
+  private static final class TestEventCodec extends AggregateRootEventCodec<TestEvent> {
+
+    TestEventCodec() {
+      super(TestEvent.class);
+    }
+
+    protected void encodePayload(TestEvent event, ByteBuffer buffer) { }
+
+    protected TestEvent decodePayload(String aggregateRootId, ByteBuffer buffer) {
+      return new TestEvent();
+    }
+  }
+
+  private static final class TestEvent extends AggregateRootEvent<String> { }
+}
@@ -0,0 +1,347 @@
+package dddes.example.infrastructure;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import dddes.core.Event;
+import dddes.core.RecordedEvent;
+import dddes.core.StreamAppend;
+import dddes.example.domain.backlogitem.BacklogItem;
+import dddes.example.domain.backlogitem.BacklogItemFactory;
+import dddes.example.domain.backlogitem.BacklogItemRepository;
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductBacklogItem;
+import dddes.example.domain.product.ProductFactory;
+import dddes.example.domain.product.ProductRepository;
+import dddes.example.domain.product.events.ProductRenamed;
+import dddes.example.infrastructure.FileEventStore.Durability;
+
+public class FileEventStoreTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_append_and_read_events_after_reopening() throws Exception {
+
+    Path directory = temporaryFolder.getRoot().toPath();
+    try (FileEventStore eventStore = new FileEventStore(directory)) {
+      eventStore.appendEventsToStream("a", Stream.of(renamed("1"), renamed("2")), 0);
+      eventStore.appendEventsToStream("b", Stream.of(renamed("x")));
+      eventStore.appendEventsToStream("a", Stream.of(renamed("3")));
+      assertThatThrownBy(() -> eventStore.appendEventsToStream("a", Stream.of(renamed("4")), 2))
+          .isInstanceOf(ConcurrentModificationException.class);
+      assertThatThrownBy(() -> eventStore.getStream("c")).isInstanceOf(NoSuchElementException.class);
+    }
+
+    try (FileEventStore eventStore = new FileEventStore(directory)) {
+      assertThat(names(eventStore.getStream("a"))).containsExactly("1", "2", "3");
+      assertThat(names(eventStore.getStream("b"))).containsExactly("x");
+      assertThat(names(eventStore.getStream("a", 1, 1))).containsExactly("2");
+      assertThat(names(eventStore.getStreamBackward("a", Long.MAX_VALUE, 2))).containsExactly("3", "2");
+      eventStore.appendEventsToStream("a", Stream.of(renamed("4")), 3);
+      assertThat(names(eventStore.getStream("a", 3))).containsExactly("4");
+
+      List<RecordedEvent<String>> events = eventStore.readAll(1, 10).collect(Collectors.toList());
+      assertThat(events).extracting(RecordedEvent::getStreamId).containsExactly("a", "b", "a", "a");
+      assertThat(events).extracting(RecordedEvent::getStreamPosition).containsExactly(1L, 0L, 2L, 3L);
+      assertThat(events).extracting(RecordedEvent::getGlobalPosition).containsExactly(1L, 2L, 3L, 4L);
+      assertThat(eventStore.getLastGlobalPosition()).isEqualTo(5);
+    }
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_roll_segments_at_the_configured_size() throws Exception {
+
+    Path directory = temporaryFolder.getRoot().toPath();
+    List<String> names = IntStream.range(0, 200).mapToObj(String::valueOf).collect(Collectors.toList());
+    try (FileEventStore eventStore = new FileEventStore(directory, new JavaEventSerializer(), 4096, Durability.PERIODIC, Duration.ofMillis(10))) {
+      for (String name : names) eventStore.appendEventsToStream("a", Stream.of(renamed(name)));
+      assertThat(eventStore.getSegmentCount()).isGreaterThan(1);
+      assertThat(names(eventStore.getStream("a"))).isEqualTo(names);
+    }
+
+    try (FileEventStore eventStore = new FileEventStore(directory, new JavaEventSerializer(), 4096, Durability.EVERY_EVENT)) {
+      assertThat(names(eventStore.getStream("a"))).isEqualTo(names);
+      assertThatIllegalArgumentException().isThrownBy(() -> eventStore.appendEventsToStream("a", Stream.of(renamed(new String(new char[4096])))));
+    }
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_discard_a_torn_record_at_the_end_of_the_last_segment() throws Exception {
+
+    Path directory = temporaryFolder.getRoot().toPath();
+    long sizeInBytes;
+    try (FileEventStore eventStore = new FileEventStore(directory)) {
+      eventStore.appendEventsToStream("a", Stream.of(renamed("1"), renamed("2")));
+      sizeInBytes = eventStore.getSizeInBytes();
+      eventStore.appendEventsToStream("a", Stream.of(renamed("3")));
+      eventStore.appendEventsToStream("b", Stream.of(renamed("x")));
+    }
+    try (RandomAccessFile file = new RandomAccessFile(directory.resolve("0000000000.segment").toFile(), "rw")) {
+      file.seek(sizeInBytes + FileSegment.HEADER_SIZE + 10);
+      file.write(~file.read());
+    }
+
+    try (FileEventStore eventStore = new FileEventStore(directory)) {
+      assertThat(eventStore.getSizeInBytes()).isEqualTo(sizeInBytes);
+      assertThat(names(eventStore.getStream("a"))).containsExactly("1", "2");
+      assertThatThrownBy(() -> eventStore.getStream("b")).isInstanceOf(NoSuchElementException.class);
+      eventStore.appendEventsToStream("a", Stream.of(renamed("3")), 2);
+    }
+    try (FileEventStore eventStore = new FileEventStore(directory)) {
+      assertThat(names(eventStore.getStream("a"))).containsExactly("1", "2", "3");
+    }
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_discard_an_atomic_append_to_several_streams_torn_at_its_last_record() throws Exception {
+
+    Path directory = temporaryFolder.getRoot().toPath();
+    long sizeInBytes;
+    try (FileEventStore eventStore = new FileEventStore(directory)) {
+      eventStore.appendEventsToStream("a", Stream.of(renamed("1")));
+      sizeInBytes = eventStore.getSizeInBytes();
+      eventStore.appendEventsToStreams(Arrays.asList(
+          new StreamAppend<>("a", Arrays.asList(renamed("2"), renamed("3")), 1),
+          new StreamAppend<>("b", Arrays.asList(renamed("x")), 0)));
+    }
+    try (RandomAccessFile file = new RandomAccessFile(directory.resolve("0000000000.segment").toFile(), "rw")) {
+      // Corrupts the record of "b", written last
+      long offset = sizeInBytes + recordSizeAt(file, sizeInBytes);
+      offset += recordSizeAt(file, offset);
+      file.seek(offset + FileSegment.HEADER_SIZE + 10);
+      file.write(~file.read());
+    }
+
+    try (FileEventStore eventStore = new FileEventStore(directory)) {
+      assertThat(eventStore.getSizeInBytes()).isEqualTo(sizeInBytes);
+      assertThat(names(eventStore.getStream("a"))).containsExactly("1");
+      assertThatThrownBy(() -> eventStore.getStream("b")).isInstanceOf(NoSuchElementException.class);
+      assertThat(eventStore.getLastGlobalPosition()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_erase_the_records_of_an_append_failing_to_force_them() throws Exception {
+
+    Path directory = temporaryFolder.getRoot().toPath();
+    AtomicBoolean failing = new AtomicBoolean();
+    Runnable forceHook = () -> {
+      if (failing.get()) throw new UncheckedIOException(new IOException("disk failure"));
+    };
+    long sizeInBytes;
+    try (FileEventStore eventStore = new FileEventStore(directory, new JavaEventSerializer(), 4096, Durability.EVERY_BATCH)) {
+      eventStore.setForceHook(forceHook);
+      eventStore.appendEventsToStream("a", Stream.of(renamed("1")), 0);
+      eventStore.appendEventsToStream("c", IntStream.range(0, 12).mapToObj(i -> renamed("y" + i)), 0);
+      sizeInBytes = eventStore.getSizeInBytes();
+      failing.set(true);
+      assertThatThrownBy(() -> eventStore.appendEventsToStream("a", Stream.of(renamed("2"), renamed("3")), 1))
+          .isInstanceOf(UncheckedIOException.class);
+      // Failing to roll the segment as well
+      assertThatThrownBy(() -> eventStore.appendEventsToStream("b", IntStream.range(0, 8).mapToObj(i -> renamed("x" + i)), 0))
+          .isInstanceOf(UncheckedIOException.class);
+      assertThat(eventStore.getSizeInBytes()).isEqualTo(sizeInBytes);
+      assertThat(eventStore.getSegmentCount()).isEqualTo(1);
+      failing.set(false);
+    }
+
+    try (FileEventStore eventStore = new FileEventStore(directory, new JavaEventSerializer(), 4096, 64, Duration.ZERO)) {
+      eventStore.setForceHook(forceHook);
+      assertThat(eventStore.getSizeInBytes()).isEqualTo(sizeInBytes);
+      assertThat(names(eventStore.getStream("a"))).containsExactly("1");
+      assertThatThrownBy(() -> eventStore.getStream("b")).isInstanceOf(NoSuchElementException.class);
+      failing.set(true);
+      assertThatThrownBy(() -> eventStore.appendEventsToStream("a", Stream.of(renamed("2")), 1))
+          .isInstanceOf(UncheckedIOException.class);
+      failing.set(false);
+    }
+
+    try (FileEventStore eventStore = new FileEventStore(directory)) {
+      assertThat(eventStore.getSizeInBytes()).isEqualTo(sizeInBytes);
+      eventStore.appendEventsToStream("a", Stream.of(renamed("2")), 1);
+      assertThat(names(eventStore.getStream("a"))).containsExactly("1", "2");
+    }
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_keep_flushing_periodically_after_a_failed_flush() throws Exception {
+
+    Path directory = temporaryFolder.getRoot().toPath();
+    AtomicBoolean failing = new AtomicBoolean(true);
+    AtomicInteger forces = new AtomicInteger();
+    try (FileEventStore eventStore = new FileEventStore(directory, new JavaEventSerializer(), 4096, Durability.PERIODIC, Duration.ofMillis(1))) {
+      eventStore.setForceHook(() -> {
+        forces.incrementAndGet();
+        if (failing.get()) throw new UncheckedIOException(new IOException("disk failure"));
+      });
+      SubscriptionTest.await(() -> eventStore.getFlushFailures() >= 2);
+      // The next append forces the events again before writing its own ones
+      assertThatThrownBy(() -> eventStore.appendEventsToStream("a", Stream.of(renamed("1")), 0))
+          .isInstanceOf(UncheckedIOException.class);
+      assertThat(eventStore.getSizeInBytes()).isZero();
+      failing.set(false);
+      eventStore.appendEventsToStream("a", Stream.of(renamed("1")), 0);
+      int forced = forces.get();
+      SubscriptionTest.await(() -> forces.get() > forced);
+      long flushFailures = eventStore.getFlushFailures();
+      SubscriptionTest.await(() -> forces.get() > forced + 2);
+      assertThat(eventStore.getFlushFailures()).isEqualTo(flushFailures);
+    }
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void repositories_should_load_aggregates_from_files() throws Exception {
+
+    Path directory = temporaryFolder.getRoot().toPath();
+    Product product = ProductFactory.create("Product");
+    BacklogItem backlogItem = BacklogItemFactory.create("BacklogItem", product);
+    product.planBacklogItem(backlogItem);
+    try (FileEventStore eventStore = new FileEventStore(directory)) {
+      new ProductRepository(eventStore).save(product, 0);
+    }
+
+    try (FileEventStore eventStore = new FileEventStore(directory)) {
+      Product loaded = new ProductRepository(eventStore).getById(product.getId());
+      assertThat(loaded).isEqualTo(product);
+      assertThat(loaded.getVersion()).isEqualTo(product.getVersion());
+      assertThat(loaded.getPlannedBacklogItems().map(ProductBacklogItem::getId)).containsExactly(backlogItem.getId());
+    }
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_persist_secondary_indexes_and_catch_them_up_incrementally() throws Exception {
+
+    Path directory = temporaryFolder.getRoot().toPath();
+    Product product = ProductFactory.create("Product");
+    BacklogItem backlogItem1 = BacklogItemFactory.create("BacklogItem 1", product);
+    BacklogItem backlogItem2 = BacklogItemFactory.create("BacklogItem 2", product);
+    BacklogItem backlogItem3 = BacklogItemFactory.create("BacklogItem 3", product);
+    try (FileEventStore eventStore = new FileEventStore(directory)) {
+      BacklogItemRepository backlogItems = new BacklogItemRepository(eventStore);
+      backlogItems.save(backlogItem1, 0);
+      new ProductRepository(eventStore).save(product, 0);
+      // The events appended before the index is added are indexed from the global log
+      assertThat(eventStore.addIndex(BacklogItemRepository.BY_PRODUCT)).isEqualTo(2);
+      backlogItems.save(backlogItem2, 0);
+      assertThat(backlogItems.findIdsByProduct(product.getId())).containsOnly(backlogItem1.getId(), backlogItem2.getId());
+      assertThatThrownBy(() -> eventStore.addIndex(BacklogItemRepository.BY_PRODUCT)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    try (FileEventStore eventStore = new FileEventStore(directory)) {
+      assertThat(eventStore.addIndex(BacklogItemRepository.BY_PRODUCT)).isEqualTo(0);
+      assertThat(new BacklogItemRepository(eventStore).findIdsByProduct(product.getId())).containsOnly(backlogItem1.getId(), backlogItem2.getId());
+    }
+
+    // Appended while the index isn't maintained, e.g. after its last save and before a crash
+    try (FileEventStore eventStore = new FileEventStore(directory)) {
+      new BacklogItemRepository(eventStore).save(backlogItem3, 0);
+    }
+
+    try (FileEventStore eventStore = new FileEventStore(directory)) {
+      assertThat(eventStore.addIndex(BacklogItemRepository.BY_PRODUCT)).isEqualTo(1);
+      assertThat(new BacklogItemRepository(eventStore).findIdsByProduct(product.getId()))
+          .containsOnly(backlogItem1.getId(), backlogItem2.getId(), backlogItem3.getId());
+      eventStore.saveIndexes();
+    }
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_commit_concurrent_appends_in_groups() throws Exception {
+
+    Path directory = temporaryFolder.getRoot().toPath();
+    try (FileEventStore eventStore = new FileEventStore(directory, new JavaEventSerializer(), 64 * 1024, 64, Duration.ZERO)) {
+      eventStore.appendEventsToStream("shared", Stream.of(renamed("0")), 0);
+      List<Integer> conflicts = InMemoryEventStoreTest.runConcurrently(() -> {
+        int conflictCount = 0;
+        for (int appended = 0; appended < 100; ) {
+          long position = eventStore.getStream("shared").count();
+          try {
+            eventStore.appendEventsToStream("shared", Stream.of(renamed(String.valueOf(position))), position);
+            appended++;
+          }
+          catch (ConcurrentModificationException e) {
+            conflictCount++;
+          }
+        }
+        return conflictCount;
+      });
+      assertThat(eventStore.getGroupCommits()).isPositive();
+      assertThat(eventStore.getAverageGroupSize()).isGreaterThanOrEqualTo(1);
+      assertThat(conflicts).hasSize(8);
+    }
+
+    // Every event has been written at the position its writer expected, and survives a reopening
+    try (FileEventStore eventStore = new FileEventStore(directory, new JavaEventSerializer(), 64 * 1024, Durability.GROUP_COMMIT)) {
+      assertThat(names(eventStore.getStream("shared")).collect(Collectors.toList()))
+          .isEqualTo(IntStream.rangeClosed(0, 800).mapToObj(String::valueOf).collect(Collectors.toList()));
+      assertThat(eventStore.getSegmentCount()).isGreaterThan(1);
+    }
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_fail_alone_a_conflicting_append_of_a_group() throws Exception {
+
+    Path directory = temporaryFolder.getRoot().toPath();
+    try (FileEventStore eventStore = new FileEventStore(directory, new JavaEventSerializer(), 64 * 1024, 64, Duration.ofMillis(200))) {
+      List<Integer> results = InMemoryEventStoreTest.runConcurrently(() -> {
+        try {
+          eventStore.appendEventsToStream("a", Stream.of(renamed("1")), 0);
+          return 1;
+        }
+        catch (ConcurrentModificationException e) {
+          return 0;
+        }
+      });
+      assertThat(results.stream().mapToInt(Integer::intValue).sum()).isEqualTo(1);
+      assertThat(eventStore.getGroupCommits()).isEqualTo(1);
+      assertThat(eventStore.getAverageGroupSize()).isEqualTo(8);
+      eventStore.close();
+      assertThatIllegalStateException().isThrownBy(() -> eventStore.appendEventsToStream("a", Stream.of(renamed("2"))));
+    }
+  }
+
+  /** @return the size of the record at the offset, without the flag of the atomic batches */
+  private static long recordSizeAt(RandomAccessFile file, long offset) throws Exception {
+    file.seek(offset);
+    return (file.readInt() & Integer.MAX_VALUE) + FileSegment.HEADER_SIZE;
+  }
+
+  private static Event renamed(String name) {
+    return new ProductRenamed(name);
+  }
+
+  private static Stream<String> names(Stream<Event> events) {
+    return events.map(e -> ((ProductRenamed) e).getName());
+  }
+}
@@ -0,0 +1,313 @@
+package dddes.example.infrastructure;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import dddes.core.Event;
+import dddes.core.EventIndex;
+import dddes.core.IEventStore;
+import dddes.core.RecordedEvent;
+import dddes.core.StreamAppend;
+import dddes.core.Tombstone;
+import dddes.example.domain.backlogitem.BacklogItem;
+import dddes.example.domain.backlogitem.BacklogItemFactory;
+import dddes.example.domain.backlogitem.BacklogItemRepository;
+import dddes.example.domain.backlogitem.events.BacklogItemCreated;
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductFactory;
+import dddes.example.domain.product.ProductRepository;
+import dddes.example.domain.product.events.ProductCreated;
+import dddes.example.domain.product.events.ProductRenamed;
+
+public class InMemoryEventStoreTest {
+
+  private static final int THREADS = 8;
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_append_and_read_events() {
+
+    InMemoryEventStore<String> eventStore = new InMemoryEventStore<>();
+    String streamId = UUID.randomUUID().toString();
+    eventStore.appendEventsToStream(streamId, Stream.of(new ProductRenamed("1"), new ProductRenamed("2")), 0);
+    eventStore.appendEventsToStream(streamId, Stream.of(new ProductRenamed("3")));
+
+    assertThat(eventStore.getStream(streamId).map(e -> ((ProductRenamed) e).getName())).containsExactly("1", "2", "3");
+    assertThatThrownBy(() -> eventStore.appendEventsToStream(streamId, Stream.of(new ProductRenamed("4")), 2))
+        .isInstanceOf(ConcurrentModificationException.class);
+    assertThat(eventStore.getStream(streamId)).hasSize(3);
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_read_ranges_of_a_stream_forward_and_backward() {
+
+    InMemoryEventStore<String> eventStore = new InMemoryEventStore<>();
+    PublishingEventStore<String> publishingEventStore = new PublishingEventStore<>(eventStore, e -> { });
+    String streamId = UUID.randomUUID().toString();
+    eventStore.appendEventsToStream(streamId, Stream.of("0", "1", "2", "3", "4").map(ProductRenamed::new));
+
+    assertThat(names(eventStore.getStream(streamId, 3))).containsExactly("3", "4");
+    assertThat(names(eventStore.getStream(streamId, 1, 2))).containsExactly("1", "2");
+    assertThat(names(eventStore.getStream(streamId, 4, Integer.MAX_VALUE))).containsExactly("4");
+    assertThat(names(eventStore.getStream(streamId, 5))).isEmpty();
+    assertThat(names(eventStore.getStreamBackward(streamId, Long.MAX_VALUE, 2))).containsExactly("4", "3");
+    assertThat(names(eventStore.getStreamBackward(streamId, 1, 10))).containsExactly("1", "0");
+    assertThat(names(publishingEventStore.getStream(streamId, 2, 1))).containsExactly("2");
+    assertThat(names(publishingEventStore.getStreamBackward(streamId, 2, 1))).containsExactly("2");
+    assertThatIllegalArgumentException().isThrownBy(() -> eventStore.getStream(streamId, -1));
+    assertThatIllegalArgumentException().isThrownBy(() -> eventStore.getStreamBackward(streamId, 0, -1));
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_read_ranges_by_default_from_the_whole_stream() {
+
+    InMemoryEventStore<String> eventStore = new InMemoryEventStore<>();
+    IEventStore<String> defaultEventStore = new IEventStore<String>() {
+      public void appendEventsToStream(String streamId, Stream<Event> events) { eventStore.appendEventsToStream(streamId, events); }
+      public void appendEventsToStream(String streamId, Stream<Event> events, long expectedLastPosition) { eventStore.appendEventsToStream(streamId, events, expectedLastPosition); }
+      public Stream<Event> getStream(String streamId) { return eventStore.getStream(streamId); }
+    };
+    String streamId = UUID.randomUUID().toString();
+    eventStore.appendEventsToStream(streamId, Stream.of("0", "1", "2", "3", "4").map(ProductRenamed::new));
+
+    assertThat(names(defaultEventStore.getStream(streamId, 3))).containsExactly("3", "4");
+    assertThat(names(defaultEventStore.getStream(streamId, 1, 2))).containsExactly("1", "2");
+    assertThat(names(defaultEventStore.getStreamBackward(streamId, Long.MAX_VALUE, 2))).containsExactly("4", "3");
+    assertThat(names(defaultEventStore.getStreamBackward(streamId, 1, 10))).containsExactly("1", "0");
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_read_the_global_log_in_commit_order() {
+
+    InMemoryEventStore<String> eventStore = new InMemoryEventStore<>();
+    eventStore.appendEventsToStream("a", Stream.of(new ProductRenamed("a0"), new ProductRenamed("a1")));
+    eventStore.appendEventsToStream("b", Stream.of(new ProductRenamed("b0")));
+    eventStore.appendEventsToStream("a", Stream.of(new ProductRenamed("a2")));
+
+    List<RecordedEvent<String>> events = eventStore.readAll(0, 10).collect(Collectors.toList());
+    assertThat(events).extracting(e -> ((ProductRenamed) e.getEvent()).getName()).containsExactly("a0", "a1", "b0", "a2");
+    assertThat(events).extracting(RecordedEvent::getStreamPosition).containsExactly(0L, 1L, 0L, 2L);
+    assertThat(events).extracting(RecordedEvent::getGlobalPosition).containsExactly(0L, 1L, 2L, 3L);
+    assertThat(eventStore.readAll(2, 1).map(RecordedEvent::getStreamId)).containsExactly("b");
+    assertThat(eventStore.readAll(4, 10)).isEmpty();
+    assertThat(eventStore.getLastGlobalPosition()).isEqualTo(4);
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_leave_tombstones_in_the_global_log_at_the_positions_of_failed_appends() {
+
+    InMemoryEventStore<String> eventStore = new InMemoryEventStore<>();
+    eventStore.appendEventsToStream("a", Stream.of(new ProductRenamed("a0")));
+    assertThatNullPointerException().isThrownBy(() -> eventStore.appendEventsToStream("b", Stream.of(new ProductRenamed("b0"), null)));
+    assertThatNullPointerException().isThrownBy(() -> eventStore.appendEventsToStreams(Arrays.asList(
+        new StreamAppend<>("a", Arrays.asList(new ProductRenamed("a1"))),
+        new StreamAppend<>("c", Arrays.asList(new ProductRenamed("c0"), null)))));
+    eventStore.appendEventsToStream("a", Stream.of(new ProductRenamed("a1")));
+
+    // Readers go past the abandoned positions, and none of the failed appends is visible
+    List<RecordedEvent<String>> events = eventStore.readAll(0, 10).collect(Collectors.toList());
+    assertThat(events).extracting(RecordedEvent::getGlobalPosition).containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L);
+    assertThat(events).extracting(RecordedEvent::getEvent).filteredOn(event -> event != Tombstone.INSTANCE).hasSize(2);
+    assertThat(events).extracting(RecordedEvent::getStreamId).containsExactly("a", "b", "b", "a", "c", "c", "a");
+    assertThat(eventStore.getLastGlobalPosition()).isEqualTo(7);
+    assertThat(names(eventStore.getStream("a"))).containsExactly("a0", "a1");
+    assertThat(eventStore.getStream("b")).isEmpty();
+    assertThat(eventStore.getStream("c")).isEmpty();
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void decorators_should_require_the_capabilities_they_use_when_created() throws Exception {
+
+    InMemoryEventStore<String> eventStore = new InMemoryEventStore<>(BacklogItemRepository.BY_PRODUCT);
+    IEventStore<String> basicEventStore = new IEventStore<String>() {
+      public void appendEventsToStream(String streamId, Stream<Event> events) { eventStore.appendEventsToStream(streamId, events); }
+      public void appendEventsToStream(String streamId, Stream<Event> events, long expectedLastPosition) { eventStore.appendEventsToStream(streamId, events, expectedLastPosition); }
+      public Stream<Event> getStream(String streamId) { return eventStore.getStream(streamId); }
+    };
+    assertThat(eventStore.hasGlobalLog()).isTrue();
+    assertThat(eventStore.supportsAtomicAppends()).isTrue();
+    assertThat(eventStore.hasIndex(BacklogItemRepository.BY_PRODUCT.getName())).isTrue();
+    assertThat(eventStore.hasIndex("missing")).isFalse();
+    assertThat(basicEventStore.hasGlobalLog()).isFalse();
+    assertThat(basicEventStore.supportsAtomicAppends()).isFalse();
+    assertThat(basicEventStore.hasIndex(BacklogItemRepository.BY_PRODUCT.getName())).isFalse();
+    assertThatThrownBy(() -> basicEventStore.findStreams(BacklogItemRepository.BY_PRODUCT.getName(), "product")).isInstanceOf(NoSuchElementException.class);
+
+    assertThatIllegalArgumentException().isThrownBy(() -> new SubscribableEventStore<>(basicEventStore));
+    assertThatIllegalArgumentException().isThrownBy(() -> new TieredEventStore<>(basicEventStore, 1000));
+    assertThatIllegalArgumentException().isThrownBy(() -> new UnitOfWork<>(basicEventStore));
+    assertThatIllegalArgumentException().isThrownBy(() -> new UnitOfWork<>(new PublishingEventStore<>(basicEventStore, new ConsoleEventPublisher())));
+
+    // Decorators have the capabilities of the store they decorate
+    IEventStore<String> decorated = new InstrumentedEventStore<>(new PublishingEventStore<>(new TieredEventStore<>(eventStore, 1000), new ConsoleEventPublisher()), new MetricsRegistry("eventstore"));
+    assertThat(decorated.hasGlobalLog()).isTrue();
+    assertThat(decorated.supportsAtomicAppends()).isTrue();
+    assertThat(decorated.hasIndex(BacklogItemRepository.BY_PRODUCT.getName())).isTrue();
+    try (SubscribableEventStore<String> subscribable = new SubscribableEventStore<>(decorated)) {
+      assertThat(subscribable.hasGlobalLog()).isTrue();
+      new UnitOfWork<>(subscribable);
+    }
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_order_the_global_log_of_concurrent_writers_without_gaps() throws Exception {
+
+    InMemoryEventStore<String> eventStore = new InMemoryEventStore<>();
+    AtomicBoolean writing = new AtomicBoolean(true);
+    List<Long> readerGaps = new CopyOnWriteArrayList<>();
+    Thread reader = new Thread(() -> {
+      long next = 0;
+      while (writing.get() || next < eventStore.getLastGlobalPosition()) {
+        for (RecordedEvent<String> event : eventStore.readAll(next, 1000).collect(Collectors.toList())) {
+          if (event.getGlobalPosition() != next) readerGaps.add(next);
+          next = event.getGlobalPosition() + 1;
+        }
+      }
+    });
+    reader.start();
+
+    runConcurrently(() -> {
+      String streamId = UUID.randomUUID().toString();
+      for (int i = 0; i < 5_000; i++)
+        eventStore.appendEventsToStream(streamId, Stream.of(new ProductRenamed("a"), new ProductRenamed("b")), i * 2);
+      return 0;
+    });
+    writing.set(false);
+    reader.join();
+
+    assertThat(readerGaps).isEmpty();
+    assertThat(eventStore.getLastGlobalPosition()).isEqualTo(THREADS * 10_000L);
+    Map<String, Long> streamPositions = new HashMap<>();
+    long next = 0;
+    List<RecordedEvent<String>> batch;
+    while (!(batch = eventStore.readAll(next, 4096).collect(Collectors.toList())).isEmpty()) {
+      for (RecordedEvent<String> event : batch) {
+        assertThat(event.getGlobalPosition()).isEqualTo(next++);
+        assertThat(event.getStreamPosition()).isEqualTo(streamPositions.merge(event.getStreamId(), 0L, (position, zero) -> position + 1));
+      }
+    }
+    assertThat(next).isEqualTo(THREADS * 10_000L);
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_detect_concurrent_appends_to_the_same_stream() throws Exception {
+
+    InMemoryEventStore<String> eventStore = new InMemoryEventStore<>();
+    String streamId = UUID.randomUUID().toString();
+    eventStore.appendEventsToStream(streamId, Stream.empty());
+
+    List<Integer> successes = runConcurrently(() -> {
+      int success = 0;
+      for (int i = 0; i < 5_000; i++) {
+        long expectedLastPosition = eventStore.getStream(streamId).count();
+        try {
+          eventStore.appendEventsToStream(streamId, Stream.of(new ProductRenamed("a"), new ProductRenamed("b")), expectedLastPosition);
+          success++;
+        }
+        catch (ConcurrentModificationException e) { }
+      }
+      return success;
+    });
+
+    int total = successes.stream().mapToInt(Integer::intValue).sum();
+    assertThat(eventStore.getStream(streamId).count()).isEqualTo(total * 2L);
+    assertThat(eventStore.getStream(streamId).allMatch(e -> e != null)).isTrue();
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_not_lose_events_appended_concurrently_to_different_streams() throws Exception {
+
+    InMemoryEventStore<String> eventStore = new InMemoryEventStore<>();
+    List<String> streamIds = new ArrayList<>();
+    for (int i = 0; i < 100; i++) streamIds.add(UUID.randomUUID().toString());
+
+    runConcurrently(() -> {
+      for (int i = 0; i < 10_000; i++)
+        eventStore.appendEventsToStream(streamIds.get(i % streamIds.size()), Stream.of(new ProductRenamed("x")));
+      return 0;
+    });
+
+    assertThat(streamIds.stream().mapToLong(id -> eventStore.getStream(id).count()).sum()).isEqualTo(THREADS * 10_000L);
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_find_streams_through_secondary_indexes() throws Exception {
+
+    InMemoryEventStore<String> eventStore = new InMemoryEventStore<>(BacklogItemRepository.BY_PRODUCT, EventIndex.byEventType("by-event-type"));
+    BacklogItemRepository backlogItems = new BacklogItemRepository(eventStore);
+    Product product1 = ProductFactory.create("Product 1");
+    Product product2 = ProductFactory.create("Product 2");
+    new ProductRepository(eventStore).save(product1, 0);
+    List<String> backlogItemsOfProduct1 = new CopyOnWriteArrayList<>();
+    runConcurrently(() -> {
+      for (int i = 0; i < 100; i++) {
+        BacklogItem backlogItem = BacklogItemFactory.create("BacklogItem " + i, i % 2 == 0 ? product1 : product2);
+        backlogItems.save(backlogItem, 0);
+        if (i % 2 == 0) backlogItemsOfProduct1.add(backlogItem.getId());
+      }
+      return 0;
+    });
+    BacklogItem planned = BacklogItemFactory.create("Planned", product1);
+    product1.planBacklogItem(planned);
+    new UnitOfWork<>(eventStore).add(product1).add(planned).commit();
+    backlogItemsOfProduct1.add(planned.getId());
+
+    assertThat(backlogItems.findIdsByProduct(product1.getId()).collect(Collectors.toSet())).isEqualTo(new HashSet<>(backlogItemsOfProduct1));
+    assertThat(backlogItems.findIdsByProduct(product2.getId())).hasSize(THREADS * 50);
+    assertThat(backlogItems.findIdsByProduct("unknown")).isEmpty();
+    assertThat(eventStore.findStreams("by-event-type", ProductCreated.class.getName())).containsExactly(product1.getId());
+    assertThat(eventStore.findStreams("by-event-type", BacklogItemCreated.class.getName())).hasSize(THREADS * 100 + 1);
+    assertThatThrownBy(() -> eventStore.findStreams("unknown", "key")).isInstanceOf(NoSuchElementException.class);
+    assertThatThrownBy(() -> new InMemoryEventStore<>(BacklogItemRepository.BY_PRODUCT, BacklogItemRepository.BY_PRODUCT))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> new InMemoryEventStore<>().findStreams(BacklogItemRepository.BY_PRODUCT.getName(), product1.getId()))
+        .isInstanceOf(NoSuchElementException.class);
+  }
+
+  static List<Integer> runConcurrently(Callable<Integer> task) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<Integer>> futures = new ArrayList<>();
+      for (int i = 0; i < THREADS; i++) futures.add(executor.submit(task));
+      List<Integer> results = new ArrayList<>();
+      for (Future<Integer> future : futures) results.add(future.get());
+      return results;
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  private static Stream<String> names(Stream<Event> events) {
+    return events.map(e -> ((ProductRenamed) e).getName());
+  }
+}
@@ -0,0 +1,135 @@
+package dddes.example.infrastructure;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductFactory;
+import dddes.example.domain.product.ProductRepository;
+import dddes.example.domain.product.events.ProductRenamed;
+
+public class MetricsTest {
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void histograms_should_report_percentiles_within_their_precision() throws Exception {
+
+    Random random = new Random(42);
+    long[] values = new long[100_000];
+    Histogram histogram = new Histogram();
+    for (int i = 0; i < values.length; i++) histogram.record(values[i] = (long) Math.exp(random.nextDouble() * 25));
+    Arrays.sort(values);
+
+    for (double percentile : new double[] { 0, 50, 90, 99, 99.9, 100 }) {
+      long expected = values[Math.max(0, (int) Math.ceil(percentile / 100 * values.length) - 1)];
+      assertThat((double) histogram.getValueAtPercentile(percentile)).isBetween(expected * 1.0, expected * 1.04);
+    }
+    assertThat(histogram.getCount()).isEqualTo(values.length);
+    assertThat(histogram.getMax()).isEqualTo(values[values.length - 1]);
+    assertThat(histogram.getMean()).isCloseTo(Arrays.stream(values).average().getAsDouble(), within(1.0));
+    assertThat(new Histogram().getValueAtPercentile(99)).isZero();
+    assertThatIllegalArgumentException().isThrownBy(() -> histogram.getValueAtPercentile(101));
+
+    // Buckets cover the whole range of long values, and values are recorded concurrently without loss
+    assertThat(Histogram.highestValueOf(Histogram.indexOf(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+    Histogram concurrent = new Histogram();
+    InMemoryEventStoreTest.runConcurrently(() -> {
+      for (int i = 0; i < 10_000; i++) concurrent.record(i);
+      return 0;
+    });
+    assertThat(concurrent.getCount()).isEqualTo(80_000);
+    assertThat(concurrent.getValueAtPercentile(100)).isEqualTo(9_999);
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void instrumented_decorators_should_record_their_metrics() throws Exception {
+
+    MetricsRegistry metrics = new MetricsRegistry("test");
+    InstrumentedEventStore<String> eventStore = new InstrumentedEventStore<>(
+        new PublishingEventStore<>(new InMemoryEventStore<>(), new InstrumentedEventPublisher(e -> { }, metrics)), metrics);
+    InstrumentedRepository<Product, String> repository = new InstrumentedRepository<>(new ProductRepository(eventStore), Product.class, metrics);
+
+    Product product = ProductFactory.create("Product");
+    product.rename("Product 1");
+    product.rename("Product 2");
+    repository.save(product, 0);
+    Product loaded = repository.getById(product.getId());
+    loaded.rename("Product 3");
+    product.rename("Product 4");
+    repository.save(loaded, 3);
+    assertThatThrownBy(() -> repository.save(product, 3)).isInstanceOf(ConcurrentModificationException.class);
+    assertThatThrownBy(() -> repository.getById("unknown")).isInstanceOf(RuntimeException.class);
+    assertThat(eventStore.getStream(product.getId()).count()).isEqualTo(4);
+
+    Map<String, Number> values = metrics.getValues();
+    assertThat(values.get("eventstore.append.latency.count")).isEqualTo(3L);
+    assertThat(values.get("eventstore.append.events.max")).isEqualTo(3L);
+    assertThat(values.get("eventstore.append.conflicts")).isEqualTo(1L);
+    assertThat(values.get("eventstore.read.events.count")).isEqualTo(2L);
+    assertThat(values.get("eventstore.read.events.max")).isEqualTo(4L);
+    assertThat(values.get("repository.Product.load.latency.count")).isEqualTo(1L);
+    assertThat(values.get("repository.Product.load.version.max")).isEqualTo(3L);
+    assertThat(values.get("repository.Product.load.misses")).isEqualTo(1L);
+    assertThat(values.get("repository.Product.save.latency.count")).isEqualTo(3L);
+    assertThat(values.get("repository.Product.save.conflicts")).isEqualTo(1L);
+    assertThat(values.get("publisher.latency.count")).isEqualTo(4L);
+    assertThat(values.get("eventstore.append.latency.p999").longValue()).isGreaterThanOrEqualTo(values.get("eventstore.append.latency.p50").longValue());
+    metrics.close();
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void metrics_should_be_exposed_through_jmx_and_exporters() throws Exception {
+
+    MetricsRegistry metrics = new MetricsRegistry("jmx-test");
+    List<Map<String, Number>> exports = new CopyOnWriteArrayList<>();
+    metrics.export(exports::add, Duration.ofMillis(10));
+    InstrumentedEventStore<String> eventStore = new InstrumentedEventStore<>(new InMemoryEventStore<>(), metrics);
+    eventStore.appendEventsToStream("a", Stream.of(new ProductRenamed("1"), new ProductRenamed("2")));
+
+    ObjectName objectName = metrics.registerMBean();
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    assertThat(server.getAttribute(objectName, "eventstore.append.events.max")).isEqualTo(2L);
+    assertThat(Arrays.stream(server.getMBeanInfo(objectName).getAttributes()).map(a -> a.getName()).collect(Collectors.toList()))
+        .contains("eventstore.append.latency.p99", "eventstore.append.conflicts");
+    SubscriptionTest.await(() -> !exports.isEmpty());
+
+    metrics.close();
+    assertThat(server.isRegistered(objectName)).isFalse();
+    assertThat(exports.get(exports.size() - 1).get("eventstore.append.latency.count")).isEqualTo(1L);
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void exporters_should_go_on_after_a_failed_export() throws Exception {
+
+    MetricsRegistry metrics = new MetricsRegistry("export-failures-test");
+    List<Map<String, Number>> exports = new CopyOnWriteArrayList<>();
+    metrics.export(values -> {
+      exports.add(values);
+      if (exports.size() == 1) throw new IllegalStateException("exporter unavailable");
+    }, Duration.ofMillis(10));
+
+    SubscriptionTest.await(() -> exports.size() >= 3);
+    metrics.close();
+    assertThat(metrics.counter(MetricsRegistry.EXPORT_FAILURES).sum()).isEqualTo(1);
+    assertThat(exports.get(exports.size() - 1).get(MetricsRegistry.EXPORT_FAILURES)).isEqualTo(1L);
+  }
+}
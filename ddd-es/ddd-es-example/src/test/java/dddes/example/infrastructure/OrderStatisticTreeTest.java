@@ -0,0 +1,65 @@
+package dddes.example.infrastructure;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+public class OrderStatisticTreeTest {
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void tree_should_keep_elements_sorted_and_ranked() {
+
+    OrderStatisticTree<Integer> tree = new OrderStatisticTree<>(Comparator.naturalOrder());
+    assertThat(tree.add(5)).isTrue();
+    assertThat(tree.add(1)).isTrue();
+    assertThat(tree.add(3)).isTrue();
+    assertThat(tree.add(3)).isFalse();
+
+    assertThat(tree).containsExactly(1, 3, 5);
+    assertThat(tree.get(0)).isEqualTo(1);
+    assertThat(tree.get(2)).isEqualTo(5);
+    assertThat(tree.indexOf(5)).isEqualTo(2);
+    assertThat(tree.indexOf(4)).isEqualTo(-1);
+    assertThatThrownBy(() -> tree.get(3)).isInstanceOf(IndexOutOfBoundsException.class);
+
+    assertThat(tree.remove(3)).isTrue();
+    assertThat(tree.remove(3)).isFalse();
+    assertThat(tree).containsExactly(1, 5);
+    assertThat(tree.indexOf(5)).isEqualTo(1);
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void tree_should_behave_like_a_sorted_set() {
+
+    Random random = new Random(42);
+    OrderStatisticTree<Integer> tree = new OrderStatisticTree<>(Comparator.naturalOrder());
+    TreeSet<Integer> expected = new TreeSet<>();
+    for (int i = 0; i < 20_000; i++) {
+      int value = random.nextInt(5_000);
+      if (random.nextBoolean()) assertThat(tree.add(value)).isEqualTo(expected.add(value));
+      else assertThat(tree.remove(value)).isEqualTo(expected.remove(value));
+    }
+
+    List<Integer> sorted = new ArrayList<>(expected);
+    assertThat(tree).hasSize(sorted.size()).containsExactlyElementsOf(sorted);
+    for (int i = 0; i < sorted.size(); i += 97) {
+      assertThat(tree.get(i)).isEqualTo(sorted.get(i));
+      assertThat(tree.indexOf(sorted.get(i))).isEqualTo(Collections.binarySearch(sorted, sorted.get(i)));
+      List<Integer> page = new ArrayList<>();
+      tree.iterator(i).forEachRemaining(page::add);
+      assertThat(page).isEqualTo(sorted.subList(i, sorted.size()));
+    }
+    assertThat(tree.iterator(sorted.size()).hasNext()).isFalse();
+    assertThatThrownBy(() -> tree.iterator(sorted.size() + 1)).isInstanceOf(IndexOutOfBoundsException.class);
+  }
+}
@@ -0,0 +1,146 @@
+package dddes.example.infrastructure;
+
+import static dddes.example.infrastructure.SubscriptionTest.await;
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import dddes.core.ICheckpointStore;
+import dddes.core.IProjection;
+import dddes.core.RecordedEvent;
+import dddes.example.domain.product.events.ProductRenamed;
+
+public class ProjectionEngineTest {
+
+  private static final int STREAMS = 50;
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void engines_should_apply_the_events_of_every_stream_in_order_across_partitions() throws Exception {
+
+    SubscribableEventStore<String> eventStore = new SubscribableEventStore<>(new InMemoryEventStore<>(), 256, 4096);
+    ICheckpointStore checkpointStore = new InMemoryCheckpointStore();
+    append(eventStore, 5_000);
+
+    StreamPositionsProjection projection = new StreamPositionsProjection("positions");
+    ProjectionEngine<String> engine = new ProjectionEngine<>(eventStore, checkpointStore, 4, Duration.ofMillis(10));
+    ProjectionRunner<String> runner = engine.start(projection);
+    append(eventStore, 5_000);
+    await(() -> runner.getPosition() == 10_000);
+    await(() -> runner.getCheckpoint() == 10_000);
+
+    assertThat(projection.outOfOrderEvents.get()).isZero();
+    assertThat(projection.nextPositions.values().stream().mapToLong(Long::longValue).sum()).isEqualTo(10_000);
+    assertThat(projection.threads.size()).isGreaterThan(1);
+    assertThat(runner.getAppliedEvents()).isEqualTo(10_000);
+    assertThat(runner.getLag()).isZero();
+    assertThat(runner.getThroughput()).isPositive();
+    assertThat(checkpointStore.load("positions")).isEqualTo(10_000);
+    assertThatIllegalStateException().isThrownBy(() -> engine.start(projection));
+    engine.close();
+    eventStore.close();
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void engines_should_resume_projections_from_their_checkpoint_and_rebuild_them() throws Exception {
+
+    SubscribableEventStore<String> eventStore = new SubscribableEventStore<>(new InMemoryEventStore<>());
+    ICheckpointStore checkpointStore = new InMemoryCheckpointStore();
+    append(eventStore, 1_000);
+
+    StreamPositionsProjection projection = new StreamPositionsProjection("positions");
+    ProjectionEngine<String> engine = new ProjectionEngine<>(eventStore, checkpointStore, 3, Duration.ofSeconds(60));
+    ProjectionRunner<String> runner = engine.start(projection);
+    await(() -> runner.getPosition() == 1_000);
+    engine.close();
+    assertThat(checkpointStore.load("positions")).isEqualTo(1_000);
+
+    append(eventStore, 500);
+    StreamPositionsProjection resumed = new StreamPositionsProjection("positions");
+    ProjectionEngine<String> engine2 = new ProjectionEngine<>(eventStore, checkpointStore, 3, Duration.ofSeconds(60));
+    ProjectionRunner<String> runner2 = engine2.start(resumed);
+    await(() -> runner2.getPosition() == 1_500);
+    assertThat(resumed.appliedEvents.get()).isEqualTo(500);
+
+    ProjectionRunner<String> rebuilt = engine2.rebuild(resumed);
+    await(() -> rebuilt.getPosition() == 1_500);
+    assertThat(runner2.isRunning()).isFalse();
+    assertThat(resumed.appliedEvents.get()).isEqualTo(1_500);
+    assertThat(resumed.outOfOrderEvents.get()).isZero();
+    engine2.close();
+    eventStore.close();
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void engines_should_stop_failing_projections_before_the_failed_batch() throws Exception {
+
+    SubscribableEventStore<String> eventStore = new SubscribableEventStore<>(new InMemoryEventStore<>(), 10, 100);
+    append(eventStore, 100);
+    RuntimeException failure = new IllegalStateException();
+    ProjectionEngine<String> engine = new ProjectionEngine<>(eventStore, new InMemoryCheckpointStore(), 2, Duration.ofMillis(10));
+    ProjectionRunner<String> runner = engine.start(new IProjection<String>() {
+      public String getName() {
+        return "failing";
+      }
+
+      public void apply(List<RecordedEvent<String>> events) {
+        if (events.stream().anyMatch(e -> e.getGlobalPosition() == 42)) throw failure;
+      }
+    });
+
+    await(() -> !runner.isRunning());
+    assertThat(runner.getFailure()).isSameAs(failure);
+    assertThat(runner.getPosition()).isLessThanOrEqualTo(42);
+    engine.close();
+    eventStore.close();
+  }
+
+  private static void append(SubscribableEventStore<String> eventStore, int events) {
+    for (int i = 0; i < events; i++) eventStore.appendEventsToStream("stream-" + i % STREAMS, Stream.of(new ProductRenamed(String.valueOf(i))));
+  }
+
+  /** Checks that the events of every stream come in order, from any partition */
+  static final class StreamPositionsProjection implements IProjection<String> {
+
+    final String name;
+    final Map<String, Long> nextPositions = new ConcurrentHashMap<>();
+    final Set<String> threads = ConcurrentHashMap.newKeySet();
+    final AtomicLong appliedEvents = new AtomicLong();
+    final AtomicLong outOfOrderEvents = new AtomicLong();
+
+    StreamPositionsProjection(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void apply(List<RecordedEvent<String>> events) {
+      threads.add(Thread.currentThread().getName());
+      for (RecordedEvent<String> event : events) {
+        Long next = nextPositions.get(event.getStreamId());
+        if (next != null && next != event.getStreamPosition()) outOfOrderEvents.incrementAndGet();
+        nextPositions.put(event.getStreamId(), event.getStreamPosition() + 1);
+        appliedEvents.incrementAndGet();
+      }
+    }
+
+    @Override
+    public void reset() {
+      nextPositions.clear();
+      appliedEvents.set(0);
+    }
+  }
+}
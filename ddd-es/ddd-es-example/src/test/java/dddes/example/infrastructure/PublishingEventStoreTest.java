@@ -0,0 +1,71 @@
+package dddes.example.infrastructure;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import dddes.core.Event;
+import dddes.example.domain.product.events.ProductRenamed;
+import dddes.example.infrastructure.PublishingEventStore.PublishMode;
+
+public class PublishingEventStoreTest {
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_publish_appended_events_in_order() throws Exception {
+
+    List<Event> published = new CopyOnWriteArrayList<>();
+    try (PublishingEventStore<String> eventStore = new PublishingEventStore<>(new InMemoryEventStore<>(), published::add)) {
+      String streamId = UUID.randomUUID().toString();
+      Event event1 = new ProductRenamed("1"), event2 = new ProductRenamed("2"), event3 = new ProductRenamed("3");
+      eventStore.appendEventsToStream(streamId, Stream.of(event1, event2), 0);
+      eventStore.appendEventsToStream(streamId, Stream.of(event3), 2);
+      assertThat(published).containsExactly(event1, event2, event3);
+    }
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_neither_append_nor_publish_rejected_batches() throws Exception {
+
+    List<Event> published = new CopyOnWriteArrayList<>();
+    try (PublishingEventStore<String> eventStore = new PublishingEventStore<>(new InMemoryEventStore<>(), published::add)) {
+      String streamId = UUID.randomUUID().toString();
+      eventStore.appendEventsToStream(streamId, Stream.of(new ProductRenamed("1")));
+      assertThatThrownBy(() -> eventStore.appendEventsToStream(streamId, Stream.of(new ProductRenamed("2"), new ProductRenamed("3")), 0))
+          .isInstanceOf(ConcurrentModificationException.class);
+      assertThat(eventStore.getStream(streamId)).hasSize(1);
+      assertThat(published).hasSize(1);
+    }
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void eventStore_should_publish_asynchronously() throws Exception {
+
+    List<Event> published = new CopyOnWriteArrayList<>();
+    List<Thread> publishingThreads = new CopyOnWriteArrayList<>();
+    PublishingEventStore<String> eventStore = new PublishingEventStore<>(new InMemoryEventStore<>(), event -> {
+      publishingThreads.add(Thread.currentThread());
+      published.add(event);
+    }, PublishMode.ASYNCHRONOUS);
+
+    String streamId = UUID.randomUUID().toString();
+    for (int i = 0; i < 100; i++)
+      eventStore.appendEventsToStream(streamId, Stream.of(new ProductRenamed(String.valueOf(i))), i);
+    eventStore.close();
+
+    assertThat(published).extracting(e -> ((ProductRenamed) e).getName())
+        .containsExactlyElementsOf(IntStream.range(0, 100).mapToObj(String::valueOf).collect(Collectors.toList()));
+    assertThat(publishingThreads).doesNotContain(Thread.currentThread());
+  }
+}
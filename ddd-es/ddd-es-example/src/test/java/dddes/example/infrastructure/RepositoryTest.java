@@ -1,18 +1,29 @@
 package dddes.example.infrastructure;
 
 import static org.assertj.core.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import dddes.core.IEventStore;
+import dddes.core.LoadResult;
 import dddes.example.domain.backlogitem.BacklogItem;
 import dddes.example.domain.backlogitem.BacklogItemFactory;
 import dddes.example.domain.backlogitem.BacklogItemRepository;
 import dddes.example.domain.backlogitem.StoryPoints;
+import dddes.example.domain.backlogitem.events.BacklogItemTitleChanged;
 import dddes.example.domain.product.Product;
 import dddes.example.domain.product.ProductFactory;
 import dddes.example.domain.product.ProductRepository;
+import dddes.example.domain.product.events.ProductRenamed;
 
 public class RepositoryTest {
 
@@ -61,6 +72,20 @@ public class RepositoryTest {
 		productRepository.save(product2, expectedVersion);
 	}
 
+	@Test
+	@Category(InfrastructureTests.class)
+	public void repositories_should_save_several_changes_with_expected_version() {
+	  
+		Product product1 = ProductFactory.create("Product");
+		productRepository.save(product1, 0);
+		Product product2 = productRepository.getById(product1.getId());
+		int expectedVersion = product2.getVersion();
+		product2.rename("Product 2");
+		product2.rename("Product 3");
+		productRepository.save(product2, expectedVersion);
+		assertThat(productRepository.getById(product1.getId()).getVersion()).isEqualTo(expectedVersion + 2);
+	}
+
 	@Test
 	@Category(InfrastructureTests.class)
 	public void repositories_should_not_save_aggregates_with_unexpected_version() {
@@ -115,4 +140,112 @@ public class RepositoryTest {
 		assertThat(backlogItem3.getStoryPoints()).isEqualTo(backlogItem1.getStoryPoints());
 		assertThat(backlogItem3.getProductId()).isEqualTo(backlogItem1.getProductId());
 	}
+
+	@Test
+	@Category(InfrastructureTests.class)
+	public void repositories_should_retry_conflicting_updates_on_aggregates_caught_up_with_the_concurrent_changes() throws Exception {
+
+		MetricsRegistry metrics = new MetricsRegistry("update-test");
+		InstrumentedEventStore<String> eventStore = new InstrumentedEventStore<>(new InMemoryEventStore<>(), metrics);
+		InstrumentedRepository<Product, String> repository = new InstrumentedRepository<>(new ProductRepository(eventStore), Product.class, metrics);
+		Product product = ProductFactory.create("Product");
+		for (int i = 1; i <= 5; i++) product.rename("Product " + i);
+		repository.save(product);
+
+		// The first two attempts conflict with concurrent renames: every retry only reads the event of the concurrent rename
+		AtomicInteger attempts = new AtomicInteger();
+		Product updated = repository.update(product.getId(), p -> {
+			if (attempts.incrementAndGet() <= 2) eventStore.appendEventsToStream(product.getId(), Stream.of(new ProductRenamed("Concurrent")));
+			p.rename(p.getName() + " updated");
+		});
+		assertThat(attempts.get()).isEqualTo(3);
+		assertThat(updated.getName()).isEqualTo("Concurrent updated");
+		assertThat(updated.getVersion()).isEqualTo(9);
+		Map<String, Number> values = metrics.getValues();
+		assertThat(values.get("eventstore.read.events.count")).isEqualTo(3L);
+		assertThat(values.get("eventstore.read.events.mean").doubleValue() * 3).isEqualTo(6 + 1 + 1);
+		assertThat(values.get("repository.Product.update.retries.max")).isEqualTo(2L);
+		assertThat(repository.getById(product.getId()).getName()).isEqualTo("Concurrent updated");
+
+		// Updates conflicting on every attempt give up after the last retry
+		assertThatThrownBy(() -> repository.update(product.getId(), p -> {
+			eventStore.appendEventsToStream(product.getId(), Stream.of(new ProductRenamed("Concurrent " + p.getVersion())));
+			p.rename("Never saved");
+		})).isInstanceOf(ConcurrentModificationException.class);
+		assertThat(metrics.getValues().get("repository.Product.update.retries.max")).isEqualTo((long) Repository.DEFAULT_MAX_UPDATE_RETRIES);
+		assertThat(metrics.getValues().get("repository.Product.update.conflicts")).isEqualTo(1L);
+
+		// Concurrent updates all succeed
+		InMemoryEventStoreTest.runConcurrently(() -> {
+			for (int i = 0; i < 50; i++) {
+				String name = Thread.currentThread().getName() + "-" + i;
+				repository.update(product.getId(), p -> p.rename(name));
+			}
+			return 0;
+		});
+		assertThat(repository.getById(product.getId()).getVersion()).isEqualTo(9 + Repository.DEFAULT_MAX_UPDATE_RETRIES + 1 + 400);
+		metrics.close();
+
+		// Cached products are caught up from the cache
+		MetricsRegistry cachedMetrics = new MetricsRegistry("cached-update-test");
+		InstrumentedEventStore<String> cachedEventStore = new InstrumentedEventStore<>(new InMemoryEventStore<>(), cachedMetrics);
+		ProductRepository cachedRepository = new ProductRepository(cachedEventStore, new AggregateCache<>(10));
+		Product cachedProduct = ProductFactory.create("Product");
+		for (int i = 1; i <= 5; i++) cachedProduct.rename("Product " + i);
+		cachedRepository.save(cachedProduct, 0);
+		AtomicInteger cachedAttempts = new AtomicInteger();
+		cachedRepository.update(cachedProduct.getId(), p -> {
+			if (cachedAttempts.incrementAndGet() == 1) cachedEventStore.appendEventsToStream(cachedProduct.getId(), Stream.of(new ProductRenamed("Concurrent")));
+			p.rename(p.getName() + " updated");
+		});
+		assertThat(cachedAttempts.get()).isEqualTo(2);
+		assertThat(cachedMetrics.getValues().get("eventstore.read.events.count")).isEqualTo(2L);
+		assertThat(cachedMetrics.getValues().get("eventstore.read.events.mean").doubleValue() * 2).isEqualTo(0 + 1);
+		cachedMetrics.close();
+	}
+
+	@Test
+	@Category(InfrastructureTests.class)
+	public void repositories_should_load_many_aggregates_at_once_reporting_the_missing_and_failed_ones() throws Exception {
+
+		MetricsRegistry metrics = new MetricsRegistry("getbyids-test");
+		IEventStore<String> eventStore = new InstrumentedEventStore<>(new InMemoryEventStore<>(), metrics);
+		AggregateCache<String> cache = new AggregateCache<>(100);
+		ProductRepository repository = new ProductRepository(eventStore, cache);
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			Product product = ProductFactory.create("Product " + i);
+			for (int j = 0; j < i; j++) product.rename("Product " + i + "." + j);
+			repository.save(product, 0);
+			ids.add(product.getId());
+		}
+		String brokenId = ids.get(7);
+		eventStore.appendEventsToStream(brokenId, Stream.of(new BacklogItemTitleChanged("Not a Product event")));
+		List<String> requested = new ArrayList<>(ids);
+		requested.addAll(Arrays.asList("missing", ids.get(0)));
+
+		LoadResult<Product, String> result = repository.getByIds(requested, new ForkJoinPool(4));
+		assertThat(result.isComplete()).isFalse();
+		assertThat(result.getMissing()).containsExactly("missing");
+		assertThat(result.getFailed()).containsOnlyKeys(brokenId);
+		assertThat(result.getFailed().get(brokenId)).isInstanceOf(IllegalStateException.class);
+		assertThat(result.getLoaded()).hasSize(49);
+		for (String id : result.getLoaded().keySet()) {
+			assertThat(result.get(id).getVersion()).isEqualTo(repository.getById(id).getVersion());
+			assertThat(result.get(id).getName()).isEqualTo(repository.getById(id).getName());
+		}
+
+		// Cached AggregateRoots are only caught up with the events appended since they were cached
+		Product renamed = result.get(ids.get(1));
+		renamed.rename("Renamed");
+		repository.save(renamed, 2);
+		long eventsRead = metrics.getValues().get("eventstore.read.events.count").longValue();
+		LoadResult<Product, String> cached = repository.getByIds(Arrays.asList(ids.get(1), ids.get(2)));
+		assertThat(cached.isComplete()).isTrue();
+		assertThat(cached.get(ids.get(1)).getName()).isEqualTo("Renamed");
+		assertThat(cached.getLoaded().keySet()).containsExactly(ids.get(1), ids.get(2));
+		assertThat(metrics.getValues().get("eventstore.read.events.count").longValue()).isEqualTo(eventsRead + 2);
+		assertThat(repository.getByIds(new ArrayList<>()).getLoaded()).isEmpty();
+		metrics.close();
+	}
 }
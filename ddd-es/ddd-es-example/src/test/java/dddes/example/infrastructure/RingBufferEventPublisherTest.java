@@ -0,0 +1,138 @@
+package dddes.example.infrastructure;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import dddes.core.Event;
+import dddes.core.IEventBatchHandler;
+import dddes.example.domain.product.events.ProductRenamed;
+import dddes.example.infrastructure.RingBufferEventPublisher.Backpressure;
+import dddes.example.infrastructure.RingBufferEventPublisher.SubscriberGroup;
+
+public class RingBufferEventPublisherTest {
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void publisher_should_deliver_events_in_order_and_in_batches_to_every_group() throws Exception {
+
+    List<String> received1 = new CopyOnWriteArrayList<>(), received2 = new CopyOnWriteArrayList<>();
+    List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    RingBufferEventPublisher publisher = new RingBufferEventPublisher(1024, 64, Backpressure.BLOCK);
+    SubscriberGroup group1 = publisher.subscribe("group1", events -> batchSizes.add(events.size()), names(received1));
+    SubscriberGroup group2 = publisher.subscribe("group2", names(received2));
+
+    List<String> published = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      published.add(String.valueOf(i));
+      publisher.publish(new ProductRenamed(String.valueOf(i)));
+    }
+    publisher.close();
+
+    assertThat(received1).isEqualTo(published);
+    assertThat(received2).isEqualTo(published);
+    assertThat(batchSizes).allMatch(size -> size >= 1 && size <= 64);
+    assertThat(group1.getDeliveredEvents()).isEqualTo(10_000);
+    assertThat(group1.getLag()).isZero();
+    assertThat(group2.getQueueDepth()).isZero();
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void publisher_should_drop_oldest_events_of_a_full_group() throws Exception {
+
+    CountDownLatch handling = new CountDownLatch(1), release = new CountDownLatch(1);
+    List<String> received = new CopyOnWriteArrayList<>();
+    RingBufferEventPublisher publisher = new RingBufferEventPublisher(4, 1, Backpressure.DROP_OLDEST);
+    SubscriberGroup group = publisher.subscribe("slow", blockFirstBatch(handling, release), names(received));
+
+    publisher.publish(new ProductRenamed("0"));
+    assertThat(handling.await(5, TimeUnit.SECONDS)).isTrue();
+    for (int i = 1; i <= 6; i++) publisher.publish(new ProductRenamed(String.valueOf(i)));
+
+    assertThat(group.getQueueDepth()).isEqualTo(4);
+    assertThat(group.getDroppedEvents()).isEqualTo(2);
+    assertThat(group.getLag()).isEqualTo(5);
+    release.countDown();
+    publisher.close();
+    assertThat(received).containsExactly("0", "3", "4", "5", "6");
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void publisher_should_fail_when_a_group_is_full() throws Exception {
+
+    CountDownLatch handling = new CountDownLatch(1), release = new CountDownLatch(1);
+    List<String> fastReceived = new CopyOnWriteArrayList<>(), slowReceived = new CopyOnWriteArrayList<>();
+    RingBufferEventPublisher publisher = new RingBufferEventPublisher(2, 1, Backpressure.FAIL);
+    SubscriberGroup fast = publisher.subscribe("fast", names(fastReceived));
+    publisher.subscribe("slow", blockFirstBatch(handling, release), names(slowReceived));
+
+    publisher.publish(new ProductRenamed("0"));
+    assertThat(handling.await(5, TimeUnit.SECONDS)).isTrue();
+    publisher.publish(new ProductRenamed("1"));
+    SubscriptionTest.await(() -> fast.getQueueDepth() == 0);
+    publisher.publish(new ProductRenamed("2"));
+    SubscriptionTest.await(() -> fast.getQueueDepth() == 0);
+    assertThatIllegalStateException().isThrownBy(() -> publisher.publish(new ProductRenamed("3"))).withMessageContaining("slow");
+    // The group subscribed first, which had room, hasn't received the event either
+    assertThat(fast.getLag() + fast.getDeliveredEvents()).isEqualTo(3);
+    release.countDown();
+    publisher.close();
+    assertThat(fastReceived).containsExactly("0", "1", "2");
+    assertThat(slowReceived).containsExactly("0", "1", "2");
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void publisher_should_block_until_a_full_group_makes_room() throws Exception {
+
+    CountDownLatch handling = new CountDownLatch(1), release = new CountDownLatch(1);
+    List<String> received = new CopyOnWriteArrayList<>();
+    RingBufferEventPublisher publisher = new RingBufferEventPublisher(1, 1, Backpressure.BLOCK);
+    publisher.subscribe("slow", blockFirstBatch(handling, release), names(received));
+
+    publisher.publish(new ProductRenamed("0"));
+    assertThat(handling.await(5, TimeUnit.SECONDS)).isTrue();
+    publisher.publish(new ProductRenamed("1"));
+    Thread blocked = new Thread(() -> publisher.publish(new ProductRenamed("2")));
+    blocked.start();
+    blocked.join(200);
+    assertThat(blocked.isAlive()).isTrue();
+
+    release.countDown();
+    blocked.join(5_000);
+    assertThat(blocked.isAlive()).isFalse();
+    publisher.close();
+    assertThat(received).containsExactly("0", "1", "2");
+  }
+
+  private static IEventBatchHandler names(List<String> received) {
+    return events -> events.forEach(e -> received.add(((ProductRenamed) e).getName()));
+  }
+
+  private static IEventBatchHandler blockFirstBatch(CountDownLatch handling, CountDownLatch release) {
+    return new IEventBatchHandler() {
+      private boolean first = true;
+
+      public void handle(List<Event> events) {
+        if (!first) return;
+        first = false;
+        handling.countDown();
+        try {
+          release.await();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+  }
+}
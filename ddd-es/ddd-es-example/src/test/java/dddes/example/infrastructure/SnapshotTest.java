@@ -0,0 +1,183 @@
+package dddes.example.infrastructure;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import dddes.core.AggregateRoot;
+import dddes.core.IEventStore;
+import dddes.core.ISnapshotPolicy;
+import dddes.core.ISnapshotStore;
+import dddes.core.Snapshot;
+import dddes.example.domain.backlogitem.BacklogItem;
+import dddes.example.domain.backlogitem.BacklogItemFactory;
+import dddes.example.domain.backlogitem.BacklogItemRepository;
+import dddes.example.domain.backlogitem.StoryPoints;
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductBacklogItem;
+import dddes.example.domain.product.ProductFactory;
+import dddes.example.domain.product.ProductRepository;
+
+public class SnapshotTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void repositories_should_load_aggregates_from_their_latest_snapshot() {
+
+    IEventStore<String> eventStore = new InMemoryEventStore<>();
+    ISnapshotStore<String> snapshotStore = new InMemorySnapshotStore<>();
+    ProductRepository repository = new ProductRepository(eventStore, snapshotStore, ISnapshotPolicy.everyEvents(3));
+
+    Product product = ProductFactory.create("Product");
+    BacklogItem backlogItem1 = BacklogItemFactory.create("BacklogItem 1", product);
+    BacklogItem backlogItem2 = BacklogItemFactory.create("BacklogItem 2", product);
+    product.planBacklogItem(backlogItem1);
+    product.planBacklogItem(backlogItem2);
+    product.reorderBacklogItems(backlogItem2.getId(), backlogItem1.getId());
+    repository.save(product, 0);
+
+    Snapshot<String> snapshot = snapshotStore.getLatest(product.getId());
+    assertThat(snapshot).isNotNull();
+    assertThat(snapshot.getVersion()).isEqualTo(product.getVersion());
+
+    Product loaded = repository.getById(product.getId());
+    assertThat(loaded).isEqualTo(product);
+    assertThat(loaded.getName()).isEqualTo("Product");
+    assertThat(loaded.getPlannedBacklogItems().map(ProductBacklogItem::getId)).containsExactly(backlogItem2.getId(), backlogItem1.getId());
+
+    // Only the events following the snapshot are replayed
+    loaded.rename("Renamed");
+    repository.save(loaded);
+    Snapshot<String> otherState = ProductFactory.create("From snapshot").takeSnapshot();
+    snapshotStore.save(new Snapshot<>(product.getId(), snapshot.getVersion(), otherState.getState()));
+    assertThat(repository.getById(product.getId()).getName()).isEqualTo("Renamed");
+    assertThat(repository.getById(product.getId()).getPlannedBacklogItems()).isEmpty();
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void aggregates_should_only_restore_snapshots_when_new() {
+
+    Product product = ProductFactory.create("Product");
+    Snapshot<String> snapshot = product.takeSnapshot();
+    assertThatIllegalStateException().isThrownBy(() -> product.restoreFromSnapshot(snapshot));
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void snapshot_policies_should_take_snapshots_every_n_events_or_by_time() {
+
+    Product product = ProductFactory.create("Product");
+    product.rename("Product 2");
+    long now = System.currentTimeMillis();
+    long longAgo = now - 60_000;
+
+    assertThat(ISnapshotPolicy.everyEvents(2).shouldTakeSnapshot(0, 0, product)).isTrue();
+    assertThat(ISnapshotPolicy.everyEvents(2).shouldTakeSnapshot(1, now, product)).isFalse();
+    assertThat(ISnapshotPolicy.every(Duration.ofSeconds(30)).shouldTakeSnapshot(0, 0, product)).isTrue();
+    assertThat(ISnapshotPolicy.every(Duration.ofSeconds(30)).shouldTakeSnapshot(1, now, product)).isFalse();
+    assertThat(ISnapshotPolicy.every(Duration.ofSeconds(30)).shouldTakeSnapshot(1, longAgo, product)).isTrue();
+    assertThat(ISnapshotPolicy.every(Duration.ofSeconds(30)).shouldTakeSnapshot(2, longAgo, product)).isFalse();
+    assertThat(ISnapshotPolicy.everyEvents(2).or(ISnapshotPolicy.every(Duration.ofSeconds(30))).shouldTakeSnapshot(1, longAgo, product)).isTrue();
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void repositories_should_read_the_snapshot_store_only_to_load_aggregates() {
+
+    AtomicInteger reads = new AtomicInteger();
+    InMemorySnapshotStore<String> snapshotStore = new InMemorySnapshotStore<String>() {
+      @Override
+      public Snapshot<String> getLatest(String aggregateRootId) {
+        reads.incrementAndGet();
+        return super.getLatest(aggregateRootId);
+      }
+    };
+    ProductRepository repository = new ProductRepository(new InMemoryEventStore<>(), snapshotStore, ISnapshotPolicy.everyEvents(3));
+
+    Product product = ProductFactory.create("Product");
+    repository.save(product, 0);
+    for (int i = 0; i < 10; i++) {
+      int expectedVersion = product.getVersion();
+      product.rename("Product " + i);
+      repository.save(product, expectedVersion);
+    }
+    assertThat(reads).hasValue(0);
+
+    // Loading reads the latest snapshot, which the following saves remember
+    assertThat(repository.update(product.getId(), p -> p.rename("Updated")).getVersion()).isEqualTo(12);
+    assertThat(reads).hasValue(1);
+    assertThat(snapshotStore.getLatest(product.getId()).getVersion()).isEqualTo(12);
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void aggregates_should_opt_in_to_snapshots() {
+
+    Product product = ProductFactory.create("Product");
+    assertThat(product.supportsSnapshots()).isTrue();
+    assertThat(new Unsnapshotable().supportsSnapshots()).isFalse();
+    assertThat(new Unsnapshotable().takeSnapshot()).isNull();
+    assertThatThrownBy(() -> new Unsnapshotable().restoreFromSnapshot(product.takeSnapshot())).isInstanceOf(UnsupportedOperationException.class);
+
+    assertThatIllegalArgumentException().isThrownBy(() -> new Repository<>(Unsnapshotable::new, new InMemoryEventStore<>(), new InMemorySnapshotStore<>(), ISnapshotPolicy.everyEvents(1)));
+    assertThatIllegalArgumentException().isThrownBy(() -> new Repository<>(Unsnapshotable::new, new InMemoryEventStore<>(), new AggregateCache<>(10)));
+    new Repository<>(Unsnapshotable::new, new InMemoryEventStore<>());
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void file_snapshot_store_should_keep_the_latest_snapshot() throws Exception {
+
+    IEventStore<String> eventStore = new InMemoryEventStore<>();
+    FileSnapshotStore<String> snapshotStore = new FileSnapshotStore<>(temporaryFolder.getRoot().toPath().resolve("snapshots"));
+    BacklogItemRepository repository = new BacklogItemRepository(eventStore, snapshotStore, ISnapshotPolicy.everyEvents(1));
+
+    BacklogItem backlogItem = BacklogItemFactory.create("BacklogItem", ProductFactory.create("Product"));
+    backlogItem.assignStoryPoints(StoryPoints.EIGHT);
+    Snapshot<String> olderSnapshot = backlogItem.takeSnapshot();
+    backlogItem.changeTitle("BacklogItem 2");
+    repository.save(backlogItem, 0);
+    snapshotStore.save(new Snapshot<>(backlogItem.getId(), olderSnapshot.getVersion(), olderSnapshot.getState()));
+
+    Snapshot<String> snapshot = new FileSnapshotStore<String>(temporaryFolder.getRoot().toPath().resolve("snapshots")).getLatest(backlogItem.getId());
+    assertThat(snapshot.getVersion()).isEqualTo(3);
+    assertThat(snapshotStore.getLatest("missing")).isNull();
+
+    BacklogItem loaded = repository.getById(backlogItem.getId());
+    assertThat(loaded).isEqualTo(backlogItem);
+    assertThat(loaded.getTitle()).isEqualTo("BacklogItem 2");
+    assertThat(loaded.getStoryPoints()).isEqualTo(StoryPoints.EIGHT);
+    assertThat(loaded.getProductId()).isEqualTo(backlogItem.getProductId());
+
+    // Saves compare the versions without deserializing the stored state
+    snapshotStore.save(new Snapshot<>("unreadable", 5, new Unreadable()));
+    snapshotStore.save(new Snapshot<>("unreadable", 4, "older"));
+    assertThatThrownBy(() -> snapshotStore.getLatest("unreadable")).isInstanceOf(IllegalStateException.class);
+    snapshotStore.save(new Snapshot<>("unreadable", 6, "newer"));
+    assertThat(snapshotStore.getLatest("unreadable").getState()).isEqualTo("newer");
+  }
+
+  private static final class Unreadable implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private void readObject(ObjectInputStream input) {
+      throw new IllegalStateException("unreadable state");
+    }
+  }
+
+  private static final class Unsnapshotable extends AggregateRoot<String> {
+  }
+}
@@ -0,0 +1,210 @@
+package dddes.example.infrastructure;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import dddes.core.ICheckpointStore;
+import dddes.core.IEventSubscriber;
+import dddes.core.RecordedEvent;
+import dddes.example.domain.product.events.ProductRenamed;
+
+public class SubscriptionTest {
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void subscriptions_to_all_should_replay_the_history_and_then_follow_the_new_events() throws Exception {
+
+    SubscribableEventStore<String> eventStore = new SubscribableEventStore<>(new InMemoryEventStore<>(), 100, 10_000);
+    ICheckpointStore checkpointStore = new InMemoryCheckpointStore();
+    for (int i = 0; i < 5_000; i++) eventStore.appendEventsToStream("s" + i % 10, Stream.of(new ProductRenamed("h" + i)));
+
+    List<Long> positions = new CopyOnWriteArrayList<>();
+    AtomicInteger lives = new AtomicInteger();
+    CatchUpSubscription<String> subscription = eventStore.subscribeToAll("all", checkpointStore, new IEventSubscriber<String>() {
+      public void handle(List<RecordedEvent<String>> events) {
+        events.forEach(e -> positions.add(e.getGlobalPosition()));
+      }
+
+      public void onLive() {
+        lives.incrementAndGet();
+      }
+    });
+
+    InMemoryEventStoreTest.runConcurrently(() -> {
+      for (int i = 0; i < 1_000; i++) eventStore.appendEventsToStream("s" + i % 10, Stream.of(new ProductRenamed("l" + i)));
+      return 0;
+    });
+    long total = eventStore.getLastGlobalPosition();
+    // The subscription may reach the end of the log while still catching up, and then go live
+    await(() -> subscription.getPosition() == total && subscription.isLive());
+
+    assertThat(positions).isEqualTo(LongStream.range(0, total).boxed().collect(Collectors.toList()));
+    assertThat(subscription.getLag()).isZero();
+    assertThat(lives.get()).isPositive();
+    assertThat(checkpointStore.load("all")).isEqualTo(total);
+    eventStore.close();
+    assertThat(subscription.isRunning()).isFalse();
+    assertThat(subscription.getFailure()).isNull();
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void subscriptions_to_a_stream_should_deliver_its_events_only() throws Exception {
+
+    SubscribableEventStore<String> eventStore = new SubscribableEventStore<>(new InMemoryEventStore<>());
+    List<String> names = new CopyOnWriteArrayList<>();
+    List<Long> positions = new CopyOnWriteArrayList<>();
+    CatchUpSubscription<String> subscription = eventStore.subscribeToStream("a", "a", 1, events -> events.forEach(e -> {
+      names.add(((ProductRenamed) e.getEvent()).getName());
+      positions.add(e.getStreamPosition());
+    }));
+
+    eventStore.appendEventsToStream("a", Stream.of(new ProductRenamed("a0"), new ProductRenamed("a1")));
+    eventStore.appendEventsToStream("b", Stream.of(new ProductRenamed("b0")));
+    eventStore.appendEventsToStream("a", Stream.of(new ProductRenamed("a2")));
+    await(() -> subscription.getPosition() == 3);
+
+    assertThat(names).containsExactly("a1", "a2");
+    assertThat(positions).containsExactly(1L, 2L);
+    eventStore.close();
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void subscriptions_falling_behind_should_catch_up_again() throws Exception {
+
+    SubscribableEventStore<String> eventStore = new SubscribableEventStore<>(new InMemoryEventStore<>(), 10, 16);
+    CountDownLatch live = new CountDownLatch(1), release = new CountDownLatch(1);
+    List<Long> positions = new CopyOnWriteArrayList<>();
+    CatchUpSubscription<String> subscription = eventStore.subscribeToAll("slow", 0, new IEventSubscriber<String>() {
+      public void handle(List<RecordedEvent<String>> events) {
+        try {
+          release.await();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        events.forEach(e -> positions.add(e.getGlobalPosition()));
+      }
+
+      public void onLive() {
+        live.countDown();
+      }
+    });
+    assertThat(live.await(5, TimeUnit.SECONDS)).isTrue();
+
+    for (int i = 0; i < 1_000; i++) eventStore.appendEventsToStream("s" + i % 7, Stream.of(new ProductRenamed(String.valueOf(i))));
+    await(() -> !subscription.isLive());
+    release.countDown();
+    await(() -> subscription.getPosition() == 1_000);
+
+    assertThat(positions).isEqualTo(LongStream.range(0, 1_000).boxed().collect(Collectors.toList()));
+    assertThat(subscription.getCatchUps()).isPositive();
+    eventStore.close();
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void subscriptions_should_resume_from_their_checkpoint() throws Exception {
+
+    SubscribableEventStore<String> eventStore = new SubscribableEventStore<>(new InMemoryEventStore<>());
+    ICheckpointStore checkpointStore = new InMemoryCheckpointStore();
+    List<String> names = new CopyOnWriteArrayList<>();
+    IEventSubscriber<String> subscriber = events -> events.forEach(e -> names.add(((ProductRenamed) e.getEvent()).getName()));
+
+    eventStore.appendEventsToStream("a", Stream.of(new ProductRenamed("1"), new ProductRenamed("2")));
+    CatchUpSubscription<String> subscription = eventStore.subscribeToStream("projection", "a", checkpointStore, subscriber);
+    await(() -> subscription.getPosition() == 2);
+    subscription.close();
+
+    eventStore.appendEventsToStream("a", Stream.of(new ProductRenamed("3")));
+    CatchUpSubscription<String> resumed = eventStore.subscribeToStream("projection", "a", checkpointStore, subscriber);
+    await(() -> resumed.getPosition() == 3);
+    assertThat(names).containsExactly("1", "2", "3");
+
+    // A failing subscriber stops its subscription
+    RuntimeException failure = new IllegalStateException();
+    CatchUpSubscription<String> failing = eventStore.subscribeToAll("failing", 0, events -> { throw failure; });
+    await(() -> !failing.isRunning());
+    assertThat(failing.getFailure()).isSameAs(failure);
+    assertThat(eventStore.getSubscriptions()).containsExactly(resumed);
+    eventStore.close();
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void subscriptions_should_catch_up_again_when_the_dispatcher_fails_to_read_the_global_log() throws Exception {
+
+    RuntimeException failure = new IllegalStateException("unreadable log");
+    AtomicInteger failingReads = new AtomicInteger();
+    SubscribableEventStore<String> eventStore = new SubscribableEventStore<>(new InMemoryEventStore<String>() {
+      @Override
+      public Stream<RecordedEvent<String>> readAll(long fromGlobalPosition, int maxCount) {
+        if (failingReads.getAndUpdate(n -> n > 0 ? n - 1 : n) != 0) throw failure;
+        return super.readAll(fromGlobalPosition, maxCount);
+      }
+    });
+    List<Long> positions = new CopyOnWriteArrayList<>();
+    CatchUpSubscription<String> subscription = eventStore.subscribeToAll("all", 0, events -> events.forEach(e -> positions.add(e.getGlobalPosition())));
+    await(subscription::isLive);
+
+    // A single failed read of the dispatcher
+    failingReads.set(1);
+    eventStore.appendEventsToStream("a", Stream.of(new ProductRenamed("1")));
+    await(() -> eventStore.getDispatchFailures() == 1 && subscription.getPosition() == 1 && subscription.isLive());
+    eventStore.appendEventsToStream("a", Stream.of(new ProductRenamed("2")));
+    await(() -> subscription.getPosition() == 2);
+    assertThat(positions).containsExactly(0L, 1L);
+    assertThat(subscription.getCatchUps()).isEqualTo(1);
+
+    // The history can't be read either
+    failingReads.set(-1);
+    await(() -> !subscription.isRunning());
+    assertThat(subscription.getFailure()).isSameAs(failure);
+    failingReads.set(0);
+    eventStore.close();
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void subscriptions_should_skip_the_tombstones_of_failed_appends() throws Exception {
+
+    SubscribableEventStore<String> eventStore = new SubscribableEventStore<>(new InMemoryEventStore<>());
+    eventStore.appendEventsToStream("a", Stream.of(new ProductRenamed("a0")));
+    assertThatNullPointerException().isThrownBy(() -> eventStore.appendEventsToStream("a", Stream.of(new ProductRenamed("a1"), null)));
+    List<Long> replayed = new CopyOnWriteArrayList<>();
+    CatchUpSubscription<String> all = eventStore.subscribeToAll("all", 0, events -> events.forEach(e -> replayed.add(e.getGlobalPosition())));
+    List<Long> streamPositions = new CopyOnWriteArrayList<>();
+    CatchUpSubscription<String> stream = eventStore.subscribeToStream("a", "a", 0, events -> events.forEach(e -> streamPositions.add(e.getStreamPosition())));
+    await(() -> all.isLive() && stream.isLive());
+
+    assertThatNullPointerException().isThrownBy(() -> eventStore.appendEventsToStream("a", Stream.of(new ProductRenamed("a1"), null)));
+    eventStore.appendEventsToStream("a", Stream.of(new ProductRenamed("a1")));
+    await(() -> all.getPosition() == 6 && stream.getPosition() == 2);
+
+    assertThat(replayed).containsExactly(0L, 5L);
+    assertThat(all.getDeliveredEvents()).isEqualTo(2);
+    assertThat(streamPositions).containsExactly(0L, 1L);
+    eventStore.close();
+  }
+
+  static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      if (System.nanoTime() > deadline) fail("condition not met within 10 seconds");
+      Thread.sleep(1);
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package dddes.example.infrastructure;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import dddes.core.Event;
+import dddes.example.domain.backlogitem.BacklogItem;
+import dddes.example.domain.backlogitem.BacklogItemFactory;
+import dddes.example.domain.backlogitem.BacklogItemRepository;
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductFactory;
+import dddes.example.domain.product.ProductRepository;
+import dddes.example.domain.product.events.ProductRenamed;
+
+public class TieredEventStoreTest {
+
+  private static final int EVENT_SIZE = 100;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void tieredStore_should_keep_the_recent_streams_within_its_budget_and_read_the_others_from_the_cold_tier() {
+
+    InMemoryEventStore<String> coldTier = new InMemoryEventStore<>();
+    // Room for 3 streams of 2 events
+    TieredEventStore<String> eventStore = new TieredEventStore<>(coldTier, 1000, event -> EVENT_SIZE);
+    for (int i = 0; i < 10; i++) eventStore.appendEventsToStream("s" + i, Stream.of(renamed(i + ".1"), renamed(i + ".2")), 0);
+    assertThat(eventStore.getHotTierStreamCount()).isEqualTo(3);
+    assertThat(eventStore.getHotTierEventCount()).isEqualTo(6);
+    assertThat(eventStore.getHotTierSizeInBytes()).isBetween(6L * EVENT_SIZE, 1000L);
+    assertThat(eventStore.getEvictions()).isEqualTo(7);
+    assertThat(eventStore.getColdTierEventCount()).isEqualTo(20);
+
+    assertThat(names(eventStore.getStream("s9"))).containsExactly("9.1", "9.2");
+    assertThat(eventStore.getHits()).isEqualTo(1);
+    assertThat(names(eventStore.getStream("s0", 1))).containsExactly("0.2");
+    assertThat(eventStore.getMisses()).isEqualTo(1);
+    assertThat(names(eventStore.getStream("s0"))).containsExactly("0.1", "0.2");
+    assertThat(eventStore.getHits()).isEqualTo(2);
+    assertThat(eventStore.getEvictions()).isEqualTo(8);
+
+    // Appends go to both tiers for a hot stream, and to the cold tier only for the others
+    eventStore.appendEventsToStream("s0", Stream.of(renamed("0.3")), 2);
+    eventStore.appendEventsToStream("s1", Stream.of(renamed("1.3")), 2);
+    assertThatThrownBy(() -> eventStore.appendEventsToStream("s0", Stream.of(renamed("0.4")), 2)).isInstanceOf(ConcurrentModificationException.class);
+    assertThat(names(eventStore.getStream("s0"))).containsExactly("0.1", "0.2", "0.3");
+    assertThat(names(eventStore.getStreamBackward("s0", Long.MAX_VALUE, 2))).containsExactly("0.3", "0.2");
+    assertThat(names(eventStore.getStream("s1"))).containsExactly("1.1", "1.2", "1.3");
+    assertThat(eventStore.getHits()).isEqualTo(4);
+    assertThat(eventStore.getMisses()).isEqualTo(2);
+
+    // A stream exceeding the budget alone is always read from the cold tier
+    eventStore.appendEventsToStream("big", IntStream.range(0, 20).mapToObj(i -> renamed("big." + i)), 0);
+    assertThat(eventStore.getStream("big").count()).isEqualTo(20);
+    assertThat(eventStore.getStream("big", 19).count()).isEqualTo(1);
+    assertThat(eventStore.getMisses()).isEqualTo(4);
+    assertThat(eventStore.getHotTierSizeInBytes()).isLessThanOrEqualTo(1000);
+
+    assertThatThrownBy(() -> eventStore.getStream("missing")).isInstanceOf(NoSuchElementException.class);
+    assertThat(eventStore.getHitRate()).isEqualTo(4.0 / 9);
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void repositories_should_load_aggregates_transparently_from_both_tiers() throws Exception {
+
+    try (FileEventStore coldTier = new FileEventStore(temporaryFolder.getRoot().toPath())) {
+      TieredEventStore<String> eventStore = new TieredEventStore<>(coldTier, 5_000, event -> EVENT_SIZE);
+      ProductRepository products = new ProductRepository(eventStore);
+      BacklogItemRepository backlogItems = new BacklogItemRepository(eventStore);
+      Product[] saved = new Product[20];
+      for (int i = 0; i < saved.length; i++) {
+        saved[i] = ProductFactory.create("Product " + i);
+        for (int j = 0; j < i; j++) saved[i].rename("Product " + i + "." + j);
+        products.save(saved[i], 0);
+      }
+
+      for (int round = 0; round < 2; round++)
+        for (Product product : saved) {
+          Product loaded = products.getById(product.getId());
+          assertThat(loaded.getName()).isEqualTo(product.getName());
+          assertThat(loaded.getVersion()).isEqualTo(product.getVersion());
+        }
+
+      Product product = products.getById(saved[0].getId());
+      BacklogItem backlogItem = BacklogItemFactory.create("BacklogItem", product);
+      product.planBacklogItem(backlogItem);
+      new UnitOfWork<>(eventStore).add(product).add(backlogItem).commit();
+      products.update(saved[19].getId(), p -> p.rename("Renamed"));
+
+      assertThat(products.getById(saved[0].getId()).getPlannedBacklogItems()).hasSize(1);
+      assertThat(backlogItems.getById(backlogItem.getId()).getVersion()).isEqualTo(1);
+      assertThat(products.getById(saved[19].getId()).getName()).isEqualTo("Renamed");
+      assertThat(eventStore.getHits()).isPositive();
+      assertThat(eventStore.getMisses()).isPositive();
+      assertThat(eventStore.getEvictions()).isPositive();
+      assertThat(eventStore.getHotTierSizeInBytes()).isLessThanOrEqualTo(5_000);
+    }
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void tieredStore_should_keep_both_tiers_consistent_under_concurrent_appends_and_reads() throws Exception {
+
+    InMemoryEventStore<String> coldTier = new InMemoryEventStore<>();
+    TieredEventStore<String> eventStore = new TieredEventStore<>(coldTier, 20 * EVENT_SIZE, event -> EVENT_SIZE);
+    int streams = 10;
+    for (int i = 0; i < streams; i++) eventStore.appendEventsToStream("s" + i, Stream.of(renamed("0")), 0);
+
+    List<Integer> conflicts = InMemoryEventStoreTest.runConcurrently(() -> {
+      int conflictCount = 0;
+      for (int i = 0; i < 1_000; i++) {
+        String streamId = "s" + ThreadLocalRandom.current().nextInt(streams);
+        long size = eventStore.getStream(streamId).count();
+        try {
+          eventStore.appendEventsToStream(streamId, Stream.of(renamed(String.valueOf(size))), size);
+        }
+        catch (ConcurrentModificationException e) {
+          conflictCount++;
+        }
+      }
+      return conflictCount;
+    });
+
+    long appended = 0;
+    for (int i = 0; i < streams; i++) {
+      List<String> names = names(eventStore.getStream("s" + i)).collect(Collectors.toList());
+      assertThat(names).isEqualTo(names(coldTier.getStream("s" + i)).collect(Collectors.toList()));
+      assertThat(names).isEqualTo(IntStream.range(0, names.size()).mapToObj(String::valueOf).collect(Collectors.toList()));
+      appended += names.size() - 1;
+    }
+    assertThat(appended + conflicts.stream().mapToInt(Integer::intValue).sum()).isEqualTo(conflicts.size() * 1_000L);
+    assertThat(eventStore.getEvictions()).isPositive();
+  }
+
+  private static Event renamed(String name) {
+    return new ProductRenamed(name);
+  }
+
+  private static Stream<String> names(Stream<Event> events) {
+    return events.map(e -> ((ProductRenamed) e).getName());
+  }
+}
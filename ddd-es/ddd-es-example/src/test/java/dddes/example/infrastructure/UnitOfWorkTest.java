@@ -0,0 +1,124 @@
+package dddes.example.infrastructure;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import dddes.core.Event;
+import dddes.core.IEventStore;
+import dddes.core.RecordedEvent;
+import dddes.core.StreamAppend;
+import dddes.example.domain.backlogitem.BacklogItem;
+import dddes.example.domain.backlogitem.BacklogItemFactory;
+import dddes.example.domain.backlogitem.BacklogItemRepository;
+import dddes.example.domain.backlogitem.StoryPoints;
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductFactory;
+import dddes.example.domain.product.ProductRepository;
+import dddes.example.domain.product.events.ProductRenamed;
+
+public class UnitOfWorkTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void units_of_work_should_commit_several_aggregates_at_once_and_publish_their_events_in_order() {
+
+    List<Event> published = new ArrayList<>();
+    PublishingEventStore<String> eventStore = new PublishingEventStore<>(new InMemoryEventStore<>(), published::add);
+    Product product = ProductFactory.create("Product");
+    BacklogItem backlogItem1 = BacklogItemFactory.create("BacklogItem 1", product);
+    BacklogItem backlogItem2 = BacklogItemFactory.create("BacklogItem 2", product);
+    backlogItem1.assignStoryPoints(StoryPoints.FIVE);
+    product.planBacklogItem(backlogItem1);
+    product.planBacklogItem(backlogItem2);
+    List<Event> expected = Stream.of(product, backlogItem1, backlogItem2).flatMap(a -> a.getPendingChanges()).collect(Collectors.toList());
+
+    UnitOfWork<String> unitOfWork = new UnitOfWork<String>(eventStore).add(product).add(backlogItem1).add(backlogItem2).add(product);
+    assertThat(unitOfWork.size()).isEqualTo(3);
+    unitOfWork.commit();
+
+    assertThat(unitOfWork.size()).isZero();
+    assertThat(published).containsExactlyElementsOf(expected);
+    assertThat(eventStore.readAll(0, 100).map(RecordedEvent::getEvent).collect(Collectors.toList())).containsExactlyElementsOf(expected);
+    assertThat(Stream.of(product, backlogItem1, backlogItem2).flatMap(a -> a.getPendingChanges())).isEmpty();
+    Product loadedProduct = new ProductRepository(eventStore).getById(product.getId());
+    assertThat(loadedProduct.getPlannedBacklogItems().count()).isEqualTo(2);
+    assertThat(new BacklogItemRepository(eventStore).getById(backlogItem1.getId()).getStoryPoints()).isEqualTo(StoryPoints.FIVE);
+
+    // Every AggregateRoot is expected at the version it had before its pending changes
+    loadedProduct.rename("Product 2");
+    product.rename("Stale");
+    backlogItem2.assignStoryPoints(StoryPoints.EIGHT);
+    new UnitOfWork<>(eventStore).add(loadedProduct).commit();
+    UnitOfWork<String> stale = new UnitOfWork<String>(eventStore).add(backlogItem2).add(product);
+    assertThatThrownBy(stale::commit).isInstanceOf(ConcurrentModificationException.class);
+    assertThat(stale.size()).isEqualTo(2);
+    assertThat(backlogItem2.getPendingChanges()).hasSize(1);
+    assertThat(eventStore.getStream(backlogItem2.getId()).count()).isEqualTo(1);
+    assertThat(eventStore.getLastGlobalPosition()).isEqualTo(expected.size() + 1);
+    assertThatIllegalArgumentException().isThrownBy(() -> stale.add(new ProductRepository(eventStore).getById(product.getId())));
+  }
+
+  @Test
+  @Category(InfrastructureTests.class)
+  public void event_stores_should_append_to_several_streams_atomically() throws Exception {
+
+    Path directory = temporaryFolder.newFolder().toPath();
+    for (IEventStore<String> eventStore : Arrays.<IEventStore<String>>asList(new InMemoryEventStore<>(), new FileEventStore(directory))) {
+      eventStore.appendEventsToStreams(Arrays.asList(append("a", 0, "a1", "a2"), append("b", 0, "b1"), append("c", -1)));
+      assertThatThrownBy(() -> eventStore.appendEventsToStreams(Arrays.asList(append("a", 2, "a3"), append("b", 0, "b2"))))
+          .isInstanceOf(ConcurrentModificationException.class);
+      assertThatIllegalArgumentException().isThrownBy(() -> eventStore.appendEventsToStreams(Arrays.asList(append("d", 0, "d1"), append("d", 1, "d2"))));
+      assertThatThrownBy(() -> eventStore.getStream("d").count()).isInstanceOf(NoSuchElementException.class);
+      eventStore.appendEventsToStreams(Arrays.asList(append("b", 1, "b2"), append("a", 2, "a3")));
+      assertThat(names(eventStore.readAll(0, 100).map(RecordedEvent::getEvent))).containsExactly("a1", "a2", "b1", "b2", "a3");
+      assertThat(names(eventStore.getStream("a"))).containsExactly("a1", "a2", "a3");
+      assertThat(eventStore.getStream("c").count()).isZero();
+    }
+    try (FileEventStore eventStore = new FileEventStore(directory)) {
+      assertThat(names(eventStore.readAll(0, 100).map(RecordedEvent::getEvent))).containsExactly("a1", "a2", "b1", "b2", "a3");
+    }
+
+    // Appends to overlapping streams, in any order, don't deadlock and keep the events of every append together
+    InMemoryEventStore<String> eventStore = new InMemoryEventStore<>();
+    List<String> streams = new CopyOnWriteArrayList<>(Arrays.asList("x", "y", "z"));
+    InMemoryEventStoreTest.runConcurrently(() -> {
+      for (int i = 0; i < 1_000; i++) {
+        List<String> ids = new ArrayList<>(streams);
+        ids.remove(ThreadLocalRandom.current().nextInt(3));
+        if (ThreadLocalRandom.current().nextBoolean()) ids.add(ids.remove(0));
+        String name = Thread.currentThread().getName() + "-" + i;
+        eventStore.appendEventsToStreams(Arrays.asList(append(ids.get(0), -1, name), append(ids.get(1), -1, name)));
+      }
+      return 0;
+    });
+    List<String> log = names(eventStore.readAll(0, Integer.MAX_VALUE).map(RecordedEvent::getEvent));
+    assertThat(log).hasSize(16_000);
+    for (int i = 0; i < log.size(); i += 2) assertThat(log.get(i + 1)).isEqualTo(log.get(i));
+  }
+
+  private static StreamAppend<String> append(String streamId, long expectedLastPosition, String... names) {
+    return new StreamAppend<>(streamId, Arrays.stream(names).map(ProductRenamed::new).collect(Collectors.toList()), expectedLastPosition);
+  }
+
+  private static List<String> names(Stream<Event> events) {
+    return events.map(e -> ((ProductRenamed) e).getName()).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,154 @@
+package dddes.example.readmodel;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import dddes.example.domain.backlogitem.BacklogItem;
+import dddes.example.domain.backlogitem.BacklogItemFactory;
+import dddes.example.domain.backlogitem.BacklogItemRepository;
+import dddes.example.domain.backlogitem.StoryPoints;
+import dddes.example.domain.product.Product;
+import dddes.example.domain.product.ProductBacklogItem;
+import dddes.example.domain.product.ProductFactory;
+import dddes.example.domain.product.ProductRepository;
+import dddes.example.infrastructure.InMemoryCheckpointStore;
+import dddes.example.infrastructure.InMemoryEventStore;
+import dddes.example.infrastructure.ProjectionEngine;
+import dddes.example.infrastructure.ProjectionRunner;
+import dddes.example.infrastructure.PublishingEventStore;
+import dddes.example.infrastructure.SubscribableEventStore;
+
+public class ProductBacklogReadModelTest {
+
+  @Test
+  @Category(ReadModelTests.class)
+  public void read_model_should_serve_the_ordered_backlog_and_its_story_points() throws Exception {
+
+    ProductBacklogReadModel readModel = new ProductBacklogReadModel();
+    PublishingEventStore<String> eventStore = new PublishingEventStore<>(new InMemoryEventStore<>(), readModel);
+    ProductRepository productRepository = new ProductRepository(eventStore);
+    BacklogItemRepository backlogItemRepository = new BacklogItemRepository(eventStore);
+
+    Product product = ProductFactory.create("Product");
+    productRepository.save(product);
+    BacklogItem item1 = BacklogItemFactory.create("Item 1", product);
+    BacklogItem item2 = BacklogItemFactory.create("Item 2", product);
+    BacklogItem item3 = BacklogItemFactory.create("Item 3", product);
+    item1.assignStoryPoints(StoryPoints.THREE);
+    item2.assignStoryPoints(StoryPoints.FIVE);
+    for (BacklogItem item : new BacklogItem[] { item1, item2, item3 }) {
+      backlogItemRepository.save(item);
+      product.planBacklogItem(item);
+    }
+    productRepository.save(product);
+
+    assertThat(readModel.getBacklog(product.getId())).extracting(ProductBacklogEntry::getTitle).containsExactly("Item 1", "Item 2", "Item 3");
+    assertThat(readModel.getStoryPoints(product.getId())).isEqualTo(8);
+
+    product.reorderBacklogItems(item3.getId(), item1.getId(), item2.getId());
+    productRepository.save(product);
+    item3.changeTitle("Item 3 bis");
+    item3.assignStoryPoints(StoryPoints.THIRTEEN);
+    backlogItemRepository.save(item3);
+
+    assertThat(readModel.getBacklog(product.getId())).extracting(ProductBacklogEntry::getTitle).containsExactly("Item 3 bis", "Item 1", "Item 2");
+    assertThat(readModel.getBacklog(product.getId(), 1, 5)).extracting(ProductBacklogEntry::getBacklogItemId).containsExactly(item1.getId(), item2.getId());
+    assertThat(readModel.getBacklog(product.getId(), 3, 5)).isEmpty();
+    assertThat(readModel.getBacklogSize(product.getId())).isEqualTo(3);
+    assertThat(readModel.getStoryPoints(product.getId())).isEqualTo(21);
+    assertThat(readModel.getRank(item2.getId())).isEqualTo(2);
+
+    // Backlog items not planned do not count, and unknown products have an empty backlog
+    backlogItemRepository.save(BacklogItemFactory.create("Not planned", product));
+    assertThat(readModel.getStoryPoints(product.getId())).isEqualTo(21);
+    assertThat(readModel.getBacklog("unknown")).isEmpty();
+    assertThat(readModel.getStoryPoints("unknown")).isZero();
+    assertThatIllegalArgumentException().isThrownBy(() -> readModel.getBacklog(product.getId(), -1, 1));
+  }
+
+  @Test
+  @Category(ReadModelTests.class)
+  public void read_model_should_match_the_aggregates_when_run_by_a_projection_engine() throws Exception {
+
+    SubscribableEventStore<String> eventStore = new SubscribableEventStore<>(new InMemoryEventStore<>(), 64, 4096);
+    ProductRepository productRepository = new ProductRepository(eventStore);
+    BacklogItemRepository backlogItemRepository = new BacklogItemRepository(eventStore);
+    ProductBacklogReadModel readModel = new ProductBacklogReadModel();
+    ProjectionEngine<String> engine = new ProjectionEngine<>(eventStore, new InMemoryCheckpointStore(), 4, Duration.ofMillis(10));
+    ProjectionRunner<String> runner = engine.start(readModel);
+
+    Random random = new Random(42);
+    List<Product> products = new ArrayList<>();
+    List<BacklogItem> backlogItems = new ArrayList<>();
+    for (int p = 0; p < 5; p++) {
+      Product product = ProductFactory.create("Product " + p);
+      for (int i = 0; i < 40; i++) {
+        BacklogItem item = BacklogItemFactory.create("Item " + p + "." + i, product);
+        item.assignStoryPoints(StoryPoints.values()[random.nextInt(StoryPoints.values().length)]);
+        product.planBacklogItem(item);
+        backlogItems.add(item);
+      }
+      // The product is saved first: its backlog items are planned before their creation is known
+      productRepository.save(product);
+      products.add(product);
+    }
+    backlogItems.forEach(backlogItemRepository::save);
+    for (Product product : products) {
+      List<String> ids = product.getPlannedBacklogItems().map(ProductBacklogItem::getId).collect(Collectors.toList());
+      Collections.shuffle(ids, random);
+      product.reorderBacklogItems(ids);
+      productRepository.save(product);
+    }
+    for (BacklogItem item : backlogItems) {
+      if (random.nextBoolean()) item.changeTitle(item.getTitle() + " bis");
+      item.assignStoryPoints(StoryPoints.values()[random.nextInt(StoryPoints.values().length)]);
+      backlogItemRepository.save(item);
+    }
+
+    long total = eventStore.getLastGlobalPosition();
+    await(() -> runner.getPosition() == total);
+    assertMatches(readModel, products, backlogItemRepository);
+
+    // A rebuild gives the same state
+    ProjectionRunner<String> rebuilt = engine.rebuild(readModel);
+    await(() -> rebuilt.getPosition() == total);
+    assertMatches(readModel, products, backlogItemRepository);
+    engine.close();
+    eventStore.close();
+  }
+
+  private static void assertMatches(ProductBacklogReadModel readModel, List<Product> products, BacklogItemRepository backlogItemRepository) {
+    for (Product product : products) {
+      List<ProductBacklogEntry> backlog = readModel.getBacklog(product.getId());
+      assertThat(backlog).extracting(ProductBacklogEntry::getBacklogItemId)
+          .isEqualTo(product.getPlannedBacklogItems().map(ProductBacklogItem::getId).collect(Collectors.toList()));
+      int storyPoints = 0;
+      for (ProductBacklogEntry entry : backlog) {
+        BacklogItem item = backlogItemRepository.getById(entry.getBacklogItemId());
+        assertThat(entry.getTitle()).isEqualTo(item.getTitle());
+        assertThat(entry.getStoryPoints()).isEqualTo(item.getStoryPoints());
+        storyPoints += item.getStoryPoints().getValue();
+      }
+      assertThat(readModel.getStoryPoints(product.getId())).isEqualTo(storyPoints);
+    }
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      if (System.nanoTime() > deadline) fail("condition not met within 10 seconds");
+      Thread.sleep(1);
+    }
+  }
+}
@@ -0,0 +1,2 @@
+package dddes.example.readmodel;
+public interface ReadModelTests {}
\ No newline at end of file